@@ -4,7 +4,17 @@ import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.services.youtube.YouTube;
 import com.google.inject.AbstractModule;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Environment;
 import play.libs.pekko.PekkoGuiceSupport;
+import repositories.AsyncYoutubeRepository;
+import repositories.CacheReplication;
+import repositories.CacheSweeper;
+import repositories.CacheWarmer;
+import repositories.ReactiveVideoRepository;
+import repositories.SourceVideoRepository;
+import repositories.Ticker;
 import repositories.VideoRepository;
 import repositories.YoutubeRepository;
 
@@ -14,6 +24,25 @@ import repositories.YoutubeRepository;
  * @author Wayan-Gwie Lapointe
  */
 public class Module extends AbstractModule implements PekkoGuiceSupport {
+    private final Config config;
+
+    /**
+     * Create the module with the YouTube client of the default configuration
+     */
+    public Module() {
+        this.config = ConfigFactory.load();
+    }
+
+    /**
+     * Create the module with the application configuration, as Play does
+     *
+     * @param environment Environment of the application
+     * @param config      Application configuration
+     */
+    public Module(Environment environment, Config config) {
+        this.config = config;
+    }
+
     /**
      * Configure Guice Injector
      * bindActor doesn't work in testing, so this method can't be tested
@@ -28,7 +57,16 @@ public class Module extends AbstractModule implements PekkoGuiceSupport {
         }
 
         bind(YouTube.class).toProvider(YoutubeRepository.YoutubeProvider.class);
-        bind(VideoRepository.class).to(YoutubeRepository.class);
+        bind(Ticker.class).toInstance(Ticker.systemTicker());
+        if (config.getString("tubelytics.youtube.client").equals("async")) {
+            bind(VideoRepository.class).to(AsyncYoutubeRepository.class);
+        } else {
+            bind(VideoRepository.class).to(YoutubeRepository.class);
+        }
+        bind(ReactiveVideoRepository.class).to(SourceVideoRepository.class);
+        bind(CacheReplication.class).asEagerSingleton();
+        bind(CacheSweeper.class).asEagerSingleton();
+        bind(CacheWarmer.class).asEagerSingleton();
 
         bindActor(VideoSupervisorActor.class, "video-supervisor-actor");
         bindActor(ReadingCalculatorActor.class, "reading-calculator-actor");
@@ -3,14 +3,13 @@ package actors;
 import models.ChannelModel;
 import org.apache.pekko.actor.AbstractActor;
 import org.apache.pekko.actor.Props;
+import org.apache.pekko.stream.javadsl.Source;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import repositories.VideoRepository;
-
-import java.util.concurrent.CompletionStage;
+import repositories.ReactiveVideoRepository;
 
 /**
- * This actor handles channel-related requests, interacting with the VideoRepository
+ * This actor handles channel-related requests, interacting with the ReactiveVideoRepository
  * to fetch channel details based on the search query.
  *
  * @author Yulin Zhang
@@ -36,16 +35,16 @@ public class ChannelActor extends AbstractActor {
      */
     public static class ChannelRequest {
         public final String channelIDQuery; // Channel Id
-        public final VideoRepository videos; // The repository used to fetch video data.
+        public final ReactiveVideoRepository videos; // The repository used to fetch video data.
 
         /**
          * Constructor for ChannelRequest.
          *
          * @param channelID The search term for the channel.
-         * @param videos The VideoRepository instance.
+         * @param videos The ReactiveVideoRepository instance.
          * @author Yulin Zhang
          */
-        public ChannelRequest(String channelID, VideoRepository videos) {
+        public ChannelRequest(String channelID, ReactiveVideoRepository videos) {
             this.channelIDQuery = channelID;
             this.videos = videos;
         }
@@ -57,15 +56,15 @@ public class ChannelActor extends AbstractActor {
      * @author Yulin Zhang
      */
     public static class ChannelResponse {
-        public final CompletionStage<ChannelModel> channelModel;
+        public final Source<ChannelModel, ?> channelModel;
 
         /**
          * Constructor for ChannelResponse.
          *
-         * @param channelModel A CompletionStage that provides the channel details.
+         * @param channelModel A Source that provides the channel details once materialized.
          * @author Yulin Zhang
          */
-        public ChannelResponse(CompletionStage<ChannelModel> channelModel) {
+        public ChannelResponse(Source<ChannelModel, ?> channelModel) {
             this.channelModel = channelModel;
         }
     }
@@ -91,11 +90,11 @@ public class ChannelActor extends AbstractActor {
      * Searches for channel details asynchronously.
      *
      * @param query The search term for the channel.
-     * @param videos The VideoRepository instance.
-     * @return A CompletionStage containing the ChannelModel result.
+     * @param videos The ReactiveVideoRepository instance.
+     * @return A Source of the ChannelModel result.
      * @author Yulin Zhang
      */
-    private CompletionStage<ChannelModel> searchChannel(String query, VideoRepository videos) {
+    private Source<ChannelModel, ?> searchChannel(String query, ReactiveVideoRepository videos) {
         return videos.getChannelDetails(query);
     }
 }
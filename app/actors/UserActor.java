@@ -3,6 +3,8 @@ package actors;
 import actors.protocols.UserActorProtocol;
 import actors.protocols.VideoSearchActorProtocol;
 import actors.protocols.VideoSupervisorActorProtocol;
+import com.typesafe.config.ConfigFactory;
+import models.QueryCanonicalizer;
 import org.apache.pekko.actor.AbstractActor;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.Props;
@@ -22,18 +24,21 @@ public class UserActor extends AbstractActor {
 
     private final ActorRef wsOut;
     private final ActorRef videoSupervisor;
+    private final QueryCanonicalizer canonicalizer;
     private final HashSet<String> searches;
 
     /**
      * Constructor
      * @param wsOut ActorRef of the websocket output
      * @param videoSupervisor ActorRef of the video supervisor
+     * @param canonicalizer Canonicalizer of the queries, to match results to the queries as typed by the user
      *
      * @author Wayan-Gwie Lapointe
      */
-    public UserActor(ActorRef wsOut, ActorRef videoSupervisor) {
+    public UserActor(ActorRef wsOut, ActorRef videoSupervisor, QueryCanonicalizer canonicalizer) {
         this.wsOut = wsOut;
         this.videoSupervisor = videoSupervisor;
+        this.canonicalizer = canonicalizer;
         this.searches = new HashSet<>();
     }
 
@@ -46,7 +51,18 @@ public class UserActor extends AbstractActor {
      * @author Wayan-Gwie Lapointe
      */
     public static Props props(ActorRef wsOut, ActorRef videoSupervisor) {
-        return Props.create(UserActor.class, wsOut, videoSupervisor);
+        return props(wsOut, videoSupervisor, new QueryCanonicalizer(ConfigFactory.load()));
+    }
+
+    /**
+     * Create the actor
+     * @param wsOut ActorRef of the websocket output
+     * @param videoSupervisor ActorRef of the video supervisor
+     * @param canonicalizer Canonicalizer of the queries
+     * @return Props that represent the actor
+     */
+    public static Props props(ActorRef wsOut, ActorRef videoSupervisor, QueryCanonicalizer canonicalizer) {
+        return Props.create(UserActor.class, wsOut, videoSupervisor, canonicalizer);
     }
 
     /**
@@ -65,13 +81,25 @@ public class UserActor extends AbstractActor {
 
     /**
      * Handler for relaying search results to the user
+     * Results are searched for the canonical query, so they are relayed once for every spelling of it the user started.
      * @param sr Message to handle
      *
      * @author Wayan-Gwie Lapointe
      */
     private void searchResult(VideoSearchActorProtocol.SearchResult sr) {
-        wsOut.tell(Json.toJson(sr), self());
-        log.info("Relaying results '{}'", sr);
+        boolean relayed = false;
+        for (String query : searches) {
+            if (query.equals(sr.getQuery()) || canonicalizer.canonicalize(query).equals(sr.getQuery())) {
+                VideoSearchActorProtocol.SearchResult echoed = sr.withQuery(query);
+                wsOut.tell(Json.toJson(echoed), self());
+                log.info("Relaying results '{}'", echoed);
+                relayed = true;
+            }
+        }
+        if (!relayed) {
+            wsOut.tell(Json.toJson(sr), self());
+            log.info("Relaying results '{}'", sr);
+        }
     }
 
     /**
@@ -88,8 +116,11 @@ public class UserActor extends AbstractActor {
                 log.info("Received request to start search for query '{}'", msg.query);
                 break;
             case "stop":
-                videoSupervisor.tell(new VideoSupervisorActorProtocol.EndSearch(msg.query), self());
                 searches.remove(msg.query);
+                // Another spelling of the query still needs the results
+                if (searches.stream().noneMatch(query -> canonicalizer.canonicalize(query).equals(canonicalizer.canonicalize(msg.query)))) {
+                    videoSupervisor.tell(new VideoSupervisorActorProtocol.EndSearch(msg.query), self());
+                }
                 log.info("Received request to stop search for query '{}'", msg.query);
                 break;
             default:
@@ -4,68 +4,103 @@ import actors.protocols.ReadingCalculatorProtocol;
 import actors.protocols.SentimentCalculatorProtocol;
 import actors.protocols.VideoSearchActorProtocol;
 import com.google.inject.assistedinject.Assisted;
+import models.SearchBatch;
 import models.SearchResultModel;
 import org.apache.pekko.actor.AbstractActorWithTimers;
 import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.Status;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
 import org.apache.pekko.util.FutureConverters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import repositories.VideoRepository;
+import repositories.QuotaGovernor;
+import repositories.ReactiveVideoRepository;
+import repositories.ScoredSearchCache;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.apache.pekko.pattern.Patterns.ask;
+import static org.apache.pekko.pattern.Patterns.pipe;
 
 /**
  * Actor to manage a video search
+ * <p>
+ * Searches run as sources on a materializer bound to the actor, and their results are piped back
+ * to the actor as messages, so the state of the search is only ever touched by the actor itself.
  *
  * @author Wayan-Gwie Lapointe
  */
 public class VideoSearchActor extends AbstractActorWithTimers {
     private static final Logger log = LoggerFactory.getLogger(VideoSearchActor.class);
+    private static final Duration TICK_INTERVAL = Duration.ofMinutes(2);
+    // Ticks only ask for the videos published since the newest one, with a full search every few ticks
+    // to catch videos the search index picked up late
+    private static final int INCREMENTAL_MAX_RESULTS = 10;
+    private static final int FULL_SEARCH_TICKS = 10;
     private final String query;
-    private final VideoRepository videos;
+    private final ReactiveVideoRepository videos;
+    private final ScoredSearchCache scoredSearchCache;
     private final HashSet<ActorRef> users;
     private final LinkedHashSet<SearchResultModel> lastResults;
     private final ActorRef readingCalculator;
     private final ActorRef sentimentCalculator;
+    private final QuotaGovernor quota;
+    private long newestPublishedAt;
+    private int ticksSinceFullSearch;
+    private Materializer materializer;
 
     /**
      * Constructor
      * @param query Query to search for
-     * @param videos Repository to search videos
+     * @param videos Reactive repository to search videos
+     * @param scoredSearchCache Cache of scored search results, shared with every search of the query
      * @param readingCalculator ActorRef to a ReadingCalculatorActor
      * @param sentimentCalculator ActorRef to a SentimentCalculatorActor
+     * @param quota Governor of the API quota, spacing the ticks further apart when it runs low
      *
      * @author Wayan-Gwie Lapointe
      */
     @Inject
-    public VideoSearchActor(@Assisted String query, VideoRepository videos, @Named("reading-calculator-actor") ActorRef readingCalculator, @Named("sentiment-calculator-actor") ActorRef sentimentCalculator) {
+    public VideoSearchActor(@Assisted String query, ReactiveVideoRepository videos, ScoredSearchCache scoredSearchCache, @Named("reading-calculator-actor") ActorRef readingCalculator, @Named("sentiment-calculator-actor") ActorRef sentimentCalculator, QuotaGovernor quota) {
         this.query = query;
         this.videos = videos;
+        this.scoredSearchCache = scoredSearchCache;
         this.readingCalculator = readingCalculator;
         this.sentimentCalculator = sentimentCalculator;
+        this.quota = quota;
         users = new HashSet<>();
         lastResults = new LinkedHashSet<>();
     }
 
     /**
      * Called when actor is created.
-     * Initializes the search timer.
+     * Initializes the materializer of the searches, stopped with the actor, and the search timer.
      *
      * @author Wayan-Gwie Lapointe
      */
     @Override
     public void preStart() {
-        getTimers().startTimerWithFixedDelay("Timer", new VideoSearchActorProtocol.Tick(), Duration.ofMinutes(2));
+        materializer = Materializer.createMaterializer(getContext());
+        scheduleTick();
+    }
+
+    /**
+     * Schedule the next search, later than the usual interval when the quota runs low
+     */
+    private void scheduleTick() {
+        getTimers().startSingleTimer("Timer", new VideoSearchActorProtocol.Tick(), quota.stretch(TICK_INTERVAL));
     }
 
     /**
@@ -77,9 +112,15 @@ public class VideoSearchActor extends AbstractActorWithTimers {
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-            .match(VideoSearchActorProtocol.Tick.class, msg -> doSearch())
+            .match(VideoSearchActorProtocol.Tick.class, msg -> {
+                doSearch();
+                scheduleTick();
+            })
             .match(VideoSearchActorProtocol.Subscribe.class, this::subscribe)
             .match(VideoSearchActorProtocol.Unsubscribe.class, this::unsubscribe)
+            .match(LatestResults.class, this::sendLatestResults)
+            .match(NewResults.class, this::sendNewResults)
+            .match(Status.Failure.class, failure -> log.warn("Search failed for query: '{}'.", query, failure.cause()))
             .build();
     }
 
@@ -93,9 +134,8 @@ public class VideoSearchActor extends AbstractActorWithTimers {
         ActorRef user = msg.getUser();
         users.add(user);
         if (lastResults.isEmpty()) {
-            getLatestSearchResults()
-                .thenAcceptAsync(results -> results.forEach(lastResults::add))
-                .thenRunAsync(() -> sendSubscribeVideos(user));
+            pipe(getLatestSearchResults(QuotaGovernor.Priority.INTERACTIVE).thenApply(results -> new LatestResults(user, results)), getContext().getDispatcher())
+                .to(self());
         }
         else {
             sendSubscribeVideos(user);
@@ -103,6 +143,15 @@ public class VideoSearchActor extends AbstractActorWithTimers {
         log.info("User subscribed for query: '{}'.", query);
     }
 
+    /**
+     * Handler for the results searched for a new user
+     * @param msg Message to handle
+     */
+    private void sendLatestResults(LatestResults msg) {
+        msg.results.forEach(this::remember);
+        sendSubscribeVideos(msg.user);
+    }
+
     /**
      * Send batch of videos after subscription
      * @param user ActorRef of the user to send results to
@@ -136,20 +185,22 @@ public class VideoSearchActor extends AbstractActorWithTimers {
 
     /**
      * Do video search to get new videos
+     * Only the videos published since the newest known one are searched and scored, except every
+     * few ticks or while no publication time is known, when the full results are searched again.
      *
      * @author Wayan-Gwie Lapointe
      */
     private void doSearch() {
         if (!users.isEmpty()) {
-            getLatestSearchResults()
-                .thenAcceptAsync(results -> {
-                    results
-                        .filter(result -> !lastResults.contains(result))
-                        .forEach(result -> {
-                            lastResults.add(result);
-                            users.forEach(user -> user.tell(new VideoSearchActorProtocol.SingleSearchResult(query, result), self()));
-                        });
-                });
+            CompletionStage<List<SearchResultModel>> results;
+            if (newestPublishedAt == 0 || ticksSinceFullSearch >= FULL_SEARCH_TICKS) {
+                ticksSinceFullSearch = 0;
+                results = getLatestSearchResults(QuotaGovernor.Priority.BACKGROUND);
+            } else {
+                ticksSinceFullSearch++;
+                results = getNewSearchResults();
+            }
+            pipe(results.thenApply(NewResults::new), getContext().getDispatcher()).to(self());
 
             log.info("Search ticked for query: '{}'.", query);
         } else {
@@ -157,17 +208,113 @@ public class VideoSearchActor extends AbstractActorWithTimers {
         }
     }
 
+    /**
+     * Handler for the results of a tick, sending the users those they were not sent yet
+     * @param msg Message to handle
+     */
+    private void sendNewResults(NewResults msg) {
+        msg.results.stream()
+            .filter(result -> !lastResults.contains(result))
+            .forEach(result -> {
+                remember(result);
+                users.forEach(user -> user.tell(new VideoSearchActorProtocol.SingleSearchResult(query, result), self()));
+            });
+    }
+
+    /**
+     * Keep a result sent to the users, moving the newest publication time forward
+     * @param result Result sent
+     */
+    private void remember(SearchResultModel result) {
+        lastResults.add(result);
+        newestPublishedAt = Math.max(newestPublishedAt, result.getPublishedAt());
+    }
+
+    /**
+     * Get the videos published since the newest known one, scoring only those not sent yet
+     * The search is inclusive, so it returns at least the newest known video again. Results are matched
+     * by video, whatever their scores, against the videos known when the search starts.
+     * @return Scored new results
+     */
+    private CompletionStage<List<SearchResultModel>> getNewSearchResults() {
+        Set<String> known = lastResults.stream().map(SearchResultModel::getId).collect(Collectors.toSet());
+        return videos
+            .searchSince(query, Instant.ofEpochMilli(newestPublishedAt), INCREMENTAL_MAX_RESULTS, QuotaGovernor.Priority.BACKGROUND)
+            .filter(result -> !known.contains(result.getId()))
+            .runWith(Sink.seq(), materializer)
+            .thenCompose(results -> results.isEmpty()
+                ? CompletableFuture.completedFuture(List.<SearchResultModel>of())
+                : score(results.stream()).thenApply(scored -> scored.collect(Collectors.toList())));
+    }
+
+    /**
+     * Get the scored videos, only searching and scoring them when the cache has no batch for the query
+     * @param priority Priority of the search against the API quota
+     * @return Search results
+     */
+    private CompletionStage<List<SearchResultModel>> getLatestSearchResults(QuotaGovernor.Priority priority) {
+        return scoredSearchCache
+            .getOrLoadAsync(query, () -> scoreResults(priority))
+            .thenApply(SearchBatch::getResults);
+    }
+
     /**
      * Do search and processing of videos
-     * @return Stream of search results
+     * @param priority Priority of the search against the API quota
+     * @return Batch of scored search results
      *
      * @author Wayan-Gwie Lapointe
      */
-    private CompletionStage<Stream<SearchResultModel>> getLatestSearchResults() {
+    private CompletionStage<SearchBatch> scoreResults(QuotaGovernor.Priority priority) {
         return videos
-            .search(query)
-            .thenComposeAsync(results -> FutureConverters.asJava(ask(readingCalculator, new ReadingCalculatorProtocol.AddReadingStats(results), 1000)))
-            .thenComposeAsync(results -> FutureConverters.asJava(ask(sentimentCalculator, new SentimentCalculatorProtocol.AddSentimentScore((Stream<SearchResultModel>) results), 1000)))
-            .thenApply(results -> (Stream<SearchResultModel>) results);
+            .search(query, priority)
+            .runWith(Sink.seq(), materializer)
+            .thenCompose(results -> score(results.stream()))
+            .thenApply(results -> new SearchBatch(results.collect(Collectors.toList())));
+    }
+
+    /**
+     * Add the reading and sentiment scores to results
+     * The results given are backed by a list, so the calculators can consume them on any thread.
+     * @param results Results to score
+     * @return Stream of scored results
+     */
+    private CompletionStage<Stream<SearchResultModel>> score(Stream<SearchResultModel> results) {
+        return FutureConverters.asJava(ask(readingCalculator, new ReadingCalculatorProtocol.AddReadingStats(results), 1000))
+            .thenComposeAsync(scored -> FutureConverters.asJava(ask(sentimentCalculator, new SentimentCalculatorProtocol.AddSentimentScore((Stream<SearchResultModel>) scored), 1000)))
+            .thenApply(scored -> (Stream<SearchResultModel>) scored);
+    }
+
+    /**
+     * Results searched for a user who subscribed before any result was known
+     */
+    private static final class LatestResults {
+        private final ActorRef user;
+        private final List<SearchResultModel> results;
+
+        /**
+         * Create the message
+         * @param user User to send the results to
+         * @param results Scored search results
+         */
+        private LatestResults(ActorRef user, List<SearchResultModel> results) {
+            this.user = user;
+            this.results = results;
+        }
+    }
+
+    /**
+     * Results searched on a tick
+     */
+    private static final class NewResults {
+        private final List<SearchResultModel> results;
+
+        /**
+         * Create the message
+         * @param results Scored search results
+         */
+        private NewResults(List<SearchResultModel> results) {
+            this.results = results;
+        }
     }
 }
@@ -2,7 +2,9 @@ package actors;
 
 import actors.protocols.VideoSearchActorProtocol;
 import actors.protocols.VideoSupervisorActorProtocol;
+import com.typesafe.config.ConfigFactory;
 import io.github.cdimascio.dotenv.DotenvException;
+import models.QueryCanonicalizer;
 import org.apache.pekko.actor.AbstractActor;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.OneForOneStrategy;
@@ -27,6 +29,7 @@ import java.util.HashMap;
 public class VideoSupervisorActor extends AbstractActor implements InjectedActorSupport {
     private static final Logger log = LoggerFactory.getLogger(VideoSupervisorActor.class);
     private final VideoSearchActorProtocol.Factory searchFactory;
+    private final QueryCanonicalizer canonicalizer;
     private final HashMap<String, ActorRef> searchManagers;
 
     // Supervision strategy
@@ -48,9 +51,19 @@ public class VideoSupervisorActor extends AbstractActor implements InjectedActor
      *
      * @author Wayan-Gwie Lapointe
      */
-    @Inject
     public VideoSupervisorActor(VideoSearchActorProtocol.Factory searchFactory) {
+        this(searchFactory, new QueryCanonicalizer(ConfigFactory.load()));
+    }
+
+    /**
+     * Constructor
+     * @param searchFactory Factory to construct a VideoSearchActor
+     * @param canonicalizer Canonicalizer of the queries, so every spelling of a query shares one VideoSearchActor
+     */
+    @Inject
+    public VideoSupervisorActor(VideoSearchActorProtocol.Factory searchFactory, QueryCanonicalizer canonicalizer) {
         this.searchFactory = searchFactory;
+        this.canonicalizer = canonicalizer;
         this.searchManagers = new HashMap<>();
     }
 
@@ -69,13 +82,13 @@ public class VideoSupervisorActor extends AbstractActor implements InjectedActor
     }
 
     /**
-     * Handler for users starting a search. Creates only one VideoSearchActor for each unique search.
+     * Handler for users starting a search. Creates only one VideoSearchActor for each canonical query.
      * @param msg Message to handle
      *
      * @author Wayan-Gwie Lapointe
      */
     private void startSearch(VideoSupervisorActorProtocol.StartSearch msg) {
-        String query = msg.getQuery();
+        String query = canonicalizer.canonicalize(msg.getQuery());
 
         ActorRef search;
         if (!searchManagers.containsKey(query)) {
@@ -97,7 +110,7 @@ public class VideoSupervisorActor extends AbstractActor implements InjectedActor
      * @author Wayan-Gwie Lapointe
      */
     private void endSearch(VideoSupervisorActorProtocol.EndSearch msg) {
-        String query = msg.getQuery();
+        String query = canonicalizer.canonicalize(msg.getQuery());
 
         if (searchManagers.containsKey(query)) {
             ActorRef search = searchManagers.get(query);
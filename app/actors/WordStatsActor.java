@@ -3,16 +3,14 @@ package actors;
 import models.SearchResultModel;
 import org.apache.pekko.actor.AbstractActor;
 import org.apache.pekko.actor.Props;
+import org.apache.pekko.stream.javadsl.Source;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import repositories.VideoRepository;
-
-import java.util.concurrent.CompletionStage;
-import java.util.stream.Stream;
+import repositories.ReactiveVideoRepository;
 /**
  * The {@code WordStatsActor} class processes video search requests and returns word statistics
  * based on the search results. It uses the Apache Pekko framework to handle asynchronous
- * communication and interactions with a {@link VideoRepository}.
+ * communication and interactions with a {@link ReactiveVideoRepository}.
  * @author Nicolas Alberto Agudelo Herrera
  */
 public class WordStatsActor extends AbstractActor {
@@ -28,38 +26,38 @@ public class WordStatsActor extends AbstractActor {
     }
     /**
      * Message class representing a request to search for videos.
-     * Contains the search query and a reference to the {@link VideoRepository}.
+     * Contains the search query and a reference to the {@link ReactiveVideoRepository}.
      * @author Nicolas Alberto Agudelo Herrera
      */
     public static class SearchVideos {
         public final String query;
-        public final VideoRepository videos;
+        public final ReactiveVideoRepository videos;
         /**
          * Constructs a {@code SearchVideos} message.
          *
          * @param query the search query string.
-         * @param videos the {@link VideoRepository} to use for the search.
+         * @param videos the {@link ReactiveVideoRepository} to use for the search.
          * @author Nicolas Alberto Agudelo Herrera
          */
-        public SearchVideos(String query, VideoRepository videos) {
+        public SearchVideos(String query, ReactiveVideoRepository videos) {
             this.query = query;
             this.videos = videos;
         }
     }
     /**
      * Message class representing the response to a video search request.
-     * Contains the asynchronous search results as a {@link CompletionStage}.
+     * Contains the search results as a {@link Source}, only searched once the receiver materializes it.
      * @author Nicolas Alberto Agudelo Herrera
      */
     public static class VideosReturned {
-        public final CompletionStage<Stream<SearchResultModel>> Videos;
+        public final Source<SearchResultModel, ?> Videos;
         /**
          * Constructs a {@code VideosReturned} message.
          *
-         * @param Videos the asynchronous stream of search results.
+         * @param Videos the source of search results.
          * @author Nicolas Alberto Agudelo Herrera
          */
-        public VideosReturned(CompletionStage<Stream<SearchResultModel>> Videos) {
+        public VideosReturned(Source<SearchResultModel, ?> Videos) {
             this.Videos = Videos;
         }
     }
@@ -81,14 +79,14 @@ public class WordStatsActor extends AbstractActor {
                 .build();
     }
     /**
-     * Performs a video search using the provided query and {@link VideoRepository}.
+     * Performs a video search using the provided query and {@link ReactiveVideoRepository}.
      *
      * @param query the search query string.
-     * @param videos the {@link VideoRepository} to use for the search.
-     * @return a {@link CompletionStage} containing a stream of {@link SearchResultModel}.
+     * @param videos the {@link ReactiveVideoRepository} to use for the search.
+     * @return a {@link Source} of {@link SearchResultModel}.
      * @author Nicolas Alberto Agudelo Herrera
      */
-    private CompletionStage<Stream<SearchResultModel>> searchVideos(String query, VideoRepository videos){
+    private Source<SearchResultModel, ?> searchVideos(String query, ReactiveVideoRepository videos){
         return videos.search(query);
     }
 
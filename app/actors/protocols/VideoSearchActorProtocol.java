@@ -42,6 +42,18 @@ public class VideoSearchActorProtocol {
      * @author Wayan-Gwie Lapointe
      */
     public interface SearchResult {
+        /**
+         * Get the query of the results
+         * @return Query
+         */
+        String getQuery();
+
+        /**
+         * Copy the message for another spelling of its query
+         * @param query Query as typed by the user
+         * @return Message with the query replaced
+         */
+        SearchResult withQuery(String query);
     }
 
     /**
@@ -144,6 +156,25 @@ public class VideoSearchActorProtocol {
             this.results = results;
         }
 
+        /**
+         * Get the query of the results
+         * @return Query
+         */
+        @Override
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * Copy the message for another spelling of its query
+         * @param query Query as typed by the user
+         * @return Message with the query replaced
+         */
+        @Override
+        public MultipleSearchResult withQuery(String query) {
+            return new MultipleSearchResult(query, totalCount, totalSentimentScore, totalReadingScore, totalReadingGrade, results);
+        }
+
         /**
          * ToString
          * @return String representation
@@ -178,6 +209,25 @@ public class VideoSearchActorProtocol {
             this.result = result;
         }
 
+        /**
+         * Get the query of the result
+         * @return Query
+         */
+        @Override
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * Copy the message for another spelling of its query
+         * @param query Query as typed by the user
+         * @return Message with the query replaced
+         */
+        @Override
+        public SingleSearchResult withQuery(String query) {
+            return new SingleSearchResult(query, result);
+        }
+
         /**
          * ToString
          * @return String representation
@@ -0,0 +1,120 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import play.libs.Json;
+import play.mvc.Controller;
+import play.mvc.Result;
+import repositories.Cache;
+import repositories.QuotaGovernor;
+import repositories.ScoredSearchCache;
+import repositories.YoutubeExecutors;
+import repositories.YoutubeRepository.ChannelCache;
+import repositories.YoutubeRepository.PlayListsCache;
+import repositories.YoutubeRepository.SearchCache;
+import repositories.YoutubeRepository.VideoCache;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controller exposing operational information about the application
+ * <p>
+ * The actions have no authentication, so they answer 404 Not Found unless tubelytics.admin.enabled is
+ * set, which it is not by default. Enable them only where /admin is not reachable from the internet.
+ */
+public class AdminController extends Controller {
+    private final boolean enabled;
+    private final Map<String, Cache<?>> caches = new LinkedHashMap<>();
+    private final YoutubeExecutors executors;
+    private final QuotaGovernor quota;
+
+    /**
+     * Create an AdminController
+     *
+     * @param searchCache       Cache of the search responses
+     * @param channelCache      Cache of the channel responses
+     * @param playListsCache    Cache of the channel playlist responses
+     * @param videoCache        Cache of the video responses
+     * @param scoredSearchCache Cache of the scored search results
+     * @param executors         Bulkheads running the YouTube API calls
+     * @param quota             Governor of the YouTube API quota
+     * @param config            Application configuration, enabling the actions
+     */
+    @Inject
+    public AdminController(SearchCache searchCache, ChannelCache channelCache, PlayListsCache playListsCache, VideoCache videoCache, ScoredSearchCache scoredSearchCache, YoutubeExecutors executors, QuotaGovernor quota, Config config) {
+        this.enabled = config.getBoolean("tubelytics.admin.enabled");
+        this.executors = executors;
+        this.quota = quota;
+        caches.put("search", searchCache);
+        caches.put("channel", channelCache);
+        caches.put("playlists", playListsCache);
+        caches.put("video", videoCache);
+        caches.put("scored-search", scoredSearchCache);
+    }
+
+    /**
+     * Action that returns the statistics of the YouTube response caches
+     *
+     * @return JSON object with the statistics, size and estimated bytes of each cache, or 404 if the actions are disabled
+     */
+    public Result cacheStats() {
+        if (!enabled) {
+            return notFound();
+        }
+        ObjectNode result = Json.newObject();
+        caches.forEach((name, cache) -> {
+            ObjectNode node = (ObjectNode) Json.toJson(cache.stats());
+            node.put("size", cache.size());
+            node.put("estimatedBytes", cache.weight());
+            result.set(name, node);
+        });
+        return ok(result);
+    }
+
+    /**
+     * Action that returns the load of the bulkheads running the YouTube API calls
+     *
+     * @return JSON object with the kind of threads, size, running, queued, completed and rejected calls of each bulkhead, or 404 if the actions are disabled
+     */
+    public Result executorStats() {
+        if (!enabled) {
+            return notFound();
+        }
+        ObjectNode result = Json.newObject();
+        executors.all().forEach((name, bulkhead) -> {
+            ObjectNode node = result.putObject(name);
+            node.put("virtual", bulkhead.isVirtual());
+            node.put("threads", bulkhead.getThreads());
+            node.put("queueSize", bulkhead.getQueueSize());
+            node.put("active", bulkhead.getActive());
+            node.put("queued", bulkhead.getQueued());
+            node.put("completed", bulkhead.getCompleted());
+            node.put("rejected", bulkhead.getRejected());
+        });
+        return ok(result);
+    }
+
+    /**
+     * Action that returns the state of the YouTube API quota
+     *
+     * @return JSON object with the units available, the fill level, whether interactive calls are refused and the granted and denied calls of each priority, or 404 if the actions are disabled
+     */
+    public Result quotaStats() {
+        if (!enabled) {
+            return notFound();
+        }
+        ObjectNode result = Json.newObject();
+        result.put("enabled", quota.isEnabled());
+        result.put("available", quota.getAvailable());
+        result.put("level", quota.getLevel());
+        result.put("exhausted", quota.isExhausted());
+        for (QuotaGovernor.Priority priority : QuotaGovernor.Priority.values()) {
+            ObjectNode node = result.putObject(priority.name().toLowerCase());
+            node.put("granted", quota.getGranted(priority));
+            node.put("denied", quota.getDenied(priority));
+        }
+        return ok(result);
+    }
+}
@@ -4,6 +4,7 @@ import actors.ChannelActor;
 import actors.UserActor;
 import actors.WordStatsActor;
 import actors.protocols.UserActorProtocol;
+import models.QueryCanonicalizer;
 import models.ReadingCalculator;
 import models.SentimentCalculator;
 import models.WordAnalyser;
@@ -11,13 +12,17 @@ import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
 import org.apache.pekko.pattern.Patterns;
 import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
 import org.apache.pekko.util.FutureConverters;
 import play.libs.streams.ActorFlow;
 import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.WebSocket;
-import repositories.VideoRepository;
+import models.SearchBatch;
+import models.SearchResultModel;
+import repositories.ReactiveVideoRepository;
+import repositories.ScoredSearchCache;
 import org.apache.pekko.util.FutureConverters;
 import services.WordStatisticsService;
 import services.WordStatisticsService.WordCount;
@@ -25,7 +30,9 @@ import services.WordStatisticsService.WordCount;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import static play.libs.Scala.asScala;
@@ -41,7 +48,9 @@ import java.util.concurrent.CompletableFuture;
  * @author Wayan-Gwie Lapointe
  */
 public class HomeController extends Controller {
-    private final VideoRepository videos;
+    private final ReactiveVideoRepository videos;
+    private final ScoredSearchCache scoredSearchCache;
+    private final QueryCanonicalizer canonicalizer;
     private final WordStatisticsService wordStatisticsService;
     private final ActorSystem actorSystem;
     private final Materializer materializer;
@@ -58,12 +67,16 @@ public class HomeController extends Controller {
     /**
      * Create a HomeController
      *
-     * @param videos Repository to search videos
+     * @param videos            Reactive repository to search videos, whose sources run on the materializer
+     * @param scoredSearchCache Cache of scored search results
+     * @param canonicalizer     Canonicalizer of the search queries, so every spelling of a query shares the cached results
      * @author Wayan-Gwie Lapointe
      */
     @Inject
-    public HomeController(VideoRepository videos, ActorSystem actorSystem, Materializer materializer, @Named("video-supervisor-actor") ActorRef videoSupervisor, @Named("tag-actor") ActorRef tagActor, @Named("word-stats-actor") ActorRef wordStatsActor, @Named("channel-actor")ActorRef channelActor) {
+    public HomeController(ReactiveVideoRepository videos, ScoredSearchCache scoredSearchCache, QueryCanonicalizer canonicalizer, ActorSystem actorSystem, Materializer materializer, @Named("video-supervisor-actor") ActorRef videoSupervisor, @Named("tag-actor") ActorRef tagActor, @Named("word-stats-actor") ActorRef wordStatsActor, @Named("channel-actor")ActorRef channelActor) {
         this.videos = videos;
+        this.scoredSearchCache = scoredSearchCache;
+        this.canonicalizer = canonicalizer;
         this.wordStatisticsService = new WordStatisticsService();
         this.actorSystem = actorSystem;
         this.materializer = materializer;
@@ -91,7 +104,7 @@ public class HomeController extends Controller {
      */
     public WebSocket ws() {
         return WebSocket.json(UserActorProtocol.ClientRequest.class)
-                .accept(request -> ActorFlow.actorRef(ref -> UserActor.props(ref, videoSupervisor), actorSystem, materializer));
+                .accept(request -> ActorFlow.actorRef(ref -> UserActor.props(ref, videoSupervisor, canonicalizer), actorSystem, materializer));
     }
 
     /**
@@ -107,35 +120,47 @@ public class HomeController extends Controller {
 
     /**
      * Action that renders the search results.
+     * Results are cached under the canonical query, the page shows the query as typed.
      *
      * @param query Search query terms
      * @return Async result of rendering the results
      * @author Wayan-Gwie Lapointe
      */
     public CompletionStage<Result> search(String query) {
-        return videos
-                .search(query)
-                .thenApplyAsync(results ->
-                        results.peek(x -> {
-                            ReadingCalculator calculator = new ReadingCalculator(x.getDescription());
-                            x.setReadingScore(calculator.getReadingScore());
-                            x.setGradeLevel(calculator.getGradeLevel());
-                        })
-                )
-                .thenApplyAsync(search ->
-                        search.peek(y -> {
-                            SentimentCalculator cal = new SentimentCalculator(WordAnalyser.getInstance());
-                            y.setSentimentScore(cal.sentimentScore(y.getDescription()));
-                        })
-                )
-                .thenApplyAsync(results -> ok(
+        String key = canonicalizer.canonicalize(query);
+        return scoredSearchCache
+                .getOrLoadAsync(key, () -> scoreResults(key))
+                .thenApplyAsync(batch -> ok(
                         views.html.searchresults.render(
                                 query,
-                                asScala(results.collect(Collectors.toList()))
+                                asScala(batch.getResults())
                         )
                 ));
     }
 
+    /**
+     * Search videos and score their descriptions
+     *
+     * @param query Search query terms
+     * @return Async batch of scored results
+     */
+    private CompletionStage<SearchBatch> scoreResults(String query) {
+        return videos
+                .search(query)
+                .runWith(Sink.seq(), materializer)
+                .thenApplyAsync(results -> {
+                    // Scored off the stream, so the calculators do not hold up its dispatcher
+                    for (SearchResultModel x : results) {
+                        ReadingCalculator calculator = new ReadingCalculator(x.getDescription());
+                        x.setReadingScore(calculator.getReadingScore());
+                        x.setGradeLevel(calculator.getGradeLevel());
+                        SentimentCalculator cal = new SentimentCalculator(WordAnalyser.getInstance());
+                        x.setSentimentScore(cal.sentimentScore(x.getDescription()));
+                    }
+                    return new SearchBatch(results);
+                });
+    }
+
     /**
      * Action that renders the  results of tag search.
      *
@@ -204,8 +229,8 @@ public class HomeController extends Controller {
 
         return javaFuture.thenComposeAsync(response ->{
             if (response instanceof WordStatsActor.VideosReturned videosReturned && videosReturned.Videos != null) {
-                return videosReturned.Videos.thenApplyAsync(results -> {
-                            List<WordCount> sortedWordCount = wordStatisticsService.computeWordStatistics(results);
+                return videosReturned.Videos.runWith(Sink.seq(), materializer).thenApplyAsync(results -> {
+                            List<WordCount> sortedWordCount = wordStatisticsService.computeWordStatistics(results.stream());
                             return ok(views.html.wordstats.render(query, sortedWordCount));
                         }
                 ).exceptionally(e -> internalServerError("Error processing video results: " + e.getMessage()));
@@ -219,7 +244,7 @@ public class HomeController extends Controller {
      * Action that renders the channel page.
      *
      * @param query Channel Search ID
-     * @return Async result of rendering the results
+     * @return Async result of rendering the results, not found if the channel does not exist
      * @author Yulin Zhang
      */
     public CompletionStage<Result> searchChannel(String query) {
@@ -228,10 +253,15 @@ public class HomeController extends Controller {
 
         return javaFuture.thenComposeAsync(response ->{
             if (response instanceof ChannelActor.ChannelResponse channelResponse) {
-                return channelResponse.channelModel.thenApplyAsync(result -> {
+                return channelResponse.channelModel.runWith(Sink.head(), materializer).thenApplyAsync(result -> {
                             return ok(views.html.channelresults.render(result));
                         }
-                );
+                ).exceptionally(e -> {
+                    if (e.getCause() instanceof NoSuchElementException) {
+                        return notFound("Channel not found");
+                    }
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                });
             } else {
                 return CompletableFuture.completedFuture(internalServerError("Unexpected response"));
             }
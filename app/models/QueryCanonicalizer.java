@@ -0,0 +1,59 @@
+package models;
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Maps the different spellings of a search query to a single canonical key
+ * <p>
+ * "Cats", "cats " and "CATS" share the same cache entries and the same polling actor. The text is
+ * normalized to NFKC, case folded and its whitespace collapsed. Term order can also be ignored, so
+ * "cats dogs" and "dogs cats" share a key. Users always see the query as they typed it.
+ */
+@Singleton
+public class QueryCanonicalizer {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final boolean ignoreTermOrder;
+
+    /**
+     * Create a canonicalizer configured by tubelytics.query.ignore-term-order
+     *
+     * @param config Application configuration
+     */
+    @Inject
+    public QueryCanonicalizer(Config config) {
+        this.ignoreTermOrder = config.getBoolean("tubelytics.query.ignore-term-order");
+    }
+
+    /**
+     * Get the canonical key of a query
+     *
+     * @param query Query as typed by the user
+     * @return Canonical key, empty for a blank query
+     */
+    public String canonicalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        // Upper then lower case folds characters without a single lower case form, like the German sharp s
+        String folded = Normalizer.normalize(query, Normalizer.Form.NFKC).toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        // Folding can produce sequences that are not normalized anymore
+        folded = Normalizer.normalize(folded, Normalizer.Form.NFKC).strip();
+        if (folded.isEmpty()) {
+            return "";
+        }
+
+        String[] terms = WHITESPACE.split(folded);
+        if (ignoreTermOrder) {
+            Arrays.sort(terms);
+        }
+        return String.join(" ", terms);
+    }
+}
@@ -0,0 +1,29 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Scored results of one search, shared by every request for the same query
+ * Results must not be modified once added to a batch, since cached batches are read concurrently.
+ */
+public final class SearchBatch {
+    private final List<SearchResultModel> results;
+
+    /**
+     * Create a batch
+     *
+     * @param results Results with their reading and sentiment scores set
+     */
+    public SearchBatch(List<SearchResultModel> results) {
+        this.results = List.copyOf(results);
+    }
+
+    /**
+     * Get the results
+     *
+     * @return Unmodifiable list of the results, most recent first
+     */
+    public List<SearchResultModel> getResults() {
+        return results;
+    }
+}
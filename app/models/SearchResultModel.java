@@ -15,6 +15,7 @@ public class SearchResultModel {
     private final String videoHyperlink;
     private final String channelID;
     private final String thumbnailHyperlink;
+    private final long publishedAt;
     private double sentimentScore;
     private double readingScore;
     private double gradeLevel;
@@ -34,6 +35,22 @@ public class SearchResultModel {
      */
 
     public SearchResultModel(String id, String title, String channel, String description, String videoHyperlink, String channelID, String thumbnailHyperlink) {
+        this(id, title, channel, description, videoHyperlink, channelID, thumbnailHyperlink, 0);
+    }
+
+    /**
+     * Create a SearchResultModel
+     *
+     * @param id                 Id of the video
+     * @param title              Title of the video
+     * @param channel            Channel of the video
+     * @param description        Description of the video
+     * @param videoHyperlink     Hyperlink of the video
+     * @param channelID          ID of the channel
+     * @param thumbnailHyperlink Hyperlink of the thumbnail
+     * @param publishedAt        Epoch milliseconds of the publication of the video, 0 if unknown
+     */
+    public SearchResultModel(String id, String title, String channel, String description, String videoHyperlink, String channelID, String thumbnailHyperlink, long publishedAt) {
         this.id = id;
         this.channel = channel;
         this.description = description;
@@ -41,6 +58,7 @@ public class SearchResultModel {
         this.videoHyperlink = videoHyperlink;
         this.channelID = channelID;
         this.thumbnailHyperlink = thumbnailHyperlink;
+        this.publishedAt = publishedAt;
         this.sentimentScore = 0.0;
         this.readingScore = 0;
         this.gradeLevel = 0;
@@ -117,6 +135,15 @@ public class SearchResultModel {
         return thumbnailHyperlink;
     }
 
+    /**
+     * Get the publication time of the video
+     *
+     * @return Epoch milliseconds of the publication, 0 if unknown
+     */
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
     /**
      * Get the sentiment score
      *
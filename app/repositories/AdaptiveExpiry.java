@@ -0,0 +1,214 @@
+package repositories;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Expiry learning, for each key, how often new results appear and timing entries to match
+ * <p>
+ * Every time an entry is loaded its result IDs are compared with the previous load of the same key.
+ * The number of new IDs and the time elapsed are summed with an exponential decay over a window,
+ * which gives the recent rate of new results. The time to live is the time expected for
+ * {@code targetNewResults} new results, clamped between the minimum and maximum. A dormant query
+ * thus grows towards the maximum, at most doubling on each load, while a query with a burst of new
+ * results drops right away. Keys seen for the first time get the initial time to live.
+ *
+ * @param <T> Type of object in the cache
+ */
+public class AdaptiveExpiry<T> implements Expiry<T> {
+    private final Function<? super T, ? extends Collection<String>> ids;
+    private final long initialNanos;
+    private final long minNanos;
+    private final long maxNanos;
+    private final double windowNanos;
+    private final double targetNewResults;
+    private final Ticker ticker;
+    private final Map<String, Activity> activity;
+
+    /**
+     * Create an adaptive expiry
+     *
+     * @param ids              Function listing the result IDs of a value
+     * @param initial          Time to live of keys without history
+     * @param min              Minimum time to live
+     * @param max              Maximum time to live
+     * @param window           Time over which the weight of past observations decays
+     * @param targetNewResults Number of new results expected between two loads of a key
+     * @param maxTracked       Number of keys whose activity is remembered, least recently loaded first forgotten
+     * @param ticker           Time source measuring the time between loads
+     */
+    public AdaptiveExpiry(Function<? super T, ? extends Collection<String>> ids, Duration initial, Duration min, Duration max, Duration window, double targetNewResults, int maxTracked, Ticker ticker) {
+        if (min.isNegative() || min.isZero() || max.compareTo(min) < 0 || window.isNegative() || window.isZero()
+            || targetNewResults <= 0 || maxTracked <= 0) {
+            throw new IllegalArgumentException("Adaptive expiry bounds are invalid");
+        }
+        this.ids = ids;
+        this.minNanos = min.toNanos();
+        this.maxNanos = max.toNanos();
+        this.initialNanos = clamp(initial.toNanos());
+        this.windowNanos = window.toNanos();
+        this.targetNewResults = targetNewResults;
+        this.ticker = ticker;
+        this.activity = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Activity> eldest) {
+                return size() > maxTracked;
+            }
+        };
+    }
+
+    /**
+     * Create the expiry of a cache from the tubelytics.cache.adaptive configuration
+     * Returns the fixed time to live of the cache when adaptive expiry is disabled.
+     *
+     * @param config Application configuration
+     * @param name   Name of the cache under {@code tubelytics.cache}
+     * @param ids    Function listing the result IDs of a value
+     * @param <T>    Type of object in the cache
+     * @return Expiry
+     */
+    public static <T> Expiry<T> fromConfig(Config config, String name, Function<? super T, ? extends Collection<String>> ids) {
+        Duration timeToLive = config.getDuration("tubelytics.cache." + name + ".ttl");
+        if (!config.getBoolean("tubelytics.cache.adaptive.enabled")) {
+            return Expiry.fixed(timeToLive);
+        }
+        return new AdaptiveExpiry<>(
+            ids,
+            timeToLive,
+            config.getDuration("tubelytics.cache.adaptive.min-ttl"),
+            config.getDuration("tubelytics.cache.adaptive.max-ttl"),
+            config.getDuration("tubelytics.cache.adaptive.window"),
+            config.getDouble("tubelytics.cache.adaptive.target-new-results"),
+            config.getInt("tubelytics.cache.adaptive.max-tracked"),
+            Ticker.systemTicker()
+        );
+    }
+
+    /**
+     * Record a load of a key and get the time to live of its new entry
+     *
+     * @param key   Key of the entry
+     * @param value Value loaded
+     * @return How long the entry is fresh
+     */
+    @Override
+    public Duration timeToLive(String key, T value) {
+        int[] fingerprint = fingerprint(ids.apply(value));
+        long now = ticker.read();
+        synchronized (activity) {
+            Activity previous = activity.get(key);
+            if (previous == null) {
+                activity.put(key, new Activity(fingerprint, now, initialNanos));
+                return Duration.ofNanos(initialNanos);
+            }
+            return Duration.ofNanos(previous.observe(fingerprint, now));
+        }
+    }
+
+    /**
+     * Get the time to live last given to a key
+     *
+     * @param key Key of the entry
+     * @return Optional containing the time to live if the activity of the key is remembered
+     */
+    public Optional<Duration> getTimeToLive(String key) {
+        synchronized (activity) {
+            Activity current = activity.get(key);
+            return current == null ? Optional.empty() : Optional.of(Duration.ofNanos(current.timeToLive));
+        }
+    }
+
+    /**
+     * Keep a time to live within the bounds
+     *
+     * @param nanos Time to live
+     * @return Time to live between the minimum and the maximum
+     */
+    private long clamp(long nanos) {
+        return Math.max(minNanos, Math.min(maxNanos, nanos));
+    }
+
+    /**
+     * Hash result IDs into a sorted array, much smaller than keeping the IDs
+     *
+     * @param values Result IDs
+     * @return Sorted hashes of the IDs
+     */
+    private static int[] fingerprint(Collection<String> values) {
+        return values.stream().mapToInt(String::hashCode).sorted().distinct().toArray();
+    }
+
+    /**
+     * Count the IDs of a load missing from the previous one
+     *
+     * @param previous Fingerprint of the previous load
+     * @param current  Fingerprint of the current load
+     * @return Number of new IDs
+     */
+    private static int countNew(int[] previous, int[] current) {
+        int added = 0;
+        for (int hash : current) {
+            if (Arrays.binarySearch(previous, hash) < 0) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Decayed history of the loads of a key
+     */
+    private final class Activity {
+        private int[] fingerprint;
+        private long observedAt;
+        private long timeToLive;
+        private double newResults;
+        private double elapsedNanos;
+
+        /**
+         * Create the activity of a key loaded for the first time
+         *
+         * @param fingerprint Fingerprint of the load
+         * @param observedAt  Ticker reading of the load
+         * @param timeToLive  Time to live given to the load
+         */
+        private Activity(int[] fingerprint, long observedAt, long timeToLive) {
+            this.fingerprint = fingerprint;
+            this.observedAt = observedAt;
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Record a new load and compute its time to live
+         *
+         * @param current Fingerprint of the load
+         * @param now     Ticker reading of the load
+         * @return Time to live of the load
+         */
+        private long observe(int[] current, long now) {
+            long elapsed = Math.max(0, now - observedAt);
+            double decay = Math.exp(-elapsed / windowNanos);
+            newResults = newResults * decay + countNew(fingerprint, current);
+            elapsedNanos = elapsedNanos * decay + elapsed;
+            fingerprint = current;
+            observedAt = now;
+
+            long next;
+            if (newResults <= 0) {
+                next = maxNanos;
+            } else {
+                next = (long) Math.min(Long.MAX_VALUE, targetNewResults * elapsedNanos / newResults);
+            }
+            // Lengthen gradually so a short quiet spell does not jump to the maximum, shorten at once
+            timeToLive = clamp(Math.min(next, 2 * timeToLive));
+            return timeToLive;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package repositories;
+
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.google.api.services.youtube.model.VideoSnippet;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.typesafe.config.Config;
+import models.ChannelModel;
+import models.QueryCanonicalizer;
+import models.SearchResultModel;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.stream.javadsl.Source;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Repository calling the YouTube Data API with the non-blocking {@link HttpClient}
+ * <p>
+ * Requests are sent asynchronously over HTTP/2 with connection reuse and gzip responses, so no
+ * thread waits on the network. Responses are parsed with Gson straight into the cached models,
+ * skipping the Google client models. The caches, popular queries, query canonicalization and video
+ * batching are shared with {@link YoutubeRepository}, which stays the default; this repository is
+ * selected with tubelytics.youtube.client = async.
+ */
+@Singleton
+public class AsyncYoutubeRepository implements VideoRepository {
+    private static final String WATCH_URL = "https://www.youtube.com/watch?v=";
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final YoutubeRepository.SearchCache cache;
+    private final YoutubeRepository.ChannelCache channelCache;
+    private final YoutubeRepository.PlayListsCache channelPlaylistCache;
+    private final YoutubeRepository.VideoCache videoCache;
+    private final PopularQueries popularQueries;
+    private final QueryCanonicalizer canonicalizer;
+    private final VideoBatcher videoBatcher;
+    private final QuotaGovernor quota;
+    private final YoutubeCircuits circuits;
+
+    /**
+     * Create a repository configured by tubelytics.youtube.http
+     *
+     * @param config         Application configuration
+     * @param cache          Cache of search responses
+     * @param ccache         Cache of channel responses
+     * @param pcache         Cache of channel playlist responses
+     * @param vcache         Cache of video responses
+     * @param popularQueries Counts of the requested queries and channels, used to warm the caches up
+     * @param canonicalizer  Canonicalizer of the search queries, so spellings of a query share a cache entry
+     * @param videoBatcher   Batcher grouping concurrent video lookups into one request
+     * @param quota          Governor keeping the requests within the daily quota
+     * @param circuits       Circuit breakers and hedging of the requests of each endpoint
+     */
+    @Inject
+    public AsyncYoutubeRepository(Config config, YoutubeRepository.SearchCache cache, YoutubeRepository.ChannelCache ccache, YoutubeRepository.PlayListsCache pcache, YoutubeRepository.VideoCache vcache, PopularQueries popularQueries, QueryCanonicalizer canonicalizer, VideoBatcher videoBatcher, QuotaGovernor quota, YoutubeCircuits circuits) {
+        this(
+            HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(config.getDuration("tubelytics.youtube.http.connect-timeout"))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(),
+            config.getString("tubelytics.youtube.http.base-url"),
+            config.getDuration("tubelytics.youtube.http.request-timeout"),
+            cache, ccache, pcache, vcache, popularQueries, canonicalizer, videoBatcher, quota, circuits
+        );
+    }
+
+    /**
+     * Create a repository
+     *
+     * @param client         HTTP client sending the requests
+     * @param baseUrl        URL of the YouTube Data API, without trailing slash
+     * @param requestTimeout Time after which a request fails
+     * @param cache          Cache of search responses
+     * @param ccache         Cache of channel responses
+     * @param pcache         Cache of channel playlist responses
+     * @param vcache         Cache of video responses
+     * @param popularQueries Counts of the requested queries and channels, used to warm the caches up
+     * @param canonicalizer  Canonicalizer of the search queries, so spellings of a query share a cache entry
+     * @param videoBatcher   Batcher grouping concurrent video lookups into one request
+     * @param quota          Governor keeping the requests within the daily quota
+     * @param circuits       Circuit breakers and hedging of the requests of each endpoint
+     */
+    public AsyncYoutubeRepository(HttpClient client, String baseUrl, Duration requestTimeout, YoutubeRepository.SearchCache cache, YoutubeRepository.ChannelCache ccache, YoutubeRepository.PlayListsCache pcache, YoutubeRepository.VideoCache vcache, PopularQueries popularQueries, QueryCanonicalizer canonicalizer, VideoBatcher videoBatcher, QuotaGovernor quota, YoutubeCircuits circuits) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.cache = cache;
+        this.channelCache = ccache;
+        this.channelPlaylistCache = pcache;
+        this.videoCache = vcache;
+        this.popularQueries = popularQueries;
+        this.canonicalizer = canonicalizer;
+        this.videoBatcher = videoBatcher;
+        this.quota = quota;
+        this.circuits = circuits;
+    }
+
+    /**
+     * Search the YouTube API for a user waiting on the results
+     *
+     * @param query Search query
+     * @return Stream of search results
+     */
+    @Override
+    public CompletionStage<Stream<SearchResultModel>> search(String query) {
+        return search(query, QuotaGovernor.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Search the YouTube API
+     * Queries are canonicalized first, so every spelling of a query shares the same results.
+     *
+     * @param query    Search query
+     * @param priority Priority of the request against the quota
+     * @return Stream of search results, failed with a QuotaExceededException if the quota refuses the request
+     */
+    @Override
+    public CompletionStage<Stream<SearchResultModel>> search(String query, QuotaGovernor.Priority priority) {
+        String key = canonicalizer.canonicalize(query);
+        // Warm-ups and search ticks only replay popular queries, counting them would keep them popular forever
+        if (priority == QuotaGovernor.Priority.INTERACTIVE) {
+            popularQueries.recordSearch(key);
+        }
+        return YoutubeCircuits.orCached(cache, key, QuotaGovernor.loadShared(priority, () -> cache
+            .getOrLoadAsync(key, () -> revalidate(cache, key, etag -> get(QuotaGovernor.Call.SEARCH, priority, "search", parameters(
+                "part", "snippet",
+                "maxResults", "50",
+                "order", "date",
+                "q", key,
+                "type", "video",
+                "fields", YoutubeRepository.SEARCH_FIELDS
+            ), etag).thenApply(response -> CompactResults.encode(
+                items(response).stream().map(AsyncYoutubeRepository::toSearchResult).collect(Collectors.toList()),
+                cache.isCompressed()
+            ).withEtag(string(response, "etag")))))))
+            .thenApply(CompactResults::stream);
+    }
+
+    /**
+     * Search the YouTube API for the videos published since a time
+     * The results are not cached, since each caller polls from its own newest video.
+     *
+     * @param query          Search query
+     * @param publishedAfter Earliest publication time of the results, inclusive
+     * @param maxResults     Maximum number of results
+     * @param priority       Priority of the request against the quota
+     * @return Stream of the newest search results, failed with a QuotaExceededException if the quota refuses the request
+     */
+    @Override
+    public CompletionStage<Stream<SearchResultModel>> searchSince(String query, Instant publishedAfter, int maxResults, QuotaGovernor.Priority priority) {
+        return get(QuotaGovernor.Call.SEARCH, priority, "search", parameters(
+            "part", "snippet",
+            "maxResults", String.valueOf(maxResults),
+            "order", "date",
+            "publishedAfter", publishedAfter.toString(),
+            "q", canonicalizer.canonicalize(query),
+            "type", "video",
+            "fields", YoutubeRepository.SEARCH_FIELDS
+        ), null).thenApply(response -> items(response).stream().map(AsyncYoutubeRepository::toSearchResult));
+    }
+
+    /**
+     * Stream the results of a search across its pages
+     * The pages are not cached, deep searches are rare and would flush the first pages out of the cache.
+     *
+     * @param query      Search query
+     * @param maxResults Maximum number of results
+     * @param priority   Priority of the requests against the quota
+     * @return Source of search results, failed with a QuotaExceededException if the quota refuses a page
+     */
+    @Override
+    public Source<SearchResultModel, NotUsed> searchAll(String query, int maxResults, QuotaGovernor.Priority priority) {
+        String key = canonicalizer.canonicalize(query);
+        return SearchPages.source(maxResults, pageToken -> {
+            Map<String, String> parameters = parameters(
+                "part", "snippet",
+                "maxResults", String.valueOf(SearchPages.pageSize(maxResults)),
+                "order", "date",
+                "q", key,
+                "type", "video",
+                "fields", YoutubeRepository.SEARCH_FIELDS
+            );
+            if (pageToken != null) {
+                parameters.put("pageToken", pageToken);
+            }
+            return get(QuotaGovernor.Call.SEARCH, priority, "search", parameters, null).thenApply(response -> new SearchPages.Page(
+                items(response).stream().map(AsyncYoutubeRepository::toSearchResult).collect(Collectors.toList()),
+                response.has("nextPageToken") ? string(response, "nextPageToken") : null
+            ));
+        });
+    }
+
+    /**
+     * Get the details and latest videos of a channel for a user waiting on them
+     *
+     * @param channelID Channel ID
+     * @return Channel details, failed with a NoSuchElementException if the channel does not exist
+     */
+    @Override
+    public CompletionStage<ChannelModel> getChannelDetails(String channelID) {
+        return getChannelDetails(channelID, QuotaGovernor.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Get the details and latest videos of a channel
+     *
+     * @param channelID Channel ID
+     * @param priority  Priority of the requests against the quota
+     * @return Channel details, failed with a NoSuchElementException if the channel does not exist
+     */
+    @Override
+    public CompletionStage<ChannelModel> getChannelDetails(String channelID, QuotaGovernor.Priority priority) {
+        if (priority == QuotaGovernor.Priority.INTERACTIVE) {
+            popularQueries.recordChannel(channelID);
+        }
+        return YoutubeCircuits.orCached(channelCache, channelID, QuotaGovernor.loadShared(priority, () -> channelCache
+            .getOrLoadAsync(channelID, () -> revalidate(channelCache, channelID, etag -> get(QuotaGovernor.Call.CHANNELS, priority, "channels", parameters(
+                "part", "snippet,contentDetails,statistics",
+                "id", channelID,
+                "fields", YoutubeRepository.CHANNEL_FIELDS
+            ), etag).thenApply(response -> toCompactChannel(response).withEtag(string(response, "etag")))))))
+            .thenCompose(channel -> {
+                if (channel.isEmpty()) {
+                    return CompletableFuture.<ChannelModel>failedFuture(new NoSuchElementException("Channel not found: " + channelID));
+                }
+
+                return YoutubeCircuits.orCached(channelPlaylistCache, channelID, QuotaGovernor.loadShared(priority, () -> channelPlaylistCache
+                    .getOrLoadAsync(channelID, () -> revalidate(channelPlaylistCache, channelID, etag -> get(QuotaGovernor.Call.PLAYLIST_ITEMS, priority, "playlistItems", parameters(
+                        "part", "snippet",
+                        "playlistId", channel.getUploadsPlaylistId(),
+                        "maxResults", "10",
+                        "fields", YoutubeRepository.PLAYLIST_ITEM_FIELDS
+                    ), etag).handle((response, error) -> {
+                        if (error == null) {
+                            return CompactResults.encode(
+                                items(response).stream().map(AsyncYoutubeRepository::toPlaylistResult).collect(Collectors.toList()),
+                                channelPlaylistCache.isCompressed()
+                            ).withEtag(string(response, "etag"));
+                        }
+                        if (hasStatus(error, 404)) {
+                            // Channels without uploads have no uploads playlist, cache that as an empty one
+                            return CompactResults.encode(Collections.emptyList(), false);
+                        }
+                        throw new CompletionException(unwrap(error));
+                    })))))
+                    .thenApply(playlist -> channel.toChannelModel(playlist.stream().collect(Collectors.toList())));
+            });
+    }
+
+    /**
+     * Get the tags of a video
+     * Concurrent lookups of uncached videos are batched into one request.
+     *
+     * @param Id Video ID
+     * @return Stream of tags
+     */
+    @Override
+    public CompletionStage<Stream<String>> getTagsById(String Id) {
+        return YoutubeCircuits.orCached(videoCache, Id, videoCache
+            .getOrLoadAsync(Id, () -> videoBatcher.getAsync(Id, this::getVideos)))
+            .thenApply(YoutubeRepository::tags);
+    }
+
+    /**
+     * Request the snippets of videos
+     *
+     * @param ids Video IDs, at most 50
+     * @return CompletionStage of a response holding the IDs and tags of the found videos
+     */
+    public CompletionStage<VideoListResponse> getVideos(List<String> ids) {
+        return get(QuotaGovernor.Call.VIDEOS, QuotaGovernor.Priority.INTERACTIVE, "videos", parameters(
+            "part", "snippet",
+            "id", String.join(",", ids),
+            "maxResults", "50",
+            "fields", YoutubeRepository.VIDEO_FIELDS
+        ), null).thenApply(response -> {
+            List<Video> videos = new ArrayList<>();
+            for (JsonObject item : items(response)) {
+                JsonArray tags = object(item, "snippet").has("tags") ? object(item, "snippet").getAsJsonArray("tags") : null;
+                videos.add(new Video()
+                    .setId(string(item, "id"))
+                    .setSnippet(new VideoSnippet().setTags(tags == null ? null : toStrings(tags))));
+            }
+            return new VideoListResponse().setItems(videos);
+        });
+    }
+
+    /**
+     * Send a GET request to an endpoint of the API
+     *
+     * @param call       Kind of call, charged to the quota
+     * @param priority   Priority of the request against the quota
+     * @param endpoint   Name of the endpoint
+     * @param parameters Query parameters, the API key is added to them
+     * @param etag       ETag sent in an If-None-Match header, null for none
+     * @return CompletionStage of the parsed response, failed with an ApiException if the status is not 200,
+     * a QuotaExceededException if the quota refuses the request or an OpenCircuitException if the circuit does
+     */
+    private CompletableFuture<JsonObject> get(QuotaGovernor.Call call, QuotaGovernor.Priority priority, String endpoint, Map<String, String> parameters, String etag) {
+        parameters.put("key", YoutubeRepository.API_KEY);
+        String encoded = parameters.entrySet().stream()
+            .filter(parameter -> parameter.getValue() != null)
+            .map(parameter -> parameter.getKey() + "=" + URLEncoder.encode(parameter.getValue(), StandardCharsets.UTF_8))
+            .collect(Collectors.joining("&"));
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + endpoint + "?" + encoded))
+            .timeout(requestTimeout)
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .GET();
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+
+        return circuits.callAsync(call, () -> quota.acquire(call, priority), () -> client
+            .sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response -> {
+                JsonObject body = parse(response);
+                if (response.statusCode() != 200) {
+                    JsonObject error = body.has("error") && body.get("error").isJsonObject() ? body.getAsJsonObject("error") : new JsonObject();
+                    throw new ApiException(response.statusCode(), endpoint + " failed: " + string(error, "message"));
+                }
+                return body;
+            }));
+    }
+
+    /**
+     * Build the query parameters of a request
+     *
+     * @param namesAndValues Names of the parameters each followed by its value, null values are left out
+     * @return Parameters in order
+     */
+    private static Map<String, String> parameters(String... namesAndValues) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            parameters.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return parameters;
+    }
+
+    /**
+     * Decompress and parse the body of a response
+     *
+     * @param response HTTP response
+     * @return Parsed body, empty if there is none or it is not a JSON object
+     */
+    private static JsonObject parse(HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+        if (body == null || body.length == 0) {
+            return new JsonObject();
+        }
+        try {
+            if (response.headers().firstValue("Content-Encoding").map(encoding -> encoding.equalsIgnoreCase("gzip")).orElse(false)) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = in.readAllBytes();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JsonElement parsed = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+        return parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+    }
+
+    /**
+     * Map a search result to a SearchResultModel
+     *
+     * @param item Search result
+     * @return SearchResultModel
+     */
+    private static SearchResultModel toSearchResult(JsonObject item) {
+        String videoId = string(object(item, "id"), "videoId");
+        JsonObject snippet = object(item, "snippet");
+        return new SearchResultModel(
+            videoId,
+            string(snippet, "title"),
+            string(snippet, "channelTitle"),
+            string(snippet, "description"),
+            WATCH_URL + videoId,
+            string(snippet, "channelId"),
+            string(object(object(snippet, "thumbnails"), "default"), "url"),
+            snippet.has("publishedAt") ? Instant.parse(string(snippet, "publishedAt")).toEpochMilli() : 0
+        );
+    }
+
+    /**
+     * Map a playlist item to a SearchResultModel
+     *
+     * @param item Playlist item
+     * @return SearchResultModel
+     */
+    private static SearchResultModel toPlaylistResult(JsonObject item) {
+        JsonObject snippet = object(item, "snippet");
+        String videoId = string(object(snippet, "resourceId"), "videoId");
+        return new SearchResultModel(
+            videoId,
+            string(snippet, "title"),
+            string(snippet, "channelTitle"),
+            string(snippet, "description"),
+            WATCH_URL + videoId,
+            string(snippet, "channelId"),
+            string(object(object(snippet, "thumbnails"), "default"), "url")
+        );
+    }
+
+    /**
+     * Map a channel response to the compact form cached for it
+     *
+     * @param response Channel response
+     * @return CompactChannel, missing if the response has no channel
+     */
+    private CompactChannel toCompactChannel(JsonObject response) {
+        List<JsonObject> items = items(response);
+        if (items.isEmpty()) {
+            return CompactChannel.missing();
+        }
+        JsonObject channel = items.get(0);
+        JsonObject snippet = object(channel, "snippet");
+        JsonObject statistics = object(channel, "statistics");
+        return CompactChannel.encode(
+            string(object(object(channel, "contentDetails"), "relatedPlaylists"), "uploads"),
+            string(snippet, "title"),
+            string(snippet, "description"),
+            string(snippet, "country"),
+            string(statistics, "viewCount"),
+            string(statistics, "subscriberCount"),
+            string(statistics, "videoCount"),
+            string(object(object(snippet, "thumbnails"), "default"), "url"),
+            channelCache.isCompressed()
+        );
+    }
+
+    /**
+     * Get the items of a response, which are missing when there are none
+     *
+     * @param response Parsed response
+     * @return Items, possibly empty
+     */
+    private static List<JsonObject> items(JsonObject response) {
+        if (!response.has("items") || !response.get("items").isJsonArray()) {
+            return Collections.emptyList();
+        }
+        List<JsonObject> items = new ArrayList<>();
+        for (JsonElement item : response.getAsJsonArray("items")) {
+            if (item.isJsonObject()) {
+                items.add(item.getAsJsonObject());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Get a nested object
+     *
+     * @param parent Object holding the field
+     * @param field  Name of the field
+     * @return Object of the field, empty if it is missing
+     */
+    private static JsonObject object(JsonObject parent, String field) {
+        JsonElement value = parent.get(field);
+        return value != null && value.isJsonObject() ? value.getAsJsonObject() : new JsonObject();
+    }
+
+    /**
+     * Get a string field
+     *
+     * @param parent Object holding the field
+     * @param field  Name of the field
+     * @return Value of the field, null if it is missing
+     */
+    private static String string(JsonObject parent, String field) {
+        JsonElement value = parent.get(field);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    /**
+     * Get the strings of an array
+     *
+     * @param array JSON array
+     * @return Strings of the array
+     */
+    private static List<String> toStrings(JsonArray array) {
+        List<String> strings = new ArrayList<>(array.size());
+        for (JsonElement element : array) {
+            strings.add(element.getAsString());
+        }
+        return strings;
+    }
+
+    /**
+     * Load a value, revalidating the one still cached for its key with the ETag of its response
+     * A 304 status means the response is unchanged, so the cached value is kept without downloading
+     * nor parsing the response again.
+     *
+     * @param cache   Cache of the value
+     * @param key     Key of the value
+     * @param request Request sending the given ETag in an If-None-Match header when it is not null
+     * @param <T>     Type of cached value
+     * @return CompletionStage of the value built from the response, or of the cached value if the response is unchanged
+     */
+    private static <T extends CompactValue> CompletableFuture<T> revalidate(Cache<T> cache, String key, Function<String, CompletableFuture<T>> request) {
+        T previous = cache.peek(key).filter(value -> value.getEtag() != null).orElse(null);
+        return request.apply(previous == null ? null : previous.getEtag()).handle((value, error) -> {
+            if (error == null) {
+                return value;
+            }
+            if (previous != null && hasStatus(error, 304)) {
+                return previous;
+            }
+            throw new CompletionException(unwrap(error));
+        });
+    }
+
+    /**
+     * Check if a stage failed with a status of the API
+     *
+     * @param error  Exception completing a stage
+     * @param status HTTP status
+     * @return True if the request failed with the status
+     */
+    private static boolean hasStatus(Throwable error, int status) {
+        return unwrap(error) instanceof ApiException && ((ApiException) unwrap(error)).getStatusCode() == status;
+    }
+
+    /**
+     * Get the cause of an exception wrapped by a completion stage
+     *
+     * @param error Exception completing a stage
+     * @return Cause of the exception
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Failure of a request to the API
+     */
+    public static class ApiException extends RuntimeException {
+        private final int statusCode;
+
+        /**
+         * Create an exception for a response with an error status
+         *
+         * @param statusCode HTTP status of the response
+         * @param message    Message of the error
+         */
+        public ApiException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * Get the HTTP status of the response
+         *
+         * @return HTTP status
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
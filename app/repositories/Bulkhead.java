@@ -0,0 +1,401 @@
+package repositories;
+
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executor isolating one kind of blocking call from the others
+ * <p>
+ * At most a fixed number of tasks run at once and a bounded number wait for their turn. A task
+ * submitted while the bulkhead is full is rejected with a {@link RejectedExecutionException} and
+ * counted, so a slow dependency fails fast instead of piling up work or borrowing threads from the
+ * rest of the application.
+ * <p>
+ * A {@link #platform} bulkhead is a pool of daemon threads, idle ones stopping after a minute. A
+ * {@link #virtual} bulkhead starts a virtual thread per task and bounds the running tasks with a
+ * semaphore, so thousands of calls can wait on I/O without sizing a pool. Virtual threads need Java
+ * 21 and are looked up at runtime, so the application still runs on older versions.
+ */
+public abstract class Bulkhead implements Executor {
+    private static final Duration KEEP_ALIVE = Duration.ofMinutes(1);
+
+    private final String name;
+    private final int queueSize;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Create a bulkhead
+     *
+     * @param name      Name of the bulkhead, used to name its threads
+     * @param threads   Maximum number of tasks running at once
+     * @param queueSize Maximum number of tasks waiting to run
+     */
+    protected Bulkhead(String name, int threads, int queueSize) {
+        if (threads <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Bulkhead " + name + " needs at least 1 thread and 1 queued task");
+        }
+        this.name = name;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Create a bulkhead running tasks on a pool of platform threads
+     *
+     * @param name      Name of the bulkhead, used to name its threads
+     * @param threads   Number of threads
+     * @param queueSize Maximum number of tasks waiting for a thread
+     * @return Bulkhead
+     */
+    public static Bulkhead platform(String name, int threads, int queueSize) {
+        return new PlatformBulkhead(name, threads, queueSize);
+    }
+
+    /**
+     * Create a bulkhead running every task on its own virtual thread
+     *
+     * @param name          Name of the bulkhead, used to name its threads
+     * @param maxConcurrent Maximum number of tasks running at once
+     * @param queueSize     Maximum number of tasks waiting for a permit to run
+     * @return Bulkhead
+     * @throws UnsupportedOperationException If the JVM has no virtual threads
+     */
+    public static Bulkhead virtual(String name, int maxConcurrent, int queueSize) {
+        return new VirtualBulkhead(name, maxConcurrent, queueSize);
+    }
+
+    /**
+     * Check if the JVM supports virtual threads
+     *
+     * @return True on Java 21 and later
+     */
+    public static boolean isVirtualSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run a task on the bulkhead
+     *
+     * @param task Task to run
+     * @throws RejectedExecutionException If the bulkhead is full or shut down
+     */
+    @Override
+    public abstract void execute(Runnable task);
+
+    /**
+     * Stop accepting tasks, letting the submitted ones finish
+     */
+    public abstract void shutdown();
+
+    /**
+     * Check if tasks run on virtual threads
+     *
+     * @return True for a virtual bulkhead
+     */
+    public abstract boolean isVirtual();
+
+    /**
+     * Get the maximum number of tasks running at once
+     *
+     * @return Number of threads or permits
+     */
+    public abstract int getThreads();
+
+    /**
+     * Get the number of tasks running
+     *
+     * @return Approximate number of running tasks
+     */
+    public abstract int getActive();
+
+    /**
+     * Get the number of tasks waiting to run
+     *
+     * @return Number of queued tasks
+     */
+    public abstract int getQueued();
+
+    /**
+     * Get the number of tasks run to completion
+     *
+     * @return Approximate number of completed tasks
+     */
+    public abstract long getCompleted();
+
+    /**
+     * Get the name of the bulkhead
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the maximum number of tasks waiting to run
+     *
+     * @return Queue size
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Get the number of tasks rejected because the bulkhead was full
+     *
+     * @return Number of rejected tasks
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Count a task rejected because the bulkhead is full
+     *
+     * @return Exception to throw to the submitter
+     */
+    protected RejectedExecutionException reject() {
+        rejected.increment();
+        return new RejectedExecutionException("Bulkhead " + name + " is full");
+    }
+
+    /**
+     * Bulkhead backed by a pool of platform threads and a bounded queue
+     */
+    private static final class PlatformBulkhead extends Bulkhead {
+        private final ThreadPoolExecutor executor;
+
+        /**
+         * Create a pool of daemon threads
+         *
+         * @param name      Name of the bulkhead
+         * @param threads   Number of threads
+         * @param queueSize Maximum number of tasks waiting for a thread
+         */
+        private PlatformBulkhead(String name, int threads, int queueSize) {
+            super(name, threads, queueSize);
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "tubelytics-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE.toNanos(), TimeUnit.NANOSECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Bulkhead " + name + " is shut down");
+                    }
+                    throw reject();
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Run a task on the bulkhead
+         *
+         * @param task Task to run
+         * @throws RejectedExecutionException If the bulkhead is full or shut down
+         */
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(task);
+        }
+
+        /**
+         * Stop accepting tasks, letting the submitted ones finish
+         */
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        /**
+         * Check if tasks run on virtual threads
+         *
+         * @return False
+         */
+        @Override
+        public boolean isVirtual() {
+            return false;
+        }
+
+        /**
+         * Get the maximum number of tasks running at once
+         *
+         * @return Number of threads
+         */
+        @Override
+        public int getThreads() {
+            return executor.getMaximumPoolSize();
+        }
+
+        /**
+         * Get the number of tasks running
+         *
+         * @return Approximate number of running tasks
+         */
+        @Override
+        public int getActive() {
+            return executor.getActiveCount();
+        }
+
+        /**
+         * Get the number of tasks waiting to run
+         *
+         * @return Number of tasks waiting for a thread
+         */
+        @Override
+        public int getQueued() {
+            return executor.getQueue().size();
+        }
+
+        /**
+         * Get the number of tasks run to completion
+         *
+         * @return Approximate number of completed tasks
+         */
+        @Override
+        public long getCompleted() {
+            return executor.getCompletedTaskCount();
+        }
+    }
+
+    /**
+     * Bulkhead starting a virtual thread per task, bounded by a semaphore
+     * Waiting tasks already have their virtual thread and block on the semaphore, which costs a few
+     * hundred bytes each instead of a platform thread stack.
+     */
+    private static final class VirtualBulkhead extends Bulkhead {
+        private final ExecutorService executor;
+        private final Semaphore permits;
+        private final int maxConcurrent;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+
+        /**
+         * Create a virtual thread per task executor
+         *
+         * @param name          Name of the bulkhead
+         * @param maxConcurrent Maximum number of tasks running at once
+         * @param queueSize     Maximum number of tasks waiting for a permit
+         */
+        private VirtualBulkhead(String name, int maxConcurrent, int queueSize) {
+            super(name, maxConcurrent, queueSize);
+            this.maxConcurrent = maxConcurrent;
+            this.permits = new Semaphore(maxConcurrent);
+            try {
+                this.executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException e) {
+                throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Virtual thread executor could not be created", e);
+            }
+        }
+
+        /**
+         * Run a task on the bulkhead
+         *
+         * @param task Task to run
+         * @throws RejectedExecutionException If the bulkhead is full or shut down
+         */
+        @Override
+        public void execute(Runnable task) {
+            // Tasks holding or waiting for a permit, refused once the waiting ones fill the queue
+            if (pending.incrementAndGet() > maxConcurrent + getQueueSize()) {
+                pending.decrementAndGet();
+                throw reject();
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        permits.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            permits.release();
+                            completed.increment();
+                        }
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                throw e;
+            }
+        }
+
+        /**
+         * Stop accepting tasks, letting the submitted ones finish
+         */
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        /**
+         * Check if tasks run on virtual threads
+         *
+         * @return True
+         */
+        @Override
+        public boolean isVirtual() {
+            return true;
+        }
+
+        /**
+         * Get the maximum number of tasks running at once
+         *
+         * @return Number of permits
+         */
+        @Override
+        public int getThreads() {
+            return maxConcurrent;
+        }
+
+        /**
+         * Get the number of tasks running
+         *
+         * @return Approximate number of running tasks
+         */
+        @Override
+        public int getActive() {
+            return maxConcurrent - permits.availablePermits();
+        }
+
+        /**
+         * Get the number of tasks waiting to run
+         *
+         * @return Number of tasks waiting for a permit
+         */
+        @Override
+        public int getQueued() {
+            return Math.max(0, pending.get() - getActive());
+        }
+
+        /**
+         * Get the number of tasks run to completion
+         *
+         * @return Approximate number of completed tasks
+         */
+        @Override
+        public long getCompleted() {
+            return completed.sum();
+        }
+    }
+}
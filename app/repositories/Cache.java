@@ -1,36 +1,136 @@
 package repositories;
 
-import java.time.LocalTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * Cache for holding frequently requested objects
+ * <p>
+ * By default the cache is unbounded. When built with a maximum number of entries or a maximum
+ * estimated weight, entries are evicted with a segmented LRU policy: new entries start in a
+ * probation segment and are only promoted to the protected segment once they are read again,
+ * so a burst of one-off keys cannot flush out the popular ones.
+ * <p>
+ * Entries are fresh for the time to live of the cache, or for the time to live given by its
+ * {@link Expiry} when one is set, so negative results can be given a shorter one. A cache can also
+ * serve stale entries: once an entry is older than its time to live, {@link #getOrLoad} keeps
+ * returning it for the configured stale period while a single background load refreshes it.
+ * <p>
+ * Ages are measured with a monotonic {@link Ticker}, so wall clock changes and midnight do not
+ * affect freshness. Expired entries are reclaimed by {@link #cleanUp()}, which a timing wheel keeps
+ * O(1) per entry.
+ * <p>
+ * A cache can be backed by a second {@link CacheTier}. Puts are written through to it and misses
+ * read through to it, keeping the age the object had in the tier.
  *
  * @param <T> Type of object to cache
  * @author Wayan-Gwie Lapointe and Feng Zhao
  */
 public class Cache<T> {
-    private static final Long CACHE_ACTIVATE_TIME_SLOT = 3L;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(3);
+    private static final Logger log = LoggerFactory.getLogger(Cache.class);
+    private static final Duration WHEEL_TICK = Duration.ofSeconds(1);
+    private static final int WHEEL_SIZE = 1024;
+    private static final double PROTECTED_RATIO = 0.8;
 
     private final ConcurrentHashMap<String, CacheResult<T>> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<T>> loading = new ConcurrentHashMap<>();
+    private final long maxEntries;
+    private final long maxWeight;
+    private final Weigher<? super T> weigher;
+    private final long timeToLiveNanos;
+    private volatile Expiry<? super T> expiry;
+    private final long staleTimeNanos;
+    private final Ticker ticker;
+    private final TimingWheel wheel;
+    private final List<RemovalListener<? super T>> removalListeners = new CopyOnWriteArrayList<>();
+    private final CacheStats stats = new CacheStats();
+    private volatile CacheTier<T> secondTier;
+
+    // Segmented LRU bookkeeping, guarded by the lock on itself
+    private final SegmentedLru policy = new SegmentedLru();
+
+    /**
+     * Create an unbounded cache
+     */
+    public Cache() {
+        this(0, 0, Weigher.singleton(), DEFAULT_TIME_TO_LIVE, Duration.ZERO, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a bounded cache serving stale entries while they are refreshed
+     *
+     * @param maxEntries Maximum number of entries, 0 for no limit
+     * @param maxWeight  Maximum total estimated weight in bytes, 0 for no limit
+     * @param weigher    Weigher estimating the size of each entry
+     * @param timeToLive How long an entry is fresh
+     * @param staleTime  How long an entry may be served stale once it is no longer fresh
+     * @param ticker     Time source measuring the age of entries
+     */
+    public Cache(long maxEntries, long maxWeight, Weigher<? super T> weigher, Duration timeToLive, Duration staleTime, Ticker ticker) {
+        if (maxEntries < 0 || maxWeight < 0) {
+            throw new IllegalArgumentException("Cache bounds must not be negative");
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero() || staleTime.isNegative()) {
+            throw new IllegalArgumentException("Time to live must be positive and stale time must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.staleTimeNanos = staleTime.toNanos();
+        this.ticker = ticker;
+        this.wheel = new TimingWheel(WHEEL_TICK, WHEEL_SIZE, ticker.read());
+    }
 
     /**
      * Get from the cache
-     * Only returns the objects if it's less than 3 minutes old
+     * Only returns the objects if it's younger than the time to live
      *
      * @param key Key for the object
      * @return Optional containing the object if one exists
      * @author Wayan-Gwie Lapointe and Feng Zhao
      */
     public Optional<T> get(String key) {
-        if (cache.containsKey(key) && cache.get(key).getInsertionTime().isAfter(LocalTime.now().minusMinutes(CACHE_ACTIVATE_TIME_SLOT))) {
-            return Optional.of(cache.get(key).getObj());
+        long now = ticker.read();
+        CacheResult<T> result = lookup(key, now);
+        if (result != null && isFresh(result, now)) {
+            recordAccess(key);
+            stats.recordHit();
+            return Optional.of(result.getObj());
         }
 
+        stats.recordMiss();
         return Optional.empty();
     }
 
+    /**
+     * Get an object from the cache whatever its age, without counting a hit or a miss
+     * Used to revalidate an entry past its time to live with the API rather than downloading it again.
+     *
+     * @param key Key for the object
+     * @return Optional containing the object if the cache still holds one
+     */
+    public Optional<T> peek(String key) {
+        CacheResult<T> result = cache.get(key);
+        return result == null ? Optional.empty() : Optional.of(result.getObj());
+    }
+
     /**
      * Put into the cache
      *
@@ -39,61 +139,548 @@ public class Cache<T> {
      * @author Wayan-Gwie Lapointe and Feng Zhao
      */
     public void put(String key, T object) {
-        cache.put(key, new CacheResult<>(object));
+        insert(key, new CacheResult<>(ticker.read(), object, timeToLiveOf(key, object)));
+
+        CacheTier<T> tier = secondTier;
+        if (tier != null) {
+            try {
+                tier.put(key, object);
+            } catch (RuntimeException e) {
+                log.warn("Could not write key '{}' to the second cache tier.", key, e);
+            }
+        }
     }
 
     /**
-     * Put into the cache at a specific time
+     * Back the cache with a second tier
+     *
+     * @param tier Tier to read and write through to
+     */
+    public void setSecondTier(CacheTier<T> tier) {
+        this.secondTier = tier;
+    }
+
+    /**
+     * Get the second tier backing the cache
+     *
+     * @return Second tier, or null if there is none
+     */
+    public CacheTier<T> getSecondTier() {
+        return secondTier;
+    }
+
+    /**
+     * Give entries their own time to live instead of the one of the cache
+     * Only applies to entries put from now on.
+     *
+     * @param expiry Expiry deciding the time to live of each entry
+     */
+    public void setExpiry(Expiry<? super T> expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * Get from the cache, loading the object on a miss
+     * Concurrent callers missing on the same key share a single load of the object.
      *
      * @param key    Key for the object
-     * @param time   Time of insertion
-     * @param object Object to store in the cache
-     * @author Wayan-Gwie Lapointe and Feng Zhao
+     * @param loader Loader computing the object, called at most once at a time per key
+     * @return Future of the cached or loaded object
      */
-    public void put(String key, LocalTime time, T object) {
-        cache.put(key, new CacheResult<>(time, object));
+    public CompletionStage<T> getOrLoad(String key, Supplier<T> loader) {
+        return getOrLoad(key, loader, ForkJoinPool.commonPool());
     }
 
     /**
-     * Object container in the cache
+     * Get from the cache, loading the object on a miss
+     * Concurrent callers missing on the same key share a single load of the object.
      *
-     * @param <T> Type of object in the cache
-     * @author Wayan-Gwie Lapointe and Feng Zhao
+     * @param key      Key for the object
+     * @param loader   Loader computing the object, called at most once at a time per key
+     * @param executor Executor to run the loader on
+     * @return Future of the cached or loaded object
      */
-    private static class CacheResult<T> {
-        private final LocalTime time;
-        private final T obj;
+    public CompletionStage<T> getOrLoad(String key, Supplier<T> loader, Executor executor) {
+        return getOrLoadAsync(key, () -> CompletableFuture.supplyAsync(loader, executor));
+    }
+
+    /**
+     * Get from the cache, loading the object asynchronously on a miss
+     * Concurrent callers missing on the same key share a single load of the object.
+     *
+     * @param key    Key for the object
+     * @param loader Loader starting the computation of the object, called at most once at a time per key
+     * @return Future of the cached or loaded object
+     */
+    public CompletionStage<T> getOrLoadAsync(String key, Supplier<? extends CompletionStage<T>> loader) {
+        long now = ticker.read();
+        CacheResult<T> result = lookup(key, now);
+        if (result != null && isFresh(result, now)) {
+            recordAccess(key);
+            stats.recordHit();
+            return CompletableFuture.completedFuture(result.getObj());
+        }
+
+        if (result != null && isServableStale(result, now)) {
+            // Serve the stale object right away, the refresh is shared with any other caller
+            recordAccess(key);
+            stats.recordStaleHit();
+            load(key, loader);
+            return CompletableFuture.completedFuture(result.getObj());
+        }
+
+        stats.recordMiss();
+        return load(key, loader).copy();
+    }
+
+    /**
+     * Load an object into the cache, joining the load already in flight for the key if any
+     *
+     * @param key    Key for the object
+     * @param loader Loader starting the computation of the object
+     * @return Future of the loaded object, not to be completed by callers
+     */
+    private CompletableFuture<T> load(String key, Supplier<? extends CompletionStage<T>> loader) {
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        // Another load may have completed between the miss and registering this one
+        long start = ticker.read();
+        CacheResult<T> cached = lookup(key, start);
+        if (cached != null && isFresh(cached, start)) {
+            loading.remove(key, load);
+            load.complete(cached.getObj());
+            return load;
+        }
+
+        CompletionStage<T> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((object, error) -> {
+            Throwable failure = error;
+            try {
+                if (error == null) {
+                    put(key, object);
+                }
+            } catch (RuntimeException e) {
+                // An object the weigher or expiry cannot handle fails the load instead of being cached
+                failure = e;
+            } finally {
+                // The key is always released, or every later caller would join a load that never completes
+                stats.recordLoad(ticker.read() - start, failure == null);
+                loading.remove(key, load);
+                if (failure == null) {
+                    load.complete(object);
+                } else {
+                    load.completeExceptionally(failure);
+                }
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Remove the entries past their time to live and stale period
+     * Called periodically by the {@link CacheSweeper}, only the entries due since the last call are visited.
+     */
+    public void cleanUp() {
+        long now = ticker.read();
+        for (TimingWheel.Timeout timeout : wheel.advance(now)) {
+            CacheResult<T> result = cache.get(timeout.getKey());
+            // Entries replaced since the timeout was scheduled have their own timeout
+            if (result != null && result.getInsertionTime() == timeout.getStamp() && isExpired(result, now)
+                && remove(timeout.getKey(), result)) {
+                notifyRemoval(timeout.getKey(), result, RemovalListener.Cause.EXPIRED);
+            }
+        }
+
+        CacheTier<T> tier = secondTier;
+        if (tier != null) {
+            try {
+                tier.cleanUp();
+            } catch (RuntimeException e) {
+                log.warn("Could not clean up the second cache tier.", e);
+            }
+        }
+    }
+
+    /**
+     * Add a listener notified when entries leave the cache
+     *
+     * @param listener Listener to add
+     */
+    public void addRemovalListener(RemovalListener<? super T> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Get the statistics of the cache
+     *
+     * @return Live statistics, updated as the cache is used
+     */
+    public CacheStats stats() {
+        return stats;
+    }
+
+    /**
+     * Get the number of entries in the cache
+     *
+     * @return Number of entries
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Get the total estimated weight of the entries in the cache
+     * Always 0 for an unbounded cache since entries are not weighed
+     *
+     * @return Estimated weight in bytes
+     */
+    public long weight() {
+        synchronized (policy) {
+            return policy.totalWeight;
+        }
+    }
+
+    /**
+     * Find the entry of a key, reading through to the second tier on a miss
+     * Entries found in the second tier are promoted with the age they had there.
+     *
+     * @param key Key for the object
+     * @param now Current ticker reading
+     * @return Entry of the key, or null if there is none
+     */
+    private CacheResult<T> lookup(String key, long now) {
+        CacheResult<T> result = cache.get(key);
+        CacheTier<T> tier = secondTier;
+        if (result != null || tier == null) {
+            return result;
+        }
+
+        Optional<CacheTier.Stored<T>> stored;
+        try {
+            stored = tier.get(key);
+        } catch (RuntimeException e) {
+            log.warn("Could not read key '{}' from the second cache tier.", key, e);
+            return null;
+        }
+        if (stored.isEmpty()) {
+            return null;
+        }
+
+        T object = stored.get().getObject();
+        CacheResult<T> promoted = new CacheResult<>(now - stored.get().getAgeNanos(), object, timeToLiveOf(key, object));
+        if (isExpired(promoted, now)) {
+            return null;
+        }
+        insert(key, promoted);
+        return promoted;
+    }
+
+    /**
+     * Get the time to live of a new entry
+     *
+     * @param key    Key for the object
+     * @param object Object to store
+     * @return Time to live in nanoseconds
+     */
+    private long timeToLiveOf(String key, T object) {
+        Expiry<? super T> current = expiry;
+        if (current == null) {
+            return timeToLiveNanos;
+        }
+        // A time to live that is not positive would make the entry expired on insertion
+        return Math.max(1, current.timeToLive(key, object).toNanos());
+    }
+
+    /**
+     * Check if an entry is fresh enough to be returned without a refresh
+     *
+     * @param result Entry to check
+     * @param now    Current ticker reading
+     * @return True if the entry is younger than the time to live
+     */
+    private boolean isFresh(CacheResult<T> result, long now) {
+        return now - result.getInsertionTime() < result.getTimeToLive();
+    }
+
+    /**
+     * Check if a stale entry can still be served while it is refreshed
+     *
+     * @param result Entry to check
+     * @param now    Current ticker reading
+     * @return True if the entry is within the stale period
+     */
+    private boolean isServableStale(CacheResult<T> result, long now) {
+        return now - result.getInsertionTime() < result.getTimeToLive() + staleTimeNanos;
+    }
+
+    /**
+     * Check if an entry is past its time to live and stale period
+     *
+     * @param result Entry to check
+     * @param now    Current ticker reading
+     * @return True if the entry can no longer be served
+     */
+    private boolean isExpired(CacheResult<T> result, long now) {
+        return !isServableStale(result, now);
+    }
+
+    /**
+     * Record a read of a key for the eviction policy
+     *
+     * @param key Key that was read
+     */
+    private void recordAccess(String key) {
+        if (isBounded()) {
+            synchronized (policy) {
+                policy.onAccess(key);
+            }
+        }
+    }
+
+    /**
+     * Check if the cache has a bound on entries or weight
+     *
+     * @return True if entries can be evicted
+     */
+    private boolean isBounded() {
+        return maxEntries > 0 || maxWeight > 0;
+    }
+
+    /**
+     * Insert a container in the cache and evict entries over the bounds
+     *
+     * @param key    Key for the object
+     * @param result Container to store
+     */
+    private void insert(String key, CacheResult<T> result) {
+        CacheResult<T> replaced;
+        Map<String, CacheResult<T>> evicted = new LinkedHashMap<>();
+        if (!isBounded()) {
+            replaced = cache.put(key, result);
+        } else {
+            long weight = weigher.weigh(key, result.getObj());
+            synchronized (policy) {
+                replaced = cache.put(key, result);
+                for (String evictedKey : policy.onInsert(key, weight)) {
+                    evicted.put(evictedKey, cache.remove(evictedKey));
+                }
+            }
+        }
+
+        wheel.schedule(key, result.getInsertionTime(), result.getInsertionTime() + result.getTimeToLive() + staleTimeNanos);
+
+        if (replaced != null) {
+            notifyRemoval(key, replaced, RemovalListener.Cause.REPLACED);
+        }
+        evicted.forEach((evictedKey, evictedResult) -> notifyRemoval(evictedKey, evictedResult, RemovalListener.Cause.SIZE));
+    }
+
+    /**
+     * Remove an entry if it is still the current one for its key
+     *
+     * @param key    Key of the entry
+     * @param result Entry to remove
+     * @return True if the entry was removed
+     */
+    private boolean remove(String key, CacheResult<T> result) {
+        if (!isBounded()) {
+            return cache.remove(key, result);
+        }
+
+        synchronized (policy) {
+            if (cache.remove(key, result)) {
+                policy.onRemove(key);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Notify the removal listeners of a removed entry
+     *
+     * @param key    Key of the entry
+     * @param result Removed entry
+     * @param cause  Why the entry was removed
+     */
+    private void notifyRemoval(String key, CacheResult<T> result, RemovalListener.Cause cause) {
+        if (result == null) {
+            return;
+        }
+
+        stats.recordRemoval(cause);
+        for (RemovalListener<? super T> listener : removalListeners) {
+            try {
+                listener.onRemoval(key, result.getObj(), cause);
+            } catch (RuntimeException e) {
+                log.warn("Removal listener failed for key '{}'.", key, e);
+            }
+        }
+    }
+
+    /**
+     * Segmented LRU ordering of the keys of a bounded cache
+     */
+    private class SegmentedLru {
+        // Both segments are ordered from least to most recently used, values are entry weights
+        private final LinkedHashMap<String, Long> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Long> protectedSegment = new LinkedHashMap<>();
+        private long totalWeight;
+        private long protectedWeight;
 
         /**
-         * Create a container for a cache object
+         * Record the removal of a key
          *
-         * @param obj Object to cache
-         * @author Wayan-Gwie Lapointe and Feng Zhao
+         * @param key Key that was removed
          */
-        public CacheResult(T obj) {
-            this.time = LocalTime.now();
-            this.obj = obj;
+        void onRemove(String key) {
+            Long weight = probation.remove(key);
+            if (weight == null && (weight = protectedSegment.remove(key)) != null) {
+                protectedWeight -= weight;
+            }
+            if (weight != null) {
+                totalWeight -= weight;
+            }
+        }
+
+        /**
+         * Record a read of a key, promoting it to the protected segment
+         *
+         * @param key Key that was read
+         */
+        void onAccess(String key) {
+            Long weight = probation.remove(key);
+            if (weight != null) {
+                protectedSegment.put(key, weight);
+                protectedWeight += weight;
+                demoteProtectedOverflow();
+            } else if ((weight = protectedSegment.remove(key)) != null) {
+                protectedSegment.put(key, weight);
+            }
+        }
+
+        /**
+         * Record an insertion of a key
+         *
+         * @param key    Key that was inserted
+         * @param weight Estimated weight of the entry
+         * @return Keys evicted to stay within the bounds
+         */
+        List<String> onInsert(String key, long weight) {
+            Long previous = probation.remove(key);
+            if (previous != null) {
+                totalWeight -= previous;
+                probation.put(key, weight);
+            } else if ((previous = protectedSegment.remove(key)) != null) {
+                // Refreshing a popular entry keeps it protected
+                totalWeight -= previous;
+                protectedWeight += weight - previous;
+                protectedSegment.put(key, weight);
+                demoteProtectedOverflow();
+            } else {
+                probation.put(key, weight);
+            }
+            totalWeight += weight;
+
+            List<String> evicted = new ArrayList<>();
+            while (isOverBounds() && size() > 1) {
+                evicted.add(evictOne());
+            }
+            return evicted;
+        }
+
+        /**
+         * Move the least recently used protected entries back to probation when the segment is full
+         */
+        private void demoteProtectedOverflow() {
+            while (protectedSegment.size() > 1 && (
+                (maxEntries > 0 && protectedSegment.size() > maxEntries * PROTECTED_RATIO)
+                    || (maxWeight > 0 && protectedWeight > maxWeight * PROTECTED_RATIO))) {
+                Iterator<Map.Entry<String, Long>> oldest = protectedSegment.entrySet().iterator();
+                Map.Entry<String, Long> entry = oldest.next();
+                oldest.remove();
+                protectedWeight -= entry.getValue();
+                probation.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        /**
+         * Evict the least recently used entry, probation first
+         *
+         * @return Evicted key
+         */
+        private String evictOne() {
+            LinkedHashMap<String, Long> segment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<Map.Entry<String, Long>> oldest = segment.entrySet().iterator();
+            Map.Entry<String, Long> entry = oldest.next();
+            oldest.remove();
+            totalWeight -= entry.getValue();
+            if (segment == protectedSegment) {
+                protectedWeight -= entry.getValue();
+            }
+            return entry.getKey();
         }
 
+        /**
+         * Check if the cache is over one of its bounds
+         *
+         * @return True if an entry must be evicted
+         */
+        private boolean isOverBounds() {
+            return (maxEntries > 0 && size() > maxEntries) || (maxWeight > 0 && totalWeight > maxWeight);
+        }
+
+        /**
+         * Get the number of tracked keys
+         *
+         * @return Number of keys
+         */
+        private int size() {
+            return probation.size() + protectedSegment.size();
+        }
+    }
+
+    /**
+     * Object container in the cache
+     *
+     * @param <T> Type of object in the cache
+     * @author Wayan-Gwie Lapointe and Feng Zhao
+     */
+    private static class CacheResult<T> {
+        private final long time;
+        private final T obj;
+        private final long timeToLive;
+
         /**
          * Create a container for a cache object
          *
-         * @param time Time of insertion
-         * @param obj  Object to cache
+         * @param time       Ticker reading at insertion
+         * @param obj        Object to cache
+         * @param timeToLive Nanoseconds the object is fresh for
          * @author Wayan-Gwie Lapointe and Feng Zhao
          */
-        public CacheResult(LocalTime time, T obj) {
+        public CacheResult(long time, T obj, long timeToLive) {
             this.time = time;
             this.obj = obj;
+            this.timeToLive = timeToLive;
         }
 
         /**
          * Get the time of insertion into the cache
          *
-         * @return Local time of insertion
+         * @return Ticker reading at insertion
          * @author Wayan-Gwie Lapointe and Feng Zhao
          */
-        public LocalTime getInsertionTime() {
+        public long getInsertionTime() {
             return time;
         }
 
@@ -106,7 +693,14 @@ public class Cache<T> {
         public T getObj() {
             return obj;
         }
+
+        /**
+         * Get how long the object is fresh for
+         *
+         * @return Time to live in nanoseconds
+         */
+        public long getTimeToLive() {
+            return timeToLive;
+        }
     }
 }
-
-
@@ -0,0 +1,49 @@
+package repositories;
+
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.typesafe.config.Config;
+import org.apache.pekko.actor.ActorSystem;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Shares the YouTube response caches between the nodes of a Pekko cluster
+ * Each cache reads through to its {@link ReplicatedCacheTier} before its persistent tier, so a
+ * response fetched by any node is served by all of them.
+ */
+@Singleton
+public class CacheReplication {
+    /**
+     * Back the caches with replicated tiers when tubelytics.cache.replicated is enabled
+     *
+     * @param actorSystem    Actor system of the application, a cluster node
+     * @param config         Application configuration
+     * @param searchCache    Cache of search results
+     * @param channelCache   Cache of channels
+     * @param playListsCache Cache of channel playlists
+     * @param videoCache     Cache of video responses
+     */
+    @Inject
+    public CacheReplication(ActorSystem actorSystem, Config config, YoutubeRepository.SearchCache searchCache, YoutubeRepository.ChannelCache channelCache, YoutubeRepository.PlayListsCache playListsCache, YoutubeRepository.VideoCache videoCache) {
+        replicate(actorSystem, config, searchCache, "search", CompactValue.codec(CompactResults::fromBytes));
+        replicate(actorSystem, config, channelCache, "channel", CompactValue.codec(CompactChannel::fromBytes));
+        replicate(actorSystem, config, playListsCache, "playlists", CompactValue.codec(CompactResults::fromBytes));
+        replicate(actorSystem, config, videoCache, "video", new JsonCodec<>(VideoListResponse.class));
+    }
+
+    /**
+     * Back a cache with a replicated tier, in front of the tier it already has
+     *
+     * @param actorSystem Actor system of the application
+     * @param config      Application configuration
+     * @param cache       Cache to share
+     * @param name        Name of the cache under {@code tubelytics.cache}
+     * @param codec       Codec serializing the objects of the cache
+     * @param <T>         Type of object in the cache
+     */
+    private static <T> void replicate(ActorSystem actorSystem, Config config, Cache<T> cache, String name, Codec<T> codec) {
+        ReplicatedCacheTier.fromConfig(actorSystem, config, name, codec)
+            .ifPresent(tier -> cache.setSecondTier(CacheTier.layered(tier, cache.getSecondTier())));
+    }
+}
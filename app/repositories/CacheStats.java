@@ -0,0 +1,189 @@
+package repositories;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and load timings of a {@link Cache}
+ * <p>
+ * Counters are {@link LongAdder}s so recording from many request threads does not contend. Load
+ * latencies are counted in fixed millisecond buckets, each bucket holding the loads that took at most
+ * its bound and more than the previous one.
+ */
+public class CacheStats {
+    // Upper bounds of the load latency buckets in milliseconds, followed by an unbounded bucket
+    private static final long[] LATENCY_BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BOUNDS_MILLIS.length + 1];
+
+    /**
+     * Create empty statistics
+     */
+    public CacheStats() {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a read answered with a fresh entry
+     */
+    public void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Record a read answered with a stale entry while it is refreshed
+     */
+    public void recordStaleHit() {
+        staleHits.increment();
+    }
+
+    /**
+     * Record a read that found no servable entry
+     */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Record the completion of a load
+     *
+     * @param nanos   Duration of the load
+     * @param success True if the load produced an object
+     */
+    public void recordLoad(long nanos, boolean success) {
+        (success ? loadSuccesses : loadFailures).increment();
+        totalLoadNanos.add(nanos);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_MILLIS.length && millis > LATENCY_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+    }
+
+    /**
+     * Record an entry leaving the cache
+     * Replaced entries are not evictions and are ignored.
+     *
+     * @param cause Why the entry was removed
+     */
+    public void recordRemoval(RemovalListener.Cause cause) {
+        if (cause == RemovalListener.Cause.SIZE) {
+            sizeEvictions.increment();
+        } else if (cause == RemovalListener.Cause.EXPIRED) {
+            expirations.increment();
+        }
+    }
+
+    /**
+     * Get the number of reads answered with a fresh entry
+     *
+     * @return Number of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of reads answered with a stale entry
+     *
+     * @return Number of stale hits
+     */
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    /**
+     * Get the number of reads that found no servable entry
+     *
+     * @return Number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the fraction of reads answered from the cache, stale or not
+     *
+     * @return Hit rate between 0 and 1, 1 when nothing was read
+     */
+    public double getHitRate() {
+        long served = getHitCount() + getStaleHitCount();
+        long requests = served + getMissCount();
+        return requests == 0 ? 1 : (double) served / requests;
+    }
+
+    /**
+     * Get the number of loads that produced an object
+     *
+     * @return Number of successful loads
+     */
+    public long getLoadSuccessCount() {
+        return loadSuccesses.sum();
+    }
+
+    /**
+     * Get the number of loads that failed
+     *
+     * @return Number of failed loads
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Get the average duration of the loads
+     *
+     * @return Average load time in milliseconds, 0 when nothing was loaded
+     */
+    public double getAverageLoadMillis() {
+        long loads = getLoadSuccessCount() + getLoadFailureCount();
+        return loads == 0 ? 0 : (double) totalLoadNanos.sum() / loads / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Get the number of loads per latency bucket
+     *
+     * @return Counts keyed by the upper bound of each bucket, the last bucket being "+Inf"
+     */
+    public Map<String, Long> getLoadLatencyMillis() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BOUNDS_MILLIS.length; i++) {
+            histogram.put(Long.toString(LATENCY_BOUNDS_MILLIS[i]), latencyBuckets[i].sum());
+        }
+        histogram.put("+Inf", latencyBuckets[LATENCY_BOUNDS_MILLIS.length].sum());
+        return Collections.unmodifiableMap(histogram);
+    }
+
+    /**
+     * Get the number of entries evicted to keep the cache within its bounds
+     *
+     * @return Number of size evictions
+     */
+    public long getSizeEvictionCount() {
+        return sizeEvictions.sum();
+    }
+
+    /**
+     * Get the number of entries removed past their time to live and stale period
+     *
+     * @return Number of expirations
+     */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+}
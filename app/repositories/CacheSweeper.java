@@ -0,0 +1,64 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Cancellable;
+import org.apache.pekko.dispatch.ExecutionContexts;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Periodically reclaims the expired entries of the YouTube response caches
+ * Runs on the Pekko scheduler so the heap tracks the live working set instead of every key ever
+ * cached. Sweeps compact the persistent cache files with blocking I/O, so they run on a thread of
+ * their own rather than on the dispatcher of the actors and requests.
+ */
+@Singleton
+public class CacheSweeper {
+    private final List<Cache<?>> caches;
+    private final Bulkhead executor = Bulkhead.platform("cache-sweeper", 1, 1);
+    private final Cancellable task;
+
+    /**
+     * Start sweeping the caches, until the application stops
+     *
+     * @param actorSystem       Actor system whose scheduler triggers the sweeps
+     * @param config            Application configuration
+     * @param searchCache       Cache of search responses
+     * @param channelCache      Cache of channel responses
+     * @param playListsCache    Cache of playlist responses
+     * @param videoCache        Cache of video responses
+     * @param scoredSearchCache Cache of scored search results
+     * @param lifecycle         Lifecycle of the application
+     */
+    @Inject
+    public CacheSweeper(ActorSystem actorSystem, Config config, YoutubeRepository.SearchCache searchCache, YoutubeRepository.ChannelCache channelCache, YoutubeRepository.PlayListsCache playListsCache, YoutubeRepository.VideoCache videoCache, ScoredSearchCache scoredSearchCache, ApplicationLifecycle lifecycle) {
+        this.caches = List.of(searchCache, channelCache, playListsCache, videoCache, scoredSearchCache);
+        Duration interval = config.getDuration("tubelytics.cache.sweep-interval");
+        this.task = actorSystem.scheduler().scheduleWithFixedDelay(interval, interval, this::sweep, ExecutionContexts.fromExecutor(executor));
+        lifecycle.addStopHook(() -> {
+            stop();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Remove the expired entries of every cache
+     */
+    public void sweep() {
+        caches.forEach(Cache::cleanUp);
+    }
+
+    /**
+     * Stop sweeping the caches
+     */
+    public void stop() {
+        task.cancel();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+package repositories;
+
+import java.util.Optional;
+
+/**
+ * Second level storage a {@link Cache} reads through on a miss and writes through on a put
+ *
+ * @param <T> Type of object stored
+ */
+public interface CacheTier<T> {
+    /**
+     * Get an object from the tier
+     *
+     * @param key Key for the object
+     * @return Optional containing the object and its age if one exists
+     */
+    Optional<Stored<T>> get(String key);
+
+    /**
+     * Put an object into the tier
+     *
+     * @param key    Key for the object
+     * @param object Object to store
+     */
+    void put(String key, T object);
+
+    /**
+     * Reclaim space taken by old objects, called with the cache clean up
+     */
+    default void cleanUp() {
+    }
+
+    /**
+     * Combine two tiers, reading from the second one only when the first one misses
+     * Puts and clean ups go to both tiers.
+     *
+     * @param first  Tier read first, may be null
+     * @param second Tier read on a miss of the first one, may be null
+     * @param <T>    Type of object stored
+     * @return Combined tier, or the other tier when one of them is null
+     */
+    static <T> CacheTier<T> layered(CacheTier<T> first, CacheTier<T> second) {
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        return new CacheTier<>() {
+            @Override
+            public Optional<Stored<T>> get(String key) {
+                Optional<Stored<T>> stored = first.get(key);
+                return stored.isPresent() ? stored : second.get(key);
+            }
+
+            @Override
+            public void put(String key, T object) {
+                first.put(key, object);
+                second.put(key, object);
+            }
+
+            @Override
+            public void cleanUp() {
+                first.cleanUp();
+                second.cleanUp();
+            }
+        };
+    }
+
+    /**
+     * Object read from a tier with the time elapsed since it was stored
+     *
+     * @param <T> Type of object stored
+     */
+    final class Stored<T> {
+        private final T object;
+        private final long ageNanos;
+
+        /**
+         * Create a stored object
+         *
+         * @param object   Object read from the tier
+         * @param ageNanos Nanoseconds since the object was stored
+         */
+        public Stored(T object, long ageNanos) {
+            this.object = object;
+            this.ageNanos = ageNanos;
+        }
+
+        /**
+         * Get the object
+         *
+         * @return Object read from the tier
+         */
+        public T getObject() {
+            return object;
+        }
+
+        /**
+         * Get the age of the object
+         *
+         * @return Nanoseconds since the object was stored
+         */
+        public long getAgeNanos() {
+            return ageNanos;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Cancellable;
+import org.apache.pekko.dispatch.ExecutionContexts;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads the most popular search queries and channels into the caches when the application starts
+ * <p>
+ * Requests are replayed through the repository at a bounded rate, and the application only finishes
+ * starting once they are done or the warm-up timeout has passed. The popular queries are saved
+ * periodically and when the application stops. Saving writes a file, so the periodic saves run on a
+ * thread of their own rather than on the dispatcher of the actors and requests.
+ */
+@Singleton
+public class CacheWarmer {
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final Bulkhead executor = Bulkhead.platform("popular-queries", 1, 1);
+    private final Cancellable saveTask;
+
+    /**
+     * Warm the caches up, then start saving the popular queries
+     *
+     * @param actorSystem    Actor system whose scheduler triggers the saves of the popular queries
+     * @param materializer   Materializer running the warm-up requests
+     * @param config         Application configuration
+     * @param repository     Repository the requests are replayed through
+     * @param popularQueries Counts of the requested queries and channels
+     * @param lifecycle      Lifecycle of the application, to save the popular queries when it stops
+     */
+    @Inject
+    public CacheWarmer(ActorSystem actorSystem, Materializer materializer, Config config, VideoRepository repository, PopularQueries popularQueries, ApplicationLifecycle lifecycle) {
+        if (config.getBoolean("tubelytics.warmup.enabled")) {
+            CompletionStage<Integer> warmUp = warmUp(
+                repository,
+                popularQueries.topSearches(config.getInt("tubelytics.warmup.searches")),
+                popularQueries.topChannels(config.getInt("tubelytics.warmup.channels")),
+                config.getInt("tubelytics.warmup.rate"),
+                materializer
+            );
+            await(warmUp, config.getDuration("tubelytics.warmup.timeout"));
+        }
+
+        Duration interval = config.getDuration("tubelytics.warmup.save-interval");
+        this.saveTask = actorSystem.scheduler().scheduleWithFixedDelay(interval, interval, popularQueries::save, ExecutionContexts.fromExecutor(executor));
+        lifecycle.addStopHook(() -> {
+            saveTask.cancel();
+            executor.shutdown();
+            popularQueries.save();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Replay searches and channel requests through a repository at a bounded rate
+     * Failed requests, including those refused by the quota, are logged and do not stop the warm-up.
+     *
+     * @param repository   Repository to load the results through
+     * @param searches     Search queries to load
+     * @param channels     Channel IDs to load
+     * @param rate         Maximum number of requests started per second
+     * @param materializer Materializer running the requests
+     * @return Future completed with the number of successful requests once all are done
+     */
+    public static CompletionStage<Integer> warmUp(VideoRepository repository, List<String> searches, List<String> channels, int rate, Materializer materializer) {
+        List<Supplier<CompletionStage<?>>> requests = new ArrayList<>();
+        searches.forEach(query -> requests.add(() -> repository.search(query, QuotaGovernor.Priority.BACKGROUND)));
+        channels.forEach(channelId -> requests.add(() -> repository.getChannelDetails(channelId, QuotaGovernor.Priority.BACKGROUND)));
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        AtomicInteger loaded = new AtomicInteger();
+        return Source
+            .from(requests)
+            .throttle(rate, Duration.ofSeconds(1))
+            .mapAsyncUnordered(rate, request -> start(request).handle((result, error) -> {
+                if (error == null) {
+                    loaded.incrementAndGet();
+                } else {
+                    log.debug("Warm-up request failed.", error);
+                }
+                return loaded.get();
+            }))
+            .runWith(Sink.ignore(), materializer)
+            .thenApply(done -> {
+                log.info("Warmed the caches up with {} of {} popular requests.", loaded.get(), requests.size());
+                return loaded.get();
+            });
+    }
+
+    /**
+     * Start a request, turning a synchronous failure into a failed future
+     *
+     * @param request Request to start
+     * @return Future of the request
+     */
+    private static CompletionStage<?> start(Supplier<CompletionStage<?>> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Wait for the warm-up, giving up after the timeout so a slow API never blocks the startup
+     *
+     * @param warmUp  Warm-up in progress
+     * @param timeout Maximum time to wait
+     */
+    private static void await(CompletionStage<Integer> warmUp, Duration timeout) {
+        try {
+            warmUp.toCompletableFuture().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Cache warm-up did not finish within {}, starting with partially warm caches.", timeout);
+        } catch (ExecutionException e) {
+            log.warn("Cache warm-up failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Fails calls to an unhealthy dependency right away instead of letting them wait on it
+ * <p>
+ * The circuit is closed while calls succeed. Once max-failures calls in a row failed or took longer
+ * than the call timeout, it opens and every call is refused with an {@link OpenCircuitException}
+ * without being made. After the reset timeout a single trial call is let through: the circuit
+ * closes if it succeeds and opens again otherwise, for twice as long each time up to the maximum
+ * reset timeout.
+ * <p>
+ * Only the errors matching the failure predicate count against the dependency, others such as a
+ * missing resource mean it answered and count as successes. Calls rejected by their executor or
+ * refused by the quota never reached the dependency and count as neither.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final int maxFailures;
+    private final long callTimeoutNanos;
+    private final long resetTimeoutNanos;
+    private final long maxResetTimeoutNanos;
+    private final Predicate<Throwable> isFailure;
+    private final Ticker ticker;
+    private final LongAdder rejected = new LongAdder();
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long openNanos;
+
+    /**
+     * Create a closed circuit breaker
+     *
+     * @param name            Name of the dependency, used in logs and errors
+     * @param maxFailures     Number of failures in a row opening the circuit
+     * @param callTimeout     Time after which a started call fails with a TimeoutException and counts as a failure
+     * @param resetTimeout    Time the circuit stays open before a trial call
+     * @param maxResetTimeout Longest time the circuit stays open after failed trials
+     * @param isFailure       Predicate telling the errors of the dependency from the other errors
+     * @param ticker          Time source of the reset timeouts
+     */
+    public CircuitBreaker(String name, int maxFailures, Duration callTimeout, Duration resetTimeout, Duration maxResetTimeout, Predicate<Throwable> isFailure, Ticker ticker) {
+        if (maxFailures <= 0 || callTimeout.isNegative() || callTimeout.isZero() || resetTimeout.isNegative() || maxResetTimeout.compareTo(resetTimeout) < 0) {
+            throw new IllegalArgumentException("Circuit breaker " + name + " settings are invalid");
+        }
+        this.name = name;
+        this.maxFailures = maxFailures;
+        this.callTimeoutNanos = callTimeout.toNanos();
+        this.resetTimeoutNanos = resetTimeout.toNanos();
+        this.maxResetTimeoutNanos = maxResetTimeout.toNanos();
+        this.isFailure = isFailure;
+        this.ticker = ticker;
+        this.openNanos = resetTimeoutNanos;
+    }
+
+    /**
+     * Make a call through the circuit, timing it from when it is made
+     *
+     * @param call Call starting the request
+     * @param <T>  Type of result
+     * @return Future of the result, failed with an OpenCircuitException if the circuit refused the call
+     * or a TimeoutException if it took longer than the call timeout
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletionStage<T>> call) {
+        return callFromStart(started -> {
+            started.run();
+            return call.get();
+        });
+    }
+
+    /**
+     * Make a call through the circuit, timing it from when its request starts
+     * A call queued on a bulkhead is timed once a thread picks it up, so waiting for a thread is not
+     * blamed on the dependency, and a call the bulkhead rejected or the quota refused never reached it
+     * and counts as neither a failure nor a success.
+     *
+     * @param call Call starting the request, given a callback to run once the request actually starts
+     * @param <T>  Type of result
+     * @return Future of the result, failed with an OpenCircuitException if the circuit refused the call
+     * or a TimeoutException if it took longer than the call timeout once started
+     */
+    public <T> CompletableFuture<T> callFromStart(Function<Runnable, ? extends CompletionStage<T>> call) {
+        if (!tryEnter()) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new OpenCircuitException(name));
+        }
+
+        // The result is a future of its own, so the timeout never completes the future of the caller
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean timed = new AtomicBoolean();
+        Runnable started = () -> {
+            if (timed.compareAndSet(false, true)) {
+                result.orTimeout(callTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        };
+        try {
+            call.apply(started).whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result.whenComplete((value, error) -> {
+            if (error != null && isNotCalled(error)) {
+                onNotCalled();
+            } else if (error != null && isFailure.test(error)) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+        });
+    }
+
+    /**
+     * Check if the circuit refuses calls
+     *
+     * @return True while the circuit is open and no trial call is due
+     */
+    public synchronized boolean isOpen() {
+        return state == State.HALF_OPEN || (state == State.OPEN && ticker.read() - openedAt < openNanos);
+    }
+
+    /**
+     * Get the state of the circuit
+     *
+     * @return Current state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of calls refused by the open circuit
+     *
+     * @return Number of calls refused
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Let a call through if the circuit allows it, turning an open circuit half-open once its reset timeout passed
+     *
+     * @return True if the call can be made
+     */
+    private synchronized boolean tryEnter() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+            // Only this call goes through until it completes
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a call answered by the dependency, closing the circuit
+     */
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit of {} closed, calls resume", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        openNanos = resetTimeoutNanos;
+    }
+
+    /**
+     * Record a call that never reached the dependency, letting the next call be the trial if this one was
+     */
+    private synchronized void onNotCalled() {
+        if (state == State.HALF_OPEN) {
+            // The reset timeout has already passed, so the next call is let through
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Record a failed call, opening the circuit after too many failures or a failed trial
+     */
+    private synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            openNanos = Math.min(maxResetTimeoutNanos, openNanos * 2);
+            open();
+        } else if (state == State.CLOSED && ++failures >= maxFailures) {
+            open();
+        }
+    }
+
+    /**
+     * Check if a call failed before reaching the dependency
+     *
+     * @param error Error of a call
+     * @return True if the call was rejected by the executor meant to run it or refused by the quota, possibly wrapped
+     */
+    private static boolean isNotCalled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RejectedExecutionException || cause instanceof QuotaGovernor.QuotaExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Open the circuit for the current reset timeout
+     */
+    private void open() {
+        log.warn("Circuit of {} opened, calls fail fast for {} ms", name, TimeUnit.NANOSECONDS.toMillis(openNanos));
+        state = State.OPEN;
+        openedAt = ticker.read();
+        failures = 0;
+    }
+
+    /**
+     * State of a circuit
+     */
+    public enum State {
+        // Calls are made
+        CLOSED,
+        // Calls are refused
+        OPEN,
+        // A trial call is in flight and the others are refused
+        HALF_OPEN
+    }
+
+    /**
+     * Failure of a call refused by an open circuit
+     */
+    public static class OpenCircuitException extends RuntimeException {
+        /**
+         * Create an exception for a refused call
+         *
+         * @param name Name of the dependency
+         */
+        public OpenCircuitException(String name) {
+            super("Circuit of " + name + " is open, call refused");
+        }
+    }
+}
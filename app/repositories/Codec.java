@@ -0,0 +1,24 @@
+package repositories;
+
+/**
+ * Converts cached objects to and from bytes for storage outside the heap
+ *
+ * @param <T> Type of object to convert
+ */
+public interface Codec<T> {
+    /**
+     * Encode an object
+     *
+     * @param value Object to encode
+     * @return Encoded bytes
+     */
+    byte[] encode(T value);
+
+    /**
+     * Decode an object
+     *
+     * @param bytes Bytes produced by {@link #encode}
+     * @return Decoded object
+     */
+    T decode(byte[] bytes);
+}
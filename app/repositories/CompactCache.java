@@ -0,0 +1,76 @@
+package repositories;
+
+import com.typesafe.config.Config;
+
+import java.util.function.Function;
+
+/**
+ * Cache holding compact encodings of YouTube responses
+ * <p>
+ * Entries are weighed by the size of their encoding. Whether new entries are compressed is set by
+ * tubelytics.cache.compress and read by the loaders through {@link #isCompressed()}.
+ *
+ * @param <T> Type of compact value in the cache
+ */
+public abstract class CompactCache<T extends CompactValue> extends Cache<T> {
+    // Array header, object header and the reference to the array
+    static final long ENTRY_OVERHEAD = 48;
+
+    private final boolean compressed;
+
+    /**
+     * Create an unbounded cache of uncompressed entries
+     */
+    protected CompactCache() {
+        super();
+        this.compressed = false;
+    }
+
+    /**
+     * Create a cache bounded by the tubelytics.cache.&lt;name&gt; configuration, timed by an expiry
+     * Empty values still expire after tubelytics.cache.negative-ttl, the expiry only sees the others,
+     * and the cache is backed by a persistent tier when tubelytics.cache.l2 is enabled
+     *
+     * @param config    Application configuration
+     * @param name      Name of the cache in the configuration
+     * @param fromBytes Factory wrapping an encoding read back from the persistent tier
+     * @param expiry    Expiry of the non-empty values
+     */
+    protected CompactCache(Config config, String name, Function<byte[], T> fromBytes, Expiry<? super T> expiry) {
+        super(
+            config.getLong("tubelytics.cache." + name + ".max-entries"),
+            config.getBytes("tubelytics.cache." + name + ".max-bytes"),
+            CompactCache::weigh,
+            config.getDuration("tubelytics.cache." + name + ".ttl"),
+            config.getDuration("tubelytics.cache." + name + ".stale-while-revalidate"),
+            Ticker.systemTicker()
+        );
+        this.compressed = config.getBoolean("tubelytics.cache.compress");
+        setExpiry(Expiry.negative(
+            expiry,
+            config.getDuration("tubelytics.cache.negative-ttl"),
+            CompactValue::isEmpty
+        ));
+        PersistentCacheTier.fromConfig(config, name, CompactValue.codec(fromBytes)).ifPresent(this::setSecondTier);
+    }
+
+    /**
+     * Check if new entries should be compressed
+     *
+     * @return True if entries are deflate-compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Estimate the heap size of an entry from the size of its encoding
+     *
+     * @param key   Key of the entry
+     * @param value Encoded value
+     * @return Estimated size in bytes
+     */
+    static long weigh(String key, CompactValue value) {
+        return 2L * key.length() + value.getEncodedSize() + ENTRY_OVERHEAD;
+    }
+}
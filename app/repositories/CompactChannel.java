@@ -0,0 +1,132 @@
+package repositories;
+
+import models.ChannelModel;
+import models.SearchResultModel;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Compact encoding of the channel details shown on the channel page
+ */
+public final class CompactChannel extends CompactValue {
+    private static final CompactChannel MISSING = new CompactChannel(encode(out -> {
+    }, true, false));
+
+    /**
+     * Wrap an encoding
+     *
+     * @param data Encoding produced by {@link #encode}
+     */
+    private CompactChannel(byte[] data) {
+        super(data);
+    }
+
+    /**
+     * Encode channel details
+     *
+     * @param uploadsPlaylistId  ID of the uploads playlist of the channel
+     * @param title              Title of the channel
+     * @param description        Description of the channel
+     * @param country            Country of the channel
+     * @param viewCount          Number of views
+     * @param subscriberCount    Number of subscribers
+     * @param videoCount         Number of videos
+     * @param thumbnailHyperlink Link to the thumbnail of the channel
+     * @param compress           True to deflate the encoding
+     * @return Encoded channel
+     */
+    public static CompactChannel encode(String uploadsPlaylistId, String title, String description, String country,
+                                        String viewCount, String subscriberCount, String videoCount,
+                                        String thumbnailHyperlink, boolean compress) {
+        return new CompactChannel(encode(out -> {
+            writeString(out, uploadsPlaylistId);
+            writeString(out, title);
+            writeString(out, description);
+            writeString(out, country);
+            writeString(out, viewCount);
+            writeString(out, subscriberCount);
+            writeString(out, videoCount);
+            writeString(out, thumbnailHyperlink);
+        }, false, compress));
+    }
+
+    /**
+     * Get the value cached for a channel that does not exist
+     *
+     * @return Empty channel
+     */
+    public static CompactChannel missing() {
+        return MISSING;
+    }
+
+    /**
+     * Tag the channel with the ETag of the response it was built from
+     *
+     * @param etag ETag of the response, null for none
+     * @return Same channel tagged with the ETag
+     */
+    public CompactChannel withEtag(String etag) {
+        return new CompactChannel(tagged(etag));
+    }
+
+    /**
+     * Wrap an encoding read back from storage
+     *
+     * @param data Encoding produced by {@link #encode}
+     * @return Encoded channel
+     */
+    public static CompactChannel fromBytes(byte[] data) {
+        return new CompactChannel(data);
+    }
+
+    /**
+     * Get the ID of the uploads playlist without decoding the rest of the channel
+     *
+     * @return ID of the uploads playlist
+     */
+    public String getUploadsPlaylistId() {
+        requirePresent();
+        try (DataInputStream in = open()) {
+            return readString(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode the channel into a ChannelModel
+     *
+     * @param videos Latest videos of the channel
+     * @return ChannelModel
+     */
+    public ChannelModel toChannelModel(List<SearchResultModel> videos) {
+        requirePresent();
+        try (DataInputStream in = open()) {
+            readString(in);
+            return new ChannelModel(
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                videos
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fail when decoding the value of a missing channel
+     */
+    private void requirePresent() {
+        if (isEmpty()) {
+            throw new IllegalStateException("Channel does not exist");
+        }
+    }
+}
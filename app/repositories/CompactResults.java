@@ -0,0 +1,167 @@
+package repositories;
+
+import models.SearchResultModel;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compact encoding of a list of search results
+ * <p>
+ * Only the fields rendered by the views and the publication time used to poll for newer videos are
+ * kept, and the video link is dropped when it is the usual watch link of the video. Results are
+ * decoded one at a time as the stream is consumed. Scores are computed per request and are never
+ * encoded.
+ */
+public final class CompactResults extends CompactValue {
+    private static final String WATCH_URL = "https://www.youtube.com/watch?v=";
+
+    /**
+     * Wrap an encoding
+     *
+     * @param data Encoding produced by {@link #encode}
+     */
+    private CompactResults(byte[] data) {
+        super(data);
+    }
+
+    /**
+     * Encode search results
+     *
+     * @param results  Results to encode
+     * @param compress True to deflate the encoding
+     * @return Encoded results
+     */
+    public static CompactResults encode(List<SearchResultModel> results, boolean compress) {
+        return new CompactResults(encode(out -> {
+            writeVarInt(out, results.size());
+            for (SearchResultModel result : results) {
+                writeString(out, result.getId());
+                writeString(out, result.getTitle());
+                writeString(out, result.getChannel());
+                writeString(out, result.getDescription());
+                String link = result.getVideoHyperlink();
+                writeString(out, link != null && link.equals(WATCH_URL + result.getId()) ? null : link);
+                writeString(out, result.getChannelID());
+                writeString(out, result.getThumbnailHyperlink());
+                writeVarLong(out, Math.max(0, result.getPublishedAt()));
+            }
+        }, results.isEmpty(), compress));
+    }
+
+    /**
+     * Tag the results with the ETag of the response they were built from
+     *
+     * @param etag ETag of the response, null for none
+     * @return Same results tagged with the ETag
+     */
+    public CompactResults withEtag(String etag) {
+        return new CompactResults(tagged(etag));
+    }
+
+    /**
+     * Wrap an encoding read back from storage
+     *
+     * @param data Encoding produced by {@link #encode}
+     * @return Encoded results
+     */
+    public static CompactResults fromBytes(byte[] data) {
+        return new CompactResults(data);
+    }
+
+    /**
+     * Get the video IDs of the results
+     *
+     * @return IDs of the results, in their original order
+     */
+    public List<String> getIds() {
+        return stream().map(SearchResultModel::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Decode the results lazily
+     * The payload is released once the last result is read, or when the stream is closed if it is
+     * not read to the end, so a compressed payload does not hold its inflater until garbage collection.
+     *
+     * @return Stream of results, in their original order
+     */
+    public Stream<SearchResultModel> stream() {
+        DataInputStream in = open();
+        int count;
+        try {
+            count = readVarInt(in);
+        } catch (IOException e) {
+            close(in);
+            throw new UncheckedIOException(e);
+        }
+        if (count == 0) {
+            close(in);
+        }
+
+        Spliterator<SearchResultModel> results = new Spliterators.AbstractSpliterator<>(count, Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL) {
+            private int remaining = count;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super SearchResultModel> action) {
+                if (remaining == 0) {
+                    return false;
+                }
+                remaining--;
+                SearchResultModel result;
+                try {
+                    result = readResult(in);
+                } catch (IOException e) {
+                    close(in);
+                    throw new UncheckedIOException(e);
+                }
+                if (remaining == 0) {
+                    close(in);
+                }
+                action.accept(result);
+                return true;
+            }
+        };
+        return StreamSupport.stream(results, false).onClose(() -> close(in));
+    }
+
+    /**
+     * Release a payload opened for decoding, ending its inflater if it is compressed
+     * Closing a payload more than once has no effect.
+     *
+     * @param in Payload to release
+     */
+    private static void close(DataInputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Payloads are read from memory, closing them cannot fail
+        }
+    }
+
+    /**
+     * Decode the next result
+     *
+     * @param in Payload positioned at a result
+     * @return Decoded result
+     * @throws IOException If the payload is truncated
+     */
+    private static SearchResultModel readResult(DataInputStream in) throws IOException {
+        String id = readString(in);
+        String title = readString(in);
+        String channel = readString(in);
+        String description = readString(in);
+        String link = readString(in);
+        String channelId = readString(in);
+        String thumbnail = readString(in);
+        long publishedAt = readVarLong(in);
+        return new SearchResultModel(id, title, channel, description, link == null ? WATCH_URL + id : link, channelId, thumbnail, publishedAt);
+    }
+}
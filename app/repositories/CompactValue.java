@@ -0,0 +1,320 @@
+package repositories;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cached value kept as a compact binary encoding of only the fields the application renders
+ * <p>
+ * The encoding starts with a flags byte followed by the payload, optionally deflate-compressed.
+ * Values are decoded when they are read, so the heap only holds the bytes. The same bytes are
+ * stored as is by the persistent cache tier. A value can be tagged with the ETag of the response it
+ * was built from, written uncompressed between the flags and the payload, so the response can be
+ * revalidated.
+ */
+public abstract class CompactValue {
+    private static final int COMPRESSED = 1;
+    private static final int EMPTY = 2;
+    private static final int TAGGED = 4;
+
+    private final byte[] data;
+
+    /**
+     * Wrap an encoded value
+     *
+     * @param data Flags byte followed by the payload
+     */
+    protected CompactValue(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Encoded value is missing its flags");
+        }
+        this.data = data;
+    }
+
+    /**
+     * Check if the value is a negative result, such as a missing channel or a search without results
+     *
+     * @return True if the value is empty
+     */
+    public boolean isEmpty() {
+        return (data[0] & EMPTY) != 0;
+    }
+
+    /**
+     * Check if the payload is deflate-compressed
+     *
+     * @return True if the payload is compressed
+     */
+    public boolean isCompressed() {
+        return (data[0] & COMPRESSED) != 0;
+    }
+
+    /**
+     * Get the ETag of the response the value was built from
+     *
+     * @return ETag, or null if the value is not tagged
+     */
+    public String getEtag() {
+        if ((data[0] & TAGGED) == 0) {
+            return null;
+        }
+        try {
+            return readString(new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the size of the encoding
+     *
+     * @return Size in bytes
+     */
+    public int getEncodedSize() {
+        return data.length;
+    }
+
+    /**
+     * Get the encoding, to be stored outside the heap
+     *
+     * @return Flags byte followed by the payload, not to be modified
+     */
+    public byte[] toBytes() {
+        return data;
+    }
+
+    /**
+     * Open the payload for decoding
+     *
+     * @return Stream of the uncompressed payload
+     */
+    protected DataInputStream open() {
+        int offset = payloadOffset();
+        ByteArrayInputStream payload = new ByteArrayInputStream(data, offset, data.length - offset);
+        return new DataInputStream(isCompressed() ? new InflaterInputStream(payload) : payload);
+    }
+
+    /**
+     * Encode the same value tagged with an ETag, replacing any previous one
+     *
+     * @param etag ETag of the response the value was built from, null to remove the tag
+     * @return Flags byte followed by the ETag, if any, and the payload
+     */
+    protected byte[] tagged(String etag) {
+        int offset = payloadOffset();
+        ByteArrayOutputStream tagged = new ByteArrayOutputStream(data.length + (etag == null ? 0 : etag.length() + 2));
+        try (DataOutputStream out = new DataOutputStream(tagged)) {
+            out.writeByte(etag == null ? data[0] & ~TAGGED : data[0] | TAGGED);
+            if (etag != null) {
+                writeString(out, etag);
+            }
+            out.write(data, offset, data.length - offset);
+        } catch (IOException e) {
+            // Only in-memory streams are used
+            throw new UncheckedIOException(e);
+        }
+        return tagged.toByteArray();
+    }
+
+    /**
+     * Find where the payload starts, after the flags and the ETag
+     *
+     * @return Offset of the payload in the encoding
+     */
+    private int payloadOffset() {
+        if ((data[0] & TAGGED) == 0) {
+            return 1;
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(data, 1, data.length - 1);
+        try {
+            readString(new DataInputStream(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return data.length - in.available();
+    }
+
+    /**
+     * Writes the payload of a value
+     */
+    @FunctionalInterface
+    protected interface PayloadWriter {
+        /**
+         * Write the payload
+         *
+         * @param out Output to write to
+         * @throws IOException If the output fails
+         */
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Encode a value
+     * Compression is skipped when it does not make the payload smaller.
+     *
+     * @param writer   Writer of the payload
+     * @param empty    True if the value is a negative result
+     * @param compress True to deflate the payload
+     * @return Flags byte followed by the payload
+     */
+    protected static byte[] encode(PayloadWriter writer, boolean empty, boolean compress) {
+        int flags = empty ? EMPTY : 0;
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            plain.write(flags);
+            try (DataOutputStream out = new DataOutputStream(plain)) {
+                writer.write(out);
+            }
+            if (!compress) {
+                return plain.toByteArray();
+            }
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            compressed.write(flags | COMPRESSED);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+                out.write(plain.toByteArray(), 1, plain.size() - 1);
+            } finally {
+                deflater.end();
+            }
+            return compressed.size() < plain.size() ? compressed.toByteArray() : plain.toByteArray();
+        } catch (IOException e) {
+            // Only in-memory streams are used
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a possibly missing string as its UTF-8 length plus one followed by its bytes
+     *
+     * @param out   Output to write to
+     * @param value String to write
+     * @throws IOException If the output fails
+     */
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}
+     *
+     * @param in Input to read from
+     * @return String read, possibly null
+     * @throws IOException If the input is truncated
+     */
+    protected static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a non-negative integer on as few bytes as possible, 7 bits at a time
+     *
+     * @param out   Output to write to
+     * @param value Integer to write
+     * @throws IOException If the output fails
+     */
+    protected static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an integer written by {@link #writeVarInt}
+     *
+     * @param in Input to read from
+     * @return Integer read
+     * @throws IOException If the input is truncated or malformed
+     */
+    protected static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Write a non-negative long on as few bytes as possible, 7 bits at a time
+     *
+     * @param out   Output to write to
+     * @param value Long to write
+     * @throws IOException If the output fails
+     */
+    protected static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Read a long written by {@link #writeVarLong}
+     *
+     * @param in Input to read from
+     * @return Long read
+     * @throws IOException If the input is truncated or malformed
+     */
+    protected static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Codec storing compact values as their encoding
+     *
+     * @param fromBytes Factory wrapping an encoding
+     * @param <T>       Type of compact value
+     * @return Codec
+     */
+    public static <T extends CompactValue> Codec<T> codec(Function<byte[], T> fromBytes) {
+        return new Codec<>() {
+            @Override
+            public byte[] encode(T value) {
+                return value.toBytes();
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return fromBytes.apply(bytes);
+            }
+        };
+    }
+}
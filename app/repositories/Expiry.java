@@ -0,0 +1,59 @@
+package repositories;
+
+import java.time.Duration;
+import java.util.function.Predicate;
+
+/**
+ * Decides how long each cache entry stays fresh
+ *
+ * @param <T> Type of object in the cache
+ */
+@FunctionalInterface
+public interface Expiry<T> {
+    /**
+     * Get the time to live of an entry
+     *
+     * @param key   Key of the entry
+     * @param value Value of the entry
+     * @return How long the entry is fresh, must be positive
+     */
+    Duration timeToLive(String key, T value);
+
+    /**
+     * Expiry giving every entry the same time to live
+     *
+     * @param timeToLive Time to live of every entry
+     * @param <T>        Type of object in the cache
+     * @return Expiry
+     */
+    static <T> Expiry<T> fixed(Duration timeToLive) {
+        return (key, value) -> timeToLive;
+    }
+
+    /**
+     * Expiry giving negative results, such as not found or empty responses, a shorter time to live
+     * Negative results are cached too so repeated requests for missing objects do not reach the API.
+     *
+     * @param timeToLive         Time to live of regular entries
+     * @param negativeTimeToLive Time to live of negative entries
+     * @param isNegative         Predicate telling negative results apart
+     * @param <T>                Type of object in the cache
+     * @return Expiry
+     */
+    static <T> Expiry<T> negative(Duration timeToLive, Duration negativeTimeToLive, Predicate<? super T> isNegative) {
+        return (key, value) -> isNegative.test(value) ? negativeTimeToLive : timeToLive;
+    }
+
+    /**
+     * Expiry giving negative results a fixed time to live and leaving the others to another expiry
+     *
+     * @param expiry             Expiry of regular entries
+     * @param negativeTimeToLive Time to live of negative entries
+     * @param isNegative         Predicate telling negative results apart
+     * @param <T>                Type of object in the cache
+     * @return Expiry
+     */
+    static <T> Expiry<T> negative(Expiry<? super T> expiry, Duration negativeTimeToLive, Predicate<? super T> isNegative) {
+        return (key, value) -> isNegative.test(value) ? negativeTimeToLive : expiry.timeToLive(key, value);
+    }
+}
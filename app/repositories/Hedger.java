@@ -0,0 +1,168 @@
+package repositories;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second request for a read that is slower than most, using whichever response comes first
+ * <p>
+ * The latencies of the last successful requests are kept in a ring, and a request still running
+ * after the configured percentile of them is hedged with a copy, which bounds the tail latency to
+ * about twice that percentile when a slow request is an outlier. Only idempotent reads may be hedged.
+ * Hedging starts once enough latencies are known, and at most max-ratio of the calls are hedged so
+ * an incident slowing every request does not double the load on the dependency.
+ */
+public class Hedger {
+    private final double percentile;
+    private final long minDelayNanos;
+    private final int minSamples;
+    private final double maxRatio;
+    private final Ticker ticker;
+    private final long[] latencies;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private int next;
+    private int count;
+
+    /**
+     * Create a hedger
+     *
+     * @param percentile Percentile of the latencies after which a request is hedged, between 0 and 1
+     * @param minDelay   Shortest time to wait before hedging
+     * @param window     Number of latencies kept
+     * @param minSamples Number of latencies needed before hedging
+     * @param maxRatio   Largest fraction of the calls hedged
+     * @param ticker     Time source of the latencies
+     */
+    public Hedger(double percentile, Duration minDelay, int window, int minSamples, double maxRatio, Ticker ticker) {
+        if (percentile <= 0 || percentile > 1 || minDelay.isNegative() || window <= 0 || minSamples <= 0 || minSamples > window || maxRatio < 0 || maxRatio > 1) {
+            throw new IllegalArgumentException("Hedging settings are invalid");
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.minSamples = minSamples;
+        this.maxRatio = maxRatio;
+        this.ticker = ticker;
+        this.latencies = new long[window];
+    }
+
+    /**
+     * Make a read, hedging it if it is slow
+     * The call fails only if every request it sent failed, with the error of the last one.
+     *
+     * @param request Request starting the read, called a second time to hedge it
+     * @param <T>     Type of result
+     * @return Future of the first result
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletionStage<T>> request) {
+        calls.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Requests sent and not failed yet, the call fails when the last one does
+        AtomicInteger pending = new AtomicInteger(1);
+        send(request, result, pending);
+
+        long delay = getDelayNanos();
+        if (delay >= 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+                if (!result.isDone() && tryHedge()) {
+                    pending.incrementAndGet();
+                    send(request, result, pending);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Get the time to wait before hedging a call
+     *
+     * @return Delay in nanoseconds, negative if too few latencies are known to hedge
+     */
+    public long getDelayNanos() {
+        long[] known;
+        synchronized (this) {
+            if (count < minSamples) {
+                return -1;
+            }
+            known = Arrays.copyOf(latencies, count);
+        }
+        Arrays.sort(known);
+        int index = Math.min(known.length - 1, (int) Math.ceil(percentile * known.length) - 1);
+        return Math.max(minDelayNanos, known[Math.max(0, index)]);
+    }
+
+    /**
+     * Get the number of calls made
+     *
+     * @return Number of calls
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Get the number of calls hedged
+     *
+     * @return Number of calls with a second request
+     */
+    public long getHedged() {
+        return hedged.sum();
+    }
+
+    /**
+     * Send one request of a call, completing the call with its result
+     *
+     * @param request Request starting the read
+     * @param result  Result of the call
+     * @param pending Number of requests of the call not failed yet
+     * @param <T>     Type of result
+     */
+    private <T> void send(Supplier<? extends CompletionStage<T>> request, CompletableFuture<T> result, AtomicInteger pending) {
+        long start = ticker.read();
+        CompletionStage<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((value, error) -> {
+            if (error == null) {
+                // Late responses are recorded too, so hedging does not hide how slow requests are
+                record(ticker.read() - start);
+                result.complete(value);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * Count a hedge if the budget of hedges allows it
+     *
+     * @return True if the call can be hedged
+     */
+    private boolean tryHedge() {
+        if (hedged.sum() + 1 > maxRatio * calls.sum()) {
+            return false;
+        }
+        hedged.increment();
+        return true;
+    }
+
+    /**
+     * Record the latency of a successful request
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    private synchronized void record(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+    }
+}
@@ -0,0 +1,58 @@
+package repositories;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec storing Google API models as their JSON payload
+ *
+ * @param <T> Type of model to convert
+ */
+public class JsonCodec<T> implements Codec<T> {
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+
+    private final Class<T> type;
+
+    /**
+     * Create a codec
+     *
+     * @param type Class of the model
+     */
+    public JsonCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Encode a model as JSON
+     *
+     * @param value Model to encode
+     * @return UTF-8 JSON bytes
+     */
+    @Override
+    public byte[] encode(T value) {
+        try {
+            return JSON_FACTORY.toByteArray(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Decode a model from JSON
+     *
+     * @param bytes UTF-8 JSON bytes
+     * @return Decoded model
+     */
+    @Override
+    public T decode(byte[] bytes) {
+        try {
+            return JSON_FACTORY.fromInputStream(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, type);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
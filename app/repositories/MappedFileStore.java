@@ -0,0 +1,405 @@
+package repositories;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Append-only key value store in a memory-mapped file
+ * <p>
+ * Records are appended after a small header as {@code [length][written at][key length][key][value]}.
+ * The length is written last, so a record torn by a crash reads as the end of the file. The index of
+ * the latest record of every key is kept in memory and rebuilt by scanning the file when it is
+ * opened. Overwritten records stay in the file as dead bytes until {@link #compact} rewrites the live
+ * records into a fresh file. Compaction rewrites the whole file, so it is left to a background task
+ * and a record that does not fit is refused rather than compacting on the writing thread.
+ */
+public class MappedFileStore implements Closeable {
+    private static final long MAGIC = 0x54554245_4C324341L;
+    // Bumped when the encoding of the stored values changes, so files of older versions are discarded
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final Object UNSAFE;
+    private static final Method UNMAPPER;
+
+    static {
+        Object unsafe = null;
+        Method unmapper = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            unmapper = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            unmapper = null;
+        }
+        UNSAFE = unsafe;
+        UNMAPPER = unmapper;
+    }
+
+    private final Path path;
+    private final int capacity;
+    private final Map<String, Integer> index = new HashMap<>();
+    // Held by a compaction for its whole duration, so only one runs at a time
+    private final Object compaction = new Object();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private long deadBytes;
+
+    /**
+     * Open a store, creating the file if needed
+     *
+     * @param path     File backing the store
+     * @param capacity Maximum size of the file in bytes
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public MappedFileStore(Path path, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity is too small: " + capacity);
+        }
+        this.path = path;
+        this.capacity = capacity;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        open(path);
+        load();
+    }
+
+    /**
+     * Get the latest record of a key
+     *
+     * @param key Key of the record
+     * @return Optional containing the record if one exists
+     */
+    public synchronized Optional<Record> get(String key) {
+        Integer position = index.get(key);
+        if (position == null) {
+            return Optional.empty();
+        }
+
+        int length = buffer.getInt(position);
+        long writtenAt = buffer.getLong(position + Integer.BYTES);
+        int keyLength = buffer.getInt(position + Integer.BYTES + Long.BYTES);
+        byte[] value = new byte[length - RECORD_HEADER_SIZE - keyLength];
+        buffer.get(position + RECORD_HEADER_SIZE + keyLength, value);
+        return Optional.of(new Record(value, writtenAt));
+    }
+
+    /**
+     * Append a record for a key
+     *
+     * @param key       Key of the record
+     * @param value     Value of the record
+     * @param writtenAt Epoch milliseconds of the write
+     * @return False if the record does not fit in the rest of the file
+     */
+    public synchronized boolean put(String key, byte[] value, long writtenAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+        if (writePosition + length > capacity) {
+            return false;
+        }
+
+        int position = writePosition;
+        buffer.putLong(position + Integer.BYTES, writtenAt);
+        buffer.putInt(position + Integer.BYTES + Long.BYTES, keyBytes.length);
+        buffer.put(position + RECORD_HEADER_SIZE, keyBytes);
+        buffer.put(position + RECORD_HEADER_SIZE + keyBytes.length, value);
+        terminate(position + length);
+        // Writing the length last commits the record
+        buffer.putInt(position, length);
+        writePosition += length;
+
+        Integer previous = index.put(key, position);
+        if (previous != null) {
+            deadBytes += buffer.getInt(previous);
+        }
+        return true;
+    }
+
+    /**
+     * Rewrite the live records into a fresh file, dropping overwritten and old records
+     * The records are copied without holding the lock of the store, so reads and writes go on while
+     * the file is rewritten. Records written meanwhile are copied too before the fresh file replaces
+     * the current one, which is the only step blocking them.
+     *
+     * @param minWrittenAt Epoch milliseconds before which records are dropped
+     */
+    public void compact(long minWrittenAt) {
+        synchronized (compaction) {
+            Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+            MappedByteBuffer oldBuffer;
+            Map<String, Integer> oldIndex;
+            int copiedUpTo;
+            synchronized (this) {
+                oldBuffer = buffer;
+                oldIndex = new HashMap<>(index);
+                copiedUpTo = writePosition;
+            }
+
+            FileChannel newChannel = null;
+            try {
+                Files.deleteIfExists(compacted);
+                newChannel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                newBuffer.putLong(0, MAGIC);
+                newBuffer.putInt(Long.BYTES, VERSION);
+                Map<String, Integer> newIndex = new HashMap<>();
+                // Records before the write position are never modified, so they can be read without the lock
+                int newPosition = copy(oldBuffer, oldIndex, minWrittenAt, newBuffer, newIndex, HEADER_SIZE);
+                newBuffer.force();
+
+                synchronized (this) {
+                    // Records written since the copy started replace the copies of their keys
+                    Map<String, Integer> written = new HashMap<>();
+                    long newDeadBytes = 0;
+                    for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                        if (entry.getValue() >= copiedUpTo) {
+                            written.put(entry.getKey(), entry.getValue());
+                            Integer copied = newIndex.remove(entry.getKey());
+                            if (copied != null) {
+                                newDeadBytes += newBuffer.getInt(copied);
+                            }
+                        }
+                    }
+                    newPosition = copy(buffer, written, minWrittenAt, newBuffer, newIndex, newPosition);
+                    if (newPosition + Integer.BYTES <= capacity) {
+                        newBuffer.putInt(newPosition, 0);
+                    }
+                    newBuffer.force();
+
+                    FileChannel oldChannel = channel;
+                    Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    channel = newChannel;
+                    buffer = newBuffer;
+                    index.clear();
+                    index.putAll(newIndex);
+                    writePosition = newPosition;
+                    deadBytes = newDeadBytes;
+                    newChannel = null;
+                    oldChannel.close();
+                    unmap(oldBuffer);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (newChannel != null) {
+                    try {
+                        newChannel.close();
+                    } catch (IOException e) {
+                        // The compacted file is deleted by the next compaction
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy records into a fresh file and index them
+     * Records that do not fit are dropped, which only happens for records written during a compaction.
+     *
+     * @param from         Buffer holding the records
+     * @param positions    Position of the record of every key to copy
+     * @param minWrittenAt Epoch milliseconds before which records are dropped
+     * @param to           Buffer of the fresh file
+     * @param toIndex      Index of the fresh file, given the position of every copied record
+     * @param toPosition   Position of the next record in the fresh file
+     * @return Position following the copied records
+     */
+    private int copy(ByteBuffer from, Map<String, Integer> positions, long minWrittenAt, ByteBuffer to, Map<String, Integer> toIndex, int toPosition) {
+        for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+            int position = entry.getValue();
+            int length = from.getInt(position);
+            if (from.getLong(position + Integer.BYTES) < minWrittenAt || toPosition + length > capacity) {
+                continue;
+            }
+            to.put(toPosition, from, position, length);
+            toIndex.put(entry.getKey(), toPosition);
+            toPosition += length;
+        }
+        return toPosition;
+    }
+
+    /**
+     * Get the number of keys in the store
+     *
+     * @return Number of keys
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Get the fraction of the written bytes taken by overwritten records
+     *
+     * @return Dead bytes ratio between 0 and 1
+     */
+    public synchronized double deadRatio() {
+        int used = writePosition - HEADER_SIZE;
+        return used == 0 ? 0 : (double) deadBytes / used;
+    }
+
+    /**
+     * Get the number of bytes a compaction would free
+     *
+     * @param minWrittenAt Epoch milliseconds before which records would be dropped
+     * @return Bytes of the overwritten records and of the records written before minWrittenAt
+     */
+    public synchronized long reclaimable(long minWrittenAt) {
+        long bytes = deadBytes;
+        for (int position : index.values()) {
+            if (buffer.getLong(position + Integer.BYTES) < minWrittenAt) {
+                bytes += buffer.getInt(position);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Flush the file and release it
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+        unmap(buffer);
+    }
+
+    /**
+     * Map a file and make it the current one
+     *
+     * @param file File to map
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    private void open(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        writePosition = HEADER_SIZE;
+    }
+
+    /**
+     * Release the mapping of a buffer now instead of when the buffer is garbage collected
+     * Mappings of replaced files would otherwise hold their memory and, on some systems, their file
+     * until a full collection. The buffer must not be read afterwards. Unmapping needs an internal API,
+     * so the mapping is left to the garbage collector when it is not available.
+     *
+     * @param mapped Buffer to unmap
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        if (UNMAPPER == null) {
+            return;
+        }
+        try {
+            UNMAPPER.invoke(UNSAFE, mapped);
+        } catch (ReflectiveOperationException e) {
+            // The mapping is released when the buffer is collected
+        }
+    }
+
+    /**
+     * Write the header identifying the file format
+     */
+    private void writeHeader() {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(Long.BYTES, VERSION);
+    }
+
+    /**
+     * Mark the end of the records so leftover bytes are never read as a record
+     *
+     * @param position Position following the last record
+     */
+    private void terminate(int position) {
+        if (position + Integer.BYTES <= capacity) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    /**
+     * Check the header of the current file and index its records
+     * A file with an unknown header is discarded.
+     */
+    private void load() {
+        if (buffer.getLong(0) != MAGIC || buffer.getInt(Long.BYTES) != VERSION) {
+            writeHeader();
+            terminate(HEADER_SIZE);
+            return;
+        }
+
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER_SIZE || position + length > capacity) {
+                break;
+            }
+            int keyLength = buffer.getInt(position + Integer.BYTES + Long.BYTES);
+            if (keyLength < 0 || keyLength > length - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.get(position + RECORD_HEADER_SIZE, key);
+            Integer previous = index.put(new String(key, StandardCharsets.UTF_8), position);
+            if (previous != null) {
+                deadBytes += buffer.getInt(previous);
+            }
+            position += length;
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Value stored for a key
+     */
+    public static final class Record {
+        private final byte[] value;
+        private final long writtenAt;
+
+        /**
+         * Create a record
+         *
+         * @param value     Stored bytes
+         * @param writtenAt Epoch milliseconds of the write
+         */
+        public Record(byte[] value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+
+        /**
+         * Get the stored bytes
+         *
+         * @return Stored bytes
+         */
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * Get the time of the write
+         *
+         * @return Epoch milliseconds of the write
+         */
+        public long getWrittenAt() {
+            return writtenAt;
+        }
+    }
+}
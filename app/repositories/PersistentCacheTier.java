@@ -0,0 +1,149 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache tier persisting serialized objects in a {@link MappedFileStore}
+ * <p>
+ * The file survives restarts, so a new process reads through to the responses cached by the previous
+ * one instead of calling the YouTube API again. Ages are measured with wall clock time since the
+ * monotonic ticker of the previous process is meaningless after a restart.
+ *
+ * @param <T> Type of object stored
+ */
+public class PersistentCacheTier<T> implements CacheTier<T> {
+    private static final Logger log = LoggerFactory.getLogger(PersistentCacheTier.class);
+
+    private final MappedFileStore store;
+    private final Codec<T> codec;
+    private final Duration maxAge;
+    private final double compactionRatio;
+    private final Clock clock;
+    // Set when an object did not fit, objects are not persisted until a compaction made room
+    private volatile boolean full;
+
+    /**
+     * Create a persistent tier
+     *
+     * @param store           Store holding the serialized objects
+     * @param codec           Codec serializing the objects
+     * @param maxAge          Age after which stored objects are ignored and dropped on compaction
+     * @param compactionRatio Fraction of dead bytes above which the store is compacted on clean up, a full store is compacted if that frees room
+     * @param clock           Wall clock timestamping the objects
+     */
+    public PersistentCacheTier(MappedFileStore store, Codec<T> codec, Duration maxAge, double compactionRatio, Clock clock) {
+        this.store = store;
+        this.codec = codec;
+        this.maxAge = maxAge;
+        this.compactionRatio = compactionRatio;
+        this.clock = clock;
+    }
+
+    /**
+     * Create the persistent tier of a cache from the configuration, if enabled
+     * Objects are kept for the time to live and stale period of the cache, the time to live being at
+     * least tubelytics.cache.adaptive.max-ttl when adaptive expiry is enabled.
+     *
+     * @param config Application configuration
+     * @param name   Name of the cache under {@code tubelytics.cache}
+     * @param codec  Codec serializing the objects
+     * @param <T>    Type of object stored
+     * @return Optional containing the tier if it is enabled and its file could be opened
+     */
+    public static <T> Optional<CacheTier<T>> fromConfig(Config config, String name, Codec<T> codec) {
+        if (!config.getBoolean("tubelytics.cache.l2.enabled")) {
+            return Optional.empty();
+        }
+
+        Path file = Paths.get(config.getString("tubelytics.cache.l2.directory"), name + ".cache");
+        Duration timeToLive = config.getDuration("tubelytics.cache." + name + ".ttl");
+        if (config.getBoolean("tubelytics.cache.adaptive.enabled")) {
+            // Adaptive entries may live up to the maximum time to live, they must still be read back until then
+            Duration maxTimeToLive = config.getDuration("tubelytics.cache.adaptive.max-ttl");
+            timeToLive = maxTimeToLive.compareTo(timeToLive) > 0 ? maxTimeToLive : timeToLive;
+        }
+        Duration maxAge = timeToLive.plus(config.getDuration("tubelytics.cache." + name + ".stale-while-revalidate"));
+        try {
+            MappedFileStore store = new MappedFileStore(file, Math.toIntExact(config.getBytes("tubelytics.cache.l2." + name + ".max-bytes")));
+            return Optional.of(new PersistentCacheTier<>(store, codec, maxAge,
+                config.getDouble("tubelytics.cache.l2.compaction-ratio"), Clock.systemUTC()));
+        } catch (IOException e) {
+            // The cache still works without its persistent tier, it is only cold after a restart
+            log.warn("Could not open persistent cache file '{}'.", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Get an object from the file
+     * Objects older than the maximum age or that cannot be decoded are ignored.
+     *
+     * @param key Key for the object
+     * @return Optional containing the object and its age if one exists
+     */
+    @Override
+    public Optional<Stored<T>> get(String key) {
+        Optional<MappedFileStore.Record> record = store.get(key);
+        if (record.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long age = Math.max(0, clock.millis() - record.get().getWrittenAt());
+        if (age >= maxAge.toMillis()) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(new Stored<>(codec.decode(record.get().getValue()), TimeUnit.MILLISECONDS.toNanos(age)));
+        } catch (RuntimeException e) {
+            log.warn("Could not decode persisted cache entry for key '{}'.", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Append an object to the file
+     * Objects are not persisted while the file is full.
+     *
+     * @param key    Key for the object
+     * @param object Object to store
+     */
+    @Override
+    public void put(String key, T object) {
+        if (full) {
+            return;
+        }
+        if (!store.put(key, codec.encode(object), clock.millis())) {
+            full = true;
+            log.warn("Persistent cache file is full, objects are not persisted until old ones expire.");
+        }
+    }
+
+    /**
+     * Compact the file once too much of it is taken by overwritten objects, or once it is full and
+     * holds overwritten or expired objects to drop
+     * A full file holding only live objects is left as it is, since rewriting it would not free anything.
+     */
+    @Override
+    public void cleanUp() {
+        // Keep exactly the objects get would still return
+        long minWrittenAt = clock.millis() - maxAge.toMillis() + 1;
+        if (store.deadRatio() > compactionRatio || (full && store.reclaimable(minWrittenAt) > 0)) {
+            store.compact(minWrittenAt);
+            if (full) {
+                full = false;
+                log.info("Persistent cache file compacted, objects are persisted again.");
+            }
+        }
+    }
+}
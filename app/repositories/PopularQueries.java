@@ -0,0 +1,227 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Counts how often each search query and channel is requested, so the most popular ones can be
+ * loaded into the caches when the application starts
+ * <p>
+ * Only the interactive requests of users are counted. The warm-up and the periodic searches of the
+ * polling actors are background requests, counting them would rank the queries by their pollers.
+ * <p>
+ * The counts are kept in a snapshot file as {@code kind TAB count TAB key} lines. Counts read back
+ * from a snapshot are halved, so queries that stop being requested fade out over a few restarts.
+ */
+@Singleton
+public class PopularQueries {
+    private static final Logger log = LoggerFactory.getLogger(PopularQueries.class);
+    private static final String SEARCH = "search";
+    private static final String CHANNEL = "channel";
+
+    private final Map<String, LongAdder> searches = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> channels = new ConcurrentHashMap<>();
+    private final int maxTracked;
+    private final Optional<Path> snapshot;
+
+    /**
+     * Create counts persisted in the tubelytics.warmup.snapshot file, loading the previous snapshot
+     * An empty snapshot path keeps the counts in memory only.
+     *
+     * @param config Application configuration
+     */
+    @Inject
+    public PopularQueries(Config config) {
+        String snapshot = config.getString("tubelytics.warmup.snapshot");
+        int maxTracked = config.getInt("tubelytics.warmup.max-tracked");
+        if (maxTracked <= 0) {
+            throw new IllegalArgumentException("At least one key must be tracked");
+        }
+        this.snapshot = snapshot.isEmpty() ? Optional.empty() : Optional.of(Paths.get(snapshot));
+        this.maxTracked = maxTracked;
+        this.snapshot.ifPresent(this::load);
+    }
+
+    /**
+     * Count a request for a search query
+     *
+     * @param query Search query
+     */
+    public void recordSearch(String query) {
+        record(searches, query, 1);
+    }
+
+    /**
+     * Count a request for a channel
+     *
+     * @param channelId ID of the channel
+     */
+    public void recordChannel(String channelId) {
+        record(channels, channelId, 1);
+    }
+
+    /**
+     * Get the most requested search queries
+     *
+     * @param limit Maximum number of queries
+     * @return Queries, most requested first
+     */
+    public List<String> topSearches(int limit) {
+        return top(searches, limit);
+    }
+
+    /**
+     * Get the most requested channels
+     *
+     * @param limit Maximum number of channels
+     * @return Channel IDs, most requested first
+     */
+    public List<String> topChannels(int limit) {
+        return top(channels, limit);
+    }
+
+    /**
+     * Write the counts to the snapshot file
+     * The file is replaced atomically so a crash never leaves a partial snapshot.
+     */
+    public synchronized void save() {
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        Path file = snapshot.get();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                write(writer, SEARCH, searches);
+                write(writer, CHANNEL, channels);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save popular queries to '{}'.", file, e);
+        }
+    }
+
+    /**
+     * Add to the count of a key, trimming the counts once they track too many keys
+     *
+     * @param counts Counts of one kind of key
+     * @param key    Key requested
+     * @param amount Number of requests
+     */
+    private void record(Map<String, LongAdder> counts, String key, long amount) {
+        if (key == null || key.isBlank() || key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0) {
+            return;
+        }
+        counts.computeIfAbsent(key, k -> new LongAdder()).add(amount);
+        if (counts.size() > 2 * maxTracked) {
+            trim(counts);
+        }
+    }
+
+    /**
+     * Keep only the most requested keys
+     *
+     * @param counts Counts of one kind of key
+     */
+    private synchronized void trim(Map<String, LongAdder> counts) {
+        if (counts.size() > maxTracked) {
+            counts.keySet().retainAll(top(counts, maxTracked));
+        }
+    }
+
+    /**
+     * Get the most requested keys
+     *
+     * @param counts Counts of one kind of key
+     * @param limit  Maximum number of keys
+     * @return Keys, most requested first
+     */
+    private static List<String> top(Map<String, LongAdder> counts, int limit) {
+        return counts
+            .entrySet()
+            .stream()
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Write the most requested keys of one kind
+     *
+     * @param writer Snapshot being written
+     * @param kind   Kind of key
+     * @param counts Counts of that kind of key
+     * @throws IOException If the file cannot be written
+     */
+    private void write(BufferedWriter writer, String kind, Map<String, LongAdder> counts) throws IOException {
+        for (String key : top(counts, maxTracked)) {
+            LongAdder count = counts.get(key);
+            if (count == null) {
+                continue;
+            }
+            writer.write(kind + '\t' + count.sum() + '\t' + key);
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Read the counts of a previous snapshot, halved
+     * Malformed lines are skipped.
+     *
+     * @param file Snapshot file
+     */
+    private void load(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    continue;
+                }
+                long count;
+                try {
+                    count = Long.parseLong(fields[1]) / 2;
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (count <= 0) {
+                    continue;
+                }
+                if (SEARCH.equals(fields[0])) {
+                    record(searches, fields[2], count);
+                } else if (CHANNEL.equals(fields[0])) {
+                    record(channels, fields[2], count);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // First start, nothing was recorded yet
+        } catch (IOException e) {
+            log.warn("Could not load popular queries from '{}'.", file, e);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the YouTube API calls within the daily quota of the project
+ * <p>
+ * Calls take their cost in units from a token bucket refilled continuously at the daily budget, so
+ * spending over any day never exceeds the budget plus one burst. Background calls, such as search
+ * ticks and cache warm-ups, are refused once the bucket is down to the reserve kept for interactive
+ * requests. Below the low watermark, search ticks are spaced further apart, up to max-stretch times
+ * their normal interval, and the caches keep serving their stale entries while refreshes are refused.
+ */
+@Singleton
+public class QuotaGovernor {
+    private static final Logger log = LoggerFactory.getLogger(QuotaGovernor.class);
+    private static final long DAY_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private final boolean enabled;
+    private final double capacity;
+    private final double refillPerNano;
+    private final double reserve;
+    private final double lowWatermark;
+    private final double maxStretch;
+    private final Map<Call, Integer> costs = new EnumMap<>(Call.class);
+    private final Map<Priority, LongAdder> granted = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> denied = new EnumMap<>(Priority.class);
+    private final Ticker ticker;
+    private double tokens;
+    private long refilledAt;
+    private boolean exhausted;
+
+    /**
+     * Create a governor from the tubelytics.quota configuration
+     * Calls missing from tubelytics.quota.costs are charged their default cost.
+     *
+     * @param config Application configuration
+     * @param ticker Time source of the refills
+     */
+    @Inject
+    public QuotaGovernor(Config config, Ticker ticker) {
+        String prefix = "tubelytics.quota.";
+        long dailyBudget = config.getLong(prefix + "daily-budget");
+        long burst = config.getLong(prefix + "burst");
+        double reserve = config.getDouble(prefix + "reserve");
+        double lowWatermark = config.getDouble(prefix + "low-watermark");
+        double maxStretch = config.getDouble(prefix + "max-stretch");
+        if (dailyBudget <= 0 || burst <= 0 || reserve < 0 || reserve >= 1 || lowWatermark < 0 || lowWatermark > 1 || maxStretch < 1) {
+            throw new IllegalArgumentException("Quota settings are invalid");
+        }
+        this.enabled = config.getBoolean(prefix + "enabled");
+        this.capacity = burst;
+        this.refillPerNano = (double) dailyBudget / DAY_NANOS;
+        this.reserve = reserve * burst;
+        this.lowWatermark = lowWatermark;
+        this.maxStretch = maxStretch;
+        for (Call call : Call.values()) {
+            String cost = prefix + "costs." + call.configKey;
+            costs.put(call, config.hasPath(cost) ? config.getInt(cost) : call.defaultCost);
+        }
+        for (Priority priority : Priority.values()) {
+            granted.put(priority, new LongAdder());
+            denied.put(priority, new LongAdder());
+        }
+        this.ticker = ticker;
+        this.tokens = burst;
+        this.refilledAt = ticker.read();
+    }
+
+    /**
+     * Take the cost of a call from the bucket if the budget allows it
+     *
+     * @param call     Call about to be made
+     * @param priority Priority of the call
+     * @return True if the call can be made
+     */
+    public boolean tryAcquire(Call call, Priority priority) {
+        boolean allowed = !enabled || take(costs.get(call), priority);
+        (allowed ? granted : denied).get(priority).increment();
+        return allowed;
+    }
+
+    /**
+     * Take the cost of a call from the bucket, failing if the budget does not allow it
+     *
+     * @param call     Call about to be made
+     * @param priority Priority of the call
+     * @throws QuotaExceededException If the call would spend the reserve or more units than available
+     */
+    public void acquire(Call call, Priority priority) {
+        if (!tryAcquire(call, priority)) {
+            throw new QuotaExceededException(call, priority);
+        }
+    }
+
+    /**
+     * Make a load that concurrent callers share, at the priority of the caller
+     * A shared load runs at the priority of the caller that started it, so when the reserve refuses a
+     * background load, an interactive caller that joined it loads again at its own priority instead of
+     * failing with it.
+     *
+     * @param priority Priority of the caller
+     * @param load     Load of the caller, joining the one in flight if any
+     * @param <T>      Type of result
+     * @return Future of the result
+     */
+    public static <T> CompletionStage<T> loadShared(Priority priority, Supplier<? extends CompletionStage<T>> load) {
+        CompletionStage<T> shared = load.get();
+        if (priority == Priority.BACKGROUND) {
+            return shared;
+        }
+        return shared.exceptionallyCompose(error -> isRefused(error, Priority.BACKGROUND) ? load.get() : CompletableFuture.failedStage(error));
+    }
+
+    /**
+     * Check if a call failed because the quota refused it
+     *
+     * @param error    Error of a call
+     * @param priority Priority of the refused call
+     * @return True if the error is a QuotaExceededException at the priority, possibly wrapped
+     */
+    static boolean isRefused(Throwable error, Priority priority) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QuotaExceededException) {
+                return ((QuotaExceededException) cause).getPriority() == priority;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stretch the interval of a periodic background call by how low the budget is
+     *
+     * @param interval Normal interval
+     * @return Interval, longer than the normal one below the low watermark
+     */
+    public Duration stretch(Duration interval) {
+        double level = getLevel();
+        if (level >= lowWatermark || lowWatermark == 0) {
+            return interval;
+        }
+        double factor = 1 + (maxStretch - 1) * (lowWatermark - level) / lowWatermark;
+        return Duration.ofNanos((long) (interval.toNanos() * factor));
+    }
+
+    /**
+     * Get the fraction of the bucket available
+     *
+     * @return Level between 0 and 1, always 1 when the governor is disabled
+     */
+    public synchronized double getLevel() {
+        if (!enabled) {
+            return 1;
+        }
+        refill();
+        return tokens / capacity;
+    }
+
+    /**
+     * Get the units available
+     *
+     * @return Units in the bucket
+     */
+    public synchronized long getAvailable() {
+        refill();
+        return (long) tokens;
+    }
+
+    /**
+     * Check if interactive calls are being refused
+     *
+     * @return True from an interactive call refused until a call is allowed again
+     */
+    public synchronized boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Check if calls can be refused
+     *
+     * @return True if the budget is enforced
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the number of calls allowed
+     *
+     * @param priority Priority of the calls
+     * @return Number of calls allowed
+     */
+    public long getGranted(Priority priority) {
+        return granted.get(priority).sum();
+    }
+
+    /**
+     * Get the number of calls refused
+     *
+     * @param priority Priority of the calls
+     * @return Number of calls refused
+     */
+    public long getDenied(Priority priority) {
+        return denied.get(priority).sum();
+    }
+
+    /**
+     * Take units from the bucket
+     *
+     * @param cost     Units of the call
+     * @param priority Priority of the call
+     * @return True if the units were taken
+     */
+    private synchronized boolean take(int cost, Priority priority) {
+        refill();
+        double floor = priority == Priority.INTERACTIVE ? 0 : reserve;
+        if (tokens - cost < floor) {
+            // Logged once when the budget runs out, not for every refused call
+            if (priority == Priority.INTERACTIVE && !exhausted) {
+                exhausted = true;
+                log.warn("YouTube quota exhausted, refusing interactive calls until the budget refills");
+            }
+            return false;
+        }
+        if (exhausted) {
+            exhausted = false;
+            log.info("YouTube quota refilled, calls resume");
+        }
+        tokens -= cost;
+        return true;
+    }
+
+    /**
+     * Add the units refilled since the last refill
+     */
+    private void refill() {
+        long now = ticker.read();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+        refilledAt = now;
+    }
+
+    /**
+     * Kind of API call, with its default cost in units
+     */
+    public enum Call {
+        SEARCH("search", 100),
+        VIDEOS("videos", 1),
+        CHANNELS("channels", 1),
+        PLAYLIST_ITEMS("playlist-items", 1);
+
+        private final String configKey;
+        private final int defaultCost;
+
+        /**
+         * Create a kind of call
+         *
+         * @param configKey   Key of the cost in tubelytics.quota.costs
+         * @param defaultCost Cost in units when none is configured
+         */
+        Call(String configKey, int defaultCost) {
+            this.configKey = configKey;
+            this.defaultCost = defaultCost;
+        }
+
+        /**
+         * Get the name of the call in the configuration
+         *
+         * @return Key of the call, such as playlist-items
+         */
+        public String getConfigKey() {
+            return configKey;
+        }
+    }
+
+    /**
+     * Priority of a call
+     */
+    public enum Priority {
+        // Made while a user waits, such as a search page or the first results of a subscription
+        INTERACTIVE,
+        // Made on a schedule, such as search ticks and cache warm-ups
+        BACKGROUND
+    }
+
+    /**
+     * Failure of a call refused to stay within the quota
+     */
+    public static class QuotaExceededException extends RuntimeException {
+        private final Priority priority;
+
+        /**
+         * Create an exception for a refused call
+         *
+         * @param call     Call refused
+         * @param priority Priority of the call
+         */
+        public QuotaExceededException(Call call, Priority priority) {
+            super("YouTube quota too low for " + priority.name().toLowerCase() + " " + call.configKey + " call");
+            this.priority = priority;
+        }
+
+        /**
+         * Get the priority of the refused call
+         *
+         * @return Priority of the call
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+    }
+}
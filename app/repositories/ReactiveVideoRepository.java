@@ -0,0 +1,73 @@
+package repositories;
+
+import models.ChannelModel;
+import models.SearchResultModel;
+import org.apache.pekko.Done;
+import org.apache.pekko.stream.javadsl.Source;
+
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Interface for a repository returning video search results as Pekko Streams sources
+ * <p>
+ * Sources are blueprints: nothing is requested until they are materialized, each materialization
+ * requests the results again, and the results are emitted on the stream with backpressure instead
+ * of being handed over as a single-use Stream. The materialized value of each source completes
+ * once the source has emitted its last element or failed.
+ */
+public interface ReactiveVideoRepository {
+    /**
+     * Search for videos for a user waiting on the results
+     *
+     * @param query Search query
+     * @return Source of search results
+     */
+    Source<SearchResultModel, CompletionStage<Done>> search(String query);
+
+    /**
+     * Search for videos, with a priority against the API quota
+     *
+     * @param query    Search query
+     * @param priority Priority of the request
+     * @return Source of search results
+     */
+    Source<SearchResultModel, CompletionStage<Done>> search(String query, QuotaGovernor.Priority priority);
+
+    /**
+     * Search for the videos published since a time, newest first
+     *
+     * @param query          Search query
+     * @param publishedAfter Earliest publication time of the results, inclusive
+     * @param maxResults     Maximum number of results
+     * @param priority       Priority of the request against the API quota
+     * @return Source of search results
+     */
+    Source<SearchResultModel, CompletionStage<Done>> searchSince(String query, Instant publishedAfter, int maxResults, QuotaGovernor.Priority priority);
+
+    /**
+     * Search for videos beyond the first page of results, newest first
+     *
+     * @param query      Search query
+     * @param maxResults Maximum number of results
+     * @param priority   Priority of the requests against the API quota
+     * @return Source of search results
+     */
+    Source<SearchResultModel, CompletionStage<Done>> searchAll(String query, int maxResults, QuotaGovernor.Priority priority);
+
+    /**
+     * Get the details and latest videos of a channel for a user waiting on them
+     *
+     * @param channelID Channel ID
+     * @return Source of the channel, failed with a NoSuchElementException if the channel does not exist
+     */
+    Source<ChannelModel, CompletionStage<Done>> getChannelDetails(String channelID);
+
+    /**
+     * Get the tags of a video
+     *
+     * @param id Video ID
+     * @return Source of the tags
+     */
+    Source<String, CompletionStage<Done>> getTagsById(String id);
+}
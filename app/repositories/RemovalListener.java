@@ -0,0 +1,30 @@
+package repositories;
+
+/**
+ * Listener notified when an entry leaves a cache
+ *
+ * @param <T> Type of object in the cache
+ */
+@FunctionalInterface
+public interface RemovalListener<T> {
+    /**
+     * Called after an entry was removed
+     *
+     * @param key   Key of the entry
+     * @param value Value of the entry
+     * @param cause Why the entry was removed
+     */
+    void onRemoval(String key, T value, Cause cause);
+
+    /**
+     * Reason of a removal
+     */
+    enum Cause {
+        // The entry was past its time to live and stale period
+        EXPIRED,
+        // The entry was evicted to keep the cache within its bounds
+        SIZE,
+        // The entry was overwritten by a new value for the same key
+        REPLACED
+    }
+}
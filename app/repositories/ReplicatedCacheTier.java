@@ -0,0 +1,250 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.apache.pekko.ConfigurationException;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.cluster.Cluster;
+import org.apache.pekko.cluster.ddata.DistributedData;
+import org.apache.pekko.cluster.ddata.Key;
+import org.apache.pekko.cluster.ddata.LWWMap;
+import org.apache.pekko.cluster.ddata.LWWMapKey;
+import org.apache.pekko.cluster.ddata.Replicator;
+import org.apache.pekko.cluster.ddata.SelfUniqueAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache tier shared by every node of a Pekko cluster through Distributed Data
+ * <p>
+ * Objects are kept in last writer wins maps, split into shards so a change only gossips one shard.
+ * Every node subscribes to the shards and keeps the latest replica in memory, so reads never wait on
+ * the network: a response fetched by one node is served by the others once it has been gossiped.
+ * Writes are local and replicated in the background. Values are the serialized object prefixed by
+ * the wall clock time of the write, so every node agrees on their age.
+ *
+ * @param <T> Type of object stored
+ */
+public class ReplicatedCacheTier<T> implements CacheTier<T> {
+    private static final Logger log = LoggerFactory.getLogger(ReplicatedCacheTier.class);
+
+    private final Codec<T> codec;
+    private final Duration maxAge;
+    private final Clock clock;
+    private final ActorRef replicator;
+    private final SelfUniqueAddress node;
+    private final List<Key<LWWMap<String, byte[]>>> shards;
+    private final Map<String, Map<String, byte[]>> replicas = new ConcurrentHashMap<>();
+    private final ActorRef subscriber;
+
+    /**
+     * Create a replicated tier and subscribe to its shards
+     *
+     * @param system Actor system of a cluster node
+     * @param name   Name of the tier, unique in the cluster
+     * @param codec  Codec serializing the objects
+     * @param maxAge Age after which objects are ignored and removed on clean up
+     * @param shards Number of maps the objects are split into
+     * @param clock  Wall clock timestamping the objects
+     */
+    public ReplicatedCacheTier(ActorSystem system, String name, Codec<T> codec, Duration maxAge, int shards, Clock clock) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.codec = codec;
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.replicator = DistributedData.get(system).replicator();
+        this.node = DistributedData.get(system).selfUniqueAddress();
+        this.shards = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            Key<LWWMap<String, byte[]>> key = LWWMapKey.create("tubelytics-cache-" + name + "-" + i);
+            this.shards.add(key);
+            replicas.put(key.id(), Map.of());
+        }
+
+        this.subscriber = system.actorOf(Props.create(Subscriber.class, () -> new Subscriber(this)));
+        for (Key<LWWMap<String, byte[]>> key : this.shards) {
+            replicator.tell(new Replicator.Subscribe<>(key, subscriber), ActorRef.noSender());
+        }
+    }
+
+    /**
+     * Create the replicated tier of a cache from the configuration, if enabled
+     *
+     * @param system Actor system of the application
+     * @param config Application configuration
+     * @param name   Name of the cache under {@code tubelytics.cache}
+     * @param codec  Codec serializing the objects
+     * @param <T>    Type of object stored
+     * @return Optional containing the tier if it is enabled and the actor system is a cluster node
+     */
+    public static <T> Optional<CacheTier<T>> fromConfig(ActorSystem system, Config config, String name, Codec<T> codec) {
+        if (!config.getBoolean("tubelytics.cache.replicated.enabled")) {
+            return Optional.empty();
+        }
+
+        try {
+            Cluster.get(system);
+        } catch (ConfigurationException e) {
+            // The cache still works on its own, it is just not shared with the other nodes
+            log.warn("Replicated cache '{}' needs pekko.actor.provider = cluster, it is not shared.", name);
+            return Optional.empty();
+        }
+        Duration maxAge = config.getDuration("tubelytics.cache." + name + ".ttl")
+            .plus(config.getDuration("tubelytics.cache." + name + ".stale-while-revalidate"));
+        return Optional.of(new ReplicatedCacheTier<>(system, name, codec, maxAge,
+            config.getInt("tubelytics.cache.replicated.shards"), Clock.systemUTC()));
+    }
+
+    /**
+     * Get an object from the local replica
+     * Objects older than the maximum age or that cannot be decoded are ignored.
+     *
+     * @param key Key for the object
+     * @return Optional containing the object and its age if one exists
+     */
+    @Override
+    public Optional<Stored<T>> get(String key) {
+        byte[] value = replicas.get(shardOf(key).id()).get(key);
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        long age = Math.max(0, clock.millis() - buffer.getLong());
+        if (age >= maxAge.toMillis()) {
+            return Optional.empty();
+        }
+
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        try {
+            return Optional.of(new Stored<>(codec.decode(encoded), TimeUnit.MILLISECONDS.toNanos(age)));
+        } catch (RuntimeException e) {
+            log.warn("Could not decode replicated cache entry for key '{}'.", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Write an object to the local replica and gossip it to the other nodes
+     *
+     * @param key    Key for the object
+     * @param object Object to store
+     */
+    @Override
+    public void put(String key, T object) {
+        byte[] encoded = codec.encode(object);
+        byte[] value = ByteBuffer.allocate(Long.BYTES + encoded.length).putLong(clock.millis()).put(encoded).array();
+
+        Key<LWWMap<String, byte[]>> shard = shardOf(key);
+        // Visible on this node right away, the subscription catches up once the update is applied
+        replicas.compute(shard.id(), (k, entries) -> {
+            Map<String, byte[]> updated = new HashMap<>(entries);
+            updated.put(key, value);
+            return updated;
+        });
+        replicator.tell(new Replicator.Update<>(shard, LWWMap.create(), Replicator.writeLocal(),
+            map -> map.put(node, key, value)), subscriber);
+    }
+
+    /**
+     * Remove the objects past their maximum age from the replicated maps
+     */
+    @Override
+    public void cleanUp() {
+        long oldest = clock.millis() - maxAge.toMillis();
+        for (Key<LWWMap<String, byte[]>> shard : shards) {
+            List<String> expired = new ArrayList<>();
+            replicas.get(shard.id()).forEach((key, value) -> {
+                if (ByteBuffer.wrap(value).getLong() <= oldest) {
+                    expired.add(key);
+                }
+            });
+            if (!expired.isEmpty()) {
+                replicator.tell(new Replicator.Update<>(shard, LWWMap.create(), Replicator.writeLocal(), map -> {
+                    LWWMap<String, byte[]> updated = map;
+                    for (String key : expired) {
+                        updated = updated.remove(node, key);
+                    }
+                    return updated;
+                }), subscriber);
+            }
+        }
+    }
+
+    /**
+     * Get the number of objects in the local replica
+     *
+     * @return Number of objects, including expired ones not cleaned up yet
+     */
+    public int size() {
+        return replicas.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Get the shard of a key
+     *
+     * @param key Key for the object
+     * @return Key of the replicated map holding the object
+     */
+    private Key<LWWMap<String, byte[]>> shardOf(String key) {
+        return shards.get(Math.floorMod(key.hashCode(), shards.size()));
+    }
+
+    /**
+     * Replace the local replica of a shard
+     *
+     * @param shard   Key of the replicated map
+     * @param entries Latest entries of the map
+     */
+    private void replicate(Key<?> shard, Map<String, byte[]> entries) {
+        replicas.computeIfPresent(shard.id(), (k, previous) -> Map.copyOf(entries));
+    }
+
+    /**
+     * Actor receiving the changes of the shards and the replies to the updates
+     */
+    private static final class Subscriber extends AbstractActor {
+        private final ReplicatedCacheTier<?> tier;
+
+        /**
+         * Create the subscriber of a tier
+         *
+         * @param tier Tier to keep up to date
+         */
+        private Subscriber(ReplicatedCacheTier<?> tier) {
+            this.tier = tier;
+        }
+
+        /**
+         * Define behaviour of the actor
+         *
+         * @return behaviour
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(Replicator.Changed.class, changed -> tier.replicate(changed.key(), ((LWWMap<String, byte[]>) changed.dataValue()).getEntries()))
+                .match(Replicator.UpdateSuccess.class, success -> {
+                })
+                .match(Replicator.UpdateFailure.class, failure -> log.warn("Could not update replicated cache shard '{}'.", failure.key()))
+                .build();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import models.SearchBatch;
+import models.SearchResultModel;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Cache holding the scored results of searches, so a hit skips mapping and scoring the results again
+ */
+@Singleton
+public class ScoredSearchCache extends Cache<SearchBatch> {
+    // Rough heap size of a result without its strings: object headers, references and scores
+    private static final long RESULT_OVERHEAD = 96;
+
+    /**
+     * Create an unbounded cache
+     */
+    public ScoredSearchCache() {
+        super();
+    }
+
+    /**
+     * Create a cache bounded and timed by the tubelytics.cache.scored-search configuration
+     * Batches follow how often new videos appear when tubelytics.cache.adaptive is enabled
+     *
+     * @param config Application configuration
+     */
+    @Inject
+    public ScoredSearchCache(Config config) {
+        super(
+            config.getLong("tubelytics.cache.scored-search.max-entries"),
+            config.getBytes("tubelytics.cache.scored-search.max-bytes"),
+            ScoredSearchCache::weigh,
+            config.getDuration("tubelytics.cache.scored-search.ttl"),
+            config.getDuration("tubelytics.cache.scored-search.stale-while-revalidate"),
+            Ticker.systemTicker()
+        );
+        setExpiry(AdaptiveExpiry.fromConfig(config, "scored-search", ScoredSearchCache::ids));
+    }
+
+    /**
+     * Get the video IDs of a batch
+     *
+     * @param batch Batch of results
+     * @return IDs of the results
+     */
+    static List<String> ids(SearchBatch batch) {
+        return batch.getResults().stream().map(SearchResultModel::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Estimate the size of a batch from the length of the strings of its results
+     *
+     * @param key   Query of the batch
+     * @param batch Batch to weigh
+     * @return Estimated size in bytes
+     */
+    static long weigh(String key, SearchBatch batch) {
+        long weight = 2L * key.length();
+        for (SearchResultModel result : batch.getResults()) {
+            weight += RESULT_OVERHEAD + 2L * (length(result.getId()) + length(result.getTitle()) + length(result.getChannel())
+                + length(result.getDescription()) + length(result.getVideoHyperlink()) + length(result.getChannelID())
+                + length(result.getThumbnailHyperlink()));
+        }
+        return weight;
+    }
+
+    /**
+     * Get the length of a possibly missing string
+     *
+     * @param value String to measure
+     * @return Length of the string, 0 if it is null
+     */
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,101 @@
+package repositories;
+
+import models.SearchResultModel;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.javadsl.Source;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Streams the results of a search across the pages of the YouTube API
+ * <p>
+ * Pages are requested one at a time, only once the results of the previous one have been consumed,
+ * so a slow consumer never has more than a page buffered and a consumer taking fewer results stops
+ * the requests early. Each page costs a search call against the quota.
+ */
+final class SearchPages {
+    // Largest page the search endpoint returns
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Prevent instantiation of the helper
+     */
+    private SearchPages() {
+    }
+
+    /**
+     * Create a source following the next page tokens of the pages lazily
+     *
+     * @param maxResults Maximum number of results
+     * @param fetch      Request of a page, given the token of the page or null for the first one
+     * @return Source of the results, in the order of the pages
+     */
+    static Source<SearchResultModel, NotUsed> source(int maxResults, Function<String, CompletionStage<Page>> fetch) {
+        if (maxResults <= 0) {
+            return Source.empty();
+        }
+        // The state is the token of the next page, empty once the last page was requested
+        return Source.unfoldAsync(Optional.of(""), (Optional<String> token) -> {
+                if (token.isEmpty()) {
+                    return CompletableFuture.completedFuture(Optional.<Pair<Optional<String>, List<SearchResultModel>>>empty());
+                }
+                return fetch.apply(token.get().isEmpty() ? null : token.get())
+                    .thenApply(page -> Optional.of(Pair.create(page.getNext(), page.getResults())));
+            })
+            .mapConcat(results -> results)
+            .take(maxResults);
+    }
+
+    /**
+     * Get the size of the pages to request for a number of results
+     *
+     * @param maxResults Maximum number of results
+     * @return Page size, at most {@link #PAGE_SIZE}
+     */
+    static int pageSize(int maxResults) {
+        return Math.max(1, Math.min(maxResults, PAGE_SIZE));
+    }
+
+    /**
+     * Page of search results
+     */
+    static final class Page {
+        private final List<SearchResultModel> results;
+        private final String nextPageToken;
+
+        /**
+         * Create a page
+         *
+         * @param results       Results of the page
+         * @param nextPageToken Token of the next page, null if it is the last one
+         */
+        Page(List<SearchResultModel> results, String nextPageToken) {
+            this.results = results;
+            this.nextPageToken = nextPageToken;
+        }
+
+        /**
+         * Get the results of the page
+         *
+         * @return Results of the page
+         */
+        List<SearchResultModel> getResults() {
+            return results;
+        }
+
+        /**
+         * Get the token of the next page
+         * An empty page ends the search even with a token, so a misbehaving API cannot make it loop.
+         *
+         * @return Token of the next page, empty if there is none
+         */
+        Optional<String> getNext() {
+            return results.isEmpty() || nextPageToken == null || nextPageToken.isEmpty() ? Optional.empty() : Optional.of(nextPageToken);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package repositories;
+
+import models.ChannelModel;
+import models.SearchResultModel;
+import org.apache.pekko.Done;
+import org.apache.pekko.japi.function.Creator;
+import org.apache.pekko.stream.javadsl.Source;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * Reactive repository emitting the results of a {@link VideoRepository} as sources
+ * <p>
+ * The repository is only called when a source is materialized, and the Stream it returns is
+ * consumed by the source itself, on the dispatcher of the stream, as fast as downstream pulls.
+ */
+@Singleton
+public class SourceVideoRepository implements ReactiveVideoRepository {
+    private final VideoRepository videos;
+
+    /**
+     * Create a reactive repository
+     *
+     * @param videos Repository to call
+     */
+    @Inject
+    public SourceVideoRepository(VideoRepository videos) {
+        this.videos = videos;
+    }
+
+    /**
+     * Search for videos for a user waiting on the results
+     *
+     * @param query Search query
+     * @return Source of search results
+     */
+    @Override
+    public Source<SearchResultModel, CompletionStage<Done>> search(String query) {
+        return fromStream(() -> videos.search(query));
+    }
+
+    /**
+     * Search for videos, with a priority against the API quota
+     *
+     * @param query    Search query
+     * @param priority Priority of the request
+     * @return Source of search results
+     */
+    @Override
+    public Source<SearchResultModel, CompletionStage<Done>> search(String query, QuotaGovernor.Priority priority) {
+        return fromStream(() -> videos.search(query, priority));
+    }
+
+    /**
+     * Search for the videos published since a time, newest first
+     *
+     * @param query          Search query
+     * @param publishedAfter Earliest publication time of the results, inclusive
+     * @param maxResults     Maximum number of results
+     * @param priority       Priority of the request against the API quota
+     * @return Source of search results
+     */
+    @Override
+    public Source<SearchResultModel, CompletionStage<Done>> searchSince(String query, Instant publishedAfter, int maxResults, QuotaGovernor.Priority priority) {
+        return fromStream(() -> videos.searchSince(query, publishedAfter, maxResults, priority));
+    }
+
+    /**
+     * Search for videos beyond the first page of results, newest first
+     *
+     * @param query      Search query
+     * @param maxResults Maximum number of results
+     * @param priority   Priority of the requests against the API quota
+     * @return Source of search results
+     */
+    @Override
+    public Source<SearchResultModel, CompletionStage<Done>> searchAll(String query, int maxResults, QuotaGovernor.Priority priority) {
+        return Source.lazySource(() -> videos.searchAll(query, maxResults, priority))
+            .watchTermination((notUsed, done) -> done);
+    }
+
+    /**
+     * Get the details and latest videos of a channel for a user waiting on them
+     *
+     * @param channelID Channel ID
+     * @return Source of the channel, failed with a NoSuchElementException if the channel does not exist
+     */
+    @Override
+    public Source<ChannelModel, CompletionStage<Done>> getChannelDetails(String channelID) {
+        return Source.lazyCompletionStage(() -> videos.getChannelDetails(channelID))
+            .watchTermination((notUsed, done) -> done);
+    }
+
+    /**
+     * Get the tags of a video
+     *
+     * @param id Video ID
+     * @return Source of the tags
+     */
+    @Override
+    public Source<String, CompletionStage<Done>> getTagsById(String id) {
+        return fromStream(() -> videos.getTagsById(id));
+    }
+
+    /**
+     * Create a source calling the repository on each materialization and emitting the Stream it returns
+     * The Stream is closed once the source completes, fails or is cancelled, releasing what it decodes from.
+     *
+     * @param request Call to the repository
+     * @param <T>     Type of results
+     * @return Source of the results
+     */
+    private static <T> Source<T, CompletionStage<Done>> fromStream(Creator<CompletionStage<Stream<T>>> request) {
+        return Source.lazyCompletionStageSource(() -> request.create().thenApply(results -> Source.fromIterator(results::iterator)
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((result, error) -> results.close());
+                    return notUsed;
+                })))
+            .watchTermination((notUsed, done) -> done);
+    }
+}
@@ -0,0 +1,24 @@
+package repositories;
+
+/**
+ * Monotonic time source used to measure the age of cache entries
+ * Readings are only meaningful relative to each other, like {@link System#nanoTime()}.
+ */
+@FunctionalInterface
+public interface Ticker {
+    /**
+     * Read the ticker
+     *
+     * @return Current reading in nanoseconds
+     */
+    long read();
+
+    /**
+     * Ticker backed by {@link System#nanoTime()}
+     *
+     * @return System ticker
+     */
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+}
@@ -0,0 +1,146 @@
+package repositories;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel tracking the expiry deadlines of cache entries
+ * <p>
+ * The wheel is a ring of buckets, each covering one tick of time. Scheduling a deadline appends it
+ * to the bucket of its tick and advancing the wheel only visits the buckets of the elapsed ticks, so
+ * both are O(1) amortized per entry. Deadlines further away than one revolution stay in their bucket
+ * and are skipped until the wheel comes around to their tick.
+ */
+public class TimingWheel {
+    private final long tickNanos;
+    private final long origin;
+    private final List<ArrayDeque<Timeout>> buckets;
+    private long currentTick;
+
+    /**
+     * Create a timing wheel
+     *
+     * @param tick   Time covered by each bucket
+     * @param size   Number of buckets
+     * @param origin Ticker reading the wheel starts at
+     */
+    public TimingWheel(Duration tick, int size, long origin) {
+        if (tick.isNegative() || tick.isZero() || size <= 0) {
+            throw new IllegalArgumentException("Tick must be positive and size must be at least 1");
+        }
+        this.tickNanos = tick.toNanos();
+        this.origin = origin;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Schedule a key to expire
+     *
+     * @param key      Key of the entry
+     * @param stamp    Insertion stamp of the entry, to tell it apart from a later replacement
+     * @param deadline Ticker reading after which the entry is expired
+     */
+    public synchronized void schedule(String key, long stamp, long deadline) {
+        // The deadline has passed once the wheel has gone through the tick containing it
+        long tick = Math.max(Math.floorDiv(deadline - origin, tickNanos) + 1, currentTick + 1);
+        buckets.get(bucketOf(tick)).add(new Timeout(key, stamp, tick));
+    }
+
+    /**
+     * Advance the wheel up to the current time
+     *
+     * @param now Current ticker reading
+     * @return Timeouts whose deadline has passed
+     */
+    public synchronized List<Timeout> advance(long now) {
+        long target = Math.floorDiv(now - origin, tickNanos);
+        List<Timeout> expired = new ArrayList<>();
+        if (target <= currentTick) {
+            return expired;
+        }
+
+        // Visiting every bucket once is enough however far the wheel is behind
+        long first = Math.max(currentTick + 1, target - buckets.size() + 1);
+        for (long tick = first; tick <= target; tick++) {
+            Iterator<Timeout> timeouts = buckets.get(bucketOf(tick)).iterator();
+            while (timeouts.hasNext()) {
+                Timeout timeout = timeouts.next();
+                if (timeout.tick <= target) {
+                    timeouts.remove();
+                    expired.add(timeout);
+                }
+            }
+        }
+        currentTick = target;
+        return expired;
+    }
+
+    /**
+     * Get the number of scheduled timeouts
+     *
+     * @return Number of timeouts
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (ArrayDeque<Timeout> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the bucket of a tick
+     *
+     * @param tick Absolute tick
+     * @return Index of the bucket
+     */
+    private int bucketOf(long tick) {
+        return (int) Math.floorMod(tick, (long) buckets.size());
+    }
+
+    /**
+     * Expiry of a cache entry scheduled in the wheel
+     */
+    public static final class Timeout {
+        private final String key;
+        private final long stamp;
+        private final long tick;
+
+        /**
+         * Create a timeout
+         *
+         * @param key   Key of the entry
+         * @param stamp Insertion stamp of the entry
+         * @param tick  Absolute tick of the deadline
+         */
+        private Timeout(String key, long stamp, long tick) {
+            this.key = key;
+            this.stamp = stamp;
+            this.tick = tick;
+        }
+
+        /**
+         * Get the key
+         *
+         * @return Key of the entry
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Get the insertion stamp
+         *
+         * @return Insertion stamp of the entry
+         */
+        public long getStamp() {
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package repositories;
+
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Groups concurrent video lookups into one videos.list request
+ * <p>
+ * The first lookup of a batch opens it for a short window, and every lookup made during the window
+ * joins it. The batch is sent when the window ends or as soon as it holds the maximum number of IDs
+ * the API accepts. The response is then split so each lookup completes with a response holding only
+ * its own video, or no video if it is missing.
+ * <p>
+ * A batch is started on the thread that filled it, or on the timer thread when its window ends. The
+ * fetch only starts the request, which runs on the bulkhead of its endpoint, so neither thread
+ * blocks.
+ */
+@Singleton
+public class VideoBatcher {
+    // Number of IDs accepted by one videos.list request
+    public static final int MAX_BATCH_SIZE = 50;
+
+    private final int maxSize;
+    private final Executor delayedExecutor;
+    private Batch current;
+
+    /**
+     * Create a batcher from the tubelytics.youtube.video-batch configuration
+     *
+     * @param config Application configuration
+     */
+    @Inject
+    public VideoBatcher(Config config) {
+        Duration window = config.getDuration("tubelytics.youtube.video-batch.window");
+        int maxSize = config.getInt("tubelytics.youtube.video-batch.max-size");
+        if (window.isNegative() || maxSize <= 0 || maxSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        this.maxSize = maxSize;
+        // Batches are started on the timer thread itself, the fetch hands the request over to its bulkhead
+        this.delayedExecutor = CompletableFuture.delayedExecutor(window.toNanos(), TimeUnit.NANOSECONDS, Runnable::run);
+    }
+
+    /**
+     * Look a video up as part of the current batch, with a non-blocking request
+     * A batch is fetched with the function of the lookup that opened it, which must not block.
+     *
+     * @param id    Video ID
+     * @param fetch Function starting the request of a list of video IDs, without waiting for it
+     * @return CompletionStage of a response holding the video, or no video if it is missing
+     */
+    public CompletionStage<VideoListResponse> getAsync(String id, Function<List<String>, ? extends CompletionStage<VideoListResponse>> fetch) {
+        Batch full = null;
+        CompletableFuture<VideoListResponse> result;
+        synchronized (this) {
+            if (current == null) {
+                current = new Batch(fetch);
+                Batch opened = current;
+                delayedExecutor.execute(() -> send(opened));
+            }
+            result = current.lookups.computeIfAbsent(id, key -> new CompletableFuture<>());
+            if (current.lookups.size() >= maxSize) {
+                full = current;
+                current = null;
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    /**
+     * Close a batch to new lookups and mark it as sent
+     *
+     * @param batch Batch to send
+     * @return False if the batch was already sent
+     */
+    private synchronized boolean claim(Batch batch) {
+        if (batch.sent) {
+            return false;
+        }
+        batch.sent = true;
+        if (current == batch) {
+            current = null;
+        }
+        return true;
+    }
+
+    /**
+     * Send a batch and complete its lookups
+     * Does nothing if the batch was already sent because it was full.
+     *
+     * @param batch Batch to send
+     */
+    private void send(Batch batch) {
+        if (!claim(batch)) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(batch.lookups.keySet());
+        CompletionStage<VideoListResponse> request;
+        try {
+            request = batch.fetch.apply(ids);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((response, error) -> {
+            if (error != null) {
+                batch.lookups.values().forEach(lookup -> lookup.completeExceptionally(error));
+            } else {
+                split(ids, batch, response);
+            }
+        });
+    }
+
+    /**
+     * Complete the lookups of a batch with their own video of the response
+     *
+     * @param ids      IDs requested, in order
+     * @param batch    Batch sent
+     * @param response Response of the request
+     */
+    private static void split(List<String> ids, Batch batch, VideoListResponse response) {
+        if (ids.size() == 1) {
+            batch.lookups.get(ids.get(0)).complete(response);
+            return;
+        }
+        Map<String, List<Video>> videos = response.getItems() == null ? Map.of() : response.getItems().stream()
+            .filter(video -> video.getId() != null)
+            .collect(Collectors.groupingBy(Video::getId));
+        batch.lookups.forEach((id, lookup) ->
+            lookup.complete(new VideoListResponse().setItems(videos.getOrDefault(id, new ArrayList<>())))
+        );
+    }
+
+    /**
+     * Lookups waiting to be sent together
+     */
+    private static final class Batch {
+        private final Function<List<String>, ? extends CompletionStage<VideoListResponse>> fetch;
+        private final Map<String, CompletableFuture<VideoListResponse>> lookups = new LinkedHashMap<>();
+        private boolean sent;
+
+        /**
+         * Create an empty batch
+         *
+         * @param fetch Function starting the request of a list of video IDs
+         */
+        private Batch(Function<List<String>, ? extends CompletionStage<VideoListResponse>> fetch) {
+            this.fetch = fetch;
+        }
+    }
+}
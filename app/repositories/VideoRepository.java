@@ -2,8 +2,12 @@ package repositories;
 
 import models.ChannelModel;
 import models.SearchResultModel;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.stream.javadsl.Source;
 
+import java.time.Instant;
 import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -23,6 +27,49 @@ public interface VideoRepository {
      */
     CompletionStage<Stream<SearchResultModel>> search(String query);
 
+    /**
+     * Search for videos, with a priority against the API quota
+     * Repositories without a quota ignore the priority.
+     *
+     * @param query    Search query
+     * @param priority Priority of the request
+     * @return Stream of search results
+     */
+    default CompletionStage<Stream<SearchResultModel>> search(String query, QuotaGovernor.Priority priority) {
+        return search(query);
+    }
+
+    /**
+     * Search for the videos published since a time, newest first
+     * Repositories without incremental searches return the full results of the query, which callers
+     * tell apart from the results they already have.
+     *
+     * @param query          Search query
+     * @param publishedAfter Earliest publication time of the results, inclusive
+     * @param maxResults     Maximum number of results
+     * @param priority       Priority of the request against the API quota
+     * @return Stream of search results
+     */
+    default CompletionStage<Stream<SearchResultModel>> searchSince(String query, Instant publishedAfter, int maxResults, QuotaGovernor.Priority priority) {
+        return search(query, priority);
+    }
+
+    /**
+     * Stream the results of a search beyond the first page, newest first
+     * Pages are requested as the results are consumed. Repositories without pagination stream the
+     * results of {@link #search(String, QuotaGovernor.Priority)}.
+     *
+     * @param query      Search query
+     * @param maxResults Maximum number of results
+     * @param priority   Priority of the requests against the API quota
+     * @return Source of search results
+     */
+    default Source<SearchResultModel, NotUsed> searchAll(String query, int maxResults, QuotaGovernor.Priority priority) {
+        return Source.completionStage(search(query, priority))
+            .mapConcat(results -> results.collect(Collectors.toList()))
+            .take(maxResults);
+    }
+
     /**
      * Search for Channel Information
      *
@@ -32,6 +79,18 @@ public interface VideoRepository {
      */
     CompletionStage<ChannelModel> getChannelDetails(String channelID);
 
+    /**
+     * Search for Channel Information, with a priority against the API quota
+     * Repositories without a quota ignore the priority.
+     *
+     * @param channelID Channel ID
+     * @param priority  Priority of the requests
+     * @return Channel Model
+     */
+    default CompletionStage<ChannelModel> getChannelDetails(String channelID, QuotaGovernor.Priority priority) {
+        return getChannelDetails(channelID);
+    }
+
     /**
      * Get tags for a specific Video ID
      *
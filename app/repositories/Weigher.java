@@ -0,0 +1,43 @@
+package repositories;
+
+import com.google.api.client.json.GenericJson;
+
+/**
+ * Estimates the heap size of cache entries so a cache can be bounded by weight
+ *
+ * @param <T> Type of object to weigh
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+    // Parsed Google JSON models take several times the size of their serialized form on the heap
+    long JSON_HEAP_OVERHEAD = 4;
+
+    /**
+     * Estimate the size of an entry
+     *
+     * @param key   Key of the entry
+     * @param value Value of the entry
+     * @return Estimated size in bytes
+     */
+    long weigh(String key, T value);
+
+    /**
+     * Weigher giving every entry a weight of 1
+     *
+     * @param <T> Type of object to weigh
+     * @return Weigher
+     */
+    static <T> Weigher<T> singleton() {
+        return (key, value) -> 1;
+    }
+
+    /**
+     * Weigher estimating the size of Google JSON responses from their serialized length
+     *
+     * @param <T> Type of response to weigh
+     * @return Weigher
+     */
+    static <T extends GenericJson> Weigher<T> json() {
+        return (key, value) -> 2L * key.length() + JSON_HEAP_OVERHEAD * 2L * value.toString().length();
+    }
+}
@@ -0,0 +1,260 @@
+package repositories;
+
+import com.google.api.client.http.HttpResponseException;
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breakers and hedging of the YouTube API calls, one of each per endpoint
+ * <p>
+ * When YouTube is slow or failing, the circuit of an endpoint opens and its calls fail right away
+ * instead of holding the threads of its bulkhead, so the caches serve what they hold and users get
+ * an answer within their timeouts. Reads of the endpoints listed for hedging are sent again once
+ * they run longer than the configured percentile of their recent latencies.
+ */
+@Singleton
+public class YoutubeCircuits {
+    private final Map<QuotaGovernor.Call, CircuitBreaker> breakers = new EnumMap<>(QuotaGovernor.Call.class);
+    private final Map<QuotaGovernor.Call, Hedger> hedgers = new EnumMap<>(QuotaGovernor.Call.class);
+
+    /**
+     * Create circuits from the tubelytics.youtube.breaker and tubelytics.youtube.hedge configuration
+     *
+     * @param config Application configuration
+     */
+    @Inject
+    public YoutubeCircuits(Config config) {
+        String breaker = "tubelytics.youtube.breaker.";
+        String hedge = "tubelytics.youtube.hedge.";
+        List<String> hedged = config.getStringList(hedge + "endpoints");
+        // A shorter call timeout would give up on requests the client is still waiting on, and has already charged to the quota
+        if (config.getBoolean(breaker + "enabled")
+            && config.getDuration(breaker + "call-timeout").compareTo(config.getDuration("tubelytics.youtube.http.request-timeout")) < 0) {
+            throw new IllegalArgumentException("The breaker call-timeout must be at least the http request-timeout");
+        }
+        for (QuotaGovernor.Call call : QuotaGovernor.Call.values()) {
+            if (config.getBoolean(breaker + "enabled")) {
+                breakers.put(call, new CircuitBreaker(
+                    call.getConfigKey(),
+                    config.getInt(breaker + "max-failures"),
+                    config.getDuration(breaker + "call-timeout"),
+                    config.getDuration(breaker + "reset-timeout"),
+                    config.getDuration(breaker + "max-reset-timeout"),
+                    YoutubeCircuits::isUpstreamFailure,
+                    Ticker.systemTicker()
+                ));
+            }
+            if (config.getBoolean(hedge + "enabled") && hedged.contains(call.getConfigKey())) {
+                hedgers.put(call, new Hedger(
+                    config.getDouble(hedge + "percentile"),
+                    config.getDuration(hedge + "min-delay"),
+                    config.getInt(hedge + "window"),
+                    config.getInt(hedge + "min-samples"),
+                    config.getDouble(hedge + "max-ratio"),
+                    Ticker.systemTicker()
+                ));
+            }
+        }
+    }
+
+    /**
+     * Make a blocking call to an endpoint through its circuit, hedging it if the endpoint is hedged
+     * The call timeout starts once a thread of the executor runs the request, and a request the
+     * executor rejects does not count against the circuit. The quota is acquired once per call,
+     * so a hedge only sends the request again.
+     *
+     * @param call     Endpoint called
+     * @param acquire  Acquisition of the quota of the call, throwing if the quota refuses it
+     * @param request  Blocking request, which must be idempotent if the endpoint is hedged
+     * @param executor Executor running the request
+     * @param <T>      Type of result
+     * @return Future of the result, failed with an OpenCircuitException if the circuit refused the call
+     */
+    public <T> CompletableFuture<T> call(QuotaGovernor.Call call, Runnable acquire, Supplier<T> request, Executor executor) {
+        Runnable acquireOnce = once(acquire);
+        return callFromStart(call, started -> CompletableFuture.supplyAsync(() -> {
+            started.run();
+            acquireOnce.run();
+            return request.get();
+        }, executor));
+    }
+
+    /**
+     * Make a call to an endpoint through its circuit, hedging it if the endpoint is hedged
+     * The quota is acquired once per call, so a hedge only sends the request again.
+     *
+     * @param call    Endpoint called
+     * @param acquire Acquisition of the quota of the call, throwing if the quota refuses it
+     * @param request Request starting the call, which must be idempotent if the endpoint is hedged
+     * @param <T>     Type of result
+     * @return Future of the result, failed with an OpenCircuitException if the circuit refused the call
+     */
+    public <T> CompletableFuture<T> callAsync(QuotaGovernor.Call call, Runnable acquire, Supplier<? extends CompletionStage<T>> request) {
+        Runnable acquireOnce = once(acquire);
+        return callFromStart(call, started -> {
+            started.run();
+            acquireOnce.run();
+            return request.get();
+        });
+    }
+
+    /**
+     * Check if the circuit of an endpoint refuses calls
+     *
+     * @param call Endpoint
+     * @return True while the circuit of the endpoint is open
+     */
+    public boolean isOpen(QuotaGovernor.Call call) {
+        CircuitBreaker breaker = breakers.get(call);
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * Make a call to an endpoint through its circuit, timed from when its first request starts
+     *
+     * @param call    Endpoint called
+     * @param request Request starting the call, given a callback to run once it actually starts
+     * @param <T>     Type of result
+     * @return Future of the result, failed with an OpenCircuitException if the circuit refused the call
+     */
+    private <T> CompletableFuture<T> callFromStart(QuotaGovernor.Call call, Function<Runnable, ? extends CompletionStage<T>> request) {
+        Hedger hedger = hedgers.get(call);
+        Function<Runnable, ? extends CompletionStage<T>> hedgedRequest = hedger == null
+            ? request
+            : started -> hedger.call(() -> request.apply(started));
+        CircuitBreaker breaker = breakers.get(call);
+        if (breaker == null) {
+            try {
+                return hedgedRequest.apply(() -> {
+                }).toCompletableFuture();
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return breaker.callFromStart(hedgedRequest);
+    }
+
+    /**
+     * Run the acquisition of the quota of a call for its first request only
+     * A hedge running before the first request waits for the acquisition of whichever started
+     * first, and fails with it if the quota refused the call.
+     *
+     * @param acquire Acquisition of the quota
+     * @return Acquisition shared by the requests of the call
+     */
+    private static Runnable once(Runnable acquire) {
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        return () -> {
+            if (started.compareAndSet(false, true)) {
+                try {
+                    acquire.run();
+                } catch (RuntimeException e) {
+                    acquired.completeExceptionally(e);
+                    throw e;
+                }
+                acquired.complete(null);
+            }
+            acquired.join();
+        };
+    }
+
+    /**
+     * Fall back to the entry still held by a cache when a load of it fails because of the API or the quota
+     * Entries past their stale period are only dropped by the sweeper, so one may remain after
+     * the cache gave up on it, and serving it beats failing while YouTube is down or the budget is spent.
+     *
+     * @param cache  Cache of the value
+     * @param key    Key of the value
+     * @param result Result of the cache lookup
+     * @param <T>    Type of cached value
+     * @return Result of the lookup, or the entry held by the cache if the circuit was open, the API failed or the quota refused the load
+     */
+    public static <T> CompletionStage<T> orCached(Cache<T> cache, String key, CompletionStage<T> result) {
+        return result.handle((value, error) -> {
+            if (error == null) {
+                return value;
+            }
+            if (isOpenCircuit(error) || isUpstreamFailure(error) || isQuotaRefused(error)) {
+                Optional<T> cached = cache.peek(key);
+                if (cached.isPresent()) {
+                    return cached.get();
+                }
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        });
+    }
+
+    /**
+     * Check if a call was refused by an open circuit
+     *
+     * @param error Error of a call
+     * @return True if the error is an OpenCircuitException, possibly wrapped
+     */
+    static boolean isOpenCircuit(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreaker.OpenCircuitException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a call was refused by the quota
+     *
+     * @param error Error of a call
+     * @return True if the error is a QuotaExceededException, possibly wrapped
+     */
+    static boolean isQuotaRefused(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QuotaGovernor.QuotaExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if an error shows the API is unhealthy
+     * Timeouts, network errors, server errors and rate limiting are, while client errors, refused
+     * quotas and full bulkheads are not since YouTube answered or was never called.
+     *
+     * @param error Error of a call
+     * @return True if the error counts against the circuit
+     */
+    static boolean isUpstreamFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof HttpResponseException) {
+                int status = ((HttpResponseException) cause).getStatusCode();
+                return status >= 500 || status == 429;
+            }
+            if (cause instanceof AsyncYoutubeRepository.ApiException) {
+                int status = ((AsyncYoutubeRepository.ApiException) cause).getStatusCode();
+                return status >= 500 || status == 429;
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
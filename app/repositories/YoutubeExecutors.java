@@ -0,0 +1,139 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bulkheads running the blocking YouTube API calls, one per endpoint
+ * <p>
+ * Each endpoint has its own bounded pool, so a slow search cannot take the threads of channel pages,
+ * and none of the blocking calls run on the common pool used by the controllers and actors. In the
+ * virtual mode every call gets its own virtual thread and only the number of calls running at once
+ * is bounded, falling back to pools of platform threads when the JVM has no virtual threads.
+ */
+@Singleton
+public class YoutubeExecutors {
+    private static final Logger log = LoggerFactory.getLogger(YoutubeExecutors.class);
+    public static final String SEARCH = "search";
+    public static final String VIDEOS = "videos";
+    public static final String CHANNELS = "channels";
+    public static final String PLAYLISTS = "playlists";
+
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+
+    /**
+     * Create bulkheads of 4 threads and 100 queued calls per endpoint
+     */
+    public YoutubeExecutors() {
+        this(name -> Bulkhead.platform(name, 4, 100));
+    }
+
+    /**
+     * Create bulkheads sized by the tubelytics.youtube.executors configuration, shut down with the application
+     *
+     * @param config    Application configuration
+     * @param lifecycle Lifecycle of the application
+     */
+    @Inject
+    public YoutubeExecutors(Config config, ApplicationLifecycle lifecycle) {
+        this(factory(config));
+        lifecycle.addStopHook(() -> {
+            shutdown();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Create a bulkhead for every endpoint
+     *
+     * @param factory Factory creating the bulkhead of an endpoint from its name
+     */
+    private YoutubeExecutors(Function<String, Bulkhead> factory) {
+        for (String name : new String[]{SEARCH, VIDEOS, CHANNELS, PLAYLISTS}) {
+            bulkheads.put(name, factory.apply(name));
+        }
+    }
+
+    /**
+     * Create the factory of the bulkheads of the configured mode
+     *
+     * @param config Application configuration
+     * @return Factory creating the bulkhead of an endpoint from its name
+     */
+    private static Function<String, Bulkhead> factory(Config config) {
+        String prefix = "tubelytics.youtube.executors.";
+        String mode = config.getString(prefix + "mode");
+        if (!mode.equals("platform") && !mode.equals("virtual")) {
+            throw new IllegalArgumentException("Unknown executor mode: " + mode);
+        }
+        if (mode.equals("virtual")) {
+            if (Bulkhead.isVirtualSupported()) {
+                return name -> Bulkhead.virtual(name, config.getInt(prefix + name + ".max-concurrent"), config.getInt(prefix + name + ".queue-size"));
+            }
+            log.warn("Virtual threads need Java 21 or later, YouTube calls run on platform threads");
+        }
+        return name -> Bulkhead.platform(name, config.getInt(prefix + name + ".threads"), config.getInt(prefix + name + ".queue-size"));
+    }
+
+    /**
+     * Get the bulkhead of search requests
+     *
+     * @return Bulkhead
+     */
+    public Bulkhead search() {
+        return bulkheads.get(SEARCH);
+    }
+
+    /**
+     * Get the bulkhead of video requests
+     *
+     * @return Bulkhead
+     */
+    public Bulkhead videos() {
+        return bulkheads.get(VIDEOS);
+    }
+
+    /**
+     * Get the bulkhead of channel requests
+     *
+     * @return Bulkhead
+     */
+    public Bulkhead channels() {
+        return bulkheads.get(CHANNELS);
+    }
+
+    /**
+     * Get the bulkhead of playlist requests
+     *
+     * @return Bulkhead
+     */
+    public Bulkhead playlists() {
+        return bulkheads.get(PLAYLISTS);
+    }
+
+    /**
+     * Get every bulkhead by endpoint name
+     *
+     * @return Unmodifiable map of the bulkheads
+     */
+    public Map<String, Bulkhead> all() {
+        return Collections.unmodifiableMap(bulkheads);
+    }
+
+    /**
+     * Shut every bulkhead down
+     */
+    public void shutdown() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+    }
+}
@@ -1,20 +1,29 @@
 package repositories;
 
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.*;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import io.github.cdimascio.dotenv.Dotenv;
 import models.ChannelModel;
+import models.QueryCanonicalizer;
 import models.SearchResultModel;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.stream.javadsl.Source;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -28,23 +37,63 @@ import java.util.stream.Stream;
  * @author Wayan-Gwie Lapointe
  */
 public class YoutubeRepository implements VideoRepository {
-    private static final String API_KEY = Dotenv.load().get("YOUTUBE_API_KEY");
+    static final String API_KEY = Dotenv.load().get("YOUTUBE_API_KEY");
+    // Partial response masks, only the fields read into the models are sent by the API
+    static final String SEARCH_FIELDS = "etag,nextPageToken,items(id/videoId,snippet(title,channelTitle,description,channelId,publishedAt,thumbnails/default/url))";
+    static final String CHANNEL_FIELDS = "etag,items(snippet(title,description,country,thumbnails/default/url),"
+        + "contentDetails/relatedPlaylists/uploads,statistics(viewCount,subscriberCount,videoCount))";
+    static final String PLAYLIST_ITEM_FIELDS = "etag,items/snippet(title,channelTitle,description,channelId,resourceId/videoId,thumbnails/default/url)";
+    static final String VIDEO_FIELDS = "items(id,snippet/tags)";
     private final YouTube api;
     private final SearchCache cache;
     private final ChannelCache channelCache;
     private final PlayListsCache channelPlaylistCache;
+    private final VideoCache videoCache;
+    private final PopularQueries popularQueries;
+    private final QueryCanonicalizer canonicalizer;
+    private final VideoBatcher videoBatcher;
+    private final YoutubeExecutors executors;
+    private final QuotaGovernor quota;
+    private final YoutubeCircuits circuits;
 
     /**
      * Build an authorized API client repository.
      *
      * @author Wayan-Gwie Lapointe
      */
-    @Inject
     public YoutubeRepository(YouTube client, SearchCache cache, ChannelCache ccache, PlayListsCache pcache) {
+        this(client, cache, ccache, pcache, new VideoCache(), new PopularQueries(standalone()), new QueryCanonicalizer(standalone()), new VideoBatcher(standalone()),
+            new YoutubeExecutors(), new QuotaGovernor(standalone(), Ticker.systemTicker()), new YoutubeCircuits(standalone()));
+    }
+
+    /**
+     * Build an authorized API client repository.
+     *
+     * @param client         YouTube API client
+     * @param cache          Cache of search responses
+     * @param ccache         Cache of channel responses
+     * @param pcache         Cache of channel playlist responses
+     * @param vcache         Cache of video responses
+     * @param popularQueries Counts of the requested queries and channels, used to warm the caches up
+     * @param canonicalizer  Canonicalizer of the search queries, so spellings of a query share a cache entry
+     * @param videoBatcher   Batcher grouping concurrent video lookups into one request
+     * @param executors      Bulkheads running the blocking search, channel and playlist requests
+     * @param quota          Governor keeping the requests within the daily quota
+     * @param circuits       Circuit breakers and hedging of the requests of each endpoint
+     */
+    @Inject
+    public YoutubeRepository(YouTube client, SearchCache cache, ChannelCache ccache, PlayListsCache pcache, VideoCache vcache, PopularQueries popularQueries, QueryCanonicalizer canonicalizer, VideoBatcher videoBatcher, YoutubeExecutors executors, QuotaGovernor quota, YoutubeCircuits circuits) {
         this.cache = cache;
         this.api = client;
         this.channelCache = ccache;
         this.channelPlaylistCache = pcache;
+        this.videoCache = vcache;
+        this.popularQueries = popularQueries;
+        this.canonicalizer = canonicalizer;
+        this.videoBatcher = videoBatcher;
+        this.executors = executors;
+        this.quota = quota;
+        this.circuits = circuits;
     }
 
     /**
@@ -53,10 +102,33 @@ public class YoutubeRepository implements VideoRepository {
      * @author Wayan-Gwie Lapointe
      */
     public YoutubeRepository() throws IOException, GeneralSecurityException {
-        this.api = (new YoutubeProvider(GoogleNetHttpTransport.newTrustedTransport())).get();
+        this.api = (new YoutubeProvider(GoogleNetHttpTransport.newTrustedTransport(), ConfigFactory.load())).get();
         this.cache = new SearchCache();
         this.channelPlaylistCache = new PlayListsCache();
         this.channelCache = new ChannelCache();
+        this.videoCache = new VideoCache();
+        this.popularQueries = new PopularQueries(standalone());
+        this.canonicalizer = new QueryCanonicalizer(standalone());
+        this.videoBatcher = new VideoBatcher(standalone());
+        this.executors = new YoutubeExecutors();
+        this.quota = new QuotaGovernor(standalone(), Ticker.systemTicker());
+        this.circuits = new YoutubeCircuits(standalone());
+    }
+
+    /**
+     * Load the configuration of a repository built without injection
+     * Its quota never refuses a call and its circuits never open nor hedge, so it makes the calls
+     * as they are, and its popular queries are kept in memory only.
+     *
+     * @return Application configuration
+     */
+    private static Config standalone() {
+        return ConfigFactory.parseString(
+            "tubelytics.warmup.snapshot = \"\"\n"
+                + "tubelytics.quota.enabled = false\n"
+                + "tubelytics.youtube.breaker.enabled = false\n"
+                + "tubelytics.youtube.hedge.enabled = false"
+        ).withFallback(ConfigFactory.load());
     }
 
     /**
@@ -70,40 +142,164 @@ public class YoutubeRepository implements VideoRepository {
     }
 
     /**
-     * Search the YouTube API
+     * Search the YouTube API for a user waiting on the results
      *
      * @param query Search query
      * @return Stream of search results
      * @author Wayan-Gwie Lapointe
      */
     public CompletionStage<Stream<SearchResultModel>> search(String query) {
-        return CompletableFuture.supplyAsync(
-            () -> {
-                SearchListResponse response = cache.get(query).orElseGet(() -> {
+        return search(query, QuotaGovernor.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Search the YouTube API
+     * Queries are canonicalized first, so every spelling of a query shares the same results.
+     * While the circuit of the search endpoint is open, the results still held by the cache are returned.
+     *
+     * @param query    Search query
+     * @param priority Priority of the request against the quota
+     * @return Stream of search results, failed with a QuotaExceededException if the quota refuses the request
+     * or an OpenCircuitException if the circuit refuses it and nothing is cached
+     */
+    @Override
+    public CompletionStage<Stream<SearchResultModel>> search(String query, QuotaGovernor.Priority priority) {
+        String key = canonicalizer.canonicalize(query);
+        // Warm-ups and search ticks only replay popular queries, counting them would keep them popular forever
+        if (priority == QuotaGovernor.Priority.INTERACTIVE) {
+            popularQueries.recordSearch(key);
+        }
+        return YoutubeCircuits.orCached(cache, key, QuotaGovernor.loadShared(priority, () -> cache
+            .getOrLoadAsync(key, () -> circuits.call(QuotaGovernor.Call.SEARCH,
+                () -> quota.acquire(QuotaGovernor.Call.SEARCH, priority),
+                () -> revalidate(cache, key, etag -> {
+                    SearchListResponse response = requestSearch(key, null, 50, null, etag);
+                    return CompactResults.encode(mapSearchResults(response), cache.isCompressed()).withEtag(response.getEtag());
+                }), executors.search()))))
+            .thenApply(CompactResults::stream);
+    }
+
+    /**
+     * Search the YouTube API for the videos published since a time
+     * The results are not cached, since each caller polls from its own newest video.
+     *
+     * @param query          Search query
+     * @param publishedAfter Earliest publication time of the results, inclusive
+     * @param maxResults     Maximum number of results
+     * @param priority       Priority of the request against the quota
+     * @return Stream of the newest search results, failed with a QuotaExceededException if the quota refuses the request
+     * or an OpenCircuitException if the circuit of the search endpoint is open
+     */
+    @Override
+    public CompletionStage<Stream<SearchResultModel>> searchSince(String query, Instant publishedAfter, int maxResults, QuotaGovernor.Priority priority) {
+        String key = canonicalizer.canonicalize(query);
+        return circuits
+            .call(QuotaGovernor.Call.SEARCH,
+                () -> quota.acquire(QuotaGovernor.Call.SEARCH, priority),
+                () -> {
+                    try {
+                        return mapSearchResults(requestSearch(key, publishedAfter, maxResults, null, null));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executors.search())
+            .thenApply(List::stream);
+    }
+
+    /**
+     * Stream the results of a search across its pages
+     * The pages are not cached, deep searches are rare and would flush the first pages out of the cache.
+     *
+     * @param query      Search query
+     * @param maxResults Maximum number of results
+     * @param priority   Priority of the requests against the quota
+     * @return Source of search results, failed with a QuotaExceededException if the quota refuses a page
+     * or an OpenCircuitException if the circuit of the search endpoint is open
+     */
+    @Override
+    public Source<SearchResultModel, NotUsed> searchAll(String query, int maxResults, QuotaGovernor.Priority priority) {
+        String key = canonicalizer.canonicalize(query);
+        return SearchPages.source(maxResults, pageToken -> circuits
+            .call(QuotaGovernor.Call.SEARCH,
+                () -> quota.acquire(QuotaGovernor.Call.SEARCH, priority),
+                () -> {
                     try {
-                        // Define and execute the API request
-                        SearchListResponse newResponse = api
-                            .search()
-                            .list(Collections.singletonList("snippet"))
-                            .setMaxResults(50L)
-                            .setOrder("date")
-                            .setQ(query)
-                            .setType(List.of("video"))
-                            .setKey(API_KEY)
-                            .execute();
-                        cache.put(query, newResponse);
-                        return newResponse;
+                        SearchListResponse response = requestSearch(key, null, SearchPages.pageSize(maxResults), pageToken, null);
+                        return new SearchPages.Page(mapSearchResults(response), response.getNextPageToken());
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
-                });
+                }, executors.search()));
+    }
 
-                return response
-                    .getItems()
-                    .stream()
-                    .map(this::mapSearchResultToSearchResultModel);
+    /**
+     * Request the newest videos of a search
+     *
+     * @param key            Canonical search query
+     * @param publishedAfter Earliest publication time of the results, null for no limit
+     * @param maxResults     Maximum number of results
+     * @param pageToken      Token of the page to request, null for the first one
+     * @param etag           ETag of the cached response to revalidate, null for none
+     * @return Search response, newest first
+     * @throws IOException If the request fails, including with a 304 status when the cached response is still valid
+     */
+    private SearchListResponse requestSearch(String key, Instant publishedAfter, int maxResults, String pageToken, String etag) throws IOException {
+        // Define and execute the API request
+        YouTube.Search.List request = api
+            .search()
+            .list(Collections.singletonList("snippet"))
+            .setMaxResults((long) maxResults)
+            .setOrder("date")
+            .setQ(key)
+            .setType(List.of("video"))
+            .setFields(SEARCH_FIELDS);
+        if (publishedAfter != null) {
+            request = request.setPublishedAfter(publishedAfter.toString());
+        }
+        if (pageToken != null) {
+            request = request.setPageToken(pageToken);
+        }
+        if (etag != null) {
+            request.getRequestHeaders().setIfNoneMatch(etag);
+        }
+        return request
+            .setKey(API_KEY)
+            .execute();
+    }
+
+    /**
+     * Map the items of a search response to SearchResultModels
+     *
+     * @param response Search response
+     * @return Search results, in the order of the response
+     */
+    private List<SearchResultModel> mapSearchResults(SearchListResponse response) {
+        return items(response.getItems()).stream().map(this::mapSearchResultToSearchResultModel).collect(Collectors.toList());
+    }
+
+    /**
+     * Load a value, revalidating the one still cached for its key with the ETag of its response
+     * A 304 status means the response is unchanged, so the cached value is kept without downloading
+     * nor parsing the response again.
+     *
+     * @param cache   Cache of the value
+     * @param key     Key of the value
+     * @param request Request sending the given ETag in an If-None-Match header when it is not null
+     * @param <T>     Type of cached value
+     * @return Value built from the response, or the cached value if the response is unchanged
+     */
+    private static <T extends CompactValue> T revalidate(Cache<T> cache, String key, ConditionalRequest<T> request) {
+        T previous = cache.peek(key).filter(value -> value.getEtag() != null).orElse(null);
+        try {
+            return request.execute(previous == null ? null : previous.getEtag());
+        } catch (HttpResponseException e) {
+            if (previous != null && e.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED) {
+                return previous;
             }
-        );
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -121,112 +317,192 @@ public class YoutubeRepository implements VideoRepository {
             searchResult.getSnippet().getDescription(),
             "https://www.youtube.com/watch?v=" + searchResult.getId().getVideoId(),
             searchResult.getSnippet().getChannelId(),
-            searchResult.getSnippet().getThumbnails().getDefault().getUrl()
+            searchResult.getSnippet().getThumbnails().getDefault().getUrl(),
+            searchResult.getSnippet().getPublishedAt() == null ? 0 : searchResult.getSnippet().getPublishedAt().getValue()
         );
     }
 
     /**
      * search YouTube by video ID to get a stream of String
+     * Concurrent lookups of uncached videos are batched into one request.
      *
      * @param Id Video ID of YouTube
      * @return CompletionStage of stream of String
      * @author Feng Zhao
      */
     public CompletionStage<Stream<String>> getTagsById(String Id) {
-        return CompletableFuture.supplyAsync(
-            () -> {
-                VideoListResponse response = getYouTubeVideoListResponse(Collections.singletonList(Id));
-                if (response.getItems().get(0).getSnippet().getTags() == null) {
-                    return Arrays.stream(new String[]{""});
-                }
-                return response
-                    .getItems()
-                    .stream()
-                    .map(video -> video.getSnippet().getTags())
-                    .flatMap(List::stream)
-                    .map(str -> str.replaceAll("[`~!@#$%^&*()_+\\[\\]\\\\;',./{}|:\"<>?]", ""));
-            }
-        );
+        return YoutubeCircuits.orCached(videoCache, Id, videoCache
+            .getOrLoadAsync(Id, () -> videoBatcher.getAsync(Id, ids -> circuits.call(QuotaGovernor.Call.VIDEOS,
+                () -> quota.acquire(QuotaGovernor.Call.VIDEOS, QuotaGovernor.Priority.INTERACTIVE),
+                () -> getYouTubeVideoListResponse(ids), executors.videos()))))
+            .thenApply(YoutubeRepository::tags);
+    }
+
+    /**
+     * Get the tags of the video of a response, without punctuation
+     *
+     * @param response Video response
+     * @return Stream of tags, empty if the video is missing and a single empty tag if it has no tags
+     * @author Feng Zhao
+     */
+    static Stream<String> tags(VideoListResponse response) {
+        if (isEmpty(response.getItems())) {
+            // Missing or deleted video
+            return Stream.empty();
+        }
+        if (response.getItems().get(0).getSnippet().getTags() == null) {
+            return Arrays.stream(new String[]{""});
+        }
+        return response
+            .getItems()
+            .stream()
+            .map(video -> video.getSnippet().getTags())
+            .flatMap(List::stream)
+            .map(str -> str.replaceAll("[`~!@#$%^&*()_+\\[\\]\\\\;',./{}|:\"<>?]", ""));
     }
 
     /**
      * Channel Search the YouTube API
      *
      * @param channelID Search Channel Prefix
-     * @return Stream of search results
+     * @return Stream of search results, failed with a NoSuchElementException if the channel does not exist
      * @author Yulin Zhang
      */
     public CompletableFuture<ChannelModel> getChannelDetails(String channelID) {
-        return CompletableFuture.supplyAsync(
-            () -> {
-                ChannelListResponse response = channelCache.get(channelID)
-                    .orElseGet(() -> {
-                        try {
-                            YouTube.Channels.List channelsListByIdRequest = api.channels()
-                                .list(Collections.singletonList("snippet,contentDetails,statistics"))
-                                .setKey(API_KEY)
-                                .setId(Collections.singletonList(channelID)); // Use the provided channel ID
-                            ChannelListResponse responseChannel = channelsListByIdRequest.execute();
-                            channelCache.put(channelID, responseChannel);
-                            return responseChannel;
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-
-                Channel channel = response.getItems().get(0);
-
-                String uploadsPlaylistId = channel
-                    .getContentDetails()
-                    .getRelatedPlaylists()
-                    .getUploads();
-
-                PlaylistItemListResponse playlistResponse = channelPlaylistCache.get(channelID)
-                    .orElseGet(() -> {
-                        try {
-                            // Get the videos in the uploads playlist
-                            YouTube.PlaylistItems.List playlistItemsRequest = api.playlistItems()
-                                .list(Collections.singletonList("snippet"))
-                                .setPlaylistId(uploadsPlaylistId)
-                                .setMaxResults(10L) // Limit the number of results
-                                .setKey(API_KEY);
-
-                            PlaylistItemListResponse playlistItemResult = playlistItemsRequest.execute();
-                            channelPlaylistCache.put(channelID, playlistItemResult);
-                            return playlistItemResult;
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-
-
-                List<SearchResultModel> playList = playlistResponse
-                    .getItems()
-                    .stream()
-                    .map(x -> new SearchResultModel(
-                        x.getSnippet().getResourceId().getVideoId(),
-                        x.getSnippet().getTitle(),
-                        x.getSnippet().getChannelTitle(),
-                        x.getSnippet().getDescription(),
-                        "https://www.youtube.com/watch?v=" + x.getSnippet().getResourceId().getVideoId(),
-                        x.getSnippet().getChannelId(),
-                        x.getSnippet().getThumbnails().getDefault().getUrl()
-                    )).collect(Collectors.toList());
-
-                return new ChannelModel(
-                    channel.getSnippet().getTitle(),
-                    channel.getSnippet().getDescription(),
-                    channel.getSnippet().getCountry(),
-                    channel.getStatistics().getViewCount().toString(),
-                    channel.getStatistics().getSubscriberCount().toString(),
-                    channel.getStatistics().getVideoCount().toString(),
-                    channel.getSnippet().getThumbnails().getDefault().getUrl(),
-                    playList
-                );
-            }
+        return getChannelDetails(channelID, QuotaGovernor.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Channel Search the YouTube API
+     *
+     * @param channelID Search Channel Prefix
+     * @param priority  Priority of the requests against the quota
+     * @return Stream of search results, failed with a NoSuchElementException if the channel does not exist
+     * @author Yulin Zhang
+     */
+    @Override
+    public CompletableFuture<ChannelModel> getChannelDetails(String channelID, QuotaGovernor.Priority priority) {
+        if (priority == QuotaGovernor.Priority.INTERACTIVE) {
+            popularQueries.recordChannel(channelID);
+        }
+        return YoutubeCircuits.orCached(channelCache, channelID, QuotaGovernor.loadShared(priority, () -> channelCache
+            .getOrLoadAsync(channelID, () -> circuits.call(QuotaGovernor.Call.CHANNELS,
+                () -> quota.acquire(QuotaGovernor.Call.CHANNELS, priority),
+                () -> revalidate(channelCache, channelID, etag -> {
+                    YouTube.Channels.List channelsListByIdRequest = api.channels()
+                        .list(Collections.singletonList("snippet,contentDetails,statistics"))
+                        .setKey(API_KEY)
+                        .setId(Collections.singletonList(channelID)) // Use the provided channel ID
+                        .setFields(CHANNEL_FIELDS);
+                    if (etag != null) {
+                        channelsListByIdRequest.getRequestHeaders().setIfNoneMatch(etag);
+                    }
+                    ChannelListResponse response = channelsListByIdRequest.execute();
+                    return mapChannelToCompactChannel(response).withEtag(response.getEtag());
+                }), executors.channels()))))
+            .thenCompose(channel -> {
+                if (channel.isEmpty()) {
+                    return CompletableFuture.<ChannelModel>failedFuture(new NoSuchElementException("Channel not found: " + channelID));
+                }
+
+                return YoutubeCircuits.orCached(channelPlaylistCache, channelID, QuotaGovernor.loadShared(priority, () -> channelPlaylistCache
+                    .getOrLoadAsync(channelID, () -> circuits.call(QuotaGovernor.Call.PLAYLIST_ITEMS,
+                        () -> quota.acquire(QuotaGovernor.Call.PLAYLIST_ITEMS, priority),
+                        () -> revalidate(channelPlaylistCache, channelID, etag -> {
+                            try {
+                                // Get the videos in the uploads playlist
+                                YouTube.PlaylistItems.List playlistItemsRequest = api.playlistItems()
+                                    .list(Collections.singletonList("snippet"))
+                                    .setPlaylistId(channel.getUploadsPlaylistId())
+                                    .setMaxResults(10L) // Limit the number of results
+                                    .setKey(API_KEY)
+                                    .setFields(PLAYLIST_ITEM_FIELDS);
+                                if (etag != null) {
+                                    playlistItemsRequest.getRequestHeaders().setIfNoneMatch(etag);
+                                }
+
+                                PlaylistItemListResponse response = playlistItemsRequest.execute();
+                                return CompactResults.encode(
+                                    items(response.getItems()).stream().map(this::mapPlaylistItemToSearchResultModel).collect(Collectors.toList()),
+                                    channelPlaylistCache.isCompressed()
+                                ).withEtag(response.getEtag());
+                            } catch (GoogleJsonResponseException e) {
+                                if (e.getStatusCode() == 404) {
+                                    // Channels without uploads have no uploads playlist, cache that as an empty one
+                                    return CompactResults.encode(Collections.emptyList(), false);
+                                }
+                                throw e;
+                            }
+                        }), executors.playlists()))))
+                    .thenApply(playlist -> channel.toChannelModel(playlist.stream().collect(Collectors.toList())));
+            })
+            .toCompletableFuture();
+    }
+
+    /**
+     * Check if a response has no items
+     *
+     * @param items Items of the response
+     * @return True if there are no items
+     */
+    static boolean isEmpty(List<?> items) {
+        return items == null || items.isEmpty();
+    }
+
+    /**
+     * Get the items of a response, which are missing when there are none
+     *
+     * @param items Items of the response
+     * @param <T>   Type of item
+     * @return Items, possibly empty
+     */
+    private static <T> List<T> items(List<T> items) {
+        return items == null ? Collections.emptyList() : items;
+    }
+
+    /**
+     * map a channel response to the compact form cached for it
+     *
+     * @param response Channel response
+     * @return CompactChannel, missing if the response has no channel
+     * @author Yulin Zhang
+     */
+    private CompactChannel mapChannelToCompactChannel(ChannelListResponse response) {
+        if (isEmpty(response.getItems())) {
+            return CompactChannel.missing();
+        }
+        Channel channel = response.getItems().get(0);
+        return CompactChannel.encode(
+            channel.getContentDetails().getRelatedPlaylists().getUploads(),
+            channel.getSnippet().getTitle(),
+            channel.getSnippet().getDescription(),
+            channel.getSnippet().getCountry(),
+            channel.getStatistics().getViewCount().toString(),
+            channel.getStatistics().getSubscriberCount().toString(),
+            channel.getStatistics().getVideoCount().toString(),
+            channel.getSnippet().getThumbnails().getDefault().getUrl(),
+            channelCache.isCompressed()
         );
     }
 
+    /**
+     * map a playlist item to SearchResultModel
+     *
+     * @param item Playlist item to be mapped
+     * @return SearchResultModel
+     * @author Yulin Zhang
+     */
+    private SearchResultModel mapPlaylistItemToSearchResultModel(PlaylistItem item) {
+        return new SearchResultModel(
+            item.getSnippet().getResourceId().getVideoId(),
+            item.getSnippet().getTitle(),
+            item.getSnippet().getChannelTitle(),
+            item.getSnippet().getDescription(),
+            "https://www.youtube.com/watch?v=" + item.getSnippet().getResourceId().getVideoId(),
+            item.getSnippet().getChannelId(),
+            item.getSnippet().getThumbnails().getDefault().getUrl()
+        );
+    }
 
     /**
      * get YouTube Video List Response
@@ -242,6 +518,7 @@ public class YoutubeRepository implements VideoRepository {
                 .list(Collections.singletonList("snippet"))
                 .setId(Ids)
                 .setMaxResults(50L)
+                .setFields(VIDEO_FIELDS)
                 .setKey(API_KEY)
                 .execute();
         } catch (IOException e) {
@@ -250,21 +527,76 @@ public class YoutubeRepository implements VideoRepository {
     }
 
     /**
-     * Cache specialized for holding YouTube search responses
+     * API request that can be made conditional on the ETag of a cached response
+     *
+     * @param <T> Type of value built from the response
+     */
+    @FunctionalInterface
+    private interface ConditionalRequest<T> {
+        /**
+         * Send the request
+         *
+         * @param etag ETag to send in an If-None-Match header, null to send an unconditional request
+         * @return Value built from the response
+         * @throws IOException If the request fails or the response is unchanged
+         */
+        T execute(String etag) throws IOException;
+    }
+
+    /**
+     * Cache specialized for holding compact YouTube search results
      *
      * @author Wayan-Gwie Lapointe
      */
     @Singleton
-    public static class SearchCache extends Cache<SearchListResponse> {
+    public static class SearchCache extends CompactCache<CompactResults> {
+        /**
+         * Create an unbounded cache
+         */
+        public SearchCache() {
+            super();
+        }
+
+        /**
+         * Create a cache bounded and timed by the tubelytics.cache.search configuration
+         * Empty results expire after tubelytics.cache.negative-ttl, the others follow how often
+         * new videos appear when tubelytics.cache.adaptive is enabled, and the cache is backed by
+         * a persistent tier when tubelytics.cache.l2 is enabled
+         *
+         * @param config Application configuration
+         */
+        @Inject
+        public SearchCache(Config config) {
+            super(config, "search", CompactResults::fromBytes, AdaptiveExpiry.fromConfig(config, "search", CompactResults::getIds));
+        }
     }
 
     /**
-     * Cache specialized for holding YouTube Channel Response
+     * Cache specialized for holding compact YouTube channel details
      *
      * @author Yulin Zhang
      */
     @Singleton
-    public static class ChannelCache extends Cache<ChannelListResponse> {
+    public static class ChannelCache extends CompactCache<CompactChannel> {
+        /**
+         * Create an unbounded cache
+         */
+        public ChannelCache() {
+            super();
+        }
+
+        /**
+         * Create a cache bounded and timed by the tubelytics.cache.channel configuration
+         * Empty channels expire after tubelytics.cache.negative-ttl, and the cache is backed by
+         * a persistent tier when tubelytics.cache.l2 is enabled
+         *
+         * @param config Application configuration
+         */
+        @Inject
+        public ChannelCache(Config config) {
+            super(config, "channel", CompactChannel::fromBytes,
+                Expiry.fixed(config.getDuration("tubelytics.cache.channel.ttl")));
+        }
     }
 
     /**
@@ -273,7 +605,64 @@ public class YoutubeRepository implements VideoRepository {
      * @author Yulin Zhang
      */
     @Singleton
-    public static class PlayListsCache extends Cache<PlaylistItemListResponse> {
+    public static class PlayListsCache extends CompactCache<CompactResults> {
+        /**
+         * Create an unbounded cache
+         */
+        public PlayListsCache() {
+            super();
+        }
+
+        /**
+         * Create a cache bounded and timed by the tubelytics.cache.playlists configuration
+         * Empty playlists expire after tubelytics.cache.negative-ttl, the others follow how often
+         * new uploads appear when tubelytics.cache.adaptive is enabled, and the cache is backed by
+         * a persistent tier when tubelytics.cache.l2 is enabled
+         *
+         * @param config Application configuration
+         */
+        @Inject
+        public PlayListsCache(Config config) {
+            super(config, "playlists", CompactResults::fromBytes, AdaptiveExpiry.fromConfig(config, "playlists", CompactResults::getIds));
+        }
+    }
+
+    /**
+     * Cache specialized for holding YouTube video responses
+     */
+    @Singleton
+    public static class VideoCache extends Cache<VideoListResponse> {
+        /**
+         * Create an unbounded cache
+         */
+        public VideoCache() {
+            super();
+        }
+
+        /**
+         * Create a cache bounded and timed by the tubelytics.cache.video configuration
+         * Empty responses expire after tubelytics.cache.negative-ttl, and the cache is backed by
+         * a persistent tier when tubelytics.cache.l2 is enabled
+         *
+         * @param config Application configuration
+         */
+        @Inject
+        public VideoCache(Config config) {
+            super(
+                config.getLong("tubelytics.cache.video.max-entries"),
+                config.getBytes("tubelytics.cache.video.max-bytes"),
+                Weigher.json(),
+                config.getDuration("tubelytics.cache.video.ttl"),
+                config.getDuration("tubelytics.cache.video.stale-while-revalidate"),
+                Ticker.systemTicker()
+            );
+            setExpiry(Expiry.negative(
+                config.getDuration("tubelytics.cache.video.ttl"),
+                config.getDuration("tubelytics.cache.negative-ttl"),
+                response -> isEmpty(response.getItems())
+            ));
+            PersistentCacheTier.fromConfig(config, "video", new JsonCodec<>(VideoListResponse.class)).ifPresent(this::setSecondTier);
+        }
     }
 
     /**
@@ -286,16 +675,21 @@ public class YoutubeRepository implements VideoRepository {
         private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
         private final NetHttpTransport httpTransport;
+        private final int connectTimeout;
+        private final int readTimeout;
 
         /**
          * Build a YouTube API client provider
          *
          * @param httpTransport NetHttpTransport to use
+         * @param config        Application configuration, holding the tubelytics.youtube.http timeouts
          * @author Wayan-Gwie Lapointe
          */
         @Inject
-        public YoutubeProvider(NetHttpTransport httpTransport) {
+        public YoutubeProvider(NetHttpTransport httpTransport, Config config) {
             this.httpTransport = httpTransport;
+            this.connectTimeout = (int) config.getDuration("tubelytics.youtube.http.connect-timeout").toMillis();
+            this.readTimeout = (int) config.getDuration("tubelytics.youtube.http.request-timeout").toMillis();
         }
 
         /**
@@ -306,7 +700,9 @@ public class YoutubeRepository implements VideoRepository {
          */
         @Override
         public YouTube get() {
-            return new YouTube.Builder(httpTransport, JSON_FACTORY, null)
+            return new YouTube.Builder(httpTransport, JSON_FACTORY, request -> request
+                .setConnectTimeout(connectTimeout)
+                .setReadTimeout(readTimeout))
                 .setApplicationName(APPLICATION_NAME)
                 .build();
         }
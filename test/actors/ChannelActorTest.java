@@ -8,7 +8,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
 import org.apache.pekko.testkit.javadsl.TestKit;
+import repositories.SourceVideoRepository;
 import repositories.VideoRepository;
 
 import java.util.ArrayList;
@@ -47,18 +50,19 @@ public class ChannelActorTest{
                 ActorRef channelActor = system.actorOf(props());
 
                 // Send the ChannelRequest message
-                ChannelActor.ChannelRequest searchMsg = new ChannelActor.ChannelRequest("test-query", mockVideoRepository);
+                ChannelActor.ChannelRequest searchMsg = new ChannelActor.ChannelRequest("test-query", new SourceVideoRepository(mockVideoRepository));
                 channelActor.tell(searchMsg, getRef());
 
                 // Expect the actor to send a ChannelResponse message
                 ChannelActor.ChannelResponse response = expectMsgClass(ChannelResponse.class);
 
-                // Assertions
+                // Assertions, the repository is only called once the channel is materialized
                 Assert.assertNotNull(response);
-                Assert.assertEquals(mockFuture, response.channelModel);
+                verify(mockVideoRepository, never()).getChannelDetails("test-query");
+                response.channelModel.runWith(Sink.ignore(), Materializer.matFromSystem(system));
 
                 // Verify interaction with the mock repository
-                verify(mockVideoRepository).getChannelDetails("test-query");
+                verify(mockVideoRepository, timeout(3000)).getChannelDetails("test-query");
             }
         };
     }
@@ -93,7 +97,7 @@ public class ChannelActorTest{
             ActorRef channelActor = system.actorOf(props());
 
             // Send the SearchVideos message
-            ChannelActor.ChannelRequest searchMsg = new ChannelRequest(query, mockVideoRepository);
+            ChannelActor.ChannelRequest searchMsg = new ChannelRequest(query, new SourceVideoRepository(mockVideoRepository));
             channelActor.tell(searchMsg, getRef());
 
             // Expect the actor to send a VideosReturned message
@@ -101,18 +105,16 @@ public class ChannelActorTest{
 
             // Assertions
             Assert.assertNotNull(response);
-            Assert.assertEquals(mockFuture, response.channelModel);
 
             // Verify the response contains the sample data
-            response.channelModel.thenAccept(result -> {
-                Assert.assertEquals("channel title", result.getTitle());
-                Assert.assertEquals("channel description", result.getDescription());
-                Assert.assertEquals("channel country", result.getCountry());
-                Assert.assertEquals("channel view count", result.getTitle());
-                Assert.assertEquals("channel subscribe", result.getSubscriberCount());
-                Assert.assertEquals("channel video count", result.getVideoCount());
-                Assert.assertEquals("channel image link", result.getThumbnailHyperlink());
-            });
+            ChannelModel result = response.channelModel.runWith(Sink.head(), Materializer.matFromSystem(system)).toCompletableFuture().join();
+            Assert.assertEquals("channel title", result.getTitle());
+            Assert.assertEquals("channel description", result.getDescription());
+            Assert.assertEquals("channel country", result.getCountry());
+            Assert.assertEquals("channel view count", result.getViewCount());
+            Assert.assertEquals("channel subscribe", result.getSubscriberCount());
+            Assert.assertEquals("channel video count", result.getVideoCount());
+            Assert.assertEquals("channel image link", result.getThumbnailHyperlink());
 
             // Verify interaction with the mock repository
             verify(mockVideoRepository).getChannelDetails(query);
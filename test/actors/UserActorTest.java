@@ -59,6 +59,38 @@ public class UserActorTest extends TestCase {
         assertEquals(2, result.get("results").size());
     }
 
+    /**
+     * check results of the canonical query are relayed with every spelling the user started
+     */
+    public void testSearchResultOriginalQuery() {
+        actorRef.tell(new UserActorProtocol.ClientRequest("start", "Cats"), wsOutProbe.getRef());
+        videoSupervisorProbe.expectMsgClass(VideoSupervisorActorProtocol.StartSearch.class);
+        actorRef.tell(new UserActorProtocol.ClientRequest("start", "dogs"), wsOutProbe.getRef());
+        videoSupervisorProbe.expectMsgClass(VideoSupervisorActorProtocol.StartSearch.class);
+
+        actorRef.tell(new VideoSearchActorProtocol.SingleSearchResult("cats", testStream.get(0)), videoSupervisorProbe.getRef());
+        JsonNode result = wsOutProbe.expectMsgClass(JsonNode.class);
+        assertEquals("SingleResult", result.get("code").asText());
+        assertEquals("Cats", result.get("query").asText());
+        wsOutProbe.expectNoMessage();
+    }
+
+    /**
+     * check the search is only ended once no other spelling of the query is started
+     */
+    public void testClientRequestStopOtherSpelling() {
+        actorRef.tell(new UserActorProtocol.ClientRequest("start", "Cats"), wsOutProbe.getRef());
+        actorRef.tell(new UserActorProtocol.ClientRequest("start", "cats "), wsOutProbe.getRef());
+        videoSupervisorProbe.expectMsgClass(VideoSupervisorActorProtocol.StartSearch.class);
+        videoSupervisorProbe.expectMsgClass(VideoSupervisorActorProtocol.StartSearch.class);
+
+        actorRef.tell(new UserActorProtocol.ClientRequest("stop", "Cats"), wsOutProbe.getRef());
+        videoSupervisorProbe.expectNoMessage();
+        actorRef.tell(new UserActorProtocol.ClientRequest("stop", "cats "), wsOutProbe.getRef());
+        VideoSupervisorActorProtocol.EndSearch result = videoSupervisorProbe.expectMsgClass(VideoSupervisorActorProtocol.EndSearch.class);
+        assertEquals("cats ", result.getQuery());
+    }
+
     /**
      * check if we receive a VideoSupervisorActorProtocol.StartSearch object when we send
      * UserActorProtocol.ClientRequest object with code "start"
@@ -1,12 +1,20 @@
 package actors;
 
+import actors.protocols.ReadingCalculatorProtocol;
+import actors.protocols.SentimentCalculatorProtocol;
 import actors.protocols.VideoSearchActorProtocol;
+import com.typesafe.config.ConfigFactory;
 import junit.framework.TestCase;
 import models.SearchResultModel;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
 import org.apache.pekko.actor.Props;
+import org.apache.pekko.testkit.TestActor;
 import org.apache.pekko.testkit.javadsl.TestKit;
+import repositories.QuotaGovernor;
+import repositories.ScoredSearchCache;
+import repositories.SourceVideoRepository;
+import repositories.Ticker;
 import repositories.VideoRepository;
 
 import java.util.concurrent.CompletableFuture;
@@ -67,14 +75,19 @@ public class VideoSearchActorTest extends TestCase {
         ActorRef sentimentCalculatorActor = actorSystem.actorOf(Props.create(SentimentCalculatorActor.class));
         ActorRef readingCalculatorActor = actorSystem.actorOf(Props.create(ReadingCalculatorActor.class));
 
-        when(videoRepositoryMock.search(anyString()))
+        when(videoRepositoryMock.search(anyString(), any()))
             .thenReturn(
                 CompletableFuture.completedFuture(Stream.of(mockResult, mockResult2)),
                 CompletableFuture.completedFuture(Stream.of(mockResult, mockResult2,mockResult3))
             );
 
+        // Scored results expire right away so every tick searches again
+        ScoredSearchCache scoredSearchCache = new ScoredSearchCache(ConfigFactory.parseString(
+            "tubelytics.cache.scored-search { max-entries = 0, max-bytes = 0, ttl = 1ns, stale-while-revalidate = 0s }\n"
+                + "tubelytics.cache.adaptive.enabled = false"));
+
         videoSearchActor = actorSystem.actorOf(Props.create(VideoSearchActor.class,
-            () -> new VideoSearchActor("testQuery", videoRepositoryMock,readingCalculatorActor ,sentimentCalculatorActor )));
+            () -> new VideoSearchActor("testQuery", new SourceVideoRepository(videoRepositoryMock), scoredSearchCache, readingCalculatorActor, sentimentCalculatorActor, unlimitedQuota())));
     }
 
     /**
@@ -159,6 +172,49 @@ public class VideoSearchActorTest extends TestCase {
         }};
     }
 
+    /**
+     * Tests the searches are run and their results handled by the actor, with calculators leaving the scores as they are
+     */
+    public void testSearchWithStubCalculators() {
+        new TestKit(actorSystem) {{
+            ScoredSearchCache scoredSearchCache = new ScoredSearchCache(ConfigFactory.parseString(
+                "tubelytics.cache.scored-search { max-entries = 0, max-bytes = 0, ttl = 1ns, stale-while-revalidate = 0s }\n"
+                    + "tubelytics.cache.adaptive.enabled = false"));
+            ActorRef readingCalculator = getStubCalculator();
+            ActorRef sentimentCalculator = getStubCalculator();
+            ActorRef actor = actorSystem.actorOf(Props.create(VideoSearchActor.class,
+                () -> new VideoSearchActor("testQuery", new SourceVideoRepository(videoRepositoryMock), scoredSearchCache, readingCalculator, sentimentCalculator, unlimitedQuota())));
+
+            actor.tell(new VideoSearchActorProtocol.Subscribe(getRef()), getRef());
+            VideoSearchActorProtocol.MultipleSearchResult search = expectMsgClass(VideoSearchActorProtocol.MultipleSearchResult.class);
+            assertEquals(2, search.results.size());
+            actor.tell(new VideoSearchActorProtocol.Tick(), getRef());
+            assertEquals(mockResult3, expectMsgClass(VideoSearchActorProtocol.SingleSearchResult.class).result);
+            expectNoMessage();
+        }};
+    }
+
+    /**
+     * Create a calculator replying with the results it is sent, unscored
+     *
+     * @return Calculator
+     */
+    private ActorRef getStubCalculator() {
+        TestKit calculator = new TestKit(actorSystem);
+        calculator.setAutoPilot(new TestActor.AutoPilot() {
+            @Override
+            public TestActor.AutoPilot run(ActorRef sender, Object message) {
+                if (message instanceof ReadingCalculatorProtocol.AddReadingStats) {
+                    sender.tell(((ReadingCalculatorProtocol.AddReadingStats) message).getResults(), ActorRef.noSender());
+                } else {
+                    sender.tell(((SentimentCalculatorProtocol.AddSentimentScore) message).getResults(), ActorRef.noSender());
+                }
+                return keepRunning();
+            }
+        });
+        return calculator.getRef();
+    }
+
     /**
      * terminating the actorSystem
      *
@@ -170,4 +226,13 @@ public class VideoSearchActorTest extends TestCase {
         actorSystem = null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Create a quota governor that never refuses a call
+     *
+     * @return Quota governor
+     */
+    private static QuotaGovernor unlimitedQuota() {
+        return new QuotaGovernor(ConfigFactory.parseString("tubelytics.quota.enabled = false").withFallback(ConfigFactory.load()),
+            Ticker.systemTicker());
+    }
+}
@@ -18,6 +18,7 @@ public class VideoSupervisorActorTest extends TestCase {
     private ActorSystem actorSystem;
     private ActorRef videoSupervisorActor;
     private TestKit testKit;
+    private VideoSearchActorProtocol.Factory searchFactoryMock;
 
     /**
      * initializing all the necessary variables and mocking the VideoSearchActorProtocol.Factory
@@ -28,7 +29,7 @@ public class VideoSupervisorActorTest extends TestCase {
     public void setUp() {
 
         actorSystem = ActorSystem.create();
-        VideoSearchActorProtocol.Factory searchFactoryMock = mock(VideoSearchActorProtocol.Factory.class);
+        searchFactoryMock = mock(VideoSearchActorProtocol.Factory.class);
         testKit = new TestKit(actorSystem);
         when(searchFactoryMock.create(anyString()))
             .thenAnswer(invocation -> new ForwardingActor(testKit.getRef()));
@@ -88,6 +89,21 @@ public class VideoSupervisorActorTest extends TestCase {
         }};
     }
 
+    /**
+     * checking the spellings of a query share a single VideoSearchActor searching the canonical query
+     */
+    public void testCreateReceiveStartSearchCanonicalQuery() {
+        new TestKit(actorSystem) {{
+            videoSupervisorActor.tell(new VideoSupervisorActorProtocol.StartSearch("Cats"), getRef());
+            testKit.expectMsgClass(VideoSearchActorProtocol.Subscribe.class);
+            videoSupervisorActor.tell(new VideoSupervisorActorProtocol.StartSearch(" CATS "), getRef());
+            testKit.expectMsgClass(VideoSearchActorProtocol.Subscribe.class);
+            videoSupervisorActor.tell(new VideoSupervisorActorProtocol.EndSearch("cats"), getRef());
+            testKit.expectMsgClass(VideoSearchActorProtocol.Unsubscribe.class);
+            verify(searchFactoryMock, times(1)).create("cats");
+        }};
+    }
+
     /**
      * checking if a query doesn't already exist , we don't receive anything back
      *
@@ -8,8 +8,12 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
 import org.apache.pekko.testkit.javadsl.TestKit;
+import repositories.SourceVideoRepository;
 import repositories.VideoRepository;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
@@ -72,7 +76,7 @@ public class WordStatsActorTest{
                 ActorRef wordStatsActor = system.actorOf(props());
 
                 // Send the SearchVideos message
-                SearchVideos searchMsg = new SearchVideos("test-query", mockVideoRepository);
+                SearchVideos searchMsg = new SearchVideos("test-query", new SourceVideoRepository(mockVideoRepository));
                 wordStatsActor.tell(searchMsg, getRef());
 
                 // Mock the search result
@@ -82,9 +86,10 @@ public class WordStatsActorTest{
                 // Expect the actor to send a VideosReturned message
                 VideosReturned response = expectMsgClass(VideosReturned.class);
 
-                // Assertions
+                // Assertions, the repository is only searched once the results are materialized
                 Assert.assertNotNull(response);
-                Assert.assertEquals(mockFuture, response.Videos);
+                verify(mockVideoRepository, never()).search("test-query");
+                Assert.assertTrue(response.Videos.runWith(Sink.seq(), Materializer.matFromSystem(system)).toCompletableFuture().join().isEmpty());
 
                 // Verify interaction with the mock repository
                 verify(mockVideoRepository).search("test-query");
@@ -140,7 +145,7 @@ public class WordStatsActorTest{
             ActorRef wordStatsActor = system.actorOf(props());
 
             // Send the SearchVideos message
-            SearchVideos searchMsg = new SearchVideos(query, mockVideoRepository);
+            SearchVideos searchMsg = new SearchVideos(query, new SourceVideoRepository(mockVideoRepository));
             wordStatsActor.tell(searchMsg, getRef());
 
             // Expect the actor to send a VideosReturned message
@@ -148,25 +153,22 @@ public class WordStatsActorTest{
 
             // Assertions
             Assert.assertNotNull(response);
-            Assert.assertEquals(mockFuture, response.Videos);
 
             // Verify the response contains the sample data
-            response.Videos.thenAccept(results -> {
-                var resultList = results.toList();
-                Assert.assertEquals(2, resultList.size());
-
-                // Validate first result
-                SearchResultModel firstResult = resultList.get(0);
-                Assert.assertEquals("ID one", firstResult.getId());
-                Assert.assertEquals("Title One", firstResult.getTitle());
-                Assert.assertEquals("Sample description one, unique", firstResult.getDescription());
-
-                // Validate second result
-                SearchResultModel secondResult = resultList.get(1);
-                Assert.assertEquals("ID two", secondResult.getId());
-                Assert.assertEquals("Title Two,", secondResult.getTitle());
-                Assert.assertEquals("Sample description two, I'm testing", secondResult.getDescription());
-            });
+            List<SearchResultModel> resultList = response.Videos.runWith(Sink.seq(), Materializer.matFromSystem(system)).toCompletableFuture().join();
+            Assert.assertEquals(2, resultList.size());
+
+            // Validate first result
+            SearchResultModel firstResult = resultList.get(0);
+            Assert.assertEquals("ID one", firstResult.getId());
+            Assert.assertEquals("Title One", firstResult.getTitle());
+            Assert.assertEquals("Sample description one, unique", firstResult.getDescription());
+
+            // Validate second result
+            SearchResultModel secondResult = resultList.get(1);
+            Assert.assertEquals("ID two", secondResult.getId());
+            Assert.assertEquals("Title Two,", secondResult.getTitle());
+            Assert.assertEquals("Sample description two, I'm testing", secondResult.getDescription());
 
             // Verify interaction with the mock repository
             verify(mockVideoRepository).search(query);
@@ -0,0 +1,118 @@
+package controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+import play.libs.Json;
+import play.mvc.Result;
+import repositories.CompactResults;
+import repositories.QuotaGovernor;
+import repositories.ScoredSearchCache;
+import repositories.Ticker;
+import repositories.YoutubeExecutors;
+import repositories.YoutubeRepository.ChannelCache;
+import repositories.YoutubeRepository.PlayListsCache;
+import repositories.YoutubeRepository.SearchCache;
+import repositories.YoutubeRepository.VideoCache;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+import static play.mvc.Http.Status.NOT_FOUND;
+import static play.mvc.Http.Status.OK;
+import static play.test.Helpers.contentAsString;
+
+/**
+ * Tests for the AdminController
+ */
+public class AdminControllerTest {
+    private static final Config ENABLED = ConfigFactory.parseString("tubelytics.admin.enabled = true");
+
+    /**
+     * Tests the cache statistics are returned as JSON
+     */
+    @Test
+    public void testCacheStats() {
+        SearchCache searchCache = new SearchCache();
+        searchCache.put("Test", CompactResults.encode(List.of(), false));
+        searchCache.get("Test");
+        searchCache.get("Other");
+        searchCache.getOrLoad("Loaded", () -> CompactResults.encode(List.of(), false)).toCompletableFuture().join();
+
+        AdminController controller = new AdminController(searchCache, new ChannelCache(), new PlayListsCache(), new VideoCache(), new ScoredSearchCache(), new YoutubeExecutors(), new QuotaGovernor(ConfigFactory.load(), Ticker.systemTicker()), ENABLED);
+        Result result = controller.cacheStats();
+        assertEquals(OK, result.status());
+        assertEquals("application/json", result.contentType().get());
+
+        JsonNode json = Json.parse(contentAsString(result));
+        JsonNode search = json.get("search");
+        assertEquals(1, search.get("hitCount").asLong());
+        assertEquals(2, search.get("missCount").asLong());
+        assertEquals(1, search.get("loadSuccessCount").asLong());
+        assertEquals(2, search.get("size").asLong());
+        long loads = 0;
+        for (JsonNode bucket : search.get("loadLatencyMillis")) {
+            loads += bucket.asLong();
+        }
+        assertEquals(1, loads);
+        assertEquals(0, json.get("channel").get("hitCount").asLong());
+        assertTrue(json.has("playlists"));
+        assertTrue(json.has("scored-search"));
+    }
+
+    /**
+     * Tests the bulkhead statistics are returned as JSON
+     */
+    @Test
+    public void testExecutorStats() {
+        YoutubeExecutors executors = new YoutubeExecutors();
+        CompletableFuture.runAsync(() -> { }, executors.search()).join();
+
+        AdminController controller = new AdminController(new SearchCache(), new ChannelCache(), new PlayListsCache(), new VideoCache(), new ScoredSearchCache(), executors, new QuotaGovernor(ConfigFactory.load(), Ticker.systemTicker()), ENABLED);
+        Result result = controller.executorStats();
+        assertEquals(OK, result.status());
+
+        JsonNode json = Json.parse(contentAsString(result));
+        assertFalse(json.get("search").get("virtual").asBoolean());
+        assertEquals(4, json.get("search").get("threads").asInt());
+        assertEquals(100, json.get("search").get("queueSize").asInt());
+        assertEquals(0, json.get("search").get("rejected").asLong());
+        assertTrue(json.has("videos"));
+        assertTrue(json.has("channels"));
+        assertTrue(json.has("playlists"));
+    }
+
+    /**
+     * Tests the quota state is returned as JSON
+     */
+    @Test
+    public void testQuotaStats() {
+        QuotaGovernor quota = new QuotaGovernor(ConfigFactory.load(), () -> 0L);
+        quota.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE);
+
+        AdminController controller = new AdminController(new SearchCache(), new ChannelCache(), new PlayListsCache(), new VideoCache(), new ScoredSearchCache(), new YoutubeExecutors(), quota, ENABLED);
+        Result result = controller.quotaStats();
+        assertEquals(OK, result.status());
+
+        JsonNode json = Json.parse(contentAsString(result));
+        assertTrue(json.get("enabled").asBoolean());
+        assertEquals(900, json.get("available").asLong());
+        assertEquals(0.9, json.get("level").asDouble(), 1e-9);
+        assertFalse(json.get("exhausted").asBoolean());
+        assertEquals(1, json.get("interactive").get("granted").asLong());
+        assertEquals(0, json.get("background").get("denied").asLong());
+    }
+
+    /**
+     * Tests the actions answer 404 unless they are enabled, as they are by default
+     */
+    @Test
+    public void testDisabled() {
+        AdminController controller = new AdminController(new SearchCache(), new ChannelCache(), new PlayListsCache(), new VideoCache(), new ScoredSearchCache(), new YoutubeExecutors(), new QuotaGovernor(ConfigFactory.load(), Ticker.systemTicker()), ConfigFactory.load());
+        assertEquals(NOT_FOUND, controller.cacheStats().status());
+        assertEquals(NOT_FOUND, controller.executorStats().status());
+        assertEquals(NOT_FOUND, controller.quotaStats().status());
+    }
+}
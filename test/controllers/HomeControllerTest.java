@@ -5,12 +5,16 @@ import actors.ChannelActor.*;
 import actors.TagActor;
 import actors.WordStatsActor;
 import actors.WordStatsActor.*;
+import com.typesafe.config.ConfigFactory;
 
 import models.ChannelModel;
+import models.QueryCanonicalizer;
+import models.SearchBatch;
 import models.SearchResultModel;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
 import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.testkit.TestActor;
 import org.apache.pekko.testkit.javadsl.TestKit;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -24,10 +28,13 @@ import org.mockito.Mockito;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.WebSocket;
+import repositories.ScoredSearchCache;
+import repositories.SourceVideoRepository;
 import repositories.VideoRepository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.concurrent.CompletableFuture;
@@ -38,6 +45,7 @@ import static actors.WordStatsActor.props;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 import static play.mvc.Http.Status.INTERNAL_SERVER_ERROR;
+import static play.mvc.Http.Status.NOT_FOUND;
 import static play.mvc.Http.Status.OK;
 import static play.test.Helpers.GET;
 import static play.test.Helpers.contentAsString;
@@ -70,7 +78,7 @@ public class HomeControllerTest {
      */
     @Test
     public void testHomeControllerCreation() {
-        HomeController homeController = new HomeController(mock(VideoRepository.class), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(mock(VideoRepository.class)), new ScoredSearchCache(), canonicalizer(), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
         assertNotNull(homeController);
     }
 
@@ -81,7 +89,7 @@ public class HomeControllerTest {
      */
     @Test
     public void testIndexContent() {
-        HomeController homeController = new HomeController(mock(VideoRepository.class), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(mock(VideoRepository.class)), new ScoredSearchCache(), canonicalizer(), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
 
         Http.RequestBuilder request = new Http.RequestBuilder()
             .method(GET)
@@ -110,7 +118,7 @@ public class HomeControllerTest {
             "thumbnail_link"
         ))));
 
-        HomeController homeController = new HomeController(videos, mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(videos), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
 
         Result result = homeController.search("test").toCompletableFuture().join();
         assertEquals(OK, result.status());
@@ -119,6 +127,57 @@ public class HomeControllerTest {
         assertTrue(contentAsString(result).contains("Description 1"));
     }
 
+    /**
+     * Tests a search with cached scored results does not search again
+     */
+    @Test
+    public void testSearchContentCached() {
+        VideoRepository videos = Mockito.mock(VideoRepository.class);
+        ScoredSearchCache scoredSearchCache = new ScoredSearchCache();
+        scoredSearchCache.put("test", new SearchBatch(List.of(new SearchResultModel(
+            "Id 1",
+            "Title 1",
+            "Channel 1",
+            "Description 1",
+            "video_link",
+            "channel_link",
+            "thumbnail_link"
+        ))));
+
+        HomeController homeController = new HomeController(new SourceVideoRepository(videos), scoredSearchCache, canonicalizer(), system, Materializer.matFromSystem(system), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+
+        Result result = homeController.search("test").toCompletableFuture().join();
+        assertEquals(OK, result.status());
+        assertTrue(contentAsString(result).contains("Title 1"));
+        verify(videos, never()).search(anyString());
+    }
+
+    /**
+     * Tests a spelling of a cached query uses the cached results and shows the query as typed
+     */
+    @Test
+    public void testSearchCanonicalQuery() {
+        VideoRepository videos = Mockito.mock(VideoRepository.class);
+        ScoredSearchCache scoredSearchCache = new ScoredSearchCache();
+        scoredSearchCache.put("cats and dogs", new SearchBatch(List.of(new SearchResultModel(
+            "Id 1",
+            "Title 1",
+            "Channel 1",
+            "Description 1",
+            "video_link",
+            "channel_link",
+            "thumbnail_link"
+        ))));
+
+        HomeController homeController = new HomeController(new SourceVideoRepository(videos), scoredSearchCache, canonicalizer(), system, Materializer.matFromSystem(system), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+
+        Result result = homeController.search("Cats  AND Dogs").toCompletableFuture().join();
+        assertEquals(OK, result.status());
+        assertTrue(contentAsString(result).contains("Cats  AND Dogs"));
+        assertTrue(contentAsString(result).contains("Title 1"));
+        verify(videos, never()).search(anyString());
+    }
+
     /**
      * Tests a failed search
      *
@@ -129,7 +188,7 @@ public class HomeControllerTest {
         VideoRepository videos = Mockito.mock(VideoRepository.class);
         when(videos.search(anyString())).thenThrow(RuntimeException.class);
 
-        HomeController homeController = new HomeController(mock(VideoRepository.class), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(mock(VideoRepository.class)), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
 
         assertThrows(RuntimeException.class, () -> homeController.search("test").toCompletableFuture().join());
     }
@@ -141,7 +200,7 @@ public class HomeControllerTest {
      */
     @Test
     public void testSearchSkeleton() {
-        HomeController homeController = new HomeController(mock(VideoRepository.class), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(mock(VideoRepository.class)), new ScoredSearchCache(), canonicalizer(), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
 
         String testQuery = "testQuery";
         Result result = homeController.searchSkeleton(testQuery);
@@ -159,7 +218,7 @@ public class HomeControllerTest {
      */
     @Test
     public void testWs() {
-        HomeController homeController = new HomeController(mock(VideoRepository.class), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
+        HomeController homeController = new HomeController(new SourceVideoRepository(mock(VideoRepository.class)), new ScoredSearchCache(), canonicalizer(), mock(ActorSystem.class), mock(Materializer.class), mock(ActorRef.class), mock(TagActor.class).self(), mock(WordStatsActor.class).self(), mock(ChannelActor.class).self());
         WebSocket webSocket = homeController.ws();
         assertNotNull(webSocket);
     }
@@ -191,7 +250,7 @@ public class HomeControllerTest {
                 }
             }).start();
 
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null,  tagActor, null, null);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null,  tagActor, null, null);
             Http.Request mockHttpRequest = mock(Http.Request.class);
             homeController.setRequest(mockHttpRequest);
 
@@ -232,7 +291,7 @@ public class HomeControllerTest {
                 }
             }).start();
 
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null,  tagActor, null, null);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null,  tagActor, null, null);
             Http.Request mockHttpRequest = mock(Http.Request.class);
             homeController.setRequest(mockHttpRequest);
 
@@ -299,7 +358,7 @@ public class HomeControllerTest {
             // Mock the actor response
             CompletionStage<Stream<SearchResultModel>> mockFuture = CompletableFuture.completedFuture(mockResults);
             when(mockVideoRepository.search(query)).thenReturn(mockFuture);
-            VideosReturned mockResponse = new VideosReturned(mockFuture);
+            VideosReturned mockResponse = new VideosReturned(new SourceVideoRepository(mockVideoRepository).search(query));
 
             // Expect the actor to receive a SearchVideos message and reply with the mock response
             new Thread(() -> {
@@ -313,7 +372,7 @@ public class HomeControllerTest {
             }).start();
 
             // Create HomeController with mocks
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null, null, wordStatsActor, null);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null, null, wordStatsActor, null);
 
             // Call the wordStatistics method
             Result result = homeController.wordStatistics(query).toCompletableFuture().join();
@@ -364,23 +423,17 @@ public class HomeControllerTest {
             // Mock VideoRepository
             VideoRepository mockVideoRepository = mock(VideoRepository.class);
 
-            // Create the WordStatsActor
-            ActorRef wordStatsActor = system.actorOf(props());
-
-            // Mock the actor to respond with an unexpected type
-            new Thread(() -> {
-                try {
-                    // Expect a SearchVideos message and respond with a plain String
-                    SearchVideos message = expectMsgClass(SearchVideos.class);
-                    assertEquals("something", message.query); // Confirm the correct query is sent
-                    getRef().tell("Unexpected Response", ActorRef.noSender()); // Send an unexpected response
-                } catch (AssertionError e) {
-                    log.error(e.getMessage());
+            // Mock the actor to respond with an unexpected type, a plain String
+            setAutoPilot(new TestActor.AutoPilot() {
+                @Override
+                public TestActor.AutoPilot run(ActorRef sender, Object message) {
+                    sender.tell("Unexpected Response", ActorRef.noSender());
+                    return noAutoPilot();
                 }
-            }).start();
+            });
 
             // Create HomeController with mocks
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null, null, wordStatsActor, null);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null, null, getRef(), null);
 
             // Call the wordStatistics method
             Result result = homeController.wordStatistics("something").toCompletableFuture().join();
@@ -390,6 +443,9 @@ public class HomeControllerTest {
             String content = contentAsString(result);
             System.out.println(content);
             assertTrue(content.contains("Unexpected response"));
+
+            // Confirm the correct query is sent
+            assertEquals("something", expectMsgClass(SearchVideos.class).query);
         }};
     }
 
@@ -413,7 +469,7 @@ public class HomeControllerTest {
                     SearchVideos message = expectMsgClass(SearchVideos.class);
                     assertEquals("error-query", message.query);
 
-                    VideosReturned mockResponse = new VideosReturned(failedFuture);
+                    VideosReturned mockResponse = new VideosReturned(new SourceVideoRepository(mockVideoRepository).search("error-query"));
                     getRef().tell(mockResponse, ActorRef.noSender());
                 } catch (AssertionError e) {
                     log.error(e.getMessage());
@@ -421,7 +477,7 @@ public class HomeControllerTest {
             }).start();
 
             // Create HomeController with mocks
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null, null, wordStatsActor, null);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null, null, wordStatsActor, null);
 
             // Call the wordStatistics method
             Result result = homeController.wordStatistics("error-query").toCompletableFuture().join();
@@ -469,7 +525,7 @@ public class HomeControllerTest {
             // Mock the actor response
             CompletionStage<ChannelModel> mockFuture = CompletableFuture.completedFuture(mockResult);
             when(mockVideoRepository.getChannelDetails(query)).thenReturn(mockFuture);
-            ChannelResponse mockResponse = new ChannelResponse(mockFuture);
+            ChannelResponse mockResponse = new ChannelResponse(new SourceVideoRepository(mockVideoRepository).getChannelDetails(query));
 
             // Expect the actor to receive a ChannelRequest message and reply with the mock response
             new Thread(() -> {
@@ -483,7 +539,7 @@ public class HomeControllerTest {
             }).start();
 
             // Create HomeController with mocks
-            HomeController homeController = new HomeController(mockVideoRepository, system, null, null,  null, null, channelActor);
+            HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null,  null, null, channelActor);
 
             // Call the channel search method
             Result result = homeController.searchChannel(query).toCompletableFuture().join();
@@ -496,4 +552,28 @@ public class HomeControllerTest {
             assertTrue(content.contains("Subscribers"));
         }};
     }
+
+    /**
+     * Tests a channel search for a missing channel is not found
+     */
+    @Test
+    public void testSearchChannelNotFound() {
+        VideoRepository mockVideoRepository = mock(VideoRepository.class);
+        when(mockVideoRepository.getChannelDetails("missing"))
+                .thenReturn(CompletableFuture.failedFuture(new NoSuchElementException("Channel not found: missing")));
+        ActorRef channelActor = system.actorOf(ChannelActor.props());
+
+        HomeController homeController = new HomeController(new SourceVideoRepository(mockVideoRepository), new ScoredSearchCache(), canonicalizer(), system, Materializer.matFromSystem(system), null, null, null, channelActor);
+        Result result = homeController.searchChannel("missing").toCompletableFuture().join();
+        assertEquals(NOT_FOUND, result.status());
+    }
+
+    /**
+     * Create a canonicalizer keeping the order of the terms
+     *
+     * @return Canonicalizer
+     */
+    private static QueryCanonicalizer canonicalizer() {
+        return new QueryCanonicalizer(ConfigFactory.parseString("tubelytics.query.ignore-term-order = false"));
+    }
 }
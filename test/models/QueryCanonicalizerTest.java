@@ -0,0 +1,65 @@
+package models;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the QueryCanonicalizer
+ */
+public class QueryCanonicalizerTest {
+    /**
+     * Tests case and whitespace differences share a key
+     */
+    @Test
+    public void testCaseAndWhitespace() {
+        QueryCanonicalizer canonicalizer = new QueryCanonicalizer(getConfig(false));
+        assertEquals("cats", canonicalizer.canonicalize("Cats"));
+        assertEquals("cats", canonicalizer.canonicalize("cats "));
+        assertEquals("cats", canonicalizer.canonicalize("CATS"));
+        assertEquals("funny cats", canonicalizer.canonicalize("  Funny \t\n CATS  "));
+        assertEquals("", canonicalizer.canonicalize("   "));
+        assertEquals("", canonicalizer.canonicalize(null));
+    }
+
+    /**
+     * Tests Unicode compatibility forms and case folding
+     */
+    @Test
+    public void testUnicode() {
+        QueryCanonicalizer canonicalizer = new QueryCanonicalizer(getConfig(false));
+        // Composed and decomposed accents
+        assertEquals(canonicalizer.canonicalize("caf\u00e9"), canonicalizer.canonicalize("CAFE\u0301"));
+        // Full width letters and the fi ligature
+        assertEquals("fifa", canonicalizer.canonicalize("\uff26\uff29\uff26\uff21"));
+        assertEquals("fifa", canonicalizer.canonicalize("\ufb01fa"));
+        // Sharp s folds like its upper case form
+        assertEquals(canonicalizer.canonicalize("STRASSE"), canonicalizer.canonicalize("Stra\u00dfe"));
+        // No-break and ideographic spaces
+        assertEquals("cats dogs", canonicalizer.canonicalize("cats\u00a0dogs\u3000"));
+    }
+
+    /**
+     * Tests term order is kept unless configured otherwise
+     */
+    @Test
+    public void testTermOrder() {
+        assertEquals("dogs cats", new QueryCanonicalizer(getConfig(false)).canonicalize("Dogs Cats"));
+
+        QueryCanonicalizer unordered = new QueryCanonicalizer(getConfig(true));
+        assertEquals("cats dogs", unordered.canonicalize("Dogs  cats"));
+        assertEquals(unordered.canonicalize("cats dogs"), unordered.canonicalize("DOGS CATS"));
+    }
+
+    /**
+     * Create the configuration of a canonicalizer
+     *
+     * @param ignoreTermOrder True to sort the terms of the queries
+     * @return Configuration
+     */
+    private static Config getConfig(boolean ignoreTermOrder) {
+        return ConfigFactory.parseString("tubelytics.query.ignore-term-order = " + ignoreTermOrder);
+    }
+}
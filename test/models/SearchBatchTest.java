@@ -0,0 +1,37 @@
+package models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the SearchBatch
+ */
+public class SearchBatchTest {
+    /**
+     * Tests the batch does not change with the list it was created from
+     */
+    @Test
+    public void testImmutable() {
+        List<SearchResultModel> results = new ArrayList<>();
+        results.add(getResult("1"));
+        SearchBatch batch = new SearchBatch(results);
+        results.add(getResult("2"));
+
+        assertEquals(1, batch.getResults().size());
+        assertThrows(UnsupportedOperationException.class, () -> batch.getResults().add(getResult("3")));
+    }
+
+    /**
+     * Create a result
+     *
+     * @param id Id of the video
+     * @return Result
+     */
+    private static SearchResultModel getResult(String id) {
+        return new SearchResultModel(id, "Title", "Channel", "Description", "video_link", "channel_link", "thumbnail_link");
+    }
+}
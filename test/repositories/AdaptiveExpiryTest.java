@@ -0,0 +1,127 @@
+package repositories;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the AdaptiveExpiry
+ */
+public class AdaptiveExpiryTest {
+    private AtomicLong time;
+    private AdaptiveExpiry<List<String>> expiry;
+
+    /**
+     * Create an expiry between 30 seconds and 30 minutes starting at 3 minutes
+     */
+    @Before
+    public void setUp() {
+        time = new AtomicLong();
+        expiry = new AdaptiveExpiry<>(Function.identity(), Duration.ofMinutes(3), Duration.ofSeconds(30),
+            Duration.ofMinutes(30), Duration.ofHours(2), 1, 2, time::get);
+    }
+
+    /**
+     * Tests keys without history get the initial time to live
+     */
+    @Test
+    public void testInitial() {
+        assertTrue(expiry.getTimeToLive("cats").isEmpty());
+        assertEquals(Duration.ofMinutes(3), expiry.timeToLive("cats", List.of("a", "b")));
+        assertEquals(Duration.ofMinutes(3), expiry.getTimeToLive("cats").get());
+    }
+
+    /**
+     * Tests the time to live of a query without new results doubles up to the maximum
+     */
+    @Test
+    public void testQuietGrows() {
+        expiry.timeToLive("cats", List.of("a", "b"));
+        time.addAndGet(Duration.ofMinutes(3).toNanos());
+        assertEquals(Duration.ofMinutes(6), expiry.timeToLive("cats", List.of("b", "a")));
+        time.addAndGet(Duration.ofMinutes(6).toNanos());
+        assertEquals(Duration.ofMinutes(12), expiry.timeToLive("cats", List.of("a", "b")));
+        time.addAndGet(Duration.ofMinutes(12).toNanos());
+        assertEquals(Duration.ofMinutes(24), expiry.timeToLive("cats", List.of("a", "b")));
+        time.addAndGet(Duration.ofMinutes(24).toNanos());
+        assertEquals(Duration.ofMinutes(30), expiry.timeToLive("cats", List.of("a", "b")));
+    }
+
+    /**
+     * Tests the time to live of a query with new results shrinks to the time expected for one new result
+     */
+    @Test
+    public void testBusyShrinks() {
+        expiry.timeToLive("news", List.of("a", "b"));
+        time.addAndGet(Duration.ofMinutes(3).toNanos());
+        assertEquals(Duration.ofSeconds(45), expiry.timeToLive("news", List.of("c", "d", "e", "f")));
+
+        // A burst faster than the minimum is clamped
+        time.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(Duration.ofSeconds(30), expiry.timeToLive("news", List.of("g", "h", "i", "j", "k", "l")));
+    }
+
+    /**
+     * Tests past bursts weigh less as time goes by
+     */
+    @Test
+    public void testDecay() {
+        expiry.timeToLive("news", List.of("a"));
+        time.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals(Duration.ofSeconds(30), expiry.timeToLive("news", List.of("b", "c")));
+
+        // Six hours later the burst barely counts, so the time to live doubles
+        time.addAndGet(Duration.ofHours(6).toNanos());
+        assertEquals(Duration.ofMinutes(1), expiry.timeToLive("news", List.of("b", "c")));
+    }
+
+    /**
+     * Tests only the most recently loaded keys are remembered
+     */
+    @Test
+    public void testMaxTracked() {
+        expiry.timeToLive("cats", List.of("a"));
+        expiry.timeToLive("dogs", List.of("a"));
+        expiry.timeToLive("cats", List.of("a"));
+        expiry.timeToLive("birds", List.of("a"));
+        assertTrue(expiry.getTimeToLive("cats").isPresent());
+        assertTrue(expiry.getTimeToLive("dogs").isEmpty());
+        assertTrue(expiry.getTimeToLive("birds").isPresent());
+    }
+
+    /**
+     * Tests invalid bounds are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new AdaptiveExpiry<List<String>>(Function.identity(), Duration.ofMinutes(3), Duration.ofMinutes(5),
+            Duration.ofMinutes(1), Duration.ofHours(2), 1, 10, time::get);
+    }
+
+    /**
+     * Tests the configuration gives a fixed time to live when adaptive expiry is disabled
+     */
+    @Test
+    public void testFromConfig() {
+        Expiry<List<String>> fixed = AdaptiveExpiry.fromConfig(ConfigFactory.parseString(
+            "tubelytics.cache.search.ttl = 3m\n"
+                + "tubelytics.cache.adaptive.enabled = false"
+        ), "search", Function.identity());
+        assertFalse(fixed instanceof AdaptiveExpiry);
+        assertEquals(Duration.ofMinutes(3), fixed.timeToLive("cats", List.of("a")));
+
+        Expiry<List<String>> adaptive = AdaptiveExpiry.fromConfig(ConfigFactory.parseString(
+            "tubelytics.cache.search.ttl = 3m\n"
+                + "tubelytics.cache.adaptive { enabled = true, min-ttl = 30s, max-ttl = 30m, window = 2h, target-new-results = 1, max-tracked = 10 }"
+        ), "search", Function.identity());
+        assertTrue(adaptive instanceof AdaptiveExpiry);
+        assertEquals(Duration.ofMinutes(3), adaptive.timeToLive("cats", List.of("a")));
+    }
+}
@@ -0,0 +1,404 @@
+package repositories;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import models.ChannelModel;
+import models.QueryCanonicalizer;
+import models.SearchResultModel;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the AsyncYoutubeRepository, against a local server answering like the YouTube API
+ */
+public class AsyncYoutubeRepositoryTest {
+    private static ActorSystem system;
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> etags = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private AsyncYoutubeRepository repository;
+
+    /**
+     * Create the actor system running the streams
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        system = ActorSystem.create("AsyncYoutubeRepositoryTestSystem");
+    }
+
+    /**
+     * Shut the actor system down
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    /**
+     * Start the server and create a repository calling it
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        repository = new AsyncYoutubeRepository(
+            HttpClient.newHttpClient(),
+            "http://127.0.0.1:" + server.getAddress().getPort(),
+            Duration.ofSeconds(5),
+            new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(),
+            new YoutubeRepository.PlayListsCache(),
+            new YoutubeRepository.VideoCache(),
+            popularQueries(),
+            canonicalizer(),
+            batcher("200ms"),
+            quota("enabled = false"),
+            circuits(0)
+        );
+    }
+
+    /**
+     * Stop the server
+     */
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Answer a request with the response registered for its endpoint
+     *
+     * @param exchange Request and response
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String endpoint = exchange.getRequestURI().getPath().substring(1);
+        requests.add(endpoint + "?" + URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8));
+        Response response = responses.getOrDefault(endpoint, new Response(404, "{\"error\":{\"message\":\"Not found\"}}", false));
+        String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        etags.add(String.valueOf(etag));
+        if (etag != null && etag.equals(response.etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        if (response.gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Tests a search is parsed from a gzip response, cached and sent with the canonical query
+     */
+    @Test
+    public void testSearch() {
+        responses.put("search", new Response(200, "{\"items\":[{\"id\":{\"videoId\":\"11111\"},\"snippet\":{"
+            + "\"title\":\"Title 1\",\"channelTitle\":\"Channel 1\",\"description\":\"Description 1\",\"channelId\":\"22222\","
+            + "\"thumbnails\":{\"default\":{\"url\":\"thumbnail_path\"}}}}]}", true));
+
+        List<SearchResultModel> results = repository.search("  Cats ").toCompletableFuture().join().collect(Collectors.toList());
+        assertEquals(List.of(new SearchResultModel("11111", "Title 1", "Channel 1", "Description 1",
+            "https://www.youtube.com/watch?v=11111", "22222", "thumbnail_path")), results);
+        assertEquals(1, repository.search("cats").toCompletableFuture().join().count());
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("search?part=snippet&maxResults=50&order=date&q=cats&type=video&fields=" + YoutubeRepository.SEARCH_FIELDS + "&key="));
+    }
+
+    /**
+     * Tests an expired search is revalidated with its ETag and kept when the API answers it is unchanged
+     */
+    @Test
+    public void testSearchRevalidated() throws InterruptedException {
+        YoutubeRepository.SearchCache searchCache = new YoutubeRepository.SearchCache();
+        searchCache.setExpiry(Expiry.fixed(Duration.ofMillis(1)));
+        repository = new AsyncYoutubeRepository(
+            HttpClient.newHttpClient(),
+            "http://127.0.0.1:" + server.getAddress().getPort(),
+            Duration.ofSeconds(5),
+            searchCache,
+            new YoutubeRepository.ChannelCache(),
+            new YoutubeRepository.PlayListsCache(),
+            new YoutubeRepository.VideoCache(),
+            popularQueries(),
+            canonicalizer(),
+            batcher("200ms"),
+            quota("enabled = false"),
+            circuits(0)
+        );
+        responses.put("search", new Response(200, "{\"etag\":\"tag1\",\"items\":[{\"id\":{\"videoId\":\"11111\"},\"snippet\":{"
+            + "\"title\":\"Title 1\",\"channelId\":\"22222\",\"thumbnails\":{\"default\":{\"url\":\"thumbnail_path\"}}}}]}", false, "tag1"));
+
+        assertEquals(1, repository.search("cats").toCompletableFuture().join().count());
+        assertEquals("tag1", searchCache.peek("cats").orElseThrow().getEtag());
+        Thread.sleep(10);
+
+        List<SearchResultModel> results = repository.search("cats").toCompletableFuture().join().collect(Collectors.toList());
+        assertEquals("11111", results.get(0).getId());
+        assertEquals(List.of("null", "tag1"), etags);
+        assertEquals("tag1", searchCache.peek("cats").orElseThrow().getEtag());
+    }
+
+    /**
+     * Tests an incremental search sends the publication time and parses the publication times of the results
+     */
+    @Test
+    public void testSearchSince() {
+        responses.put("search", new Response(200, "{\"items\":[{\"id\":{\"videoId\":\"11111\"},\"snippet\":{"
+            + "\"title\":\"Title 1\",\"channelId\":\"22222\",\"publishedAt\":\"2023-11-14T22:14:20Z\","
+            + "\"thumbnails\":{\"default\":{\"url\":\"thumbnail_path\"}}}}]}", false));
+
+        List<SearchResultModel> results = repository.searchSince("Cats", Instant.parse("2023-11-14T22:13:20Z"), 10, QuotaGovernor.Priority.BACKGROUND)
+            .toCompletableFuture().join().collect(Collectors.toList());
+        assertEquals(1, results.size());
+        assertEquals(Instant.parse("2023-11-14T22:14:20Z").toEpochMilli(), results.get(0).getPublishedAt());
+        assertTrue(requests.get(0).startsWith("search?part=snippet&maxResults=10&order=date&publishedAfter=2023-11-14T22:13:20Z&q=cats&type=video&fields="
+            + YoutubeRepository.SEARCH_FIELDS + "&key="));
+    }
+
+    /**
+     * Tests a streamed search requests the next pages with their tokens until it has enough results
+     */
+    @Test
+    public void testSearchAll() {
+        responses.put("search", new Response(200, "{\"nextPageToken\":\"p2\",\"items\":[{\"id\":{\"videoId\":\"11111\"},\"snippet\":{"
+            + "\"title\":\"Title 1\",\"channelId\":\"22222\",\"thumbnails\":{\"default\":{\"url\":\"thumbnail_path\"}}}}]}", false));
+
+        List<SearchResultModel> results = repository.searchAll("Cats", 2, QuotaGovernor.Priority.BACKGROUND)
+            .runWith(Sink.seq(), Materializer.matFromSystem(system)).toCompletableFuture().join();
+        assertEquals(2, results.size());
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0).startsWith("search?part=snippet&maxResults=2&order=date&q=cats&type=video&fields="));
+        assertFalse(requests.get(0).contains("pageToken"));
+        assertTrue(requests.get(1).contains("&pageToken=p2&key="));
+    }
+
+    /**
+     * Tests the channel details are parsed with the videos of the uploads playlist
+     */
+    @Test
+    public void testChannelDetails() {
+        responses.put("channels", new Response(200, "{\"items\":[{\"snippet\":{\"title\":\"Channel 1\",\"description\":\"About\","
+            + "\"country\":\"CA\",\"thumbnails\":{\"default\":{\"url\":\"thumb\"}}},"
+            + "\"contentDetails\":{\"relatedPlaylists\":{\"uploads\":\"UU1\"}},"
+            + "\"statistics\":{\"viewCount\":\"100\",\"subscriberCount\":\"10\",\"videoCount\":\"1\"}}]}", false));
+        responses.put("playlistItems", new Response(200, "{\"items\":[{\"snippet\":{\"title\":\"Video 1\",\"channelTitle\":\"Channel 1\","
+            + "\"description\":\"First\",\"channelId\":\"C1\",\"resourceId\":{\"videoId\":\"V1\"},"
+            + "\"thumbnails\":{\"default\":{\"url\":\"video_thumb\"}}}}]}", true));
+
+        ChannelModel channel = repository.getChannelDetails("C1").toCompletableFuture().join();
+        assertEquals("Channel 1", channel.getTitle());
+        assertEquals("CA", channel.getCountry());
+        assertEquals("100", channel.getViewCount());
+        assertEquals("10", channel.getSubscriberCount());
+        assertEquals("thumb", channel.getThumbnailHyperlink());
+        assertEquals(1, channel.getVideosList().size());
+        assertEquals("V1", channel.getVideosList().get(0).getId());
+        assertEquals("https://www.youtube.com/watch?v=V1", channel.getVideosList().get(0).getVideoHyperlink());
+        assertTrue(requests.get(1).startsWith("playlistItems?part=snippet&playlistId=UU1&maxResults=10&fields=" + YoutubeRepository.PLAYLIST_ITEM_FIELDS));
+    }
+
+    /**
+     * Tests a channel without uploads playlist has no videos and a missing channel fails
+     */
+    @Test
+    public void testChannelWithoutVideos() {
+        responses.put("channels", new Response(200, "{\"items\":[{\"snippet\":{\"title\":\"Channel 1\"},"
+            + "\"contentDetails\":{\"relatedPlaylists\":{\"uploads\":\"UU1\"}},\"statistics\":{}}]}", false));
+        assertTrue(repository.getChannelDetails("C1").toCompletableFuture().join().getVideosList().isEmpty());
+
+        responses.put("channels", new Response(200, "{\"items\":[]}", false));
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.getChannelDetails("C2").toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof NoSuchElementException);
+    }
+
+    /**
+     * Tests concurrent tag lookups share one request
+     */
+    @Test
+    public void testTags() {
+        responses.put("videos", new Response(200, "{\"items\":[{\"id\":\"2\",\"snippet\":{}},"
+            + "{\"id\":\"1\",\"snippet\":{\"tags\":[\"cats!\",\"dogs\"]}}]}", true));
+
+        CompletableFuture<Stream<String>> first = repository.getTagsById("1").toCompletableFuture();
+        CompletableFuture<Stream<String>> second = repository.getTagsById("2").toCompletableFuture();
+        CompletableFuture<Stream<String>> missing = repository.getTagsById("3").toCompletableFuture();
+        assertEquals(List.of("cats", "dogs"), first.join().collect(Collectors.toList()));
+        assertEquals(List.of(""), second.join().collect(Collectors.toList()));
+        assertEquals(0, missing.join().count());
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("videos?part=snippet&id=1,2,3&maxResults=50&fields=items(id,snippet/tags)&key="));
+    }
+
+    /**
+     * Tests an error status fails with the status and message of the API
+     */
+    @Test
+    public void testError() {
+        responses.put("search", new Response(403, "{\"error\":{\"code\":403,\"message\":\"Quota exceeded\"}}", false));
+
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.search("cats").toCompletableFuture().join());
+        AsyncYoutubeRepository.ApiException cause = (AsyncYoutubeRepository.ApiException) e.getCause();
+        assertEquals(403, cause.getStatusCode());
+        assertTrue(cause.getMessage().contains("Quota exceeded"));
+    }
+
+    /**
+     * Tests server errors open the circuit of the endpoint, after which calls fail without reaching the server
+     */
+    @Test
+    public void testCircuitOpen() {
+        repository = new AsyncYoutubeRepository(
+            HttpClient.newHttpClient(),
+            "http://127.0.0.1:" + server.getAddress().getPort(),
+            Duration.ofSeconds(5),
+            new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(),
+            new YoutubeRepository.PlayListsCache(),
+            new YoutubeRepository.VideoCache(),
+            popularQueries(),
+            canonicalizer(),
+            batcher("200ms"),
+            quota("enabled = false"),
+            circuits(2)
+        );
+        responses.put("search", new Response(503, "{\"error\":{\"code\":503,\"message\":\"Backend error\"}}", false));
+
+        assertThrows(CompletionException.class, () -> repository.search("cats").toCompletableFuture().join());
+        assertThrows(CompletionException.class, () -> repository.search("dogs").toCompletableFuture().join());
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.search("birds").toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof CircuitBreaker.OpenCircuitException);
+        assertEquals(2, requests.size());
+    }
+
+    /**
+     * Create circuits that never hedge
+     *
+     * @param maxFailures Consecutive failures opening a circuit, 0 for circuits that never open
+     * @return Circuits
+     */
+    private static YoutubeCircuits circuits(int maxFailures) {
+        return new YoutubeCircuits(ConfigFactory.parseString(
+            "tubelytics.youtube.http.request-timeout = 5s\n"
+                + "tubelytics.youtube.breaker { enabled = " + (maxFailures > 0) + ", max-failures = " + maxFailures
+                + ", call-timeout = 5s, reset-timeout = 1m, max-reset-timeout = 1m }\n"
+                + "tubelytics.youtube.hedge { enabled = false, endpoints = [] }"));
+    }
+
+    /**
+     * Create a quota governor from the application configuration
+     *
+     * @param settings Settings of tubelytics.quota overriding the configured ones
+     * @return Quota governor
+     */
+    private static QuotaGovernor quota(String settings) {
+        return new QuotaGovernor(ConfigFactory.parseString("tubelytics.quota { " + settings + " }").withFallback(ConfigFactory.load()),
+            Ticker.systemTicker());
+    }
+
+    /**
+     * Create a batcher of up to 50 video IDs
+     *
+     * @param window How long a batch waits for more lookups
+     * @return Batcher
+     */
+    private static VideoBatcher batcher(String window) {
+        return new VideoBatcher(ConfigFactory.parseString("tubelytics.youtube.video-batch { window = " + window + ", max-size = 50 }"));
+    }
+
+    /**
+     * Create a canonicalizer keeping the order of the terms
+     *
+     * @return Canonicalizer
+     */
+    private static QueryCanonicalizer canonicalizer() {
+        return new QueryCanonicalizer(ConfigFactory.parseString("tubelytics.query.ignore-term-order = false"));
+    }
+
+    /**
+     * Create counts of the requests kept in memory only
+     *
+     * @return Popular queries
+     */
+    private static PopularQueries popularQueries() {
+        return new PopularQueries(ConfigFactory.parseString("tubelytics.warmup { snapshot = \"\", max-tracked = 1000 }"));
+    }
+
+    /**
+     * Canned response of the server
+     */
+    private static final class Response {
+        private final int status;
+        private final String body;
+        private final boolean gzip;
+        private final String etag;
+
+        /**
+         * Create a response
+         *
+         * @param status HTTP status
+         * @param body   JSON body
+         * @param gzip   True to compress the body
+         */
+        private Response(int status, String body, boolean gzip) {
+            this(status, body, gzip, null);
+        }
+
+        /**
+         * Create a response answered with a 304 status to requests sending its ETag
+         *
+         * @param status HTTP status
+         * @param body   JSON body
+         * @param gzip   True to compress the body
+         * @param etag   ETag of the body, null for none
+         */
+        private Response(int status, String body, boolean gzip, String etag) {
+            this.status = status;
+            this.body = body;
+            this.gzip = gzip;
+            this.etag = etag;
+        }
+    }
+}
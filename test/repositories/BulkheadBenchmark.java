@@ -0,0 +1,79 @@
+package repositories;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmark of concurrent blocking lookups on the common pool, a platform bulkhead and a virtual bulkhead
+ * <p>
+ * Every lookup sleeps for a fixed latency, standing in for a YouTube API call. Run with
+ * {@code sbt "Test/runMain repositories.BulkheadBenchmark [lookups] [latency millis] [platform threads]"}.
+ * The virtual bulkhead is skipped on JVMs without virtual threads.
+ */
+public class BulkheadBenchmark {
+    private static final int ROUNDS = 3;
+
+    /**
+     * Run the benchmark
+     *
+     * @param args Number of lookups, latency of a lookup in milliseconds and number of platform threads
+     */
+    public static void main(String[] args) {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 50);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        System.out.printf("%d lookups of %d ms%n", lookups, latency.toMillis());
+        // What supplyAsync without an executor uses, a thread per task when the common pool has a single thread
+        run("common pool (parallelism " + ForkJoinPool.getCommonPoolParallelism() + ")", ForkJoinPool.commonPool(), lookups, latency);
+        Bulkhead platform = Bulkhead.platform("benchmark", threads, lookups);
+        run("platform bulkhead (" + threads + " threads)", platform, lookups, latency);
+        platform.shutdown();
+        if (Bulkhead.isVirtualSupported()) {
+            Bulkhead virtual = Bulkhead.virtual("benchmark", lookups, lookups);
+            run("virtual bulkhead (" + lookups + " at once)", virtual, lookups, latency);
+            virtual.shutdown();
+        } else {
+            System.out.println("virtual bulkhead skipped, virtual threads need Java 21 or later");
+        }
+    }
+
+    /**
+     * Time the lookups on an executor, keeping the best of a few rounds
+     *
+     * @param name     Name of the executor in the report
+     * @param executor Executor running the lookups
+     * @param lookups  Number of lookups
+     * @param latency  Latency of a lookup
+     */
+    private static void run(String name, Executor executor, int lookups, Duration latency) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> futures = new ArrayList<>(lookups);
+            for (int i = 0; i < lookups; i++) {
+                futures.add(CompletableFuture.runAsync(() -> sleep(latency), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-40s %8d ms %10.0f lookups/s%n", name, best / 1_000_000, lookups / (best / 1e9));
+    }
+
+    /**
+     * Block like a call waiting on the network
+     *
+     * @param latency Time to block
+     */
+    private static void sleep(Duration latency) {
+        try {
+            Thread.sleep(latency.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
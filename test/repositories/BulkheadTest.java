@@ -0,0 +1,122 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for the Bulkhead
+ */
+public class BulkheadTest {
+    /**
+     * Tests tasks run on the named threads of the bulkhead
+     */
+    @Test
+    public void testExecute() {
+        Bulkhead bulkhead = Bulkhead.platform("search", 2, 10);
+        String thread = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), bulkhead).join();
+        assertTrue(thread.startsWith("tubelytics-search-"));
+        assertEquals("search", bulkhead.getName());
+        assertEquals(2, bulkhead.getThreads());
+        assertEquals(10, bulkhead.getQueueSize());
+        assertFalse(bulkhead.isVirtual());
+        bulkhead.shutdown();
+    }
+
+    /**
+     * Tests tasks beyond the threads and queue are rejected and counted
+     */
+    @Test
+    public void testRejection() throws InterruptedException {
+        Bulkhead bulkhead = Bulkhead.platform("search", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bulkhead.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> 1, bulkhead);
+        assertEquals(1, bulkhead.getActive());
+        assertEquals(1, bulkhead.getQueued());
+
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> { }));
+        assertThrows(RejectedExecutionException.class, () -> CompletableFuture.supplyAsync(() -> 2, bulkhead));
+        assertEquals(2, bulkhead.getRejected());
+
+        release.countDown();
+        assertEquals(Integer.valueOf(1), queued.join());
+        bulkhead.shutdown();
+    }
+
+    /**
+     * Tests tasks submitted after a shutdown are rejected without counting as rejections of a full bulkhead
+     */
+    @Test
+    public void testShutdown() {
+        Bulkhead bulkhead = Bulkhead.platform("search", 1, 1);
+        bulkhead.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> { }));
+        assertEquals(0, bulkhead.getRejected());
+    }
+
+    /**
+     * Tests a bulkhead needs at least one thread and one queued task
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        Bulkhead.platform("search", 0, 1);
+    }
+
+    /**
+     * Tests a virtual bulkhead runs every task on a virtual thread, at most the configured number at once
+     */
+    @Test
+    public void testVirtual() throws InterruptedException {
+        assumeTrue(Bulkhead.isVirtualSupported());
+        Bulkhead bulkhead = Bulkhead.virtual("search", 2, 1);
+        assertTrue(bulkhead.isVirtual());
+        assertEquals(2, bulkhead.getThreads());
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        bulkhead.execute(blocking);
+        bulkhead.execute(blocking);
+        started.await();
+        CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> 1, bulkhead);
+        assertEquals(2, bulkhead.getActive());
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> { }));
+        assertEquals(1, bulkhead.getRejected());
+
+        release.countDown();
+        assertEquals(Integer.valueOf(1), queued.join());
+        bulkhead.shutdown();
+    }
+
+    /**
+     * Tests virtual bulkheads are refused by JVMs without virtual threads
+     */
+    @Test
+    public void testVirtualUnsupported() {
+        assumeFalse(Bulkhead.isVirtualSupported());
+        assertThrows(UnsupportedOperationException.class, () -> Bulkhead.virtual("search", 2, 1));
+    }
+}
@@ -0,0 +1,64 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the CacheStats
+ */
+public class CacheStatsTest {
+    /**
+     * Tests the hit rate counts stale hits as served
+     */
+    @Test
+    public void testHitRate() {
+        CacheStats stats = new CacheStats();
+        assertEquals(1, stats.getHitRate(), 0);
+
+        stats.recordHit();
+        stats.recordStaleHit();
+        stats.recordMiss();
+        stats.recordMiss();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getStaleHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0.5, stats.getHitRate(), 0);
+    }
+
+    /**
+     * Tests loads are counted in their latency bucket
+     */
+    @Test
+    public void testLoadLatency() {
+        CacheStats stats = new CacheStats();
+        assertEquals(0, stats.getAverageLoadMillis(), 0);
+
+        stats.recordLoad(TimeUnit.MILLISECONDS.toNanos(5), true);
+        stats.recordLoad(TimeUnit.MILLISECONDS.toNanos(6), true);
+        stats.recordLoad(TimeUnit.MILLISECONDS.toNanos(60_000), false);
+        assertEquals(2, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getLoadFailureCount());
+        assertEquals(20_003.666, stats.getAverageLoadMillis(), 0.001);
+        assertEquals(Long.valueOf(1), stats.getLoadLatencyMillis().get("5"));
+        assertEquals(Long.valueOf(1), stats.getLoadLatencyMillis().get("10"));
+        assertEquals(Long.valueOf(0), stats.getLoadLatencyMillis().get("25"));
+        assertEquals(Long.valueOf(1), stats.getLoadLatencyMillis().get("+Inf"));
+    }
+
+    /**
+     * Tests only evictions and expirations are counted as removals
+     */
+    @Test
+    public void testRemovals() {
+        CacheStats stats = new CacheStats();
+        stats.recordRemoval(RemovalListener.Cause.SIZE);
+        stats.recordRemoval(RemovalListener.Cause.EXPIRED);
+        stats.recordRemoval(RemovalListener.Cause.EXPIRED);
+        stats.recordRemoval(RemovalListener.Cause.REPLACED);
+        assertEquals(1, stats.getSizeEvictionCount());
+        assertEquals(2, stats.getExpirationCount());
+    }
+}
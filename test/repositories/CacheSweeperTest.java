@@ -0,0 +1,114 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import play.inject.ApplicationLifecycle;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the CacheSweeper
+ */
+public class CacheSweeperTest {
+    private static ActorSystem system;
+
+    /**
+     * Create the actor system
+     */
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("CacheSweeperTestSystem");
+    }
+
+    /**
+     * Shutdown the actor system
+     */
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * Tests a sweep cleans up every cache
+     */
+    @Test
+    public void testSweep() {
+        YoutubeRepository.SearchCache searchCache = mock(YoutubeRepository.SearchCache.class);
+        YoutubeRepository.ChannelCache channelCache = mock(YoutubeRepository.ChannelCache.class);
+        YoutubeRepository.PlayListsCache playListsCache = mock(YoutubeRepository.PlayListsCache.class);
+        YoutubeRepository.VideoCache videoCache = mock(YoutubeRepository.VideoCache.class);
+        ScoredSearchCache scoredSearchCache = mock(ScoredSearchCache.class);
+        Config config = ConfigFactory.parseString("tubelytics.cache.sweep-interval = 1 hour");
+
+        CacheSweeper sweeper = new CacheSweeper(system, config, searchCache, channelCache, playListsCache, videoCache, scoredSearchCache,
+            mock(ApplicationLifecycle.class));
+        sweeper.sweep();
+        sweeper.stop();
+
+        verify(searchCache).cleanUp();
+        verify(channelCache).cleanUp();
+        verify(playListsCache).cleanUp();
+        verify(videoCache).cleanUp();
+        verify(scoredSearchCache).cleanUp();
+    }
+
+    /**
+     * Tests the scheduled sweeps remove expired entries, on the thread of the sweeper
+     */
+    @Test
+    public void testScheduledSweep() throws Exception {
+        YoutubeRepository.SearchCache searchCache = new YoutubeRepository.SearchCache(ConfigFactory.parseString(
+            "tubelytics.cache.search { max-entries = 10, max-bytes = 1m, ttl = 1ms, stale-while-revalidate = 0s }\n"
+                + "tubelytics.cache.negative-ttl = 1ms\n"
+                + "tubelytics.cache.compress = true\n"
+                + "tubelytics.cache.adaptive.enabled = false\n"
+                + "tubelytics.cache.l2.enabled = false"
+        ));
+        CountDownLatch expired = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        searchCache.addRemovalListener((key, value, cause) -> {
+            if (cause == RemovalListener.Cause.EXPIRED) {
+                thread.set(Thread.currentThread().getName());
+                expired.countDown();
+            }
+        });
+        searchCache.put("test", CompactResults.encode(List.of(), true));
+        Config config = ConfigFactory.parseString("tubelytics.cache.sweep-interval = 100ms");
+
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+        new CacheSweeper(system, config, searchCache, new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(), new ScoredSearchCache(), lifecycle);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        stop(lifecycle);
+        assertEquals(0, searchCache.size());
+        assertTrue(thread.get().startsWith("tubelytics-cache-sweeper"));
+    }
+
+    /**
+     * Run the stop hook a sweeper registered
+     *
+     * @param lifecycle Mocked lifecycle given to the sweeper
+     * @throws Exception If the hook fails
+     */
+    @SuppressWarnings("unchecked")
+    private static void stop(ApplicationLifecycle lifecycle) throws Exception {
+        ArgumentCaptor<Callable<? extends CompletionStage<?>>> hook = ArgumentCaptor.forClass(Callable.class);
+        verify(lifecycle).addStopHook(hook.capture());
+        hook.getValue().call().toCompletableFuture().join();
+    }
+}
@@ -2,10 +2,22 @@ package repositories;
 
 import org.junit.Test;
 
-import java.time.LocalTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -56,8 +68,406 @@ public class CacheTest {
      */
     @Test
     public void testCacheMissOld() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, time::get);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(20).toNanos());
+        assertEquals(Optional.empty(), cache.get("Test"));
+    }
+
+    /**
+     * Tests a cache bounded by number of entries evicts the oldest entry
+     */
+    @Test
+    public void testCacheMaxEntries() {
+        Cache<Integer> cache = new Cache<>(2, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+        cache.put("1", 1);
+        cache.put("2", 2);
+        cache.put("3", 3);
+        assertEquals(2, cache.size());
+        assertEquals(Optional.empty(), cache.get("1"));
+        assertEquals(Optional.of(2), cache.get("2"));
+        assertEquals(Optional.of(3), cache.get("3"));
+    }
+
+    /**
+     * Tests a cache bounded by weight evicts until it fits
+     */
+    @Test
+    public void testCacheMaxWeight() {
+        Cache<Integer> cache = new Cache<>(0, 10, (key, value) -> value, Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+        cache.put("1", 4);
+        cache.put("2", 4);
+        cache.put("3", 6);
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.weight());
+        assertEquals(Optional.empty(), cache.get("1"));
+    }
+
+    /**
+     * Tests entries read again are protected from a burst of new entries
+     */
+    @Test
+    public void testCacheProtectsPopularEntries() {
+        Cache<Integer> cache = new Cache<>(5, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+        cache.put("popular", 0);
+        assertEquals(Optional.of(0), cache.get("popular"));
+        for (int i = 0; i < 20; i++) {
+            cache.put("once" + i, i);
+        }
+        assertEquals(5, cache.size());
+        assertEquals(Optional.of(0), cache.get("popular"));
+    }
+
+    /**
+     * Tests replacing an entry updates its weight
+     */
+    @Test
+    public void testCacheReplaceWeight() {
+        Cache<Integer> cache = new Cache<>(0, 100, (key, value) -> value, Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+        cache.put("Test", 10);
+        cache.put("Test", 30);
+        assertEquals(1, cache.size());
+        assertEquals(30, cache.weight());
+    }
+
+    /**
+     * Tests negative bounds are refused
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCacheNegativeBounds() {
+        new Cache<Integer>(-1, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+    }
+
+    /**
+     * Tests a load on a cache hit does not call the loader
+     */
+    @Test
+    public void testGetOrLoadHit() {
+        Cache<Integer> cache = new Cache<>();
+        cache.put("Test", 1);
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("Test", () -> {
+            throw new IllegalStateException("Loaded instead of caching");
+        }).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests concurrent loads of the same key share a single load
+     */
+    @Test
+    public void testGetOrLoadSingleFlight() {
+        Cache<Integer> cache = new Cache<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Integer> loader = () -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 42;
+        };
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(cache.getOrLoad("Test", loader).toCompletableFuture());
+        }
+        release.countDown();
+
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(Integer.valueOf(42), future.join());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(Optional.of(42), cache.get("Test"));
+    }
+
+    /**
+     * Tests a failed load is reported and not cached
+     */
+    @Test
+    public void testGetOrLoadFailure() {
         Cache<Integer> cache = new Cache<>();
-        cache.put("Test", LocalTime.now().minusMinutes(20L), 1);
+        CompletableFuture<Integer> failed = cache.getOrLoad("Test", () -> {
+            throw new IllegalStateException("Failed");
+        }).toCompletableFuture();
+
+        assertThrows(CompletionException.class, failed::join);
+        assertEquals(Optional.empty(), cache.get("Test"));
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("Test", () -> 1).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests a loaded object the cache cannot hold fails the load and releases its key
+     */
+    @Test
+    public void testGetOrLoadPutFailure() {
+        Cache<Integer> cache = new Cache<>(0, 100, (key, value) -> value, Duration.ofMinutes(3), Duration.ZERO, Ticker.systemTicker());
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> cache.getOrLoad("Test", () -> null).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof NullPointerException);
+
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("Test", () -> 1).toCompletableFuture().join());
+        assertEquals(Optional.of(1), cache.get("Test"));
+    }
+
+    /**
+     * Tests a stale entry is served while it is refreshed in the background
+     */
+    @Test
+    public void testGetOrLoadStaleWhileRevalidate() throws InterruptedException {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = getStaleCache(time);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("Test", () -> 2).toCompletableFuture().join());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.get("Test").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Optional.of(2), cache.get("Test"));
+        assertEquals(Integer.valueOf(2), cache.getOrLoad("Test", () -> 3).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests an entry past the stale period is loaded again
+     */
+    @Test
+    public void testGetOrLoadStaleExpired() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = getStaleCache(time);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(20).toNanos());
+        assertEquals(Integer.valueOf(2), cache.getOrLoad("Test", () -> 2).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests stale entries are not returned by get
+     */
+    @Test
+    public void testGetStale() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = getStaleCache(time);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertEquals(Optional.empty(), cache.get("Test"));
+    }
+
+    /**
+     * Tests an expired entry can be peeked until it is removed, without counting a hit or a miss
+     */
+    @Test
+    public void testPeek() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofSeconds(30), Duration.ZERO, time::get);
+        assertEquals(Optional.empty(), cache.peek("Test"));
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals(Optional.of(1), cache.peek("Test"));
+        assertEquals(0, cache.stats().getHitCount());
+        assertEquals(0, cache.stats().getMissCount());
+
+        cache.cleanUp();
+        assertEquals(Optional.empty(), cache.peek("Test"));
+    }
+
+    /**
+     * Tests the time to live of a cache
+     */
+    @Test
+    public void testCacheTimeToLive() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofSeconds(30), Duration.ZERO, time::get);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertEquals(Optional.of(1), cache.get("Test"));
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(Optional.empty(), cache.get("Test"));
+    }
+
+    /**
+     * Tests ages are measured correctly when the ticker overflows
+     */
+    @Test
+    public void testCacheTickerOverflow() {
+        AtomicLong time = new AtomicLong(Long.MAX_VALUE - Duration.ofMinutes(1).toNanos());
+        Cache<Integer> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, time::get);
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertEquals(Optional.of(1), cache.get("Test"));
+        time.addAndGet(Duration.ofMinutes(2).toNanos());
         assertEquals(Optional.empty(), cache.get("Test"));
     }
+
+    /**
+     * Tests an invalid time to live is refused
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCacheInvalidTimeToLive() {
+        new Cache<Integer>(0, 0, Weigher.singleton(), Duration.ZERO, Duration.ZERO, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a cache with a 3 minutes time to live and 10 minutes stale period
+     *
+     * @param time Time source of the cache
+     * @return Cache
+     */
+    private static Cache<Integer> getStaleCache(AtomicLong time) {
+        return new Cache<>(0, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ofMinutes(10), time::get);
+    }
+
+    /**
+     * Tests cleaning up removes entries past their stale period and notifies listeners
+     */
+    @Test
+    public void testCleanUpExpired() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = getStaleCache(time);
+        List<String> removed = new ArrayList<>();
+        cache.addRemovalListener((key, value, cause) -> removed.add(key + "=" + value + ":" + cause));
+        cache.put("Old", 1);
+        time.addAndGet(Duration.ofMinutes(10).toNanos());
+        cache.put("New", 2);
+
+        // Old is stale but still servable
+        cache.cleanUp();
+        assertEquals(2, cache.size());
+
+        time.addAndGet(Duration.ofMinutes(4).toNanos());
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+        assertEquals(List.of("Old=1:EXPIRED"), removed);
+
+        time.addAndGet(Duration.ofMinutes(20).toNanos());
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+        assertEquals(List.of("Old=1:EXPIRED", "New=2:EXPIRED"), removed);
+    }
+
+    /**
+     * Tests cleaning up keeps entries replaced after their timeout was scheduled
+     */
+    @Test
+    public void testCleanUpReplaced() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = new Cache<>(1, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, time::get);
+        List<String> removed = new ArrayList<>();
+        cache.addRemovalListener((key, value, cause) -> removed.add(key + "=" + value + ":" + cause));
+        cache.put("Test", 1);
+        time.addAndGet(Duration.ofMinutes(2).toNanos());
+        cache.put("Test", 2);
+
+        time.addAndGet(Duration.ofMinutes(2).toNanos());
+        cache.cleanUp();
+        assertEquals(Optional.of(2), cache.get("Test"));
+        assertEquals(1, cache.weight());
+
+        // Test was read again so it is protected over the new entry
+        cache.put("Other", 3);
+        assertEquals(List.of("Test=1:REPLACED", "Other=3:SIZE"), removed);
+    }
+
+    /**
+     * Tests a failing removal listener does not break the cache
+     */
+    @Test
+    public void testRemovalListenerFailure() {
+        Cache<Integer> cache = new Cache<>();
+        cache.addRemovalListener((key, value, cause) -> {
+            throw new IllegalStateException("Failed");
+        });
+        cache.put("Test", 1);
+        cache.put("Test", 2);
+        assertEquals(Optional.of(2), cache.get("Test"));
+    }
+
+    /**
+     * Tests reads, loads and removals are recorded in the statistics
+     */
+    @Test
+    public void testStats() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = getStaleCache(time);
+        cache.put("Test", 1);
+        cache.get("Test");
+        cache.get("Missing");
+        cache.getOrLoad("Loaded", () -> 2).toCompletableFuture().join();
+        cache.getOrLoad("Failed", () -> {
+            throw new IllegalStateException("Failed");
+        }).exceptionally(e -> 0).toCompletableFuture().join();
+
+        time.addAndGet(Duration.ofMinutes(4).toNanos());
+        // Refresh on the calling thread so it is done before the entries expire
+        cache.getOrLoad("Test", () -> 3, Runnable::run).toCompletableFuture().join();
+        time.addAndGet(Duration.ofMinutes(20).toNanos());
+        cache.cleanUp();
+
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getStaleHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(2, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getLoadFailureCount());
+        assertEquals(2, stats.getExpirationCount());
+    }
+
+    /**
+     * Tests concurrent asynchronous loads of a key share the first loader
+     */
+    @Test
+    public void testGetOrLoadAsync() {
+        Cache<Integer> cache = new Cache<>();
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Integer> first = cache.getOrLoadAsync("Test", () -> {
+            loads.incrementAndGet();
+            return pending;
+        }).toCompletableFuture();
+        CompletableFuture<Integer> second = cache.getOrLoadAsync("Test", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(2);
+        }).toCompletableFuture();
+
+        assertFalse(first.isDone());
+        pending.complete(1);
+        assertEquals(Integer.valueOf(1), first.join());
+        assertEquals(Integer.valueOf(1), second.join());
+        assertEquals(1, loads.get());
+        assertEquals(Optional.of(1), cache.get("Test"));
+
+        CompletionStage<Integer> failed = cache.getOrLoadAsync("Failed", () -> {
+            throw new IllegalStateException("Failed");
+        });
+        assertThrows(CompletionException.class, () -> failed.toCompletableFuture().join());
+        assertFalse(cache.get("Failed").isPresent());
+    }
+
+    /**
+     * Tests entries expire after the time to live given by the expiry
+     */
+    @Test
+    public void testExpiry() {
+        AtomicLong time = new AtomicLong();
+        Cache<Integer> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ZERO, time::get);
+        cache.setExpiry(Expiry.negative(Duration.ofMinutes(3), Duration.ofSeconds(30), value -> value == 0));
+        List<String> removed = new ArrayList<>();
+        cache.addRemovalListener((key, value, cause) -> removed.add(key + ":" + cause));
+        cache.put("Missing", 0);
+        cache.put("Test", 1);
+
+        time.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertFalse(cache.get("Missing").isPresent());
+        assertEquals(Optional.of(1), cache.get("Test"));
+        cache.cleanUp();
+        assertEquals(List.of("Missing:EXPIRED"), removed);
+
+        // A time to live that is not positive is raised to the shortest one instead of failing
+        cache.setExpiry((key, value) -> Duration.ZERO);
+        cache.put("Zero", 2);
+        time.incrementAndGet();
+        assertFalse(cache.get("Zero").isPresent());
+    }
 }
@@ -0,0 +1,65 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the CacheTier
+ */
+public class CacheTierTest {
+    /**
+     * Tests layered tiers read the second tier on a miss of the first one and write to both
+     */
+    @Test
+    public void testLayered() {
+        MapTier first = new MapTier();
+        MapTier second = new MapTier();
+        CacheTier<String> layered = CacheTier.layered(first, second);
+
+        second.put("far", "Second");
+        assertEquals("Second", layered.get("far").get().getObject());
+        first.put("far", "First");
+        assertEquals("First", layered.get("far").get().getObject());
+        assertTrue(layered.get("missing").isEmpty());
+
+        layered.put("both", "Both");
+        assertEquals("Both", first.get("both").get().getObject());
+        assertEquals("Both", second.get("both").get().getObject());
+
+        layered.cleanUp();
+        assertEquals(1, first.cleanUps);
+        assertEquals(1, second.cleanUps);
+
+        assertSame(first, CacheTier.layered(first, null));
+        assertSame(second, CacheTier.layered(null, second));
+        assertNull(CacheTier.layered(null, null));
+    }
+
+    /**
+     * Tier keeping its objects in a map
+     */
+    private static final class MapTier implements CacheTier<String> {
+        private final Map<String, String> objects = new HashMap<>();
+        private int cleanUps;
+
+        @Override
+        public Optional<Stored<String>> get(String key) {
+            return Optional.ofNullable(objects.get(key)).map(object -> new Stored<>(object, 0));
+        }
+
+        @Override
+        public void put(String key, String object) {
+            objects.put(key, object);
+        }
+
+        @Override
+        public void cleanUp() {
+            cleanUps++;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import play.inject.ApplicationLifecycle;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the CacheWarmer
+ */
+public class CacheWarmerTest {
+    private static ActorSystem system;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create the actor system
+     */
+    @BeforeClass
+    public static void setup() {
+        system = ActorSystem.create("CacheWarmerTestSystem");
+    }
+
+    /**
+     * Shutdown the actor system
+     */
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    /**
+     * Tests the popular searches and channels are loaded before the warmer is created
+     */
+    @Test
+    public void testWarmUp() throws Exception {
+        PopularQueries popularQueries = new PopularQueries(getConfig(true, "1 minute"));
+        popularQueries.recordSearch("cats");
+        popularQueries.recordSearch("cats");
+        popularQueries.recordSearch("dogs");
+        popularQueries.recordChannel("UC1");
+
+        VideoRepository repository = mock(VideoRepository.class);
+        when(repository.search(anyString(), eq(QuotaGovernor.Priority.BACKGROUND))).thenReturn(CompletableFuture.completedFuture(Stream.empty()));
+        when(repository.getChannelDetails("UC1", QuotaGovernor.Priority.BACKGROUND)).thenReturn(CompletableFuture.failedFuture(new RuntimeException("Quota exceeded")));
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+
+        new CacheWarmer(system, Materializer.matFromSystem(system), getConfig(true, "1 minute"), repository, popularQueries, lifecycle);
+        stop(lifecycle);
+
+        verify(repository).search("cats", QuotaGovernor.Priority.BACKGROUND);
+        verify(repository, never()).search(eq("dogs"), any());
+        verify(repository).getChannelDetails("UC1", QuotaGovernor.Priority.BACKGROUND);
+    }
+
+    /**
+     * Tests the warm-up is skipped when disabled
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        PopularQueries popularQueries = new PopularQueries(getConfig(true, "1 minute"));
+        popularQueries.recordSearch("cats");
+        VideoRepository repository = mock(VideoRepository.class);
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+
+        new CacheWarmer(system, Materializer.matFromSystem(system), getConfig(false, "1 minute"), repository, popularQueries, lifecycle);
+        stop(lifecycle);
+
+        verifyNoInteractions(repository);
+    }
+
+    /**
+     * Tests the requests are throttled and failures are not counted
+     */
+    @Test
+    public void testRate() {
+        VideoRepository repository = mock(VideoRepository.class);
+        when(repository.search(anyString(), eq(QuotaGovernor.Priority.BACKGROUND))).thenReturn(CompletableFuture.completedFuture(Stream.empty()));
+        when(repository.getChannelDetails(anyString(), eq(QuotaGovernor.Priority.BACKGROUND))).thenThrow(new RuntimeException("Client failure"));
+
+        long start = System.nanoTime();
+        int loaded = CacheWarmer.warmUp(repository, List.of("1", "2", "3", "4"), List.of("UC1"), 2, Materializer.matFromSystem(system))
+            .toCompletableFuture()
+            .join();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(4, loaded);
+        // 5 requests at 2 per second take at least 2 seconds
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 1500);
+        assertEquals(0, (int) CacheWarmer.warmUp(repository, List.of(), List.of(), 2, Materializer.matFromSystem(system)).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests a slow warm-up does not block the startup past the timeout
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        PopularQueries popularQueries = new PopularQueries(getConfig(true, "1 minute"));
+        popularQueries.recordSearch("slow");
+        VideoRepository repository = mock(VideoRepository.class);
+        when(repository.search(anyString(), eq(QuotaGovernor.Priority.BACKGROUND))).thenReturn(new CompletableFuture<>());
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+
+        long start = System.nanoTime();
+        new CacheWarmer(system, Materializer.matFromSystem(system), getConfig(true, "200ms"), repository, popularQueries, lifecycle);
+        stop(lifecycle);
+
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 5000);
+    }
+
+    /**
+     * Tests the popular queries are saved periodically, off the dispatcher
+     */
+    @Test
+    public void testPeriodicSave() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("popular.tsv");
+        Config config = ConfigFactory.parseString("tubelytics.warmup.save-interval = 50ms")
+            .withValue("tubelytics.warmup.snapshot", ConfigValueFactory.fromAnyRef(file.toString()))
+            .withFallback(getConfig(false, "1 minute"));
+        PopularQueries popularQueries = spy(new PopularQueries(config));
+        popularQueries.recordSearch("cats");
+        AtomicReference<String> thread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            thread.compareAndSet(null, Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(popularQueries).save();
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+
+        new CacheWarmer(system, Materializer.matFromSystem(system), config, mock(VideoRepository.class), popularQueries, lifecycle);
+        for (int i = 0; i < 100 && !Files.exists(file); i++) {
+            Thread.sleep(50);
+        }
+        stop(lifecycle);
+
+        assertTrue(Files.exists(file));
+        assertTrue(thread.get().startsWith("tubelytics-popular-queries"));
+    }
+
+    /**
+     * Run the stop hook a warmer registered
+     *
+     * @param lifecycle Mocked lifecycle given to the warmer
+     * @throws Exception If the hook fails
+     */
+    @SuppressWarnings("unchecked")
+    private static void stop(ApplicationLifecycle lifecycle) throws Exception {
+        ArgumentCaptor<Callable<? extends CompletionStage<?>>> hook = ArgumentCaptor.forClass(Callable.class);
+        verify(lifecycle).addStopHook(hook.capture());
+        hook.getValue().call().toCompletableFuture().join();
+    }
+
+    /**
+     * Create a warm-up configuration replaying one search and one channel
+     *
+     * @param enabled True to warm the caches up
+     * @param timeout Maximum time of the warm-up
+     * @return Configuration
+     */
+    private static Config getConfig(boolean enabled, String timeout) {
+        return ConfigFactory.parseString(
+            "tubelytics.warmup { enabled = " + enabled + ", searches = 1, channels = 1, rate = 10, timeout = " + timeout + ", save-interval = 1 hour,"
+                + " snapshot = \"\", max-tracked = 10 }"
+        );
+    }
+}
@@ -0,0 +1,189 @@
+package repositories;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the CircuitBreaker
+ */
+public class CircuitBreakerTest {
+    private AtomicLong time;
+    private CircuitBreaker breaker;
+    private AtomicInteger calls;
+
+    /**
+     * Create a breaker opening after 3 failures for 10 seconds, up to 40 seconds
+     */
+    @Before
+    public void setUp() {
+        time = new AtomicLong();
+        calls = new AtomicInteger();
+        breaker = new CircuitBreaker("test", 3, Duration.ofMillis(200), Duration.ofSeconds(10), Duration.ofSeconds(40),
+            YoutubeCircuits::isUpstreamFailure, time::get);
+    }
+
+    /**
+     * Tests the circuit opens after failures in a row and refuses calls without making them
+     */
+    @Test
+    public void testOpens() {
+        fail(2);
+        succeed();
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+
+        int before = calls.get();
+        CompletionException e = assertThrows(CompletionException.class, () -> breaker.call(this::success).join());
+        assertTrue(e.getCause() instanceof CircuitBreaker.OpenCircuitException);
+        assertEquals(before, calls.get());
+        assertEquals(1, breaker.getRejected());
+    }
+
+    /**
+     * Tests a successful trial after the reset timeout closes the circuit
+     */
+    @Test
+    public void testTrialCloses() {
+        fail(3);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertFalse(breaker.isOpen());
+
+        CompletableFuture<String> trial = new CompletableFuture<>();
+        CompletableFuture<String> result = breaker.call(() -> trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Only the trial goes through while it is in flight
+        assertThrows(CompletionException.class, () -> breaker.call(this::success).join());
+
+        trial.complete("ok");
+        assertEquals("ok", result.join());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        succeed();
+    }
+
+    /**
+     * Tests a failed trial opens the circuit again for twice as long, up to the maximum
+     */
+    @Test
+    public void testTrialBacksOff() {
+        fail(3);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(19));
+        assertTrue(breaker.isOpen());
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        fail(1);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(39));
+        assertTrue(breaker.isOpen());
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        fail(1);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertFalse(breaker.isOpen());
+
+        succeed();
+        fail(3);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertFalse(breaker.isOpen());
+    }
+
+    /**
+     * Tests a call slower than the call timeout fails and counts as a failure
+     */
+    @Test
+    public void testCallTimeout() {
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletionException e = assertThrows(CompletionException.class, () -> breaker.call(() -> slow).join());
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertFalse(slow.isDone());
+
+        fail(2);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Tests errors that do not come from the dependency leave the circuit closed
+     */
+    @Test
+    public void testIgnoredErrors() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(CompletionException.class, () -> breaker.call(() -> {
+                throw new NoSuchElementException("missing");
+            }).join());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * Tests calls refused by the quota neither reset the failures nor close the circuit after a trial
+     */
+    @Test
+    public void testQuotaRefusedNotCounted() {
+        fail(2);
+        quotaRefused();
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        quotaRefused();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // The reset timeout has passed, so the next call is the trial
+        succeed();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * Make a call refused by the quota through the breaker
+     */
+    private void quotaRefused() {
+        assertThrows(CompletionException.class, () -> breaker.call(() -> {
+            throw new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE);
+        }).join());
+    }
+
+    /**
+     * Make successful calls through the breaker
+     */
+    private void succeed() {
+        assertEquals("ok", breaker.call(this::success).join());
+    }
+
+    /**
+     * Make failed calls through the breaker
+     *
+     * @param count Number of calls
+     */
+    private void fail(int count) {
+        for (int i = 0; i < count; i++) {
+            assertThrows(CompletionException.class, () -> breaker.call(() -> {
+                calls.incrementAndGet();
+                return CompletableFuture.<String>failedFuture(new IOException("Connection reset"));
+            }).join());
+        }
+    }
+
+    /**
+     * Start a successful call
+     *
+     * @return Future of the result
+     */
+    private CompletableFuture<String> success() {
+        calls.incrementAndGet();
+        return CompletableFuture.completedFuture("ok");
+    }
+}
@@ -0,0 +1,51 @@
+package repositories;
+
+import models.ChannelModel;
+import models.SearchResultModel;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the CompactChannel
+ */
+public class CompactChannelTest {
+    /**
+     * Tests a channel is decoded as it was encoded, with and without compression
+     */
+    @Test
+    public void testRoundTrip() {
+        List<SearchResultModel> videos = List.of(new SearchResultModel("1", "Title", "Channel", "Description",
+            "https://www.youtube.com/watch?v=1", "UC1", "Thumb"));
+
+        for (boolean compress : new boolean[]{false, true}) {
+            CompactChannel channel = CompactChannel.encode("UU1", "Channel", "About the channel", null,
+                "10012341235", "10023429", "100", "Thumb", compress);
+            assertFalse(channel.isEmpty());
+            assertEquals("UU1", channel.getUploadsPlaylistId());
+
+            ChannelModel model = channel.toChannelModel(videos);
+            assertEquals("Channel", model.getTitle());
+            assertEquals("About the channel", model.getDescription());
+            assertNull(model.getCountry());
+            assertEquals("10012341235", model.getViewCount());
+            assertEquals("10023429", model.getSubscriberCount());
+            assertEquals("100", model.getVideoCount());
+            assertEquals("Thumb", model.getThumbnailHyperlink());
+            assertEquals(videos, model.getVideosList());
+        }
+    }
+
+    /**
+     * Tests a missing channel is a negative value that cannot be decoded
+     */
+    @Test
+    public void testMissing() {
+        CompactChannel missing = CompactChannel.fromBytes(CompactChannel.missing().toBytes());
+        assertTrue(missing.isEmpty());
+        assertThrows(IllegalStateException.class, missing::getUploadsPlaylistId);
+        assertThrows(IllegalStateException.class, () -> missing.toChannelModel(List.of()));
+    }
+}
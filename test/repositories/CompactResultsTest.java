@@ -0,0 +1,138 @@
+package repositories;
+
+import models.SearchResultModel;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the CompactResults
+ */
+public class CompactResultsTest {
+    /**
+     * Tests results are decoded as they were encoded, with and without compression
+     */
+    @Test
+    public void testRoundTrip() {
+        List<SearchResultModel> results = getResults(3);
+        results.add(new SearchResultModel("4", "T\u00eetle \u2713", null, "", "https://youtu.be/4", "C4", null));
+
+        for (boolean compress : new boolean[]{false, true}) {
+            CompactResults encoded = CompactResults.encode(results, compress);
+            List<SearchResultModel> decoded = encoded.stream().collect(Collectors.toList());
+            assertEquals(results, decoded);
+            assertEquals("https://www.youtube.com/watch?v=1", decoded.get(0).getVideoHyperlink());
+            assertEquals("https://youtu.be/4", decoded.get(3).getVideoHyperlink());
+            assertNull(decoded.get(3).getChannel());
+            assertFalse(encoded.isEmpty());
+            // The encoding can be read any number of times
+            assertEquals(4, encoded.stream().count());
+        }
+    }
+
+    /**
+     * Tests the publication times are kept
+     */
+    @Test
+    public void testPublishedAt() {
+        List<SearchResultModel> results = List.of(
+            new SearchResultModel("1", "Title 1", "Channel 1", "", "https://www.youtube.com/watch?v=1", "C1", null, 1_700_000_000_000L),
+            new SearchResultModel("2", "Title 2", "Channel 2", "", "https://www.youtube.com/watch?v=2", "C2", null)
+        );
+
+        List<SearchResultModel> decoded = CompactResults.encode(results, false).stream().collect(Collectors.toList());
+        assertEquals(1_700_000_000_000L, decoded.get(0).getPublishedAt());
+        assertEquals(0, decoded.get(1).getPublishedAt());
+    }
+
+    /**
+     * Tests an ETag is kept with the results, and can be replaced or removed without changing them
+     */
+    @Test
+    public void testEtag() {
+        List<SearchResultModel> results = getResults(3);
+        for (boolean compress : new boolean[]{false, true}) {
+            CompactResults encoded = CompactResults.encode(results, compress);
+            assertNull(encoded.getEtag());
+
+            CompactResults tagged = encoded.withEtag("\"tag1\"");
+            assertEquals("\"tag1\"", tagged.getEtag());
+            assertEquals(results, tagged.stream().collect(Collectors.toList()));
+            assertEquals(results, CompactResults.fromBytes(tagged.toBytes()).stream().collect(Collectors.toList()));
+            assertEquals("\"tag1\"", CompactResults.fromBytes(tagged.toBytes()).getEtag());
+
+            CompactResults retagged = tagged.withEtag("tag2");
+            assertEquals("tag2", retagged.getEtag());
+            assertEquals(results, retagged.stream().collect(Collectors.toList()));
+            CompactResults untagged = retagged.withEtag(null);
+            assertNull(untagged.getEtag());
+            assertArrayEquals(encoded.toBytes(), untagged.toBytes());
+        }
+    }
+
+    /**
+     * Tests compression shrinks repetitive results and is skipped when it does not help
+     */
+    @Test
+    public void testCompression() {
+        List<SearchResultModel> results = getResults(50);
+        CompactResults plain = CompactResults.encode(results, false);
+        CompactResults compressed = CompactResults.encode(results, true);
+        assertFalse(plain.isCompressed());
+        assertTrue(compressed.isCompressed());
+        assertTrue(compressed.getEncodedSize() < plain.getEncodedSize());
+
+        CompactResults tiny = CompactResults.encode(List.of(), true);
+        assertFalse(tiny.isCompressed());
+    }
+
+    /**
+     * Tests results are only decoded as the stream is consumed
+     */
+    @Test
+    public void testLazyStream() {
+        byte[] data = CompactResults.encode(getResults(2), false).toBytes();
+        // Cut the second result short so decoding it fails
+        byte[] truncated = Arrays.copyOf(data, data.length - 5);
+        Iterator<SearchResultModel> results = CompactResults.fromBytes(truncated).stream().iterator();
+
+        assertEquals("1", results.next().getId());
+        assertThrows(UncheckedIOException.class, results::next);
+    }
+
+    /**
+     * Tests an empty list is a negative value and survives the persistent tier codec
+     */
+    @Test
+    public void testEmpty() {
+        CompactResults empty = CompactResults.encode(List.of(), true);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.stream().count());
+
+        Codec<CompactResults> codec = CompactValue.codec(CompactResults::fromBytes);
+        CompactResults decoded = codec.decode(codec.encode(CompactResults.encode(getResults(2), true)));
+        assertEquals(getResults(2), decoded.stream().collect(Collectors.toList()));
+    }
+
+    /**
+     * Create results with the usual watch links
+     *
+     * @param count Number of results
+     * @return Results
+     */
+    private static List<SearchResultModel> getResults(int count) {
+        List<SearchResultModel> results = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            results.add(new SearchResultModel(String.valueOf(i), "Title " + i, "Channel", "Description of video " + i,
+                "https://www.youtube.com/watch?v=" + i, "ChannelID", "https://i.ytimg.com/vi/" + i + "/default.jpg"));
+        }
+        return results;
+    }
+}
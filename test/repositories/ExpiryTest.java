@@ -0,0 +1,43 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the Expiry
+ */
+public class ExpiryTest {
+    /**
+     * Tests a fixed expiry gives every entry the same time to live
+     */
+    @Test
+    public void testFixed() {
+        Expiry<Integer> expiry = Expiry.fixed(Duration.ofMinutes(3));
+        assertEquals(Duration.ofMinutes(3), expiry.timeToLive("Test", 1));
+        assertEquals(Duration.ofMinutes(3), expiry.timeToLive("Other", null));
+    }
+
+    /**
+     * Tests negative results get the negative time to live
+     */
+    @Test
+    public void testNegative() {
+        Expiry<List<Integer>> expiry = Expiry.negative(Duration.ofMinutes(3), Duration.ofSeconds(30), List::isEmpty);
+        assertEquals(Duration.ofMinutes(3), expiry.timeToLive("Test", List.of(1)));
+        assertEquals(Duration.ofSeconds(30), expiry.timeToLive("Test", List.of()));
+    }
+
+    /**
+     * Tests negative results get the negative time to live and the others the time to live of the wrapped expiry
+     */
+    @Test
+    public void testNegativeWrapping() {
+        Expiry<List<Integer>> expiry = Expiry.negative((key, value) -> Duration.ofMinutes(value.size()), Duration.ofSeconds(30), List::isEmpty);
+        assertEquals(Duration.ofMinutes(2), expiry.timeToLive("Test", List.of(1, 2)));
+        assertEquals(Duration.ofSeconds(30), expiry.timeToLive("Test", List.of()));
+    }
+}
@@ -0,0 +1,139 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the Hedger
+ */
+public class HedgerTest {
+    /**
+     * Tests calls are not hedged before enough latencies are known
+     */
+    @Test
+    public void testNoHedgeWithoutSamples() throws InterruptedException {
+        Hedger hedger = new Hedger(0.95, Duration.ZERO, 10, 5, 1, Ticker.systemTicker());
+        assertTrue(hedger.getDelayNanos() < 0);
+
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletableFuture<String> result = hedger.call(() -> {
+            requests.incrementAndGet();
+            return slow;
+        });
+        Thread.sleep(50);
+        assertEquals(1, requests.get());
+        slow.complete("slow");
+        assertEquals("slow", result.join());
+        assertEquals(0, hedger.getHedged());
+    }
+
+    /**
+     * Tests the delay is the percentile of the recorded latencies, and at least the minimum delay
+     */
+    @Test
+    public void testDelay() {
+        AtomicLong time = new AtomicLong();
+        Hedger hedger = new Hedger(0.9, Duration.ofMillis(5), 10, 10, 1, time::get);
+        for (int i = 1; i <= 10; i++) {
+            long latency = TimeUnit.MILLISECONDS.toNanos(i * 10);
+            hedger.call(() -> {
+                time.addAndGet(latency);
+                return CompletableFuture.completedFuture("ok");
+            }).join();
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(90), hedger.getDelayNanos());
+
+        // The oldest latencies leave the window
+        for (int i = 0; i < 10; i++) {
+            hedger.call(() -> CompletableFuture.completedFuture("ok")).join();
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), hedger.getDelayNanos());
+    }
+
+    /**
+     * Tests a slow request is hedged and the first response is used
+     */
+    @Test
+    public void testHedgesSlowRequest() {
+        Hedger hedger = warmedUp(1);
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CopyOnWriteArrayList<String> requests = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> result = hedger.call(() -> {
+            requests.add("request");
+            return requests.size() == 1 ? slow : CompletableFuture.completedFuture("hedge");
+        });
+
+        assertEquals("hedge", result.join());
+        assertEquals(2, requests.size());
+        assertEquals(1, hedger.getHedged());
+        slow.complete("slow");
+        assertEquals("hedge", result.join());
+    }
+
+    /**
+     * Tests a call fails only once both its requests failed
+     */
+    @Test
+    public void testFailsWhenEveryRequestFails() {
+        Hedger hedger = warmedUp(1);
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<String> result = hedger.call(() ->
+            requests.incrementAndGet() == 1 ? slow : CompletableFuture.failedFuture(new IOException("hedge failed")));
+
+        while (requests.get() < 2) {
+            Thread.onSpinWait();
+        }
+        assertFalse(result.isDone());
+        slow.completeExceptionally(new IOException("slow failed"));
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertEquals("slow failed", e.getCause().getMessage());
+    }
+
+    /**
+     * Tests no more than the maximum ratio of the calls are hedged
+     */
+    @Test
+    public void testMaxRatio() throws InterruptedException {
+        Hedger hedger = warmedUp(0.1);
+        long before = hedger.getHedged();
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        for (int i = 0; i < 10; i++) {
+            hedger.call(() -> {
+                requests.incrementAndGet();
+                return slow;
+            });
+        }
+        Thread.sleep(100);
+        // 30 calls were made with the warm-up, so 3 may be hedged
+        assertEquals(3, hedger.getHedged() - before);
+        assertEquals(13, requests.get());
+        slow.complete("ok");
+    }
+
+    /**
+     * Create a hedger that already recorded 20 fast requests
+     *
+     * @param maxRatio Largest fraction of the calls hedged
+     * @return Hedger hedging after its minimum delay of 10 ms
+     */
+    private static Hedger warmedUp(double maxRatio) {
+        Hedger hedger = new Hedger(0.95, Duration.ofMillis(10), 20, 20, maxRatio, Ticker.systemTicker());
+        for (int i = 0; i < 20; i++) {
+            hedger.call(() -> CompletableFuture.completedFuture("ok")).join();
+        }
+        return hedger;
+    }
+}
@@ -0,0 +1,189 @@
+package repositories;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the MappedFileStore
+ */
+public class MappedFileStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests records are read back after the store is reopened
+     */
+    @Test
+    public void testReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        MappedFileStore store = new MappedFileStore(path, 4096);
+        assertTrue(store.put("Test", bytes("1"), 10));
+        assertTrue(store.put("Other", bytes("2"), 20));
+        assertTrue(store.put("Test", bytes("3"), 30));
+        store.close();
+
+        MappedFileStore reopened = new MappedFileStore(path, 4096);
+        assertEquals(2, reopened.size());
+        assertEquals("3", string(reopened.get("Test").get().getValue()));
+        assertEquals(30, reopened.get("Test").get().getWrittenAt());
+        assertEquals("2", string(reopened.get("Other").get().getValue()));
+        assertFalse(reopened.get("Missing").isPresent());
+        assertTrue(reopened.deadRatio() > 0);
+        reopened.close();
+    }
+
+    /**
+     * Tests a record torn by a crash is ignored
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        MappedFileStore store = new MappedFileStore(path, 4096);
+        store.put("Test", bytes("1"), 10);
+        store.put("Other", bytes("2"), 20);
+        store.close();
+
+        // Corrupt the length of the second record as if its write never completed
+        int second = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + "Test".length() + 1;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(second);
+            file.writeInt(0);
+        }
+
+        MappedFileStore reopened = new MappedFileStore(path, 4096);
+        assertEquals(1, reopened.size());
+        assertEquals("1", string(reopened.get("Test").get().getValue()));
+        assertFalse(reopened.get("Other").isPresent());
+        reopened.close();
+    }
+
+    /**
+     * Tests a file with an unknown header is discarded
+     */
+    @Test
+    public void testUnknownFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.writeLong(42);
+        }
+
+        MappedFileStore store = new MappedFileStore(path, 4096);
+        assertEquals(0, store.size());
+        assertTrue(store.put("Test", bytes("1"), 10));
+        store.close();
+        assertEquals(1, new MappedFileStore(path, 4096).size());
+    }
+
+    /**
+     * Tests compaction drops overwritten and old records
+     */
+    @Test
+    public void testCompact() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        MappedFileStore store = new MappedFileStore(path, 4096);
+        store.put("Test", bytes("1"), 10);
+        store.put("Test", bytes("2"), 30);
+        store.put("Old", bytes("3"), 5);
+        assertTrue(store.reclaimable(Long.MIN_VALUE) > 0);
+        assertTrue(store.reclaimable(10) > store.reclaimable(Long.MIN_VALUE));
+        store.compact(10);
+
+        assertEquals(0, store.deadRatio(), 0);
+        assertEquals(0, store.reclaimable(10));
+        assertEquals(1, store.size());
+        assertEquals("2", string(store.get("Test").get().getValue()));
+        assertTrue(store.put("Other", bytes("4"), 40));
+        store.close();
+
+        MappedFileStore reopened = new MappedFileStore(path, 4096);
+        assertEquals(2, reopened.size());
+        assertEquals("4", string(reopened.get("Other").get().getValue()));
+        reopened.close();
+    }
+
+    /**
+     * Tests a full store refuses records until it is compacted
+     */
+    @Test
+    public void testFull() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        MappedFileStore store = new MappedFileStore(path, 128);
+        int written = 0;
+        while (store.put("Test", bytes("value" + written), written)) {
+            written++;
+        }
+        assertTrue(written > 1);
+        assertEquals("value" + (written - 1), string(store.get("Test").get().getValue()));
+        assertFalse(store.put("Other", bytes("value"), written));
+
+        store.compact(Long.MIN_VALUE);
+        assertTrue(store.put("Other", bytes("value"), written));
+        assertEquals("value" + (written - 1), string(store.get("Test").get().getValue()));
+        assertFalse(store.put("Other", new byte[128], written));
+        store.close();
+    }
+
+    /**
+     * Tests records written while a compaction copies the file are kept, and replace their older copies
+     */
+    @Test
+    public void testCompactWhileWriting() throws IOException, InterruptedException {
+        Path path = folder.getRoot().toPath().resolve("store.cache");
+        MappedFileStore store = new MappedFileStore(path, 1 << 20);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                assertTrue(store.put("Key" + (i % 20), bytes("value" + i), i));
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            store.compact(Long.MIN_VALUE);
+        }
+        writer.join();
+        store.compact(Long.MIN_VALUE);
+
+        assertEquals(20, store.size());
+        assertEquals(0, store.deadRatio(), 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("value" + (1980 + i), string(store.get("Key" + i).get().getValue()));
+        }
+        store.close();
+        assertEquals("value1999", string(new MappedFileStore(path, 1 << 20).get("Key19").get().getValue()));
+    }
+
+    /**
+     * Tests stores need room for at least one record
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() throws IOException {
+        new MappedFileStore(folder.getRoot().toPath().resolve("store.cache"), 16);
+    }
+
+    /**
+     * Encode a string
+     *
+     * @param value String to encode
+     * @return UTF-8 bytes
+     */
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode a string
+     *
+     * @param value UTF-8 bytes
+     * @return Decoded string
+     */
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
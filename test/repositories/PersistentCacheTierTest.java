@@ -0,0 +1,222 @@
+package repositories;
+
+import com.google.api.services.youtube.model.ResourceId;
+import com.google.api.services.youtube.model.SearchListResponse;
+import com.google.api.services.youtube.model.SearchResult;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the PersistentCacheTier
+ */
+public class PersistentCacheTierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests a new cache reads through to the objects persisted by a previous one
+     */
+    @Test
+    public void testWarmRestart() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("search.cache");
+        MappedFileStore store = new MappedFileStore(path, 1 << 16);
+        Cache<SearchListResponse> cache = new Cache<>();
+        cache.setSecondTier(getTier(store, Clock.systemUTC()));
+        cache.put("Test", getResponse("11111"));
+        store.close();
+
+        Cache<SearchListResponse> restarted = new Cache<>();
+        restarted.setSecondTier(getTier(new MappedFileStore(path, 1 << 16), Clock.systemUTC()));
+        assertEquals(0, restarted.size());
+        assertEquals("11111", restarted.get("Test").get().getItems().get(0).getId().getVideoId());
+        assertEquals(1, restarted.size());
+        assertEquals("11111", restarted.getOrLoad("Test", () -> {
+            throw new RuntimeException("Loaded instead of reading through");
+        }).toCompletableFuture().join().getItems().get(0).getId().getVideoId());
+    }
+
+    /**
+     * Tests objects promoted from the tier keep their age
+     */
+    @Test
+    public void testPromotedAge() throws IOException {
+        AtomicLong millis = new AtomicLong(1_000_000);
+        Clock clock = getClock(millis);
+        MappedFileStore store = new MappedFileStore(folder.getRoot().toPath().resolve("search.cache"), 1 << 16);
+        store.put("Test", new JsonCodec<>(SearchListResponse.class).encode(getResponse("11111")), millis.get());
+        millis.addAndGet(Duration.ofMinutes(5).toMillis());
+
+        Cache<SearchListResponse> cache = new Cache<>(0, 0, Weigher.singleton(), Duration.ofMinutes(3), Duration.ofMinutes(10), Ticker.systemTicker());
+        cache.setSecondTier(getTier(store, clock));
+        // Older than the time to live, so only served stale while it is reloaded
+        assertFalse(cache.get("Test").isPresent());
+        assertEquals("11111", cache.getOrLoad("Test", () -> getResponse("22222"))
+            .toCompletableFuture().join().getItems().get(0).getId().getVideoId());
+    }
+
+    /**
+     * Tests objects older than the maximum age are ignored and compacted away
+     */
+    @Test
+    public void testMaxAge() throws IOException {
+        AtomicLong millis = new AtomicLong(1_000_000);
+        MappedFileStore store = new MappedFileStore(folder.getRoot().toPath().resolve("search.cache"), 1 << 16);
+        CacheTier<SearchListResponse> tier = getTier(store, getClock(millis));
+        tier.put("Test", getResponse("11111"));
+        tier.put("Test", getResponse("22222"));
+        tier.put("Test", getResponse("33333"));
+        assertTrue(tier.get("Test").isPresent());
+
+        millis.addAndGet(Duration.ofMinutes(13).toMillis());
+        assertFalse(tier.get("Test").isPresent());
+        tier.cleanUp();
+        assertEquals(0, store.size());
+    }
+
+    /**
+     * Tests a full file stops taking objects, and is only compacted once that drops expired objects
+     */
+    @Test
+    public void testFullCompactedOnCleanUp() throws IOException {
+        AtomicLong millis = new AtomicLong(1_000_000);
+        MappedFileStore store = spy(new MappedFileStore(folder.getRoot().toPath().resolve("search.cache"), 1024));
+        CacheTier<SearchListResponse> tier = getTier(store, getClock(millis));
+        for (int i = 0; i < 100; i++) {
+            tier.put("Test" + i, getResponse("11111"));
+        }
+        int stored = store.size();
+        assertTrue(stored < 100);
+        assertEquals(0, store.deadRatio(), 0);
+        // Only the first object that did not fit was written
+        verify(store, times(stored + 1)).put(anyString(), any(), anyLong());
+
+        // Every object is live, so compacting would not free anything
+        tier.cleanUp();
+        verify(store, never()).compact(anyLong());
+        assertEquals(stored, store.size());
+
+        millis.addAndGet(Duration.ofMinutes(13).toMillis());
+        tier.put("Other", getResponse("22222"));
+        assertFalse(tier.get("Other").isPresent());
+        tier.cleanUp();
+        assertEquals(0, store.size());
+        tier.put("Other", getResponse("22222"));
+        assertTrue(tier.get("Other").isPresent());
+    }
+
+    /**
+     * Tests entries that cannot be decoded are ignored
+     */
+    @Test
+    public void testCorruptEntry() throws IOException {
+        MappedFileStore store = new MappedFileStore(folder.getRoot().toPath().resolve("search.cache"), 1 << 16);
+        store.put("Test", new byte[]{'{', '['}, System.currentTimeMillis());
+        assertFalse(getTier(store, Clock.systemUTC()).get("Test").isPresent());
+    }
+
+    /**
+     * Tests the tier is only created when enabled in the configuration
+     */
+    @Test
+    public void testFromConfig() {
+        String caches = "tubelytics.cache.search { ttl = 3m, stale-while-revalidate = 1m }\n"
+            + "tubelytics.cache.l2 { directory = \"" + folder.getRoot().getAbsolutePath().replace("\\", "/") + "\","
+            + " compaction-ratio = 0.5, search.max-bytes = 64k }\n"
+            + "tubelytics.cache.adaptive.enabled = false\n";
+        Config disabled = ConfigFactory.parseString(caches + "tubelytics.cache.l2.enabled = false");
+        Config enabled = ConfigFactory.parseString(caches + "tubelytics.cache.l2.enabled = true");
+
+        JsonCodec<SearchListResponse> codec = new JsonCodec<>(SearchListResponse.class);
+        assertFalse(PersistentCacheTier.fromConfig(disabled, "search", codec).isPresent());
+        assertTrue(PersistentCacheTier.fromConfig(enabled, "search", codec).isPresent());
+        assertTrue(folder.getRoot().toPath().resolve("search.cache").toFile().exists());
+    }
+
+    /**
+     * Tests objects are kept up to the maximum adaptive time to live when adaptive expiry is enabled
+     */
+    @Test
+    public void testFromConfigAdaptive() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("search.cache");
+        MappedFileStore store = new MappedFileStore(path, 1 << 16);
+        store.put("Test", new JsonCodec<>(SearchListResponse.class).encode(getResponse("11111")),
+            System.currentTimeMillis() - Duration.ofMinutes(20).toMillis());
+        store.close();
+
+        String caches = "tubelytics.cache.search { ttl = 3m, stale-while-revalidate = 1m }\n"
+            + "tubelytics.cache.l2 { enabled = true, directory = \"" + folder.getRoot().getAbsolutePath().replace("\\", "/") + "\","
+            + " compaction-ratio = 0.5, search.max-bytes = 64k }\n"
+            + "tubelytics.cache.adaptive.max-ttl = 30m\n";
+        JsonCodec<SearchListResponse> codec = new JsonCodec<>(SearchListResponse.class);
+        CacheTier<SearchListResponse> fixed = PersistentCacheTier.fromConfig(
+            ConfigFactory.parseString(caches + "tubelytics.cache.adaptive.enabled = false"), "search", codec).orElseThrow();
+        assertFalse(fixed.get("Test").isPresent());
+        CacheTier<SearchListResponse> adaptive = PersistentCacheTier.fromConfig(
+            ConfigFactory.parseString(caches + "tubelytics.cache.adaptive.enabled = true"), "search", codec).orElseThrow();
+        assertTrue(adaptive.get("Test").isPresent());
+    }
+
+    /**
+     * Create a tier with a 13 minutes maximum age
+     *
+     * @param store Store of the tier
+     * @param clock Clock of the tier
+     * @return Tier
+     */
+    private static CacheTier<SearchListResponse> getTier(MappedFileStore store, Clock clock) {
+        return new PersistentCacheTier<>(store, new JsonCodec<>(SearchListResponse.class), Duration.ofMinutes(13), 0.5, clock);
+    }
+
+    /**
+     * Create a clock reading a mutable time
+     *
+     * @param millis Epoch milliseconds returned by the clock
+     * @return Clock
+     */
+    private static Clock getClock(AtomicLong millis) {
+        return new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(millis.get());
+            }
+        };
+    }
+
+    /**
+     * Create a search response with one video
+     *
+     * @param videoId ID of the video
+     * @return Search response
+     */
+    private static SearchListResponse getResponse(String videoId) {
+        SearchResult result = new SearchResult();
+        result.setId(new ResourceId().setVideoId(videoId));
+        return new SearchListResponse().setItems(Collections.singletonList(result));
+    }
+}
@@ -0,0 +1,110 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the PopularQueries
+ */
+public class PopularQueriesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests the most requested keys come first
+     */
+    @Test
+    public void testTop() {
+        PopularQueries queries = new PopularQueries(getConfig(null, 1000));
+        queries.recordSearch("cats");
+        queries.recordSearch("dogs");
+        queries.recordSearch("dogs");
+        queries.recordSearch("birds");
+        queries.recordSearch(" ");
+        queries.recordChannel("UC1");
+
+        assertEquals(List.of("dogs", "birds"), queries.topSearches(2));
+        assertEquals(List.of("UC1"), queries.topChannels(5));
+    }
+
+    /**
+     * Tests the least requested keys are dropped once too many are tracked
+     */
+    @Test
+    public void testTrim() {
+        PopularQueries queries = new PopularQueries(getConfig(null, 2));
+        queries.recordSearch("a");
+        queries.recordSearch("a");
+        queries.recordSearch("b");
+        queries.recordSearch("b");
+        queries.recordSearch("c");
+        queries.recordSearch("d");
+        queries.recordSearch("e");
+
+        assertEquals(List.of("a", "b"), queries.topSearches(10));
+    }
+
+    /**
+     * Tests the counts are saved and read back halved
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("warmup").resolve("popular.tsv");
+        PopularQueries queries = new PopularQueries(getConfig(file, 10));
+        for (int i = 0; i < 4; i++) {
+            queries.recordSearch("cats\tand dogs");
+            queries.recordChannel("UC1");
+        }
+        queries.recordSearch("once");
+        queries.save();
+
+        PopularQueries restored = new PopularQueries(getConfig(file, 10));
+        // Keys requested once fade out after a restart
+        assertEquals(List.of("cats\tand dogs"), restored.topSearches(10));
+        assertEquals(List.of("UC1"), restored.topChannels(10));
+        restored.recordSearch("new");
+        restored.recordSearch("new");
+        restored.recordSearch("new");
+        assertEquals(List.of("new", "cats\tand dogs"), restored.topSearches(10));
+    }
+
+    /**
+     * Tests a missing or malformed snapshot is ignored
+     */
+    @Test
+    public void testMalformedSnapshot() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("popular.tsv");
+        assertTrue(new PopularQueries(getConfig(file, 10)).topSearches(10).isEmpty());
+
+        Files.write(file, List.of("search\t4\tcats", "search\tmany\tdogs", "garbage", "video\t4\tid"), StandardCharsets.UTF_8);
+        PopularQueries queries = new PopularQueries(getConfig(file, 10));
+        assertEquals(List.of("cats"), queries.topSearches(10));
+        assertTrue(queries.topChannels(10).isEmpty());
+    }
+
+    /**
+     * Create the configuration of the counts
+     *
+     * @param snapshot   File keeping the counts across restarts, null to keep them in memory only
+     * @param maxTracked Number of keys of each kind kept when the counts are trimmed
+     * @return Configuration
+     */
+    private static Config getConfig(Path snapshot, int maxTracked) {
+        return ConfigFactory.empty()
+            .withValue("tubelytics.warmup.snapshot", ConfigValueFactory.fromAnyRef(snapshot == null ? "" : snapshot.toString()))
+            .withValue("tubelytics.warmup.max-tracked", ConfigValueFactory.fromAnyRef(maxTracked));
+    }
+}
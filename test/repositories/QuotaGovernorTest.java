@@ -0,0 +1,180 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the QuotaGovernor
+ */
+public class QuotaGovernorTest {
+    private AtomicLong time;
+    private QuotaGovernor governor;
+
+    /**
+     * Create a governor holding 1000 units, refilled at one unit per second
+     */
+    @Before
+    public void setUp() {
+        time = new AtomicLong();
+        governor = new QuotaGovernor(getConfig(""), time::get);
+    }
+
+    /**
+     * Tests background calls are refused once the bucket is down to the reserve, unlike interactive ones
+     */
+    @Test
+    public void testReserve() {
+        for (int i = 0; i < 8; i++) {
+            assertTrue(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND));
+        }
+        assertFalse(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND));
+        assertEquals(200, governor.getAvailable());
+
+        assertTrue(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertTrue(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertFalse(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertTrue(governor.isExhausted());
+        assertEquals(0, governor.getAvailable());
+
+        assertEquals(8, governor.getGranted(QuotaGovernor.Priority.BACKGROUND));
+        assertEquals(1, governor.getDenied(QuotaGovernor.Priority.BACKGROUND));
+        assertEquals(2, governor.getGranted(QuotaGovernor.Priority.INTERACTIVE));
+        assertEquals(1, governor.getDenied(QuotaGovernor.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Tests each kind of call is charged its own cost
+     */
+    @Test
+    public void testCosts() {
+        governor.acquire(QuotaGovernor.Call.VIDEOS, QuotaGovernor.Priority.INTERACTIVE);
+        governor.acquire(QuotaGovernor.Call.CHANNELS, QuotaGovernor.Priority.INTERACTIVE);
+        governor.acquire(QuotaGovernor.Call.PLAYLIST_ITEMS, QuotaGovernor.Priority.INTERACTIVE);
+        assertEquals(997, governor.getAvailable());
+        governor.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE);
+        assertEquals(897, governor.getAvailable());
+    }
+
+    /**
+     * Tests the bucket refills over time up to its capacity, and calls resume once it did
+     */
+    @Test
+    public void testRefill() {
+        for (int i = 0; i < 10; i++) {
+            governor.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE);
+        }
+        assertFalse(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertFalse(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertTrue(governor.isExhausted());
+
+        time.addAndGet(Duration.ofSeconds(100).toNanos());
+        assertEquals(100, governor.getAvailable());
+        assertTrue(governor.isExhausted());
+        assertTrue(governor.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertFalse(governor.isExhausted());
+
+        time.addAndGet(Duration.ofDays(1).toNanos());
+        assertEquals(1000, governor.getAvailable());
+        assertEquals(1, governor.getLevel(), 0);
+    }
+
+    /**
+     * Tests a refused acquire fails with a QuotaExceededException
+     */
+    @Test
+    public void testAcquireExceeded() {
+        for (int i = 0; i < 8; i++) {
+            governor.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND);
+        }
+        QuotaGovernor.QuotaExceededException e = assertThrows(QuotaGovernor.QuotaExceededException.class,
+            () -> governor.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND));
+        assertTrue(e.getMessage().contains("background search"));
+    }
+
+    /**
+     * Tests intervals are stretched more the lower the bucket is below the low watermark
+     */
+    @Test
+    public void testStretch() {
+        Duration interval = Duration.ofMinutes(2);
+        assertEquals(interval, governor.stretch(interval));
+
+        spend(500);
+        assertEquals(interval, governor.stretch(interval));
+
+        // A quarter full is half way to empty below the watermark
+        spend(250);
+        assertEquals(Duration.ofMinutes(9), governor.stretch(interval));
+
+        spend(250);
+        assertEquals(Duration.ofMinutes(16), governor.stretch(interval));
+    }
+
+    /**
+     * Spend units from the governor with interactive video calls
+     *
+     * @param units Units to spend
+     */
+    private void spend(int units) {
+        for (int i = 0; i < units; i++) {
+            governor.acquire(QuotaGovernor.Call.VIDEOS, QuotaGovernor.Priority.INTERACTIVE);
+        }
+    }
+
+    /**
+     * Tests a disabled governor never refuses nor stretches
+     */
+    @Test
+    public void testDisabled() {
+        QuotaGovernor unlimited = new QuotaGovernor(getConfig("enabled = false"), time::get);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(unlimited.tryAcquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND));
+        }
+        assertFalse(unlimited.isEnabled());
+        assertEquals(1, unlimited.getLevel(), 0);
+        assertEquals(Duration.ofMinutes(2), unlimited.stretch(Duration.ofMinutes(2)));
+        assertEquals(100, unlimited.getGranted(QuotaGovernor.Priority.BACKGROUND));
+    }
+
+    /**
+     * Tests the governor reads its budget and costs from the configuration
+     */
+    @Test
+    public void testConfig() {
+        QuotaGovernor configured = new QuotaGovernor(getConfig(
+            "daily-budget = 10000, burst = 500, costs { search = 50, videos = 1, channels = 2, playlist-items = 3 }"), time::get);
+        assertTrue(configured.isEnabled());
+        configured.acquire(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE);
+        configured.acquire(QuotaGovernor.Call.CHANNELS, QuotaGovernor.Priority.INTERACTIVE);
+        configured.acquire(QuotaGovernor.Call.PLAYLIST_ITEMS, QuotaGovernor.Priority.INTERACTIVE);
+        assertEquals(445, configured.getAvailable());
+    }
+
+    /**
+     * Tests invalid settings are refused
+     */
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new QuotaGovernor(getConfig("daily-budget = 0"), time::get));
+        assertThrows(IllegalArgumentException.class, () -> new QuotaGovernor(getConfig("reserve = 1"), time::get));
+        assertThrows(IllegalArgumentException.class, () -> new QuotaGovernor(getConfig("max-stretch = 0.5"), time::get));
+    }
+
+    /**
+     * Create the configuration of an enabled governor holding 1000 units, refilled at one unit per second
+     *
+     * @param settings Settings of tubelytics.quota overriding those
+     * @return Configuration
+     */
+    private static Config getConfig(String settings) {
+        return ConfigFactory.parseString("tubelytics.quota { " + settings + " }").withFallback(ConfigFactory.parseString(
+            "tubelytics.quota { enabled = true, daily-budget = 86400, burst = 1000, reserve = 0.2, low-watermark = 0.5, max-stretch = 8 }"));
+    }
+}
@@ -0,0 +1,214 @@
+package repositories;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.cluster.Cluster;
+import org.apache.pekko.cluster.MemberStatus;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ReplicatedCacheTier, on a two node cluster running in this JVM
+ */
+public class ReplicatedCacheTierTest {
+    private static final Codec<String> CODEC = new Codec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+    private static final Config CLUSTER = ConfigFactory.parseString(
+        "pekko.actor.provider = cluster\n"
+            + "pekko.remote.artery.canonical.hostname = 127.0.0.1\n"
+            + "pekko.remote.artery.canonical.port = 0\n"
+            + "pekko.cluster.jmx.enabled = off\n"
+            + "pekko.cluster.distributed-data.gossip-interval = 100ms\n"
+            + "pekko.cluster.distributed-data.notify-subscribers-interval = 100ms\n"
+            + "pekko.loglevel = WARNING"
+    );
+
+    private static ActorSystem first;
+    private static ActorSystem second;
+
+    /**
+     * Start two actor systems and join them in a cluster
+     */
+    @BeforeClass
+    public static void setup() {
+        first = ActorSystem.create("ReplicatedCacheTierTestSystem", CLUSTER);
+        second = ActorSystem.create("ReplicatedCacheTierTestSystem", CLUSTER);
+        Cluster.get(first).join(Cluster.get(first).selfAddress());
+        Cluster.get(second).join(Cluster.get(first).selfAddress());
+        awaitTrue(() -> List.of(first, second).stream().allMatch(system -> {
+            Cluster cluster = Cluster.get(system);
+            return cluster.state().members().size() == 2
+                && cluster.readView().members().forall(member -> member.status() == MemberStatus.up());
+        }));
+    }
+
+    /**
+     * Shutdown the actor systems
+     */
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(second);
+        TestKit.shutdownActorSystem(first);
+        first = null;
+        second = null;
+    }
+
+    /**
+     * Tests an object put on one node is read on the other with its age
+     */
+    @Test
+    public void testReplication() {
+        AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+        Clock clock = getClock(millis);
+        ReplicatedCacheTier<String> writer = new ReplicatedCacheTier<>(first, "replication", CODEC, Duration.ofMinutes(1), 4, clock);
+        ReplicatedCacheTier<String> reader = new ReplicatedCacheTier<>(second, "replication", CODEC, Duration.ofMinutes(1), 4, clock);
+
+        writer.put("cats", "Cat videos");
+        // Local writes are read back right away
+        assertEquals("Cat videos", writer.get("cats").get().getObject());
+        awaitTrue(() -> reader.get("cats").isPresent());
+
+        millis.addAndGet(10_000);
+        CacheTier.Stored<String> stored = reader.get("cats").get();
+        assertEquals("Cat videos", stored.getObject());
+        assertEquals(Duration.ofSeconds(10).toNanos(), stored.getAgeNanos());
+        assertTrue(reader.get("dogs").isEmpty());
+
+        reader.put("cats", "Newer cat videos");
+        awaitTrue(() -> writer.get("cats").map(s -> s.getObject().equals("Newer cat videos")).orElse(false));
+    }
+
+    /**
+     * Tests old objects are ignored and removed from every node on clean up
+     */
+    @Test
+    public void testExpiry() {
+        AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+        Clock clock = getClock(millis);
+        ReplicatedCacheTier<String> writer = new ReplicatedCacheTier<>(first, "expiry", CODEC, Duration.ofMinutes(1), 2, clock);
+        ReplicatedCacheTier<String> reader = new ReplicatedCacheTier<>(second, "expiry", CODEC, Duration.ofMinutes(1), 2, clock);
+
+        writer.put("old", "Old videos");
+        awaitTrue(() -> reader.size() == 1);
+        millis.addAndGet(60_000);
+        writer.put("new", "New videos");
+        assertTrue(writer.get("old").isEmpty());
+
+        writer.cleanUp();
+        awaitTrue(() -> reader.size() == 1 && writer.size() == 1 && reader.get("new").isPresent());
+        assertEquals("New videos", reader.get("new").get().getObject());
+    }
+
+    /**
+     * Tests the tier is only created when enabled on a cluster node
+     */
+    @Test
+    public void testFromConfig() {
+        Config caches = ConfigFactory.parseString(
+            "tubelytics.cache.search { ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.replicated.shards = 2\n"
+        );
+        Config disabled = ConfigFactory.parseString("tubelytics.cache.replicated.enabled = false").withFallback(caches);
+        Config enabled = ConfigFactory.parseString("tubelytics.cache.replicated.enabled = true").withFallback(caches);
+
+        assertTrue(ReplicatedCacheTier.fromConfig(first, disabled, "search", CODEC).isEmpty());
+        assertTrue(ReplicatedCacheTier.fromConfig(first, enabled, "search", CODEC).isPresent());
+
+        ActorSystem local = ActorSystem.create("ReplicatedCacheTierLocalSystem");
+        try {
+            assertTrue(ReplicatedCacheTier.fromConfig(local, enabled, "search", CODEC).isEmpty());
+        } finally {
+            TestKit.shutdownActorSystem(local);
+        }
+    }
+
+    /**
+     * Tests caches on different nodes share their responses
+     */
+    @Test
+    public void testSharedCaches() {
+        Config config = ConfigFactory.parseString(
+            "tubelytics.cache.replicated { enabled = true, shards = 2 }\n"
+                + "tubelytics.cache { search.ttl = 3m, channel.ttl = 3m, playlists.ttl = 3m, video.ttl = 3m }\n"
+                + "tubelytics.cache { search.stale-while-revalidate = 0s, channel.stale-while-revalidate = 0s }\n"
+                + "tubelytics.cache { playlists.stale-while-revalidate = 0s, video.stale-while-revalidate = 0s }\n"
+        );
+        YoutubeRepository.SearchCache firstCache = new YoutubeRepository.SearchCache();
+        YoutubeRepository.SearchCache secondCache = new YoutubeRepository.SearchCache();
+        new CacheReplication(first, config, firstCache, new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache());
+        new CacheReplication(second, config, secondCache, new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache());
+
+        firstCache.put("cats", CompactResults.encode(List.of(), true));
+        awaitTrue(() -> secondCache.get("cats").isPresent());
+        assertTrue(secondCache.get("cats").get().isEmpty());
+    }
+
+    /**
+     * Wait for a condition to hold
+     *
+     * @param condition Condition to wait for
+     */
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Create a clock reading a counter
+     *
+     * @param millis Epoch milliseconds returned by the clock
+     * @return Clock
+     */
+    private static Clock getClock(AtomicLong millis) {
+        return new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(millis.get());
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package repositories;
+
+import com.typesafe.config.ConfigFactory;
+import models.SearchBatch;
+import models.SearchResultModel;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the ScoredSearchCache
+ */
+public class ScoredSearchCacheTest {
+    /**
+     * Tests batches are weighed from the length of their strings
+     */
+    @Test
+    public void testWeigh() {
+        SearchBatch empty = new SearchBatch(List.of());
+        SearchBatch batch = new SearchBatch(List.of(new SearchResultModel("1", "Title", "Channel", null, "link", "channel", "thumbnail")));
+
+        assertEquals(8, ScoredSearchCache.weigh("test", empty));
+        assertTrue(ScoredSearchCache.weigh("test", batch) > 2 * "1TitleChannellinkchannelthumbnail".length() + 8);
+    }
+
+    /**
+     * Tests the cache is bounded by the configuration
+     */
+    @Test
+    public void testConfiguredCache() {
+        ScoredSearchCache cache = new ScoredSearchCache(ConfigFactory.parseString(
+            "tubelytics.cache.scored-search { max-entries = 1, max-bytes = 1m, ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.adaptive.enabled = false"
+        ));
+        cache.put("1", new SearchBatch(List.of()));
+        cache.put("2", new SearchBatch(List.of()));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.weight());
+    }
+}
@@ -0,0 +1,155 @@
+package repositories;
+
+import models.SearchResultModel;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the SearchPages
+ */
+public class SearchPagesTest {
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    /**
+     * Create the actor system running the streams
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        system = ActorSystem.create("SearchPagesTestSystem");
+        materializer = Materializer.matFromSystem(system);
+    }
+
+    /**
+     * Shut the actor system down
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    /**
+     * Tests the pages are followed with their tokens until the last one
+     */
+    @Test
+    public void testFollowsPages() {
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        Source<SearchResultModel, ?> source = SearchPages.source(500, token -> {
+            tokens.add(String.valueOf(token));
+            if (token == null) {
+                return CompletableFuture.completedFuture(new SearchPages.Page(getResults(0, 50), "p2"));
+            }
+            if (token.equals("p2")) {
+                return CompletableFuture.completedFuture(new SearchPages.Page(getResults(50, 50), "p3"));
+            }
+            return CompletableFuture.completedFuture(new SearchPages.Page(getResults(100, 20), null));
+        });
+
+        List<SearchResultModel> results = run(source);
+        assertEquals(120, results.size());
+        assertEquals("0", results.get(0).getId());
+        assertEquals("119", results.get(119).getId());
+        assertEquals(Arrays.asList("null", "p2", "p3"), tokens);
+    }
+
+    /**
+     * Tests no page is requested beyond the maximum number of results, nor before results are consumed
+     */
+    @Test
+    public void testStopsAtMaxResults() {
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        Source<SearchResultModel, ?> source = SearchPages.source(60, token -> {
+            tokens.add(String.valueOf(token));
+            int start = tokens.size() * 50;
+            return CompletableFuture.completedFuture(new SearchPages.Page(getResults(start, 50), "p" + start));
+        });
+
+        assertEquals(60, run(source).size());
+        assertEquals(2, tokens.size());
+
+        tokens.clear();
+        source.runWith(Sink.head(), materializer).toCompletableFuture().join();
+        assertEquals(1, tokens.size());
+    }
+
+    /**
+     * Tests an empty page ends the search even if it has a next page token
+     */
+    @Test
+    public void testEmptyPage() {
+        List<String> tokens = new CopyOnWriteArrayList<>();
+        Source<SearchResultModel, ?> source = SearchPages.source(500, token -> {
+            tokens.add(String.valueOf(token));
+            return CompletableFuture.completedFuture(new SearchPages.Page(new ArrayList<>(), "p2"));
+        });
+
+        assertTrue(run(source).isEmpty());
+        assertEquals(1, tokens.size());
+        assertTrue(run(SearchPages.source(0, token -> {
+            throw new AssertionError("Requested a page for no results");
+        })).isEmpty());
+    }
+
+    /**
+     * Tests a failed page fails the stream
+     */
+    @Test
+    public void testFailure() {
+        Source<SearchResultModel, ?> source = SearchPages.source(500, token -> token == null
+            ? CompletableFuture.completedFuture(new SearchPages.Page(getResults(0, 50), "p2"))
+            : CompletableFuture.failedFuture(new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND)));
+
+        CompletionException e = assertThrows(CompletionException.class, () -> run(source));
+        assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+    }
+
+    /**
+     * Tests pages are as small as the results requested, within the limits of the API
+     */
+    @Test
+    public void testPageSize() {
+        assertEquals(10, SearchPages.pageSize(10));
+        assertEquals(50, SearchPages.pageSize(500));
+        assertEquals(1, SearchPages.pageSize(0));
+    }
+
+    /**
+     * Run a source to the list of its results
+     *
+     * @param source Source of results
+     * @return Results
+     */
+    private static List<SearchResultModel> run(Source<SearchResultModel, ?> source) {
+        return source.runWith(Sink.seq(), materializer).toCompletableFuture().join();
+    }
+
+    /**
+     * Create search results with consecutive IDs
+     *
+     * @param start ID of the first result
+     * @param count Number of results
+     * @return Search results
+     */
+    private static List<SearchResultModel> getResults(int start, int count) {
+        return IntStream.range(start, start + count)
+            .mapToObj(i -> new SearchResultModel(String.valueOf(i), "Title " + i, "Channel", "", "https://www.youtube.com/watch?v=" + i, "C1", null))
+            .collect(Collectors.toList());
+    }
+}
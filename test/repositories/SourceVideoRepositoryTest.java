@@ -0,0 +1,173 @@
+package repositories;
+
+import models.ChannelModel;
+import models.SearchResultModel;
+import org.apache.pekko.Done;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Keep;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the SourceVideoRepository
+ */
+public class SourceVideoRepositoryTest {
+    private static ActorSystem system;
+    private static Materializer materializer;
+    private VideoRepository videos;
+    private SourceVideoRepository repository;
+
+    /**
+     * Create the actor system running the streams
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        system = ActorSystem.create("SourceVideoRepositoryTestSystem");
+        materializer = Materializer.matFromSystem(system);
+    }
+
+    /**
+     * Shut the actor system down
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    /**
+     * Create the repository around a mocked one
+     */
+    @Before
+    public void setUp() {
+        videos = mock(VideoRepository.class);
+        repository = new SourceVideoRepository(videos);
+    }
+
+    /**
+     * Tests the repository is only called when the source is materialized, and again on each materialization
+     */
+    @Test
+    public void testSearchLazy() {
+        when(videos.search("cats")).thenAnswer(invocation -> CompletableFuture.completedFuture(Stream.of(getResult("1"), getResult("2"))));
+
+        Source<SearchResultModel, CompletionStage<Done>> source = repository.search("cats");
+        verify(videos, never()).search("cats");
+
+        assertEquals(2, source.runWith(Sink.seq(), materializer).toCompletableFuture().join().size());
+        assertEquals("2", source.runWith(Sink.seq(), materializer).toCompletableFuture().join().get(1).getId());
+        verify(videos, times(2)).search("cats");
+    }
+
+    /**
+     * Tests the materialized value completes once the results have been emitted
+     */
+    @Test
+    public void testSearchDone() {
+        when(videos.search("cats", QuotaGovernor.Priority.BACKGROUND))
+            .thenReturn(CompletableFuture.completedFuture(Stream.of(getResult("1"))));
+
+        Pair<CompletionStage<Done>, CompletionStage<List<SearchResultModel>>> run = repository.search("cats", QuotaGovernor.Priority.BACKGROUND)
+            .toMat(Sink.seq(), Keep.both())
+            .run(materializer);
+
+        assertEquals(1, run.second().toCompletableFuture().join().size());
+        assertEquals(Done.getInstance(), run.first().toCompletableFuture().join());
+    }
+
+    /**
+     * Tests the stream of the results is closed when the source is cancelled before its end
+     */
+    @Test
+    public void testSearchClosesStream() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        when(videos.search("cats")).thenReturn(CompletableFuture.completedFuture(Stream.of(getResult("1"), getResult("2"))
+            .onClose(() -> closed.complete(null))));
+
+        assertEquals("1", repository.search("cats").runWith(Sink.head(), materializer).toCompletableFuture().join().getId());
+        closed.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+
+    /**
+     * Tests a failed request fails the source and its materialized value
+     */
+    @Test
+    public void testSearchFailure() {
+        when(videos.search("cats")).thenReturn(CompletableFuture.failedFuture(new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE)));
+
+        Pair<CompletionStage<Done>, CompletionStage<List<SearchResultModel>>> run = repository.search("cats")
+            .toMat(Sink.seq(), Keep.both())
+            .run(materializer);
+
+        CompletionException e = assertThrows(CompletionException.class, () -> run.second().toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+        assertThrows(CompletionException.class, () -> run.first().toCompletableFuture().join());
+    }
+
+    /**
+     * Tests a channel is emitted as a single element, and a missing one fails the source
+     */
+    @Test
+    public void testGetChannelDetails() {
+        ChannelModel channel = mock(ChannelModel.class);
+        when(videos.getChannelDetails("C1")).thenReturn(CompletableFuture.completedFuture(channel));
+        when(videos.getChannelDetails("C2")).thenReturn(CompletableFuture.failedFuture(new NoSuchElementException("C2")));
+
+        assertEquals(Arrays.asList(channel), repository.getChannelDetails("C1").runWith(Sink.seq(), materializer).toCompletableFuture().join());
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> repository.getChannelDetails("C2").runWith(Sink.head(), materializer).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof NoSuchElementException);
+    }
+
+    /**
+     * Tests the tags of a video are emitted one by one
+     */
+    @Test
+    public void testGetTagsById() {
+        when(videos.getTagsById("1")).thenReturn(CompletableFuture.completedFuture(Stream.of("a", "b")));
+
+        assertEquals(Arrays.asList("a", "b"), repository.getTagsById("1").runWith(Sink.seq(), materializer).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests the search across pages is only requested when the source is materialized
+     */
+    @Test
+    public void testSearchAll() {
+        when(videos.searchAll("cats", 10, QuotaGovernor.Priority.INTERACTIVE)).thenReturn(Source.from(Arrays.asList(getResult("1"), getResult("2"))));
+
+        Source<SearchResultModel, CompletionStage<Done>> source = repository.searchAll("cats", 10, QuotaGovernor.Priority.INTERACTIVE);
+        verify(videos, never()).searchAll(anyString(), anyInt(), any());
+
+        assertEquals(2, source.runWith(Sink.seq(), materializer).toCompletableFuture().join().size());
+        verify(videos).searchAll("cats", 10, QuotaGovernor.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Create a search result
+     *
+     * @param id Video ID
+     * @return Search result
+     */
+    private static SearchResultModel getResult(String id) {
+        return new SearchResultModel(id, "Title " + id, "Channel", "", "https://www.youtube.com/watch?v=" + id, "C1", null);
+    }
+}
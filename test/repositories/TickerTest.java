@@ -0,0 +1,21 @@
+package repositories;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the Ticker
+ */
+public class TickerTest {
+    /**
+     * Tests the system ticker never goes backwards
+     */
+    @Test
+    public void testSystemTicker() {
+        Ticker ticker = Ticker.systemTicker();
+        long first = ticker.read();
+        long second = ticker.read();
+        assertTrue(second - first >= 0);
+    }
+}
@@ -0,0 +1,94 @@
+package repositories;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the TimingWheel
+ */
+public class TimingWheelTest {
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    /**
+     * Tests timeouts are only returned once their deadline passed
+     */
+    @Test
+    public void testAdvance() {
+        TimingWheel wheel = new TimingWheel(Duration.ofSeconds(1), 8, 0);
+        wheel.schedule("early", 1, 2 * SECOND);
+        wheel.schedule("late", 2, 5 * SECOND);
+
+        assertTrue(wheel.advance(2 * SECOND).isEmpty());
+        assertEquals(List.of("early"), keys(wheel.advance(3 * SECOND)));
+        assertTrue(wheel.advance(5 * SECOND).isEmpty());
+        assertEquals(List.of("late"), keys(wheel.advance(6 * SECOND)));
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Tests deadlines further than one revolution wait for their tick
+     */
+    @Test
+    public void testAdvanceMultipleRounds() {
+        TimingWheel wheel = new TimingWheel(Duration.ofSeconds(1), 4, 0);
+        wheel.schedule("far", 1, 10 * SECOND);
+
+        for (long second = 1; second <= 10; second++) {
+            assertTrue(wheel.advance(second * SECOND).isEmpty());
+        }
+        assertEquals(List.of("far"), keys(wheel.advance(11 * SECOND)));
+    }
+
+    /**
+     * Tests a wheel far behind expires everything due in one call
+     */
+    @Test
+    public void testAdvanceFarBehind() {
+        TimingWheel wheel = new TimingWheel(Duration.ofSeconds(1), 4, 0);
+        wheel.schedule("1", 1, SECOND);
+        wheel.schedule("2", 2, 3 * SECOND);
+        wheel.schedule("3", 3, 7 * SECOND);
+        wheel.schedule("4", 4, 100 * SECOND);
+
+        assertEquals(List.of("1", "2", "3"), keys(wheel.advance(50 * SECOND)).stream().sorted().collect(Collectors.toList()));
+        assertEquals(1, wheel.size());
+    }
+
+    /**
+     * Tests a deadline already past is expired on the next tick
+     */
+    @Test
+    public void testSchedulePast() {
+        TimingWheel wheel = new TimingWheel(Duration.ofSeconds(1), 4, 0);
+        wheel.advance(10 * SECOND);
+        wheel.schedule("past", 7, SECOND);
+
+        List<TimingWheel.Timeout> expired = wheel.advance(11 * SECOND);
+        assertEquals(List.of("past"), keys(expired));
+        assertEquals(7, expired.get(0).getStamp());
+    }
+
+    /**
+     * Tests invalid wheels are refused
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWheel() {
+        new TimingWheel(Duration.ZERO, 4, 0);
+    }
+
+    /**
+     * Get the keys of timeouts
+     *
+     * @param timeouts Timeouts
+     * @return Keys
+     */
+    private static List<String> keys(List<TimingWheel.Timeout> timeouts) {
+        return timeouts.stream().map(TimingWheel.Timeout::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,133 @@
+package repositories;
+
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the VideoBatcher
+ */
+public class VideoBatcherTest {
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * Fetch answering with a video for every requested ID except "missing"
+     *
+     * @param ids Requested IDs
+     * @return Completed future of a response holding the found videos
+     */
+    private CompletableFuture<VideoListResponse> fetch(List<String> ids) {
+        requests.add(ids);
+        return CompletableFuture.completedFuture(new VideoListResponse().setItems(ids.stream()
+            .filter(id -> !id.equals("missing"))
+            .map(id -> new Video().setId(id))
+            .collect(Collectors.toList())));
+    }
+
+    /**
+     * Tests lookups made within the window share one request and each get their own video
+     */
+    @Test
+    public void testBatch() {
+        VideoBatcher batcher = new VideoBatcher(getConfig("200ms", 50));
+        CompletableFuture<VideoListResponse> first = batcher.getAsync("1", this::fetch).toCompletableFuture();
+        CompletableFuture<VideoListResponse> second = batcher.getAsync("2", this::fetch).toCompletableFuture();
+        CompletableFuture<VideoListResponse> again = batcher.getAsync("1", this::fetch).toCompletableFuture();
+        CompletableFuture<VideoListResponse> missing = batcher.getAsync("missing", this::fetch).toCompletableFuture();
+
+        assertEquals("1", first.join().getItems().get(0).getId());
+        assertEquals(1, first.join().getItems().size());
+        assertEquals("2", second.join().getItems().get(0).getId());
+        assertSame(first.join(), again.join());
+        assertTrue(missing.join().getItems().isEmpty());
+        assertEquals(List.of(List.of("1", "2", "missing")), requests);
+    }
+
+    /**
+     * Tests a full batch is sent right away on the thread that filled it and the next lookups open a new batch
+     */
+    @Test
+    public void testFullBatch() {
+        VideoBatcher batcher = new VideoBatcher(getConfig("1h", 2));
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        CompletableFuture<VideoListResponse> first = batcher.getAsync("1", ids -> {
+            threads.add(Thread.currentThread());
+            return fetch(ids);
+        }).toCompletableFuture();
+        CompletableFuture<VideoListResponse> second = batcher.getAsync("2", this::fetch).toCompletableFuture();
+        assertEquals("1", first.join().getItems().get(0).getId());
+        assertEquals("2", second.join().getItems().get(0).getId());
+        assertEquals(List.of(List.of("1", "2")), requests);
+        assertEquals(List.of(Thread.currentThread()), threads);
+
+        CompletableFuture<VideoListResponse> third = batcher.getAsync("3", this::fetch).toCompletableFuture();
+        batcher.getAsync("4", this::fetch).toCompletableFuture().join();
+        assertEquals("3", third.join().getItems().get(0).getId());
+        assertEquals(List.of(List.of("1", "2"), List.of("3", "4")), requests);
+    }
+
+    /**
+     * Tests a batch of one ID completes with the response itself
+     */
+    @Test
+    public void testSingleLookup() {
+        VideoListResponse response = new VideoListResponse().setItems(List.of(new Video()));
+        VideoBatcher batcher = new VideoBatcher(getConfig("0ms", 50));
+        assertSame(response, batcher.getAsync("1", ids -> CompletableFuture.completedFuture(response)).toCompletableFuture().join());
+    }
+
+    /**
+     * Tests a failed request fails every lookup of the batch
+     */
+    @Test
+    public void testFailure() {
+        Function<List<String>, CompletableFuture<VideoListResponse>> failing = ids -> {
+            throw new IllegalStateException("Quota exceeded");
+        };
+        VideoBatcher batcher = new VideoBatcher(getConfig("100ms", 50));
+        CompletableFuture<VideoListResponse> first = batcher.getAsync("1", failing).toCompletableFuture();
+        CompletableFuture<VideoListResponse> second = batcher.getAsync("2", failing).toCompletableFuture();
+        CompletionException e = assertThrows(CompletionException.class, first::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(CompletionException.class, second::join);
+    }
+
+    /**
+     * Tests invalid batch sizes are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new VideoBatcher(getConfig("5ms", VideoBatcher.MAX_BATCH_SIZE + 1));
+    }
+
+    /**
+     * Tests the batcher is created from the configuration
+     */
+    @Test
+    public void testFromConfig() {
+        VideoBatcher batcher = new VideoBatcher(getConfig("1ms", 10));
+        assertEquals("1", batcher.getAsync("1", this::fetch).toCompletableFuture().join().getItems().get(0).getId());
+    }
+
+    /**
+     * Create a batching configuration
+     *
+     * @param window  How long a batch waits for more lookups
+     * @param maxSize Number of IDs sending a batch right away
+     * @return Configuration
+     */
+    private static Config getConfig(String window, int maxSize) {
+        return ConfigFactory.parseString("tubelytics.youtube.video-batch { window = " + window + ", max-size = " + maxSize + " }");
+    }
+}
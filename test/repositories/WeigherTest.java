@@ -0,0 +1,33 @@
+package repositories;
+
+import com.google.api.services.youtube.model.SearchListResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the Weigher
+ */
+public class WeigherTest {
+    /**
+     * Tests the singleton weigher
+     */
+    @Test
+    public void testSingleton() {
+        assertEquals(1, Weigher.singleton().weigh("key", "value"));
+    }
+
+    /**
+     * Tests the JSON weigher grows with the response
+     */
+    @Test
+    public void testJson() {
+        Weigher<SearchListResponse> weigher = Weigher.json();
+        SearchListResponse small = new SearchListResponse();
+        SearchListResponse large = new SearchListResponse();
+        large.setEtag("a".repeat(1000));
+        assertTrue(weigher.weigh("key", large) > weigher.weigh("key", small));
+        assertTrue(weigher.weigh("key", large) > 1000);
+    }
+}
@@ -0,0 +1,250 @@
+package repositories;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the YoutubeCircuits
+ */
+public class YoutubeCircuitsTest {
+    private static final Runnable UNLIMITED = () -> {
+    };
+
+    /**
+     * Tests every endpoint gets a circuit from the configuration
+     */
+    @Test
+    public void testFromConfig() {
+        YoutubeCircuits circuits = new YoutubeCircuits(getConfig(true));
+
+        for (QuotaGovernor.Call call : QuotaGovernor.Call.values()) {
+            assertThrows(CompletionException.class, () -> circuits.call(call, UNLIMITED, () -> {
+                throw new RuntimeException(new IOException("Connection reset"));
+            }, Runnable::run).join());
+            assertTrue(circuits.isOpen(call));
+        }
+    }
+
+    /**
+     * Tests disabled circuits make the calls as they are
+     */
+    @Test
+    public void testDisabled() {
+        YoutubeCircuits circuits = new YoutubeCircuits(getConfig(false));
+        for (int i = 0; i < 10; i++) {
+            assertThrows(CompletionException.class, () -> circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> {
+                throw new RuntimeException(new IOException("Connection reset"));
+            }, Runnable::run).join());
+        }
+        assertFalse(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+        assertEquals("ok", circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> "ok", Runnable::run).join());
+    }
+
+    /**
+     * Tests a call timeout shorter than the request timeout of the client is refused
+     */
+    @Test
+    public void testCallTimeoutBelowRequestTimeout() {
+        Config config = ConfigFactory.parseString("tubelytics.youtube.http.request-timeout = 10s").withFallback(getConfig(true));
+        assertThrows(IllegalArgumentException.class, () -> new YoutubeCircuits(config));
+    }
+
+    /**
+     * Tests the time a call waits for a thread of its executor is not part of its timeout
+     */
+    @Test
+    public void testQueueingNotTimed() throws InterruptedException {
+        YoutubeCircuits circuits = new YoutubeCircuits(ConfigFactory.parseString(
+            "tubelytics.youtube.http.request-timeout = 100ms, tubelytics.youtube.breaker.call-timeout = 100ms").withFallback(getConfig(true)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch busy = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            CompletableFuture<String> queued = circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> "ok", executor);
+            Thread.sleep(300);
+            assertFalse(queued.isDone());
+
+            busy.countDown();
+            assertEquals("ok", queued.join());
+            assertFalse(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests a call rejected by its executor is not counted against the circuit, nor used up as its trial
+     */
+    @Test
+    public void testRejectedNotCounted() throws InterruptedException {
+        YoutubeCircuits circuits = new YoutubeCircuits(ConfigFactory.parseString(
+            "tubelytics.youtube.breaker { reset-timeout = 100ms, max-reset-timeout = 100ms }").withFallback(getConfig(true)));
+        Executor full = task -> {
+            throw new RejectedExecutionException("Bulkhead search is full");
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(CompletionException.class, () -> circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> "ok", full).join());
+        }
+        assertFalse(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+
+        circuits.callAsync(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> CompletableFuture.failedFuture(new TimeoutException()))
+            .exceptionally(error -> null).join();
+        assertTrue(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+        Thread.sleep(200);
+        // The trial call is handed back, so the circuit does not stay half-open waiting on it
+        assertThrows(CompletionException.class, () -> circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> "ok", full).join());
+        assertFalse(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+        assertEquals("ok", circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> "ok", Runnable::run).join());
+        circuits.callAsync(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> CompletableFuture.failedFuture(new TimeoutException()))
+            .exceptionally(error -> null).join();
+        assertTrue(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+    }
+
+    /**
+     * Tests an open circuit only refuses the calls of its own endpoint
+     */
+    @Test
+    public void testEndpointsIsolated() {
+        YoutubeCircuits circuits = new YoutubeCircuits(getConfig(true));
+        circuits.callAsync(QuotaGovernor.Call.SEARCH, UNLIMITED, () -> CompletableFuture.failedFuture(new TimeoutException()))
+            .exceptionally(error -> null).join();
+
+        AtomicInteger requests = new AtomicInteger();
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> circuits.call(QuotaGovernor.Call.SEARCH, UNLIMITED, requests::incrementAndGet, Runnable::run).join());
+        assertTrue(YoutubeCircuits.isOpenCircuit(e));
+        assertEquals(1, (int) circuits.call(QuotaGovernor.Call.CHANNELS, UNLIMITED, requests::incrementAndGet, Runnable::run).join());
+    }
+
+    /**
+     * Tests a hedge sends the request again without acquiring the quota of the call again
+     */
+    @Test
+    public void testHedgeAcquiresOnce() throws InterruptedException {
+        YoutubeCircuits circuits = new YoutubeCircuits(getConfig(true));
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger requests = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertEquals("ok", circuits.call(QuotaGovernor.Call.VIDEOS, acquired::incrementAndGet, () -> "ok", executor).join());
+            }
+            CountDownLatch slow = new CountDownLatch(1);
+            CompletableFuture<String> hedged = circuits.call(QuotaGovernor.Call.VIDEOS, acquired::incrementAndGet, () -> {
+                if (requests.incrementAndGet() == 1) {
+                    try {
+                        slow.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "slow";
+                }
+                return "hedge";
+            }, executor);
+
+            assertEquals("hedge", hedged.join());
+            assertEquals(2, requests.get());
+            assertEquals(11, acquired.get());
+            slow.countDown();
+
+            // A refused call sends no request, hedged or not
+            CompletionException e = assertThrows(CompletionException.class, () -> circuits.call(QuotaGovernor.Call.VIDEOS, () -> {
+                throw new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.VIDEOS, QuotaGovernor.Priority.INTERACTIVE);
+            }, requests::incrementAndGet, executor).join());
+            assertTrue(YoutubeCircuits.isQuotaRefused(e));
+            assertEquals(2, requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests the errors counted against the API
+     */
+    @Test
+    public void testIsUpstreamFailure() {
+        assertTrue(YoutubeCircuits.isUpstreamFailure(new CompletionException(new TimeoutException())));
+        assertTrue(YoutubeCircuits.isUpstreamFailure(new RuntimeException(new IOException("Connection reset"))));
+        assertTrue(YoutubeCircuits.isUpstreamFailure(new RuntimeException(httpError(503))));
+        assertTrue(YoutubeCircuits.isUpstreamFailure(httpError(429)));
+        assertTrue(YoutubeCircuits.isUpstreamFailure(new AsyncYoutubeRepository.ApiException(500, "search failed")));
+
+        assertFalse(YoutubeCircuits.isUpstreamFailure(new RuntimeException(httpError(304))));
+        assertFalse(YoutubeCircuits.isUpstreamFailure(httpError(404)));
+        assertFalse(YoutubeCircuits.isUpstreamFailure(new AsyncYoutubeRepository.ApiException(403, "search failed")));
+        assertFalse(YoutubeCircuits.isUpstreamFailure(new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.BACKGROUND)));
+        assertFalse(YoutubeCircuits.isUpstreamFailure(new RejectedExecutionException()));
+        assertFalse(YoutubeCircuits.isUpstreamFailure(new NoSuchElementException()));
+    }
+
+    /**
+     * Tests a load failed by the API or refused by the quota falls back to the entry held by the cache
+     */
+    @Test
+    public void testOrCached() {
+        Cache<String> cache = new Cache<>();
+        CompletableFuture<String> open = CompletableFuture.failedFuture(new CircuitBreaker.OpenCircuitException("search"));
+
+        CompletionException e = assertThrows(CompletionException.class, () -> YoutubeCircuits.orCached(cache, "cats", open).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof CircuitBreaker.OpenCircuitException);
+
+        cache.put("cats", "cached");
+        assertEquals("cached", YoutubeCircuits.orCached(cache, "cats", open).toCompletableFuture().join());
+        assertEquals("cached", YoutubeCircuits.orCached(cache, "cats", CompletableFuture.<String>failedFuture(new TimeoutException())).toCompletableFuture().join());
+        assertEquals("loaded", YoutubeCircuits.orCached(cache, "cats", CompletableFuture.completedFuture("loaded")).toCompletableFuture().join());
+        CompletableFuture<String> refused = CompletableFuture.failedFuture(new QuotaGovernor.QuotaExceededException(QuotaGovernor.Call.SEARCH, QuotaGovernor.Priority.INTERACTIVE));
+        assertEquals("cached", YoutubeCircuits.orCached(cache, "cats", refused).toCompletableFuture().join());
+        e = assertThrows(CompletionException.class, () -> YoutubeCircuits.orCached(cache, "dogs", refused).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+        e = assertThrows(CompletionException.class, () -> YoutubeCircuits.orCached(cache, "cats",
+            CompletableFuture.<String>failedFuture(new NoSuchElementException("cats"))).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof NoSuchElementException);
+    }
+
+    /**
+     * Create the configuration of circuits opening after a single failure
+     *
+     * @param enabled False to disable the circuits and hedging
+     * @return Configuration
+     */
+    private static Config getConfig(boolean enabled) {
+        return ConfigFactory.parseString(
+            "tubelytics.youtube.http.request-timeout = 1s\n"
+                + "tubelytics.youtube.breaker { enabled = " + enabled + ", max-failures = 1, call-timeout = 1s, reset-timeout = 10s, max-reset-timeout = 1m }\n"
+                + "tubelytics.youtube.hedge { enabled = " + enabled + ", endpoints = [videos], percentile = 0.95, min-delay = 10ms, window = 10, min-samples = 5, max-ratio = 0.1 }");
+    }
+
+    /**
+     * Create an error response of the Google API client
+     *
+     * @param status HTTP status
+     * @return Exception of the response
+     */
+    private static HttpResponseException httpError(int status) {
+        return new HttpResponseException.Builder(status, "Error", new HttpHeaders()).build();
+    }
+}
@@ -0,0 +1,104 @@
+package repositories;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import play.inject.ApplicationLifecycle;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the YoutubeExecutors
+ */
+public class YoutubeExecutorsTest {
+    /**
+     * Tests every endpoint gets its own bulkhead sized by the configuration
+     */
+    @Test
+    public void testFromConfig() throws Exception {
+        ApplicationLifecycle lifecycle = mock(ApplicationLifecycle.class);
+        YoutubeExecutors executors = new YoutubeExecutors(ConfigFactory.parseString(
+            "tubelytics.youtube.executors {\n"
+                + "mode = platform\n"
+                + "search { threads = 8, queue-size = 50 }\n"
+                + "videos { threads = 2, queue-size = 10 }\n"
+                + "channels { threads = 3, queue-size = 20 }\n"
+                + "playlists { threads = 4, queue-size = 30 }\n"
+                + "}"
+        ), lifecycle);
+        assertEquals(8, executors.search().getThreads());
+        assertEquals(50, executors.search().getQueueSize());
+        assertEquals(2, executors.videos().getThreads());
+        assertEquals(3, executors.channels().getThreads());
+        assertEquals(30, executors.playlists().getQueueSize());
+        assertEquals(List.of("search", "videos", "channels", "playlists"), List.copyOf(executors.all().keySet()));
+        assertNotSame(executors.search(), executors.channels());
+
+        // The bulkheads are shut down with the application
+        stop(lifecycle);
+        for (Bulkhead bulkhead : executors.all().values()) {
+            assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> { }));
+        }
+    }
+
+    /**
+     * Tests shutting down stops every bulkhead
+     */
+    @Test
+    public void testShutdown() {
+        YoutubeExecutors executors = new YoutubeExecutors();
+        executors.shutdown();
+        for (Bulkhead bulkhead : executors.all().values()) {
+            assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> { }));
+        }
+    }
+
+    /**
+     * Tests the virtual mode uses virtual threads when the JVM has them and platform threads otherwise
+     */
+    @Test
+    public void testVirtualMode() {
+        YoutubeExecutors executors = new YoutubeExecutors(ConfigFactory.parseString(
+            "tubelytics.youtube.executors {\n"
+                + "mode = virtual\n"
+                + "search { threads = 8, max-concurrent = 500, queue-size = 50 }\n"
+                + "videos { threads = 2, max-concurrent = 100, queue-size = 10 }\n"
+                + "channels { threads = 3, max-concurrent = 100, queue-size = 20 }\n"
+                + "playlists { threads = 4, max-concurrent = 100, queue-size = 30 }\n"
+                + "}"
+        ), mock(ApplicationLifecycle.class));
+        boolean virtual = Bulkhead.isVirtualSupported();
+        assertEquals(virtual, executors.search().isVirtual());
+        assertEquals(virtual ? 500 : 8, executors.search().getThreads());
+        assertEquals(50, executors.search().getQueueSize());
+        executors.shutdown();
+    }
+
+    /**
+     * Tests unknown modes are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMode() {
+        new YoutubeExecutors(ConfigFactory.parseString("tubelytics.youtube.executors.mode = green"), mock(ApplicationLifecycle.class));
+    }
+
+    /**
+     * Run the stop hook the executors registered
+     *
+     * @param lifecycle Mocked lifecycle given to the executors
+     * @throws Exception If the hook fails
+     */
+    @SuppressWarnings("unchecked")
+    private static void stop(ApplicationLifecycle lifecycle) throws Exception {
+        ArgumentCaptor<Callable<? extends CompletionStage<?>>> hook = ArgumentCaptor.forClass(Callable.class);
+        verify(lifecycle).addStopHook(hook.capture());
+        hook.getValue().call().toCompletableFuture().join();
+    }
+}
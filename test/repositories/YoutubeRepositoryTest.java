@@ -1,7 +1,14 @@
 package repositories;
 
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.DateTime;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.*;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import models.QueryCanonicalizer;
 import models.SearchResultModel;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -9,12 +16,18 @@ import org.mockito.Mockito;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -68,6 +81,7 @@ public class YoutubeRepositoryTest {
         when(result.setQ(anyString())).thenReturn(result);
         when(result.setType(anyList())).thenReturn(result);
         when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
         when(result.execute()).thenReturn(youtubeResult)
             .thenThrow(new RuntimeException("Searched twice instead of caching"));
 
@@ -85,6 +99,10 @@ public class YoutubeRepositoryTest {
         );
         assertArrayEquals(expected, repository.search("test").toCompletableFuture().join().toArray());
         assertArrayEquals(expected, repository.search("test").toCompletableFuture().join().toArray());
+        // Spellings of the query share the cached results
+        assertArrayEquals(expected, repository.search(" TEST ").toCompletableFuture().join().toArray());
+        verify(result).setQ("test");
+        verify(result).setFields(YoutubeRepository.SEARCH_FIELDS);
     }
 
     /**
@@ -100,24 +118,14 @@ public class YoutubeRepositoryTest {
             )
         };
 
-        List<SearchResult> items = new ArrayList<>();
-        items.add(getNewSearchResult("Title 1", "Description 1", "Channel 1", "11111", "22222", "thumbnail_path"));
-        SearchListResponse youtubeResult = new SearchListResponse();
-        youtubeResult.setItems(items);
-
         YouTube client = Mockito.mock(YouTube.class);
         when(client.search()).thenThrow(new RuntimeException("Searched instead of caching"));
 
-        YoutubeRepository.SearchCache cache = Mockito.mock(YoutubeRepository.SearchCache.class);
-        when(cache.get(anyString())).thenReturn(Optional.of(youtubeResult));
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache();
+        cache.put("test", CompactResults.encode(List.of(expected), true));
 
-        YoutubeRepository.ChannelCache cCache = Mockito.mock(YoutubeRepository.ChannelCache.class);
-        ChannelListResponse ChannelListResponse = new ChannelListResponse();
-        when(cCache.get(anyString())).thenReturn(Optional.of(ChannelListResponse));
-
-        YoutubeRepository.PlayListsCache pCache = Mockito.mock(YoutubeRepository.PlayListsCache.class);
-        PlaylistItemListResponse playlistResponse = new PlaylistItemListResponse();
-        when(pCache.get(anyString())).thenReturn(Optional.of(playlistResponse));
+        YoutubeRepository.ChannelCache cCache = new YoutubeRepository.ChannelCache();
+        YoutubeRepository.PlayListsCache pCache = new YoutubeRepository.PlayListsCache();
 
         YoutubeRepository repositoryTest = new YoutubeRepository(client, cache, cCache, pCache);
         assertArrayEquals(expected, repositoryTest.search("test").toCompletableFuture().join().toArray());
@@ -134,6 +142,7 @@ public class YoutubeRepositoryTest {
         when(result.setMaxResults(10L)).thenReturn(result);
         when(result.setQ(anyString())).thenReturn(result);
         when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
         when(result.execute()).thenThrow(new IOException());
 
         YouTube.Search search = Mockito.mock(YouTube.Search.class);
@@ -142,14 +151,9 @@ public class YoutubeRepositoryTest {
         YouTube client = Mockito.mock(YouTube.class);
         when(client.search()).thenReturn(search);
 
-        YoutubeRepository.SearchCache cache = Mockito.mock(YoutubeRepository.SearchCache.class);
-        when(cache.get(anyString())).thenReturn(Optional.empty());
-
-        YoutubeRepository.ChannelCache ccache = Mockito.mock(YoutubeRepository.ChannelCache.class);
-        when(ccache.get(anyString())).thenReturn(Optional.empty());
-
-        YoutubeRepository.PlayListsCache pcache = Mockito.mock(YoutubeRepository.PlayListsCache.class);
-        when(pcache.get(anyString())).thenReturn(Optional.empty());
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache();
+        YoutubeRepository.ChannelCache ccache = new YoutubeRepository.ChannelCache();
+        YoutubeRepository.PlayListsCache pcache = new YoutubeRepository.PlayListsCache();
 
         YoutubeRepository repository = new YoutubeRepository(client, cache, ccache, pcache);
         assertThrows(CompletionException.class, () -> repository.search("test").toCompletableFuture().join());
@@ -203,6 +207,7 @@ public class YoutubeRepositoryTest {
         when(result.setId(anyList())).thenReturn(result);
         when(result.setMaxResults(anyLong())).thenReturn(result);
         when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
         VideoListResponse youtubeResult = new VideoListResponse();
         when(result.execute()).thenReturn(youtubeResult);
 
@@ -316,6 +321,7 @@ public class YoutubeRepositoryTest {
         when(result.setId(anyList())).thenReturn(result);
         when(result.setMaxResults(anyLong())).thenReturn(result);
         when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
         VideoListResponse youtubeResult = new VideoListResponse();
         when(result.execute()).thenReturn(youtubeResult);
 
@@ -345,6 +351,7 @@ public class YoutubeRepositoryTest {
         when(result.setId(anyList())).thenReturn(result);
         when(result.setMaxResults(anyLong())).thenReturn(result);
         when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
 
         ChannelListResponse youtubeResult = new ChannelListResponse();
         ChannelContentDetails.RelatedPlaylists related = new ChannelContentDetails.RelatedPlaylists();
@@ -383,6 +390,7 @@ public class YoutubeRepositoryTest {
         when(itemResult.setPlaylistId(anyString())).thenReturn(itemResult);
         when(itemResult.setMaxResults(anyLong())).thenReturn(itemResult);
         when(itemResult.setKey(anyString())).thenReturn(itemResult);
+        when(itemResult.setFields(anyString())).thenReturn(itemResult);
 
 
         PlaylistItemListResponse itemResponse = new PlaylistItemListResponse();
@@ -416,13 +424,416 @@ public class YoutubeRepositoryTest {
         when(client.channels()).thenReturn(channels);
         when(client.playlistItems()).thenReturn(items);
 
-        YoutubeRepository.SearchCache youtubeCache = Mockito.mock(YoutubeRepository.SearchCache.class);
-        YoutubeRepository.ChannelCache cCache = Mockito.mock(YoutubeRepository.ChannelCache.class);
-        YoutubeRepository.PlayListsCache pCache = Mockito.mock(YoutubeRepository.PlayListsCache.class);
+        YoutubeRepository.SearchCache youtubeCache = new YoutubeRepository.SearchCache();
+        YoutubeRepository.ChannelCache cCache = new YoutubeRepository.ChannelCache();
+        YoutubeRepository.PlayListsCache pCache = new YoutubeRepository.PlayListsCache();
 
         YoutubeRepository repository = new YoutubeRepository(client, youtubeCache, cCache, pCache);
 
         String title = repository.getChannelDetails("UCJuT7Sk2y520XwDrK4FXZqg").join().getTitle();
         assertEquals(title, "SpaceX Community");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test the caches are bounded by the configuration
+     */
+    @Test
+    public void testConfiguredCaches() {
+        Config config = ConfigFactory.parseString(
+            "tubelytics.cache.search { max-entries = 1, max-bytes = 1m, ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.channel { max-entries = 1, max-bytes = 1m, ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.playlists { max-entries = 1, max-bytes = 1m, ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.video { max-entries = 1, max-bytes = 1m, ttl = 3m, stale-while-revalidate = 1m }\n"
+                + "tubelytics.cache.negative-ttl = 30s\n"
+                + "tubelytics.cache.compress = true\n"
+                + "tubelytics.cache.adaptive { enabled = true, min-ttl = 30s, max-ttl = 30m, window = 2h, target-new-results = 1, max-tracked = 10 }\n"
+                + "tubelytics.cache.l2.enabled = false"
+        );
+
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache(config);
+        assertTrue(cache.isCompressed());
+        cache.put("1", CompactResults.encode(List.of(), true));
+        cache.put("2", CompactResults.encode(List.of(), true));
+        assertEquals(1, cache.size());
+
+        YoutubeRepository.ChannelCache cCache = new YoutubeRepository.ChannelCache(config);
+        cCache.put("1", CompactChannel.missing());
+        cCache.put("2", CompactChannel.missing());
+        assertEquals(1, cCache.size());
+
+        YoutubeRepository.PlayListsCache pCache = new YoutubeRepository.PlayListsCache(config);
+        pCache.put("1", CompactResults.encode(List.of(), true));
+        pCache.put("2", CompactResults.encode(List.of(), true));
+        assertEquals(1, pCache.size());
+
+        YoutubeRepository.VideoCache vCache = new YoutubeRepository.VideoCache(config);
+        vCache.put("1", new VideoListResponse());
+        vCache.put("2", new VideoListResponse());
+        assertEquals(1, vCache.size());
+    }
+
+    /**
+     * Test a missing channel fails and is only requested once
+     */
+    @Test
+    public void testChannelNotFound() throws IOException {
+        YouTube.Channels.List result = Mockito.mock(YouTube.Channels.List.class);
+        when(result.setId(anyList())).thenReturn(result);
+        when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
+        when(result.execute()).thenReturn(new ChannelListResponse().setItems(new ArrayList<>()));
+
+        YouTube.Channels channels = Mockito.mock(YouTube.Channels.class);
+        when(channels.list(Collections.singletonList("snippet,contentDetails,statistics"))).thenReturn(result);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.channels()).thenReturn(channels);
+
+        YoutubeRepository repository = new YoutubeRepository(client, new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache());
+
+        for (int i = 0; i < 2; i++) {
+            CompletionException failure = assertThrows(CompletionException.class, () -> repository.getChannelDetails("missing").join());
+            assertTrue(failure.getCause() instanceof NoSuchElementException);
+        }
+        verify(result, times(1)).execute();
+    }
+
+    /**
+     * Test a channel without an uploads playlist has no videos
+     */
+    @Test
+    public void testChannelWithoutUploads() throws IOException {
+        YoutubeRepository.ChannelCache cCache = new YoutubeRepository.ChannelCache();
+        cCache.put("empty", CompactChannel.encode("1234", "Empty", null, null, "0", "0", "0", "Thumb", true));
+
+        YouTube.PlaylistItems.List itemResult = Mockito.mock(YouTube.PlaylistItems.List.class);
+        when(itemResult.setPlaylistId(anyString())).thenReturn(itemResult);
+        when(itemResult.setMaxResults(anyLong())).thenReturn(itemResult);
+        when(itemResult.setKey(anyString())).thenReturn(itemResult);
+        when(itemResult.setFields(anyString())).thenReturn(itemResult);
+        when(itemResult.execute()).thenThrow(new GoogleJsonResponseException(
+            new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()), null));
+        YouTube.PlaylistItems items = Mockito.mock(YouTube.PlaylistItems.class);
+        when(items.list(Collections.singletonList("snippet"))).thenReturn(itemResult);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.playlistItems()).thenReturn(items);
+
+        YoutubeRepository repository = new YoutubeRepository(client, new YoutubeRepository.SearchCache(),
+            cCache, new YoutubeRepository.PlayListsCache());
+
+        assertTrue(repository.getChannelDetails("empty").join().getVideosList().isEmpty());
+        assertTrue(repository.getChannelDetails("empty").join().getVideosList().isEmpty());
+        verify(itemResult, times(1)).execute();
+    }
+
+    /**
+     * Test a missing video has no tags and is only requested once
+     */
+    @Test
+    public void testGetTagsByIdNotFound() {
+        YoutubeRepository repository = spy(new YoutubeRepository(Mockito.mock(YouTube.class), new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(), popularQueries(),
+            canonicalizer(), batcher("5ms"), new YoutubeExecutors(), quota("enabled = false"), circuits(0)));
+        doReturn(new VideoListResponse().setItems(new ArrayList<>())).when(repository).getYouTubeVideoListResponse(anyList());
+
+        assertEquals(0, repository.getTagsById("missing").toCompletableFuture().join().count());
+        assertEquals(0, repository.getTagsById("missing").toCompletableFuture().join().count());
+        verify(repository, times(1)).getYouTubeVideoListResponse(anyList());
+    }
+
+    /**
+     * Test concurrent tag lookups share one video request and each cache their own video
+     */
+    @Test
+    public void testGetTagsByIdBatched() {
+        YoutubeRepository.VideoCache vCache = new YoutubeRepository.VideoCache();
+        YoutubeRepository repository = spy(new YoutubeRepository(Mockito.mock(YouTube.class), new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), vCache, popularQueries(),
+            canonicalizer(), batcher("200ms"), new YoutubeExecutors(),
+            quota("enabled = false"), circuits(0)));
+        Video first = new Video().setId("1").setSnippet(new VideoSnippet().setTags(List.of("cats")));
+        Video second = new Video().setId("2").setSnippet(new VideoSnippet().setTags(List.of("dogs", "birds")));
+        doReturn(new VideoListResponse().setItems(List.of(second, first))).when(repository).getYouTubeVideoListResponse(anyList());
+
+        CompletableFuture<Stream<String>> firstTags = repository.getTagsById("1").toCompletableFuture();
+        CompletableFuture<Stream<String>> secondTags = repository.getTagsById("2").toCompletableFuture();
+        assertEquals(List.of("cats"), firstTags.join().collect(Collectors.toList()));
+        assertEquals(List.of("dogs", "birds"), secondTags.join().collect(Collectors.toList()));
+        verify(repository, times(1)).getYouTubeVideoListResponse(List.of("1", "2"));
+
+        assertEquals(List.of("cats"), repository.getTagsById("1").toCompletableFuture().join().collect(Collectors.toList()));
+        assertEquals(2, vCache.size());
+        verify(repository, times(1)).getYouTubeVideoListResponse(anyList());
+    }
+
+    /**
+     * Test searches rejected by their bulkhead fail without calling the API
+     */
+    @Test
+    public void testSearchRejected() {
+        YouTube client = Mockito.mock(YouTube.class);
+        YoutubeExecutors executors = new YoutubeExecutors();
+        executors.shutdown();
+        YoutubeRepository repository = new YoutubeRepository(client, new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(),
+            popularQueries(), canonicalizer(), batcher("5ms"), executors, quota("enabled = false"), circuits(0));
+
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.search("cats").toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        verifyNoInteractions(client);
+    }
+
+    /**
+     * Tests a background search refused by the quota fails without calling the API
+     */
+    @Test
+    public void testSearchQuotaExceeded() {
+        YouTube client = Mockito.mock(YouTube.class);
+        QuotaGovernor quota = quota("burst = 100, reserve = 0.5, costs.channels = 60");
+        PopularQueries popularQueries = popularQueries();
+        YoutubeRepository repository = new YoutubeRepository(client, new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(),
+            popularQueries, canonicalizer(), batcher("5ms"), new YoutubeExecutors(), quota, circuits(0));
+
+        CompletionException e = assertThrows(CompletionException.class,
+            () -> repository.search("cats", QuotaGovernor.Priority.BACKGROUND).toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+        e = assertThrows(CompletionException.class,
+            () -> repository.getChannelDetails("UC1", QuotaGovernor.Priority.BACKGROUND).join());
+        assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+        verifyNoInteractions(client);
+        assertEquals(2, quota.getDenied(QuotaGovernor.Priority.BACKGROUND));
+        // Background requests are not counted as popular
+        assertTrue(popularQueries.topSearches(10).isEmpty());
+        assertTrue(popularQueries.topChannels(10).isEmpty());
+    }
+
+    /**
+     * Tests an interactive search joining a background search the quota refuses loads again at its own priority
+     */
+    @Test
+    public void testSearchRefusedBackgroundWithInteractiveWaiter() throws IOException {
+        SearchListResponse youtubeResult = new SearchListResponse();
+        youtubeResult.setItems(List.of(getNewSearchResult("Title 1", "Description 1", "Channel 1", "11111", "22222", "thumbnail_path")));
+
+        YouTube.Search.List result = Mockito.mock(YouTube.Search.List.class);
+        when(result.setMaxResults(anyLong())).thenReturn(result);
+        when(result.setOrder(anyString())).thenReturn(result);
+        when(result.setQ(anyString())).thenReturn(result);
+        when(result.setType(anyList())).thenReturn(result);
+        when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
+        when(result.execute()).thenReturn(youtubeResult);
+        YouTube.Search search = Mockito.mock(YouTube.Search.class);
+        when(search.list(Collections.singletonList("snippet"))).thenReturn(result);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.search()).thenReturn(search);
+
+        // A search spends the whole burst, so only interactive ones are allowed
+        QuotaGovernor quota = quota("burst = 100, reserve = 0.5");
+        YoutubeExecutors executors = new YoutubeExecutors();
+        PopularQueries popularQueries = popularQueries();
+        YoutubeRepository repository = new YoutubeRepository(client, new YoutubeRepository.SearchCache(),
+            new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(),
+            popularQueries, canonicalizer(), batcher("5ms"), executors, quota, circuits(0));
+
+        // Hold every thread of the search bulkhead, so the background load is still in flight when the interactive search joins it
+        CountDownLatch busy = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            executors.search().execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        CompletableFuture<Stream<SearchResultModel>> background = repository.search("cats", QuotaGovernor.Priority.BACKGROUND).toCompletableFuture();
+        CompletableFuture<Stream<SearchResultModel>> interactive = repository.search("cats", QuotaGovernor.Priority.INTERACTIVE).toCompletableFuture();
+        busy.countDown();
+
+        assertEquals("11111", interactive.join().findFirst().orElseThrow().getId());
+        // The refused background search falls back to the cache, which may already hold what the interactive one loaded
+        try {
+            assertEquals("11111", background.join().findFirst().orElseThrow().getId());
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof QuotaGovernor.QuotaExceededException);
+        }
+        assertEquals(1, quota.getDenied(QuotaGovernor.Priority.BACKGROUND));
+        assertEquals(1, quota.getGranted(QuotaGovernor.Priority.INTERACTIVE));
+        verify(result, times(1)).execute();
+        assertEquals(List.of("cats"), popularQueries.topSearches(10));
+        executors.shutdown();
+    }
+
+    /**
+     * Tests an incremental search asks for the videos published since a time and is not cached
+     */
+    @Test
+    public void testSearchSince() throws IOException {
+        SearchResult newest = getNewSearchResult("Title 2", "Description 2", "Channel 1", "22222", "C1", "thumbnail_path");
+        newest.getSnippet().setPublishedAt(new DateTime(1_700_000_060_000L));
+        SearchListResponse youtubeResult = new SearchListResponse();
+        youtubeResult.setItems(List.of(newest));
+
+        YouTube.Search.List result = Mockito.mock(YouTube.Search.List.class);
+        when(result.setMaxResults(anyLong())).thenReturn(result);
+        when(result.setOrder(anyString())).thenReturn(result);
+        when(result.setQ(anyString())).thenReturn(result);
+        when(result.setType(anyList())).thenReturn(result);
+        when(result.setPublishedAfter(anyString())).thenReturn(result);
+        when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
+        when(result.execute()).thenReturn(youtubeResult);
+        YouTube.Search search = Mockito.mock(YouTube.Search.class);
+        when(search.list(Collections.singletonList("snippet"))).thenReturn(result);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.search()).thenReturn(search);
+
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache();
+        YoutubeRepository repository = new YoutubeRepository(client, cache, new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache());
+        Instant since = Instant.ofEpochMilli(1_700_000_000_000L);
+        List<SearchResultModel> results = repository.searchSince(" Cats ", since, 10, QuotaGovernor.Priority.BACKGROUND)
+            .toCompletableFuture().join().collect(Collectors.toList());
+        repository.searchSince("cats", since, 10, QuotaGovernor.Priority.BACKGROUND).toCompletableFuture().join();
+
+        assertEquals(1, results.size());
+        assertEquals("22222", results.get(0).getId());
+        assertEquals(1_700_000_060_000L, results.get(0).getPublishedAt());
+        verify(result, times(2)).setQ("cats");
+        verify(result, times(2)).setMaxResults(10L);
+        verify(result, times(2)).setPublishedAfter("2023-11-14T22:13:20Z");
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests an expired search is revalidated with its ETag and kept when the API answers it is unchanged
+     */
+    @Test
+    public void testSearchRevalidated() throws IOException, InterruptedException {
+        SearchListResponse youtubeResult = new SearchListResponse();
+        youtubeResult.setEtag("tag1");
+        youtubeResult.setItems(List.of(getNewSearchResult("Title 1", "Description 1", "Channel 1", "11111", "22222", "thumbnail_path")));
+
+        HttpHeaders headers = new HttpHeaders();
+        YouTube.Search.List result = Mockito.mock(YouTube.Search.List.class);
+        when(result.setMaxResults(anyLong())).thenReturn(result);
+        when(result.setOrder(anyString())).thenReturn(result);
+        when(result.setQ(anyString())).thenReturn(result);
+        when(result.setType(anyList())).thenReturn(result);
+        when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
+        when(result.getRequestHeaders()).thenReturn(headers);
+        when(result.execute()).thenReturn(youtubeResult)
+            .thenThrow(new HttpResponseException.Builder(304, "Not Modified", new HttpHeaders()).build());
+        YouTube.Search search = Mockito.mock(YouTube.Search.class);
+        when(search.list(Collections.singletonList("snippet"))).thenReturn(result);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.search()).thenReturn(search);
+
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache();
+        cache.setExpiry(Expiry.fixed(Duration.ofMillis(1)));
+        YoutubeRepository repository = new YoutubeRepository(client, cache, new YoutubeRepository.ChannelCache(), new YoutubeRepository.PlayListsCache());
+        assertEquals(1, repository.search("cats").toCompletableFuture().join().count());
+        assertNull(headers.getIfNoneMatch());
+        Thread.sleep(10);
+
+        List<SearchResultModel> results = repository.search("cats").toCompletableFuture().join().collect(Collectors.toList());
+        assertEquals("11111", results.get(0).getId());
+        assertEquals("tag1", headers.getIfNoneMatch());
+        assertEquals("tag1", cache.peek("cats").orElseThrow().getEtag());
+        verify(result, times(2)).execute();
+    }
+
+    /**
+     * Tests searches fail fast once the circuit of the endpoint opened, falling back to the expired cached results
+     */
+    @Test
+    public void testSearchCircuitOpen() throws IOException, InterruptedException {
+        SearchListResponse youtubeResult = new SearchListResponse();
+        youtubeResult.setItems(List.of(getNewSearchResult("Title 1", "Description 1", "Channel 1", "11111", "22222", "thumbnail_path")));
+
+        YouTube.Search.List result = Mockito.mock(YouTube.Search.List.class);
+        when(result.setMaxResults(anyLong())).thenReturn(result);
+        when(result.setOrder(anyString())).thenReturn(result);
+        when(result.setQ(anyString())).thenReturn(result);
+        when(result.setType(anyList())).thenReturn(result);
+        when(result.setKey(anyString())).thenReturn(result);
+        when(result.setFields(anyString())).thenReturn(result);
+        when(result.execute()).thenReturn(youtubeResult).thenThrow(new IOException("Connection reset"));
+        YouTube.Search search = Mockito.mock(YouTube.Search.class);
+        when(search.list(Collections.singletonList("snippet"))).thenReturn(result);
+        YouTube client = Mockito.mock(YouTube.class);
+        when(client.search()).thenReturn(search);
+
+        YoutubeCircuits circuits = circuits(1);
+        YoutubeRepository.SearchCache cache = new YoutubeRepository.SearchCache();
+        cache.setExpiry(Expiry.fixed(Duration.ofMillis(1)));
+        YoutubeRepository repository = new YoutubeRepository(client, cache, new YoutubeRepository.ChannelCache(),
+            new YoutubeRepository.PlayListsCache(), new YoutubeRepository.VideoCache(), popularQueries(), canonicalizer(),
+            batcher("5ms"), new YoutubeExecutors(), quota("enabled = false"), circuits);
+        assertEquals(1, repository.search("cats").toCompletableFuture().join().count());
+        Thread.sleep(10);
+
+        // The failed refresh opens the circuit, the results held by the cache are returned anyway
+        assertEquals("11111", repository.search("cats").toCompletableFuture().join().findFirst().orElseThrow().getId());
+        assertTrue(circuits.isOpen(QuotaGovernor.Call.SEARCH));
+        assertEquals("11111", repository.search("cats").toCompletableFuture().join().findFirst().orElseThrow().getId());
+        CompletionException e = assertThrows(CompletionException.class, () -> repository.search("dogs").toCompletableFuture().join());
+        assertTrue(e.getCause() instanceof CircuitBreaker.OpenCircuitException);
+        verify(result, times(2)).execute();
+    }
+
+    /**
+     * Create circuits that never hedge
+     *
+     * @param maxFailures Consecutive failures opening a circuit, 0 for circuits that never open
+     * @return Circuits
+     */
+    private static YoutubeCircuits circuits(int maxFailures) {
+        return new YoutubeCircuits(ConfigFactory.parseString(
+            "tubelytics.youtube.http.request-timeout = 5s\n"
+                + "tubelytics.youtube.breaker { enabled = " + (maxFailures > 0) + ", max-failures = " + maxFailures
+                + ", call-timeout = 5s, reset-timeout = 1m, max-reset-timeout = 1m }\n"
+                + "tubelytics.youtube.hedge { enabled = false, endpoints = [] }"));
+    }
+
+    /**
+     * Create a quota governor from the application configuration
+     *
+     * @param settings Settings of tubelytics.quota overriding the configured ones
+     * @return Quota governor
+     */
+    private static QuotaGovernor quota(String settings) {
+        return new QuotaGovernor(ConfigFactory.parseString("tubelytics.quota { " + settings + " }").withFallback(ConfigFactory.load()),
+            Ticker.systemTicker());
+    }
+
+    /**
+     * Create a batcher of up to 50 video IDs
+     *
+     * @param window How long a batch waits for more lookups
+     * @return Batcher
+     */
+    private static VideoBatcher batcher(String window) {
+        return new VideoBatcher(ConfigFactory.parseString("tubelytics.youtube.video-batch { window = " + window + ", max-size = 50 }"));
+    }
+
+    /**
+     * Create a canonicalizer keeping the order of the terms
+     *
+     * @return Canonicalizer
+     */
+    private static QueryCanonicalizer canonicalizer() {
+        return new QueryCanonicalizer(ConfigFactory.parseString("tubelytics.query.ignore-term-order = false"));
+    }
+
+    /**
+     * Create counts of the requests kept in memory only
+     *
+     * @return Popular queries
+     */
+    private static PopularQueries popularQueries() {
+        return new PopularQueries(ConfigFactory.parseString("tubelytics.warmup { snapshot = \"\", max-tracked = 1000 }"));
+    }
+}